@@ -0,0 +1,70 @@
+package ly.count.android.sdk;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.json.JSONArray;
+
+/**
+ * Builds the data that is used by the benchmarks
+ */
+final class BenchmarkData {
+    private BenchmarkData() {
+    }
+
+    /**
+     * Creates an event with the given amount of segmentation values, spread over all value types
+     */
+    static Event createEvent(int index, int segmentationWidth) {
+        UtilsTime.Instant instant = UtilsTime.getCurrentInstant();
+        Event event = new Event("benchmark_event_" + (index % 10), instant.timestampMs, instant.hour, instant.dow);
+        event.count = 1;
+        event.sum = index;
+        event.dur = 1.5;
+        event.id = "event_id_" + index;
+        event.pvid = "previous_view_id";
+        event.cvid = "current_view_id";
+        event.peid = "previous_event_id";
+
+        if (segmentationWidth > 0) {
+            Map<String, String> strings = new HashMap<>();
+            Map<String, Integer> ints = new HashMap<>();
+            Map<String, Double> doubles = new HashMap<>();
+            Map<String, Boolean> booleans = new HashMap<>();
+
+            for (int a = 0; a < segmentationWidth; a++) {
+                switch (a % 4) {
+                    case 0:
+                        strings.put("string_" + a, "value_" + a);
+                        break;
+                    case 1:
+                        ints.put("int_" + a, a);
+                        break;
+                    case 2:
+                        doubles.put("double_" + a, a + 0.5);
+                        break;
+                    default:
+                        booleans.put("bool_" + a, a % 2 == 0);
+                        break;
+                }
+            }
+
+            event.segmentation = strings;
+            event.segmentationInt = ints;
+            event.segmentationDouble = doubles;
+            event.segmentationBoolean = booleans;
+        }
+
+        return event;
+    }
+
+    /**
+     * Creates an event request similar to the ones that are added to the request queue
+     */
+    static String createRequest(int index, int segmentationWidth) {
+        JSONArray events = new JSONArray();
+        events.put(createEvent(index, segmentationWidth).toJSON());
+
+        return "app_key=benchmark_app_key&timestamp=" + (1600000000000L + index) + "&hour=10&dow=3&tz=120&sdk_version=22.12.0&sdk_name=java-native-android"
+            + "&events=" + UtilsNetworking.urlEncodeString(events.toString());
+    }
+}
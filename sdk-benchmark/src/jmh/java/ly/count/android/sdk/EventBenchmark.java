@@ -0,0 +1,62 @@
+package ly.count.android.sdk;
+
+import java.util.concurrent.TimeUnit;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Serialization of a single event with different segmentation sizes
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EventBenchmark {
+    @Param({ "0", "5", "20", "50" })
+    int segmentationWidth;
+
+    Event event;
+    JSONObject eventJson;
+    String eventString;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        event = BenchmarkData.createEvent(1, segmentationWidth);
+        eventJson = event.toJSON();
+        eventString = eventJson.toString();
+    }
+
+    @Benchmark
+    public JSONObject toJSON() {
+        return event.toJSON();
+    }
+
+    /**
+     * Serialization as it's done when an event is written to storage
+     */
+    @Benchmark
+    public String toJSONString() {
+        return event.toJSON().toString();
+    }
+
+    @Benchmark
+    public Event fromJSON() {
+        return Event.fromJSON(eventJson);
+    }
+
+    /**
+     * Parsing as it's done when the event queue is read from storage
+     */
+    @Benchmark
+    public Event fromJSONString() throws JSONException {
+        return Event.fromJSON(new JSONObject(eventString));
+    }
+}
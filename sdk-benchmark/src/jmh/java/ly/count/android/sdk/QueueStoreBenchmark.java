@@ -0,0 +1,92 @@
+package ly.count.android.sdk;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Request and event queue operations of QueueStore with queues of different sizes.
+ * Storage is kept in memory, so these measure serialization and queue handling and not disk access.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class QueueStoreBenchmark {
+    @Param({ "10", "100", "1000" })
+    int queueSize;
+
+    @Param({ "0", "5", "20" })
+    int segmentationWidth;
+
+    QueueStore store;
+    String filledEventQueue;
+    Event newEvent;
+    String newRequest;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        store = new QueueStore(new InMemoryKeyValueStore(), PlatformLog.NONE, false);
+        //room for the request that is added during the benchmark
+        store.maxRequestQueueSize = queueSize + 1;
+
+        List<String> requests = new ArrayList<>(queueSize);
+        for (int a = 0; a < queueSize; a++) {
+            requests.add(BenchmarkData.createRequest(a, segmentationWidth));
+        }
+        store.replaceRequestList(requests);
+
+        //the event queue is limited to 1000 events, leave room for the added one
+        StringBuilder events = new StringBuilder();
+        for (int a = 0; a < queueSize - 1; a++) {
+            if (a > 0) {
+                events.append(QueueStore.DELIMITER);
+            }
+            events.append(BenchmarkData.createEvent(a, segmentationWidth).toJSON().toString());
+        }
+        filledEventQueue = events.toString();
+
+        newEvent = BenchmarkData.createEvent(queueSize, segmentationWidth);
+        newRequest = BenchmarkData.createRequest(queueSize, segmentationWidth);
+    }
+
+    /**
+     * Adds a request and removes it again, so that the queue stays at 'queueSize' requests
+     */
+    @Benchmark
+    public void addAndRemoveRequest() {
+        store.addRequest(newRequest, false);
+        store.removeRequest(newRequest);
+    }
+
+    @Benchmark
+    public String[] getRequests() {
+        return store.getRequests();
+    }
+
+    /**
+     * Adds an event to a queue of 'queueSize - 1' events
+     */
+    @Benchmark
+    public void addEvent() {
+        store.setEventData(filledEventQueue);
+        store.addEvent(newEvent);
+    }
+
+    /**
+     * Turns a queue of 'queueSize - 1' events into the request parameter and empties the queue
+     */
+    @Benchmark
+    public String getEventsForRequestAndEmptyEventQueue() {
+        store.setEventData(filledEventQueue);
+        return store.getEventsForRequestAndEmptyEventQueue();
+    }
+}
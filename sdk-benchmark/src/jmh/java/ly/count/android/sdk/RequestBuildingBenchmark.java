@@ -0,0 +1,56 @@
+package ly.count.android.sdk;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Building requests: the parameters every request starts with, and the handling of queued requests before they are sent
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RequestBuildingBenchmark {
+    @Param({ "0", "5", "20" })
+    int segmentationWidth;
+
+    String eventRequest;
+    String otherEventRequest;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        eventRequest = BenchmarkData.createRequest(1, segmentationWidth);
+        otherEventRequest = BenchmarkData.createRequest(2, segmentationWidth);
+    }
+
+    /**
+     * The parameters that are common to all requests, as built by 'ConnectionQueue.prepareCommonRequestData'
+     */
+    @Benchmark
+    public String prepareCommonRequestData() {
+        return UtilsNetworking.prepareCommonRequestData("benchmark_app_key", UtilsTime.getCurrentInstant(), 120, "22.12.0", "java-native-android");
+    }
+
+    /**
+     * The checksum that is added to every request when a salt is set
+     */
+    @Benchmark
+    public String checksum() {
+        return UtilsNetworking.sha256Hash(eventRequest + "benchmark_salt");
+    }
+
+    /**
+     * Appending the events of a new request to the last queued one
+     */
+    @Benchmark
+    public String mergeEventRequests() {
+        return QueueStore.mergeEventRequests(eventRequest, otherEventRequest, Integer.MAX_VALUE);
+    }
+}
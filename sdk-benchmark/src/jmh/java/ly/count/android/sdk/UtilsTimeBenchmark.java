@@ -0,0 +1,39 @@
+package ly.count.android.sdk;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Timestamp and instant generation, which is done for every event and request
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class UtilsTimeBenchmark {
+    final UtilsTime.UniqueTimestampGenerator generator = new UtilsTime.UniqueTimestampGenerator();
+
+    @Benchmark
+    public UtilsTime.Instant getCurrentInstant() {
+        return UtilsTime.getCurrentInstant();
+    }
+
+    @Benchmark
+    public long uniqueTimestamp() {
+        return generator.uniqueTimestamp();
+    }
+
+    /**
+     * Multiple threads requesting timestamps at the same time, as when events are recorded from multiple threads
+     */
+    @Benchmark
+    @Threads(4)
+    public long uniqueTimestampContended() {
+        return generator.uniqueTimestamp();
+    }
+}
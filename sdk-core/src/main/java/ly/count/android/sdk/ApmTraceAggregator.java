@@ -0,0 +1,315 @@
+package ly.count.android.sdk;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Folds APM traces into one summary per trace key, so that a trace key is sent once per flush
+ * instead of once per trace.
+ *
+ * A summary is sent as a regular APM trace: the duration metric is the average, the other
+ * standard metrics are averages as well and the distribution is added as flat numeric metrics
+ * (see 'summaryMetricsString'). The response code of a network summary is picked by 'representativeResponseCode'.
+ *
+ * Durations are counted in a log-linear histogram: every power of two is split into 'SUB_BUCKETS' buckets,
+ * which keeps the bucket bounds within 25% of each other at any scale. The percentiles are taken from it.
+ * Count, sum, min and max are kept exactly.
+ *
+ * Not thread safe, used while holding the APM module lock.
+ */
+class ApmTraceAggregator {
+    static final String TYPE_DEVICE = "device";
+    static final String TYPE_NETWORK = "network";
+
+    static final int SUB_BUCKETS = 4;
+    static final long MAX_TRACKED_DURATION_MS = 65536;
+
+    //suffixes of the summary metrics, added to the name of the duration metric
+    static final String[] SUMMARY_METRIC_SUFFIXES = new String[] { "_min", "_max", "_p50", "_p95" };
+    static final String TRACE_COUNT_KEY = "trace_count";
+    //failed network traces, their codes decide the response code of the summary, see 'representativeResponseCode'
+    static final String ERROR_COUNT_KEY = "error_count";
+
+    /**
+     * Upper bounds in milliseconds of the duration buckets, a value goes into the first bucket whose bound it does not exceed.
+     * The last bucket counts everything above the last bound.
+     */
+    static final long[] DURATION_BUCKET_BOUNDS_MS = createBucketBounds();
+
+    /**
+     * Summary of all traces with the same type and name
+     */
+    static class TraceSummary {
+        final String type;
+        final String name;
+
+        long count = 0;
+        long sumMs = 0;
+        long minMs = Long.MAX_VALUE;
+        long maxMs = Long.MIN_VALUE;
+        final long[] bucketCounts = new long[DURATION_BUCKET_BOUNDS_MS.length + 1];
+
+        long firstStartMs = Long.MAX_VALUE;
+        long lastEndMs = Long.MIN_VALUE;
+
+        //network traces
+        long requestPayloadBytes = 0;
+        long responsePayloadBytes = 0;
+        long errorCount = 0;
+        //sorted, so that ties between codes are resolved the same way every time
+        final Map<Integer, Long> responseCodeCounts = new TreeMap<>();
+
+        //custom metric values of device traces and phase durations of network traces, summed up,
+        //with the amount of traces that had them, as not every trace has all of them
+        final Map<String, Long> metricSums = new LinkedHashMap<>();
+        final Map<String, Long> metricCounts = new LinkedHashMap<>();
+
+        TraceSummary(@NonNull String type, @NonNull String name) {
+            this.type = type;
+            this.name = name;
+        }
+
+        void record(long durationMs, long startMs, long endMs) {
+            count++;
+            sumMs += durationMs;
+            minMs = Math.min(minMs, durationMs);
+            maxMs = Math.max(maxMs, durationMs);
+            bucketCounts[bucketIndex(durationMs)]++;
+            firstStartMs = Math.min(firstStartMs, startMs);
+            lastEndMs = Math.max(lastEndMs, endMs);
+        }
+
+        void recordMetric(@NonNull String key, long value) {
+            Long previousSum = metricSums.get(key);
+            Long previousCount = metricCounts.get(key);
+            metricSums.put(key, (previousSum == null ? 0 : previousSum) + value);
+            metricCounts.put(key, (previousCount == null ? 0 : previousCount) + 1);
+        }
+
+        long averageMs() {
+            return count == 0 ? 0 : sumMs / count;
+        }
+
+        long averageRequestPayloadSize() {
+            return count == 0 ? 0 : requestPayloadBytes / count;
+        }
+
+        long averageResponsePayloadSize() {
+            return count == 0 ? 0 : responsePayloadBytes / count;
+        }
+
+        /**
+         * The response code sent with the summary. If any of the traces failed, it is the most frequent error code
+         * (0 or 400 and above), so that a summary with 'error_count' above 0 never reports a successful code.
+         * Otherwise it is the most frequent code. Ties go to the lowest code.
+         */
+        int representativeResponseCode() {
+            int result = 0;
+            long resultCount = 0;
+            for (Map.Entry<Integer, Long> entry : responseCodeCounts.entrySet()) {
+                if (errorCount > 0 && !isErrorResponseCode(entry.getKey())) {
+                    continue;
+                }
+                if (entry.getValue() > resultCount) {
+                    result = entry.getKey();
+                    resultCount = entry.getValue();
+                }
+            }
+            return result;
+        }
+
+        /**
+         * @return the upper bound of the histogram bucket that holds the given percentile, within min and max
+         */
+        long percentileMs(int percentile) {
+            if (count == 0) {
+                return 0;
+            }
+
+            long rank = (count * percentile + 99) / 100;
+            long seen = 0;
+            for (int a = 0; a < bucketCounts.length; a++) {
+                seen += bucketCounts[a];
+                if (seen >= rank) {
+                    long bound = a < DURATION_BUCKET_BOUNDS_MS.length ? DURATION_BUCKET_BOUNDS_MS[a] : maxMs;
+                    return Math.max(minMs, Math.min(maxMs, bound));
+                }
+            }
+            return maxMs;
+        }
+
+        /**
+         * @return the averaged custom or phase metrics followed by the summary metrics, in the format of the APM metrics string,
+         * for example ',"items":4,"duration_min":3,"duration_max":7,"duration_p50":4,"duration_p95":7,"trace_count":2'.
+         * The average duration and the standard network metrics are not part of it.
+         */
+        @NonNull String summaryMetricsString() {
+            String durationKey = TYPE_NETWORK.equals(type) ? "response_time" : "duration";
+            long[] summaryValues = new long[] { minMs, maxMs, percentileMs(50), percentileMs(95) };
+
+            Map<String, Long> metrics = new LinkedHashMap<>();
+            for (Map.Entry<String, Long> entry : metricSums.entrySet()) {
+                metrics.put(entry.getKey(), entry.getValue() / metricCounts.get(entry.getKey()));
+            }
+            for (int a = 0; a < SUMMARY_METRIC_SUFFIXES.length; a++) {
+                metrics.put(durationKey + SUMMARY_METRIC_SUFFIXES[a], summaryValues[a]);
+            }
+            if (TYPE_NETWORK.equals(type)) {
+                metrics.put(ERROR_COUNT_KEY, errorCount);
+            }
+            metrics.put(TRACE_COUNT_KEY, count);
+
+            StringBuilder result = new StringBuilder();
+            for (Map.Entry<String, Long> entry : metrics.entrySet()) {
+                result.append(",\"").append(entry.getKey()).append("\":").append(entry.getValue());
+            }
+            return result.toString();
+        }
+    }
+
+    private final Map<String, TraceSummary> summaries = new LinkedHashMap<>();
+    private final int maxTraceKeys;
+    private long traceCount = 0;
+
+    /**
+     * @param maxTraceKeys how many different trace keys are summarized at once.
+     * Traces with new keys are not accepted once this is reached, they have to be sent on their own.
+     */
+    ApmTraceAggregator(int maxTraceKeys) {
+        this.maxTraceKeys = maxTraceKeys;
+    }
+
+    /**
+     * @param customMetrics already validated custom metrics, may be null
+     * @return false if the trace was not added because too many trace keys are summarized
+     */
+    boolean recordCustomTrace(@NonNull String name, long durationMs, long startMs, long endMs, @Nullable Map<String, Integer> customMetrics) {
+        TraceSummary summary = summaryFor(TYPE_DEVICE, name);
+        if (summary == null) {
+            return false;
+        }
+
+        summary.record(durationMs, startMs, endMs);
+        if (customMetrics != null) {
+            for (Map.Entry<String, Integer> entry : customMetrics.entrySet()) {
+                summary.recordMetric(entry.getKey(), entry.getValue());
+            }
+        }
+        traceCount++;
+        return true;
+    }
+
+    /**
+     * @param phaseMetrics phase durations of the request in milliseconds, may be null
+     * @return false if the trace was not added because too many trace keys are summarized
+     */
+    boolean recordNetworkTrace(@NonNull String name, long responseTimeMs, int responseCode, int requestPayloadSize, int responsePayloadSize, long startMs, long endMs,
+        @Nullable Map<String, Long> phaseMetrics) {
+        TraceSummary summary = summaryFor(TYPE_NETWORK, name);
+        if (summary == null) {
+            return false;
+        }
+
+        summary.record(responseTimeMs, startMs, endMs);
+        summary.requestPayloadBytes += requestPayloadSize;
+        summary.responsePayloadBytes += responsePayloadSize;
+        Long previousCodeCount = summary.responseCodeCounts.get(responseCode);
+        summary.responseCodeCounts.put(responseCode, (previousCodeCount == null ? 0 : previousCodeCount) + 1);
+        if (isErrorResponseCode(responseCode)) {
+            summary.errorCount++;
+        }
+        if (phaseMetrics != null) {
+            for (Map.Entry<String, Long> entry : phaseMetrics.entrySet()) {
+                summary.recordMetric(entry.getKey(), entry.getValue());
+            }
+        }
+        traceCount++;
+        return true;
+    }
+
+    boolean isEmpty() {
+        return summaries.isEmpty();
+    }
+
+    /**
+     * @return how many traces have been added since the last drain
+     */
+    long getTraceCount() {
+        return traceCount;
+    }
+
+    /**
+     * Returns the summaries and starts over
+     */
+    @NonNull List<TraceSummary> drain() {
+        List<TraceSummary> drained = new ArrayList<>(summaries.values());
+        summaries.clear();
+        traceCount = 0;
+        return drained;
+    }
+
+    void clear() {
+        summaries.clear();
+        traceCount = 0;
+    }
+
+    static boolean isErrorResponseCode(int responseCode) {
+        return responseCode == 0 || responseCode >= 400;
+    }
+
+    static int bucketIndex(long durationMs) {
+        //the bounds are sorted, find the first one that is not smaller than the value
+        int low = 0;
+        int high = DURATION_BUCKET_BOUNDS_MS.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (DURATION_BUCKET_BOUNDS_MS[middle] < durationMs) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private @Nullable TraceSummary summaryFor(@NonNull String type, @NonNull String name) {
+        String key = type + "|" + name;
+        TraceSummary summary = summaries.get(key);
+        if (summary == null) {
+            if (summaries.size() >= maxTraceKeys) {
+                return null;
+            }
+            summary = new TraceSummary(type, name);
+            summaries.put(key, summary);
+        }
+        return summary;
+    }
+
+    /**
+     * 1 to 'SUB_BUCKETS' ms in 1 ms steps, after that every power of two is split into 'SUB_BUCKETS' equal steps:
+     * 1, 2, 3, 4, 5, 6, 7, 8, 10, 12, 14, 16, 20, 24, 28, 32, ... 65536
+     */
+    static long[] createBucketBounds() {
+        List<Long> bounds = new ArrayList<>();
+        for (long a = 1; a <= 2 * SUB_BUCKETS; a++) {
+            bounds.add(a);
+        }
+        for (long power = 2 * SUB_BUCKETS; power < MAX_TRACKED_DURATION_MS; power *= 2) {
+            long step = power / SUB_BUCKETS;
+            for (int a = 1; a <= SUB_BUCKETS; a++) {
+                bounds.add(power + step * a);
+            }
+        }
+
+        long[] result = new long[bounds.size()];
+        for (int a = 0; a < result.length; a++) {
+            result[a] = bounds.get(a);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,15 @@
+package ly.count.android.sdk;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Base64 encoding, provided by the platform because 'java.util.Base64' is not available on older Android versions
+ */
+public interface Base64Codec {
+    /**
+     * @return the encoded value without line breaks
+     */
+    @NonNull String encodeToString(@NonNull byte[] value);
+
+    @NonNull byte[] decode(@NonNull String value);
+}
@@ -0,0 +1,180 @@
+package ly.count.android.sdk;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Mirrors breadcrumbs into a small memory mapped file.
+ *
+ * Writes to the mapping end up in the file even if the process is killed right after them, for example by a native crash.
+ * On the next start the file of the previous run is read with 'read' before it is opened again.
+ *
+ * The file has a header and a slot of a fixed size for each breadcrumb. Only absolute buffer positions are used,
+ * so slots can be written from several threads. While a slot is written its sequence number is invalid.
+ * The header also holds the time the run that wrote the file started, so that the breadcrumbs are only matched
+ * with a crash of that run.
+ */
+class BreadcrumbMirror {
+    static final int MAGIC = 0x43425232;
+    static final int HEADER_SIZE = 32;
+    static final int SLOT_SIZE = 256;
+    //sequence number, timestamp and text length come before the text
+    static final int SLOT_TEXT_OFFSET = 18;
+    static final int MAX_TEXT_BYTES = SLOT_SIZE - SLOT_TEXT_OFFSET;
+
+    private static final int HEADER_CLEARED_OFFSET = 12;
+    private static final int HEADER_RUN_START_OFFSET = 20;
+    private static final long INVALID_SEQUENCE = -1;
+
+    private final MappedByteBuffer buffer;
+    private final int slotCount;
+
+    private BreadcrumbMirror(@NonNull MappedByteBuffer buffer, int slotCount) {
+        this.buffer = buffer;
+        this.slotCount = slotCount;
+    }
+
+    /**
+     * Creates or resets the mirror file, breadcrumbs of a previous run are discarded
+     *
+     * @param runStartMs when the current run started
+     */
+    static @NonNull BreadcrumbMirror open(@NonNull File file, int slotCount, long runStartMs) throws IOException {
+        slotCount = Math.max(1, slotCount);
+        int size = HEADER_SIZE + slotCount * SLOT_SIZE;
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        MappedByteBuffer buffer;
+        try {
+            raf.setLength(size);
+            //the mapping stays valid after the file is closed
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } finally {
+            raf.close();
+        }
+
+        for (int a = 0; a < slotCount; a++) {
+            buffer.putLong(HEADER_SIZE + a * SLOT_SIZE, INVALID_SEQUENCE);
+        }
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, slotCount);
+        buffer.putInt(8, SLOT_SIZE);
+        buffer.putLong(HEADER_CLEARED_OFFSET, 0);
+        buffer.putLong(HEADER_RUN_START_OFFSET, runStartMs);
+        return new BreadcrumbMirror(buffer, slotCount);
+    }
+
+    /**
+     * Text longer than the slot is cut off
+     */
+    void write(@NonNull BreadcrumbRing.Breadcrumb breadcrumb) {
+        byte[] text = utf8(breadcrumb.text);
+        int length = Math.min(text.length, MAX_TEXT_BYTES);
+        //don't cut a multi byte character in half
+        while (length < text.length && length > 0 && (text[length] & 0xC0) == 0x80) {
+            length--;
+        }
+
+        int slot = HEADER_SIZE + (int) (breadcrumb.sequence % slotCount) * SLOT_SIZE;
+        buffer.putLong(slot, INVALID_SEQUENCE);
+        buffer.putLong(slot + 8, breadcrumb.timestampMs);
+        buffer.putShort(slot + 16, (short) length);
+        for (int a = 0; a < length; a++) {
+            buffer.put(slot + SLOT_TEXT_OFFSET + a, text[a]);
+        }
+        buffer.putLong(slot, breadcrumb.sequence);
+    }
+
+    /**
+     * Breadcrumbs before the given sequence number have been reported and are not read anymore
+     */
+    void clearBefore(long sequence) {
+        buffer.putLong(HEADER_CLEARED_OFFSET, sequence);
+    }
+
+    /**
+     * @return when the run that wrote the file started, 0 if the file does not exist or is not a valid mirror file
+     */
+    static long readRunStartMs(@NonNull File file) throws IOException {
+        if (!file.exists() || file.length() < HEADER_SIZE) {
+            return 0;
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            if (raf.readInt() != MAGIC) {
+                return 0;
+            }
+            raf.seek(HEADER_RUN_START_OFFSET);
+            return raf.readLong();
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Reads the breadcrumbs that were mirrored in a previous run
+     *
+     * @return the breadcrumbs, the oldest first. Empty if the file does not exist or is not a valid mirror file.
+     */
+    static @NonNull List<BreadcrumbRing.Breadcrumb> read(@NonNull File file) throws IOException {
+        List<BreadcrumbRing.Breadcrumb> breadcrumbs = new ArrayList<>();
+        if (!file.exists() || file.length() < HEADER_SIZE) {
+            return breadcrumbs;
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            if (raf.readInt() != MAGIC) {
+                return breadcrumbs;
+            }
+            int slotCount = raf.readInt();
+            int slotSize = raf.readInt();
+            long cleared = raf.readLong();
+            if (slotCount <= 0 || slotSize != SLOT_SIZE || file.length() < HEADER_SIZE + (long) slotCount * SLOT_SIZE) {
+                return breadcrumbs;
+            }
+
+            byte[] text = new byte[MAX_TEXT_BYTES];
+            for (int a = 0; a < slotCount; a++) {
+                raf.seek(HEADER_SIZE + (long) a * SLOT_SIZE);
+                long sequence = raf.readLong();
+                long timestampMs = raf.readLong();
+                int length = raf.readShort();
+                if (sequence < cleared || length < 0 || length > MAX_TEXT_BYTES) {
+                    continue;
+                }
+                raf.readFully(text, 0, length);
+                breadcrumbs.add(new BreadcrumbRing.Breadcrumb(sequence, timestampMs, new String(text, 0, length, "UTF-8")));
+            }
+        } finally {
+            raf.close();
+        }
+
+        Collections.sort(breadcrumbs, new Comparator<BreadcrumbRing.Breadcrumb>() {
+            @Override public int compare(BreadcrumbRing.Breadcrumb a, BreadcrumbRing.Breadcrumb b) {
+                return a.sequence < b.sequence ? -1 : (a.sequence == b.sequence ? 0 : 1);
+            }
+        });
+        return breadcrumbs;
+    }
+
+    private static @NonNull byte[] utf8(@Nullable String value) {
+        try {
+            return value == null ? new byte[0] : value.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException ignored) {
+            // should never happen because Android guarantees UTF-8 support
+            return new byte[0];
+        }
+    }
+}
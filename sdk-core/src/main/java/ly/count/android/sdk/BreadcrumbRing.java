@@ -0,0 +1,157 @@
+package ly.count.android.sdk;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Keeps the latest breadcrumbs in a fixed amount of slots, the oldest ones are overwritten.
+ *
+ * Adding, taking a snapshot and clearing do not lock, so the crash handler can read the breadcrumbs
+ * while other threads are still adding them. Every breadcrumb gets a sequence number, a slot is only read
+ * if it holds the breadcrumb with the expected number, a slot that is being overwritten is skipped.
+ *
+ * The breadcrumbs can also be written into a mirror file, so that they are available after the process has died.
+ */
+class BreadcrumbRing {
+    static class Breadcrumb {
+        final long sequence;
+        final long timestampMs;
+        @NonNull final String text;
+
+        Breadcrumb(long sequence, long timestampMs, @NonNull String text) {
+            this.sequence = sequence;
+            this.timestampMs = timestampMs;
+            this.text = text;
+        }
+    }
+
+    private final AtomicReferenceArray<Breadcrumb> slots;
+    private final Clock clock;
+    //sequence number of the next breadcrumb
+    private final AtomicLong nextSequence;
+    //breadcrumbs before this sequence number have been cleared
+    private final AtomicLong clearedSequence;
+
+    @Nullable
+    private volatile BreadcrumbMirror mirror = null;
+
+    BreadcrumbRing(int capacity, @NonNull Clock clock) {
+        this(capacity, clock, 0);
+    }
+
+    /**
+     * @param firstSequence sequence number of the first breadcrumb, a buffer that replaces another one continues its numbers,
+     * so that the slots the other one wrote into a shared mirror are cleared and not read as newer breadcrumbs
+     */
+    BreadcrumbRing(int capacity, @NonNull Clock clock, long firstSequence) {
+        slots = new AtomicReferenceArray<>(Math.max(1, capacity));
+        this.clock = clock;
+        nextSequence = new AtomicLong(firstSequence);
+        clearedSequence = new AtomicLong(firstSequence);
+    }
+
+    int capacity() {
+        return slots.length();
+    }
+
+    /**
+     * @return sequence number of the next breadcrumb
+     */
+    long nextSequence() {
+        return nextSequence.get();
+    }
+
+    /**
+     * @param mirror receives every breadcrumb that is added after this call, null to stop mirroring
+     */
+    void setMirror(@Nullable BreadcrumbMirror mirror) {
+        if (mirror != null) {
+            //sequence numbers of a mirror that was used by another buffer may be ahead
+            mirror.clearBefore(clearedSequence.get());
+        }
+        this.mirror = mirror;
+    }
+
+    @Nullable BreadcrumbMirror getMirror() {
+        return mirror;
+    }
+
+    /**
+     * @return true if the oldest breadcrumb was overwritten
+     */
+    boolean add(@NonNull String text) {
+        long sequence = nextSequence.getAndIncrement();
+        Breadcrumb breadcrumb = new Breadcrumb(sequence, clock.currentTimeMillis(), text);
+        slots.set((int) (sequence % slots.length()), breadcrumb);
+
+        BreadcrumbMirror currentMirror = mirror;
+        if (currentMirror != null) {
+            currentMirror.write(breadcrumb);
+        }
+        return sequence - clearedSequence.get() >= slots.length();
+    }
+
+    /**
+     * @return the stored breadcrumbs, the oldest first. Breadcrumbs that are added at the same time may be left out.
+     */
+    @NonNull List<Breadcrumb> snapshot() {
+        return collect(nextSequence.get());
+    }
+
+    /**
+     * Takes a snapshot and removes the breadcrumbs in it, later added ones are kept
+     */
+    @NonNull List<Breadcrumb> drain() {
+        long end = nextSequence.get();
+        List<Breadcrumb> breadcrumbs = collect(end);
+
+        //never move the cleared position back if another thread has drained further
+        long cleared;
+        do {
+            cleared = clearedSequence.get();
+        } while (cleared < end && !clearedSequence.compareAndSet(cleared, end));
+
+        BreadcrumbMirror currentMirror = mirror;
+        if (currentMirror != null) {
+            currentMirror.clearBefore(end);
+        }
+        return breadcrumbs;
+    }
+
+    private @NonNull List<Breadcrumb> collect(long end) {
+        long start = Math.max(clearedSequence.get(), end - slots.length());
+        List<Breadcrumb> breadcrumbs = new ArrayList<>((int) Math.max(0, end - start));
+        for (long sequence = start; sequence < end; sequence++) {
+            Breadcrumb breadcrumb = slots.get((int) (sequence % slots.length()));
+            if (breadcrumb != null && breadcrumb.sequence == sequence) {
+                breadcrumbs.add(breadcrumb);
+            }
+        }
+        return breadcrumbs;
+    }
+
+    /**
+     * Writes the breadcrumbs as lines, optionally with the time they were added in front of them
+     */
+    static void writeLines(@NonNull List<Breadcrumb> breadcrumbs, boolean timestamps, @NonNull Writer writer) throws IOException {
+        SimpleDateFormat format = timestamps ? new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.US) : null;
+        for (Breadcrumb breadcrumb : breadcrumbs) {
+            if (format != null) {
+                writer.write('[');
+                writer.write(format.format(new Date(breadcrumb.timestampMs)));
+                writer.write("] ");
+            }
+            writer.write(breadcrumb.text);
+            writer.write('\n');
+        }
+    }
+}
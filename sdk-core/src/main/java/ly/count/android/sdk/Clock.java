@@ -0,0 +1,20 @@
+package ly.count.android.sdk;
+
+/**
+ * Time source of the SDK. Can be replaced in tests to control time.
+ */
+public interface Clock {
+    long currentTimeMillis();
+
+    long nanoTime();
+
+    Clock SYSTEM = new Clock() {
+        @Override public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+
+        @Override public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+}
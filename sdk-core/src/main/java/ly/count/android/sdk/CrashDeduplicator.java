@@ -0,0 +1,312 @@
+package ly.count.android.sdk;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Collapses repeated crashes into one report per time window.
+ *
+ * Crashes are told apart by a fingerprint, a hash of the exception classes and their normalized stack frames.
+ * The messages are left out, they often contain values that change between occurrences.
+ * The first occurrence of a fingerprint is reported and starts a window, further occurrences inside the window are only counted.
+ * The next occurrence after the window is reported again, together with the count of the occurrences it stands for.
+ * The text of the first counted occurrence is kept, so that the count can also be reported on its own
+ * once the window has ended without another occurrence, or when the fingerprint is dropped from the index (see 'takePendingReports').
+ *
+ * The index can be saved as a string, so that windows and pending counts continue after a restart.
+ * The kept texts are not part of it, they are written to their own store once per window, so saving the index stays small.
+ */
+class CrashDeduplicator {
+    static final int MAX_ENTRIES = 100;
+    //how many stack frames of each exception in the cause chain are hashed
+    static final int FINGERPRINT_FRAMES = 32;
+    static final int MAX_CAUSE_DEPTH = 10;
+    //suppressed occurrences are saved at most this often, reports are saved right away
+    static final long PERSIST_INTERVAL_MS = 10000;
+    //longer report texts of counted occurrences are cut off
+    static final int MAX_PENDING_REPORT_LENGTH = 8000;
+
+    //64 bit FNV-1a
+    static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    //anonymous class and lambda indices change when unrelated code is added
+    private static final Pattern SYNTHETIC_INDEX = Pattern.compile("\\$[0-9]+");
+    private static final Pattern LAMBDA_SUFFIX = Pattern.compile("\\$\\$(Lambda|ExternalSynthetic).*");
+
+    static class Entry {
+        long windowStartMs;
+        int suppressed;
+        //text of the first counted occurrence, null until there is one
+        @Nullable String pendingReport;
+
+        Entry(long windowStartMs, int suppressed, @Nullable String pendingReport) {
+            this.windowStartMs = windowStartMs;
+            this.suppressed = suppressed;
+            this.pendingReport = pendingReport;
+        }
+    }
+
+    /**
+     * Counted occurrences that have to be reported without a new occurrence
+     */
+    static class PendingReport {
+        @NonNull final String report;
+        final int occurrences;
+
+        PendingReport(@NonNull String report, int occurrences) {
+            this.report = report;
+            this.occurrences = occurrences;
+        }
+    }
+
+    private final long windowMs;
+    private final Clock clock;
+    //texts of counted occurrences by fingerprint, null if they are only kept in memory
+    @Nullable private final KeyValueStore reportStore;
+    //counts of dropped entries, until they are taken
+    private final List<PendingReport> evicted = new ArrayList<>();
+    private final Map<String, Entry> index = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            if (size() <= MAX_ENTRIES) {
+                return false;
+            }
+            Entry entry = eldest.getValue();
+            if (entry.suppressed > 0 && entry.pendingReport != null) {
+                evicted.add(new PendingReport(entry.pendingReport, entry.suppressed));
+            }
+            if (entry.pendingReport != null) {
+                storeReport(eldest.getKey(), null);
+            }
+            return true;
+        }
+    };
+
+    private boolean dirty = false;
+    private long lastPersistMs = 0;
+
+    CrashDeduplicator(long windowMs, @NonNull Clock clock) {
+        this(windowMs, clock, null);
+    }
+
+    /**
+     * @param reportStore where the texts of counted occurrences are saved, a value per fingerprint
+     */
+    CrashDeduplicator(long windowMs, @NonNull Clock clock, @Nullable KeyValueStore reportStore) {
+        this.windowMs = windowMs;
+        this.clock = clock;
+        this.reportStore = reportStore;
+    }
+
+    /**
+     * @return how many occurrences the report of this occurrence stands for, including this one.
+     * 0 if it is inside the window of an earlier report and should not be reported.
+     */
+    synchronized int onOccurrence(@NonNull String fingerprint) {
+        long now = clock.currentTimeMillis();
+        Entry entry = index.get(fingerprint);
+        dirty = true;
+
+        if (entry != null && isInWindow(entry, now)) {
+            entry.suppressed++;
+            return 0;
+        }
+
+        if (entry != null && entry.pendingReport != null) {
+            //the text is reported with this occurrence
+            storeReport(fingerprint, null);
+        }
+        index.put(fingerprint, new Entry(now, 0, null));
+        return 1 + (entry == null ? 0 : entry.suppressed);
+    }
+
+    //a clock that moved back also ends the window
+    private boolean isInWindow(@NonNull Entry entry, long now) {
+        return now >= entry.windowStartMs && now - entry.windowStartMs < windowMs;
+    }
+
+    /**
+     * @return true if the fingerprint has counted occurrences but no report text for them yet
+     */
+    synchronized boolean needsPendingReport(@NonNull String fingerprint) {
+        Entry entry = index.get(fingerprint);
+        return entry != null && entry.suppressed > 0 && entry.pendingReport == null;
+    }
+
+    /**
+     * Keeps the text that is reported with the counted occurrences if the window ends without another occurrence
+     */
+    synchronized void setPendingReport(@NonNull String fingerprint, @NonNull String report) {
+        Entry entry = index.get(fingerprint);
+        if (entry == null || entry.pendingReport != null) {
+            return;
+        }
+        entry.pendingReport = report.length() > MAX_PENDING_REPORT_LENGTH ? report.substring(0, MAX_PENDING_REPORT_LENGTH) : report;
+        storeReport(fingerprint, entry.pendingReport);
+        dirty = true;
+    }
+
+    /**
+     * @return true if entries with counted occurrences were dropped from the index and have not been taken yet
+     */
+    synchronized boolean hasEvictedReports() {
+        return !evicted.isEmpty();
+    }
+
+    /**
+     * Takes the counted occurrences of windows that have ended and of entries that were dropped from the index.
+     * An ended window is reported now, so a new window starts for its fingerprint.
+     *
+     * @return the reports to send, each one stands for the given amount of occurrences
+     */
+    synchronized @NonNull List<PendingReport> takePendingReports() {
+        List<PendingReport> pending = new ArrayList<>(evicted);
+        evicted.clear();
+
+        long now = clock.currentTimeMillis();
+        for (Map.Entry<String, Entry> indexEntry : index.entrySet()) {
+            Entry entry = indexEntry.getValue();
+            if (entry.suppressed > 0 && entry.pendingReport != null && !isInWindow(entry, now)) {
+                pending.add(new PendingReport(entry.pendingReport, entry.suppressed));
+                entry.windowStartMs = now;
+                entry.suppressed = 0;
+                entry.pendingReport = null;
+                storeReport(indexEntry.getKey(), null);
+            }
+        }
+
+        if (!pending.isEmpty()) {
+            dirty = true;
+        }
+        return pending;
+    }
+
+    /**
+     * @param force true if something was reported, so the index should be saved regardless of the interval
+     * @return true if the index has changed and should be saved now
+     */
+    synchronized boolean shouldPersist(boolean force) {
+        if (!dirty) {
+            return false;
+        }
+        long now = clock.currentTimeMillis();
+        if (!force && now >= lastPersistMs && now - lastPersistMs < PERSIST_INTERVAL_MS) {
+            return false;
+        }
+        lastPersistMs = now;
+        dirty = false;
+        return true;
+    }
+
+    synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * @return the index as lines of 'fingerprint:windowStart:suppressed', the oldest first
+     */
+    synchronized @NonNull String toStorageString() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Entry> entry : index.entrySet()) {
+            if (sb.length() > 0) {
+                sb.append('\n');
+            }
+            sb.append(entry.getKey()).append(':').append(entry.getValue().windowStartMs).append(':').append(entry.getValue().suppressed);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Restores an index saved with 'toStorageString' and the kept texts of its counted occurrences, malformed lines are skipped.
+     * Earlier versions saved the URL encoded text as a fourth part of the line, such texts are moved to the report store.
+     */
+    synchronized void load(@Nullable String stored) {
+        if (stored == null || stored.isEmpty()) {
+            return;
+        }
+
+        for (String line : stored.split("\n")) {
+            String[] parts = line.split(":");
+            if (parts.length < 3 || parts.length > 4 || parts[0].isEmpty()) {
+                continue;
+            }
+            try {
+                Entry entry = new Entry(Long.parseLong(parts[1]), Integer.parseInt(parts[2]), null);
+                if (parts.length == 4) {
+                    entry.pendingReport = UtilsNetworking.urlDecodeString(parts[3]);
+                    storeReport(parts[0], entry.pendingReport);
+                    dirty = true;
+                } else if (reportStore != null) {
+                    entry.pendingReport = reportStore.getString(parts[0], null);
+                }
+                if (entry.suppressed == 0 && entry.pendingReport != null) {
+                    //the count was not saved before the app stopped, the text is of no use without it
+                    entry.pendingReport = null;
+                    storeReport(parts[0], null);
+                }
+                index.put(parts[0], entry);
+            } catch (IllegalArgumentException ignored) {
+                //malformed numbers or URL encoding
+            }
+        }
+    }
+
+    private void storeReport(@NonNull String fingerprint, @Nullable String report) {
+        if (reportStore != null) {
+            reportStore.putString(fingerprint, report, false);
+        }
+    }
+
+    /**
+     * @return hash of the exception classes and stack frames of the throwable and its causes, as a hex string
+     */
+    static @NonNull String fingerprint(@NonNull Throwable throwable) {
+        long hash = FNV_OFFSET;
+        Map<Throwable, Boolean> seen = new IdentityHashMap<>();
+        Throwable current = throwable;
+        for (int depth = 0; current != null && depth < MAX_CAUSE_DEPTH && !seen.containsKey(current); depth++) {
+            seen.put(current, Boolean.TRUE);
+            hash = hashString(hash, current.getClass().getName());
+            hash = hashFrames(hash, current.getStackTrace(), FINGERPRINT_FRAMES);
+            current = current.getCause();
+        }
+        return Long.toHexString(hash);
+    }
+
+    /**
+     * Adds the top 'maxFrames' frames to the hash, with synthetic class and method indices removed
+     */
+    static long hashFrames(long hash, @Nullable StackTraceElement[] frames, int maxFrames) {
+        if (frames == null) {
+            return hash;
+        }
+        for (int a = 0; a < frames.length && a < maxFrames; a++) {
+            hash = hashString(hash, normalizeName(frames[a].getClassName()));
+            hash = hashString(hash, normalizeName(frames[a].getMethodName()));
+            hash = hashString(hash, String.valueOf(frames[a].getLineNumber()));
+        }
+        return hash;
+    }
+
+    static @NonNull String normalizeName(@NonNull String name) {
+        String normalized = LAMBDA_SUFFIX.matcher(name).replaceAll("\\$\\$$1");
+        return SYNTHETIC_INDEX.matcher(normalized).replaceAll("\\$");
+    }
+
+    private static long hashString(long hash, @NonNull String value) {
+        for (int a = 0; a < value.length(); a++) {
+            hash ^= value.charAt(a);
+            hash *= FNV_PRIME;
+        }
+        //separator, so that "ab" + "c" and "a" + "bc" differ
+        hash ^= 0xff;
+        hash *= FNV_PRIME;
+        return hash;
+    }
+}
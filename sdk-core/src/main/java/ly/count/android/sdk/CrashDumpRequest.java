@@ -0,0 +1,250 @@
+package ly.count.android.sdk;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * A native crash request whose dump stays in a file until the request is sent.
+ *
+ * The queued request only holds the crash metrics and the path of the dump in the 'crash_dump' parameter.
+ * When sending, the dump is read in chunks, base64 and URL encoded and written as the '_error' field
+ * at the end of the 'crash' JSON object, so the whole dump is never held in memory.
+ *
+ * The body is written twice, once for the checksum and its length and once into the connection.
+ */
+class CrashDumpRequest {
+    static final String DUMP_PATH_KEY = "crash_dump";
+    static final String CRASH_KEY = "crash";
+
+    //multiple of 3, so that only the last chunk has base64 padding
+    static final int CHUNK_SIZE = 3 * 1024;
+
+    //URL encoded '}' that closes the crash JSON object
+    private static final String OBJECT_END = "%7D";
+    //URL encoded ',"_error":"'
+    private static final String ERROR_FIELD_START = "%2C%22_error%22%3A%22";
+    //URL encoded '"}'
+    private static final String ERROR_FIELD_END = "%22%7D";
+
+    private final File dumpFile;
+    private final Base64Codec base64;
+    //request parameters up to the closing brace of the crash object, and the ones after it
+    private final String head;
+    private final String tail;
+    private final boolean emptyCrashObject;
+
+    private CrashDumpRequest(@NonNull File dumpFile, @NonNull Base64Codec base64, @NonNull String head, @NonNull String tail, boolean emptyCrashObject) {
+        this.dumpFile = dumpFile;
+        this.base64 = base64;
+        this.head = head;
+        this.tail = tail;
+        this.emptyCrashObject = emptyCrashObject;
+    }
+
+    /**
+     * @return the decoded dump path of a request, null if the request does not reference a dump
+     */
+    static @Nullable String dumpPathFromRequest(@NonNull String requestData) {
+        int[] range = parameterRange(requestData, DUMP_PATH_KEY);
+        if (range == null) {
+            return null;
+        }
+        String path = UtilsNetworking.urlDecodeString(requestData.substring(range[0], range[1]));
+        return path.isEmpty() ? null : path;
+    }
+
+    /**
+     * @return the request prepared for sending, null if it does not reference a dump or has no crash object
+     */
+    static @Nullable CrashDumpRequest fromRequest(@NonNull String requestData, @NonNull Base64Codec base64) {
+        String path = dumpPathFromRequest(requestData);
+        if (path == null) {
+            return null;
+        }
+
+        //the dump parameter is not sent to the server
+        int[] dumpRange = parameterRange(requestData, DUMP_PATH_KEY);
+        int parameterStart = dumpRange[0] - DUMP_PATH_KEY.length() - 2;
+        String withoutDump = requestData.substring(0, parameterStart) + requestData.substring(dumpRange[1]);
+
+        int[] crashRange = parameterRange(withoutDump, CRASH_KEY);
+        if (crashRange == null || !withoutDump.startsWith(OBJECT_END, crashRange[1] - OBJECT_END.length())) {
+            return null;
+        }
+
+        int objectEnd = crashRange[1] - OBJECT_END.length();
+        boolean emptyCrashObject = objectEnd - crashRange[0] <= OBJECT_END.length();
+        return new CrashDumpRequest(new File(path), base64, withoutDump.substring(0, objectEnd), withoutDump.substring(crashRange[1]), emptyCrashObject);
+    }
+
+    /**
+     * @return start and end of the value of the '&key=' parameter, null if there is no such parameter
+     */
+    private static @Nullable int[] parameterRange(@NonNull String requestData, @NonNull String key) {
+        String tag = "&" + key + "=";
+        int start;
+        if (requestData.startsWith(key + "=")) {
+            start = key.length() + 1;
+        } else {
+            int tagIndex = requestData.indexOf(tag);
+            if (tagIndex < 0) {
+                return null;
+            }
+            start = tagIndex + tag.length();
+        }
+
+        int end = requestData.indexOf('&', start);
+        return new int[] { start, end < 0 ? requestData.length() : end };
+    }
+
+    @NonNull File getDumpFile() {
+        return dumpFile;
+    }
+
+    /**
+     * Reads the dump once and calculates the checksum of the body the same way as for other requests
+     *
+     * @return the checksum and the length of the body including the checksum parameter
+     */
+    @NonNull Checksum checksum(@Nullable String salt) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e.toString());
+        }
+
+        CountingOutputStream counter = new CountingOutputStream();
+        DigestOutputStream digestStream = new DigestOutputStream(counter, digest);
+        writeBody(digestStream);
+        digestStream.flush();
+        long bodyLength = counter.count;
+
+        digest.update(String.valueOf(salt).getBytes("UTF-8"));
+        String checksum = UtilsNetworking.bytesToHex(digest.digest());
+        return new Checksum(checksum, bodyLength + checksumParameter(checksum).length());
+    }
+
+    /**
+     * Writes the request body, followed by the checksum parameter
+     */
+    void writeTo(@NonNull OutputStream out, @NonNull String checksum) throws IOException {
+        writeBody(out);
+        out.write(checksumParameter(checksum).getBytes("US-ASCII"));
+        out.flush();
+    }
+
+    private static @NonNull String checksumParameter(@NonNull String checksum) {
+        return "&checksum256=" + checksum;
+    }
+
+    /**
+     * The request parameters and the URL encoded base64 dump are all ASCII, so characters are written as single bytes
+     */
+    private void writeBody(@NonNull OutputStream out) throws IOException {
+        out.write(head.getBytes("US-ASCII"));
+        out.write((emptyCrashObject ? ERROR_FIELD_START.substring(3) : ERROR_FIELD_START).getBytes("US-ASCII"));
+
+        InputStream in = new FileInputStream(dumpFile);
+        try {
+            byte[] chunk = new byte[CHUNK_SIZE];
+            byte[] encoded = new byte[(CHUNK_SIZE / 3) * 4 * 3];
+            int length;
+            while ((length = readFully(in, chunk)) > 0) {
+                String base64Chunk = base64.encodeToString(length == chunk.length ? chunk : Arrays.copyOf(chunk, length));
+                int encodedLength = urlEncodeBase64(base64Chunk, encoded);
+                out.write(encoded, 0, encodedLength);
+            }
+        } finally {
+            in.close();
+        }
+
+        out.write(ERROR_FIELD_END.getBytes("US-ASCII"));
+        out.write(tail.getBytes("US-ASCII"));
+    }
+
+    /**
+     * Fills the buffer unless the end of the stream is reached
+     *
+     * @return amount of bytes read, 0 at the end of the stream
+     */
+    private static int readFully(@NonNull InputStream in, @NonNull byte[] buffer) throws IOException {
+        int total = 0;
+        while (total < buffer.length) {
+            int read = in.read(buffer, total, buffer.length - total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * Only '+', '/' and '=' of the base64 alphabet have to be encoded
+     *
+     * @return amount of written bytes
+     */
+    static int urlEncodeBase64(@NonNull String base64Chunk, @NonNull byte[] out) {
+        int position = 0;
+        for (int a = 0; a < base64Chunk.length(); a++) {
+            char c = base64Chunk.charAt(a);
+            switch (c) {
+                case '+':
+                    position = writeEscaped(out, position, '2', 'B');
+                    break;
+                case '/':
+                    position = writeEscaped(out, position, '2', 'F');
+                    break;
+                case '=':
+                    position = writeEscaped(out, position, '3', 'D');
+                    break;
+                default:
+                    out[position++] = (byte) c;
+                    break;
+            }
+        }
+        return position;
+    }
+
+    private static int writeEscaped(@NonNull byte[] out, int position, char high, char low) {
+        out[position] = '%';
+        out[position + 1] = (byte) high;
+        out[position + 2] = (byte) low;
+        return position + 3;
+    }
+
+    static class Checksum {
+        final String value;
+        final long bodyLength;
+
+        Checksum(@NonNull String value, long bodyLength) {
+            this.value = value;
+            this.bodyLength = bodyLength;
+        }
+    }
+
+    /**
+     * Discards what is written, only the amount is kept
+     */
+    private static class CountingOutputStream extends OutputStream {
+        long count = 0;
+
+        @Override public void write(int b) {
+            count++;
+        }
+
+        @Override public void write(@NonNull byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
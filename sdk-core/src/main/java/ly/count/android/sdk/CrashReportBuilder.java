@@ -0,0 +1,431 @@
+package ly.count.android.sdk;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.io.Writer;
+
+/**
+ * Writes a crash report JSON object directly in its URL encoded form into a single buffer of a fixed size.
+ *
+ * The buffer is allocated once, so the memory needed for a report is known up front,
+ * also while crashing because memory ran out. A field that does not fit anymore is left out
+ * and streamed values are cut off, the closing characters of the object always fit.
+ *
+ * The space before the report is reserved for the request parameters, so that 'build' can put them in front
+ * and create the request string with a single copy.
+ *
+ * Not thread safe, a builder is reused by calling 'reset'.
+ */
+class CrashReportBuilder {
+    //space for the request parameters in front of the report
+    static final int PREFIX_RESERVE = 1024;
+    //closing quote and braces always fit
+    static final int CLOSING_RESERVE = 32;
+    static final int MAX_DEPTH = 4;
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    private static final int REPLACEMENT_CHARACTER = 0xFFFD;
+
+    private final char[] buffer;
+    private final int limit;
+    private int position;
+    private int depth;
+    private final boolean[] firstInObject = new boolean[MAX_DEPTH];
+    private boolean truncated;
+
+    //one encoded code point, at most 4 UTF-8 bytes as '%XX'
+    private final char[] scratch = new char[16];
+    private final ValueWriter valueWriter = new ValueWriter();
+
+    /**
+     * @param capacity size of the encoded report in characters, without the request parameters
+     */
+    CrashReportBuilder(int capacity) {
+        buffer = new char[PREFIX_RESERVE + capacity];
+        limit = buffer.length - CLOSING_RESERVE;
+        reset();
+    }
+
+    /**
+     * Starts a new report, the previous one is discarded
+     */
+    void reset() {
+        position = PREFIX_RESERVE;
+        depth = 0;
+        truncated = false;
+        valueWriter.active = false;
+        openObject();
+    }
+
+    /**
+     * @return true if a field was left out or a value was cut off
+     */
+    boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * @return length of the encoded report so far
+     */
+    int length() {
+        return position - PREFIX_RESERVE;
+    }
+
+    /**
+     * @return false if the field did not fit and was left out
+     */
+    boolean stringField(@NonNull String key, @NonNull String value) {
+        int mark = position;
+        boolean first = firstInObject[depth - 1];
+
+        if (!beginField(key) || !appendStructural('"')) {
+            return rollback(mark, first);
+        }
+        for (int a = 0; a < value.length(); ) {
+            int codePoint = value.codePointAt(a);
+            if (!appendValueCodePoint(codePoint)) {
+                return rollback(mark, first);
+            }
+            a += Character.charCount(codePoint);
+        }
+        appendClosing('"');
+        return true;
+    }
+
+    /**
+     * Same as the JSON helpers of the SDK, empty values are left out
+     */
+    void stringFieldIfNotEmpty(@NonNull String key, @Nullable String value) {
+        if (value != null && !value.isEmpty()) {
+            stringField(key, value);
+        }
+    }
+
+    /**
+     * Writes strings as JSON strings, numbers and booleans as they are. Other values, NaN and infinite numbers are left out.
+     *
+     * @return false if the field was left out
+     */
+    boolean valueField(@NonNull String key, @Nullable Object value) {
+        if (value instanceof String) {
+            return stringField(key, (String) value);
+        }
+        if (value instanceof Double && (((Double) value).isNaN() || ((Double) value).isInfinite())) {
+            return false;
+        }
+        if (value instanceof Float && (((Float) value).isNaN() || ((Float) value).isInfinite())) {
+            return false;
+        }
+        if (!(value instanceof Number || value instanceof Boolean)) {
+            return false;
+        }
+
+        int mark = position;
+        boolean first = firstInObject[depth - 1];
+        if (!beginField(key)) {
+            return rollback(mark, first);
+        }
+        String raw = value.toString();
+        for (int a = 0; a < raw.length(); a++) {
+            if (!appendStructural(raw.charAt(a))) {
+                return rollback(mark, first);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return false if the object did not fit, in that case 'endObject' must not be called
+     */
+    boolean beginObject(@NonNull String key) {
+        if (depth >= MAX_DEPTH) {
+            return false;
+        }
+
+        int mark = position;
+        boolean first = firstInObject[depth - 1];
+        if (!beginField(key) || !appendStructural('{')) {
+            return rollback(mark, first);
+        }
+        depth++;
+        firstInObject[depth - 1] = true;
+        return true;
+    }
+
+    void endObject() {
+        if (depth > 1) {
+            appendClosing('}');
+            depth--;
+        }
+    }
+
+    /**
+     * Starts a string field whose value is written with the returned writer, for example with a 'PrintWriter' around it.
+     * The value is cut off after 'maxChars' characters or when the buffer is full.
+     * The field has to be ended with 'endStreamedField' before anything else is added.
+     */
+    @NonNull Writer beginStreamedField(@NonNull String key, int maxChars) {
+        int mark = position;
+        boolean first = firstInObject[depth - 1];
+
+        valueWriter.active = beginField(key) && appendStructural('"');
+        valueWriter.remaining = maxChars;
+        valueWriter.pendingHighSurrogate = 0;
+        if (!valueWriter.active) {
+            rollback(mark, first);
+        }
+        return valueWriter;
+    }
+
+    void endStreamedField() {
+        if (valueWriter.active) {
+            //a high surrogate at the end had no pair
+            valueWriter.pendingHighSurrogate = 0;
+            valueWriter.active = false;
+            appendClosing('"');
+        }
+    }
+
+    /**
+     * Closes the report and puts the given, already encoded request parameters in front of it
+     *
+     * @return the request parameters followed by the encoded report
+     */
+    @NonNull String build(@NonNull String prefix) {
+        endStreamedField();
+        while (depth > 0) {
+            appendClosing('}');
+            depth--;
+        }
+
+        if (prefix.length() > PREFIX_RESERVE) {
+            return prefix + new String(buffer, PREFIX_RESERVE, position - PREFIX_RESERVE);
+        }
+
+        int start = PREFIX_RESERVE - prefix.length();
+        prefix.getChars(0, prefix.length(), buffer, start);
+        return new String(buffer, start, position - start);
+    }
+
+    private void openObject() {
+        appendClosing('{');
+        depth = 1;
+        firstInObject[0] = true;
+    }
+
+    private boolean beginField(@NonNull String key) {
+        if (!firstInObject[depth - 1] && !appendStructural(',')) {
+            return false;
+        }
+        if (!appendStructural('"')) {
+            return false;
+        }
+        for (int a = 0; a < key.length(); ) {
+            int codePoint = key.codePointAt(a);
+            if (!appendValueCodePoint(codePoint)) {
+                return false;
+            }
+            a += Character.charCount(codePoint);
+        }
+        if (!appendStructural('"') || !appendStructural(':')) {
+            return false;
+        }
+        firstInObject[depth - 1] = false;
+        return true;
+    }
+
+    private boolean rollback(int mark, boolean first) {
+        position = mark;
+        firstInObject[depth - 1] = first;
+        truncated = true;
+        return false;
+    }
+
+    private boolean appendStructural(char c) {
+        int length = encodeAscii(c, scratch, 0);
+        return appendScratch(length, limit);
+    }
+
+    /**
+     * Uses the reserved space at the end, only for characters that close what has been started
+     */
+    private void appendClosing(char c) {
+        int length = encodeAscii(c, scratch, 0);
+        appendScratch(length, buffer.length);
+    }
+
+    /**
+     * Appends a character of a JSON string, escaped for JSON and then URL encoded
+     */
+    private boolean appendValueCodePoint(int codePoint) {
+        int length;
+        switch (codePoint) {
+            case '"':
+            case '\\':
+                length = encodeAscii('\\', scratch, 0);
+                length = encodeAscii((char) codePoint, scratch, length);
+                break;
+            case '\n':
+                length = escape('n');
+                break;
+            case '\r':
+                length = escape('r');
+                break;
+            case '\t':
+                length = escape('t');
+                break;
+            case '\b':
+                length = escape('b');
+                break;
+            case '\f':
+                length = escape('f');
+                break;
+            default:
+                if (codePoint < 0x20 || codePoint == 0x2028 || codePoint == 0x2029) {
+                    length = encodeAscii('\\', scratch, 0);
+                    scratch[length++] = 'u';
+                    for (int shift = 12; shift >= 0; shift -= 4) {
+                        scratch[length++] = HEX[(codePoint >> shift) & 0xF];
+                    }
+                } else {
+                    length = encodeCodePoint(codePoint, scratch);
+                }
+                break;
+        }
+        return appendScratch(length, limit);
+    }
+
+    private int escape(char escapeCharacter) {
+        int length = encodeAscii('\\', scratch, 0);
+        scratch[length++] = escapeCharacter;
+        return length;
+    }
+
+    private boolean appendScratch(int length, int until) {
+        if (position + length > until) {
+            return false;
+        }
+        System.arraycopy(scratch, 0, buffer, position, length);
+        position += length;
+        return true;
+    }
+
+    /**
+     * URL encodes an ASCII character the same way as 'URLEncoder'
+     *
+     * @return position after the written characters
+     */
+    static int encodeAscii(char c, @NonNull char[] out, int offset) {
+        if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '.' || c == '-' || c == '*' || c == '_') {
+            out[offset] = c;
+            return offset + 1;
+        }
+        if (c == ' ') {
+            out[offset] = '+';
+            return offset + 1;
+        }
+        return encodeByte(c, out, offset);
+    }
+
+    /**
+     * URL encodes the UTF-8 bytes of a code point
+     *
+     * @return amount of written characters
+     */
+    static int encodeCodePoint(int codePoint, @NonNull char[] out) {
+        if (codePoint < 0x80) {
+            return encodeAscii((char) codePoint, out, 0);
+        }
+        if (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE) {
+            //unpaired surrogate
+            codePoint = REPLACEMENT_CHARACTER;
+        }
+
+        int offset = 0;
+        if (codePoint < 0x800) {
+            offset = encodeByte(0xC0 | (codePoint >> 6), out, offset);
+        } else if (codePoint < 0x10000) {
+            offset = encodeByte(0xE0 | (codePoint >> 12), out, offset);
+            offset = encodeByte(0x80 | ((codePoint >> 6) & 0x3F), out, offset);
+        } else {
+            offset = encodeByte(0xF0 | (codePoint >> 18), out, offset);
+            offset = encodeByte(0x80 | ((codePoint >> 12) & 0x3F), out, offset);
+            offset = encodeByte(0x80 | ((codePoint >> 6) & 0x3F), out, offset);
+        }
+        return encodeByte(0x80 | (codePoint & 0x3F), out, offset);
+    }
+
+    private static int encodeByte(int value, @NonNull char[] out, int offset) {
+        out[offset] = '%';
+        out[offset + 1] = HEX[(value >> 4) & 0xF];
+        out[offset + 2] = HEX[value & 0xF];
+        return offset + 3;
+    }
+
+    /**
+     * Writes into the value of the current streamed field, surrogate pairs are kept together
+     */
+    private class ValueWriter extends Writer {
+        boolean active = false;
+        int remaining = 0;
+        char pendingHighSurrogate = 0;
+
+        @Override public void write(int c) {
+            put((char) c);
+        }
+
+        @Override public void write(@NonNull char[] cbuf, int off, int len) {
+            for (int a = off; a < off + len && active; a++) {
+                put(cbuf[a]);
+            }
+        }
+
+        @Override public void write(@NonNull String str, int off, int len) {
+            for (int a = off; a < off + len && active; a++) {
+                put(str.charAt(a));
+            }
+        }
+
+        @Override public void flush() {
+        }
+
+        @Override public void close() {
+        }
+
+        private void put(char c) {
+            if (!active) {
+                return;
+            }
+
+            if (pendingHighSurrogate != 0) {
+                char high = pendingHighSurrogate;
+                pendingHighSurrogate = 0;
+                if (Character.isLowSurrogate(c)) {
+                    append(Character.toCodePoint(high, c), 2);
+                    return;
+                }
+                append(REPLACEMENT_CHARACTER, 1);
+            }
+
+            if (Character.isHighSurrogate(c)) {
+                pendingHighSurrogate = c;
+                return;
+            }
+            append(c, 1);
+        }
+
+        private void append(int codePoint, int chars) {
+            if (!active) {
+                return;
+            }
+            if (remaining < chars || !appendValueCodePoint(codePoint)) {
+                //cut off, the rest of the value is dropped
+                active = false;
+                truncated = true;
+                appendClosing('"');
+                return;
+            }
+            remaining -= chars;
+        }
+    }
+}
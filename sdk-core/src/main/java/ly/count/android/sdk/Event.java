@@ -151,7 +151,7 @@ class Event {
                 json.put(DUR_KEY, dur);
             }
         } catch (JSONException e) {
-            Countly.sharedInstance().L.w("Got exception converting an Event to JSON", e);
+            SdkPlatform.log.w("Got exception converting an Event to JSON", e);
         }
 
         return json;
@@ -241,7 +241,7 @@ class Event {
                 event.segmentationBoolean = segmentationBoolean;
             }
         } catch (JSONException e) {
-            Countly.sharedInstance().L.w("Got exception converting JSON to an Event", e);
+            SdkPlatform.log.w("Got exception converting JSON to an Event", e);
             event = null;
         }
 
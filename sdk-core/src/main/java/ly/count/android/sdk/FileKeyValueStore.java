@@ -0,0 +1,101 @@
+package ly.count.android.sdk;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Key-value store with a file for every key.
+ * Values are written to a temporary file which is then renamed over the old one,
+ * so readers in other processes see either the old or the new value, never a partial one.
+ */
+class FileKeyValueStore implements KeyValueStore {
+    private final File directory;
+    PlatformLog L;
+
+    FileKeyValueStore(@NonNull File directory, @NonNull PlatformLog logger) {
+        if (!directory.exists() && !directory.mkdirs()) {
+            logger.w("[FileKeyValueStore] Could not create directory [" + directory + "]");
+        }
+        this.directory = directory;
+        L = logger;
+    }
+
+    @Nullable @Override public synchronized String getString(@NonNull String key, @Nullable String defaultValue) {
+        File file = fileForKey(key);
+        if (!file.exists()) {
+            return defaultValue;
+        }
+
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            ByteArrayOutputStream value = new ByteArrayOutputStream((int) file.length());
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                value.write(buffer, 0, read);
+            }
+            return value.toString("UTF-8");
+        } catch (IOException e) {
+            L.e("[FileKeyValueStore] Failed to read [" + key + "]", e);
+            return defaultValue;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    @Override public synchronized void putString(@NonNull String key, @Nullable String value, boolean writeInSync) {
+        File file = fileForKey(key);
+        if (value == null) {
+            if (file.exists() && !file.delete()) {
+                L.w("[FileKeyValueStore] Failed to delete [" + key + "]");
+            }
+            return;
+        }
+
+        File temporary = new File(directory, file.getName() + ".tmp");
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(temporary);
+            out.write(value.getBytes("UTF-8"));
+            if (writeInSync) {
+                out.getFD().sync();
+            }
+            out.close();
+            out = null;
+
+            if (!temporary.renameTo(file)) {
+                L.e("[FileKeyValueStore] Failed to replace [" + key + "]");
+            }
+        } catch (IOException e) {
+            L.e("[FileKeyValueStore] Failed to write [" + key + "]", e);
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    @Override public synchronized void putStrings(@NonNull Map<String, String> values, boolean writeInSync) {
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            putString(entry.getKey(), entry.getValue(), writeInSync);
+        }
+    }
+
+    private @NonNull File fileForKey(@NonNull String key) {
+        return new File(directory, key.replaceAll("[^A-Za-z0-9._-]", "_"));
+    }
+
+    private static void closeQuietly(java.io.Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package ly.count.android.sdk;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Reports the timestamps of rendered frames.
+ * On Android this is backed by 'Choreographer', tests can provide the timestamps themselves.
+ */
+interface FrameSource {
+    interface FrameListener {
+        /**
+         * @param frameTimeNanos time at which the frame started rendering, in the 'System.nanoTime' time base
+         */
+        void onFrame(long frameTimeNanos);
+
+        /**
+         * Called by 'start' on the thread that reports the frames, before the first frame.
+         * The time since the last frame before the source was stopped is not a frame.
+         */
+        void onFramesStarted();
+    }
+
+    void start(@NonNull FrameListener listener);
+
+    void stop();
+}
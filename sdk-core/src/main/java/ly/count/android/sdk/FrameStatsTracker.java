@@ -0,0 +1,130 @@
+package ly.count.android.sdk;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects frame durations per view.
+ *
+ * The duration of a frame is the time between two consecutive frame timestamps.
+ * Frames are counted for the view that is current when they are reported, frames without a current view are ignored.
+ * Recording a frame is a lookup of the current view name, which is only compared by reference,
+ * and a few counter updates. It does not allocate.
+ */
+class FrameStatsTracker implements FrameSource.FrameListener {
+    //frame timestamps are vsync aligned, a regular 60 Hz frame is 16.7 ms and one that missed a vsync is 33.3 ms
+    static final long SLOW_FRAME_NS = 24L * 1000000L;
+    static final long FROZEN_FRAME_NS = 700L * 1000000L;
+
+    interface ViewNameProvider {
+        @Nullable String getCurrentViewName();
+    }
+
+    /**
+     * Frames of a single view
+     */
+    static class FrameStats {
+        final String viewName;
+        long frames = 0;
+        long slowFrames = 0;
+        long frozenFrames = 0;
+        long totalNs = 0;
+        //frame durations in ms, bucketed the same way as aggregated trace durations
+        final long[] bucketCounts = new long[ApmTraceAggregator.DURATION_BUCKET_BOUNDS_MS.length + 1];
+
+        FrameStats(@NonNull String viewName) {
+            this.viewName = viewName;
+        }
+
+        void record(long durationNs) {
+            frames++;
+            totalNs += durationNs;
+            if (durationNs > FROZEN_FRAME_NS) {
+                frozenFrames++;
+            } else if (durationNs > SLOW_FRAME_NS) {
+                slowFrames++;
+            }
+            bucketCounts[ApmTraceAggregator.bucketIndex(durationNs / 1000000L)]++;
+        }
+
+        /**
+         * @param quantile between 0 and 1
+         * @return upper bound in ms of the bucket that contains the given quantile of frames
+         */
+        long percentileMs(double quantile) {
+            if (frames == 0) {
+                return 0;
+            }
+
+            long target = (long) Math.ceil(quantile * frames);
+            long seen = 0;
+            for (int a = 0; a < bucketCounts.length; a++) {
+                seen += bucketCounts[a];
+                if (seen >= target && bucketCounts[a] > 0) {
+                    return a < ApmTraceAggregator.DURATION_BUCKET_BOUNDS_MS.length ? ApmTraceAggregator.DURATION_BUCKET_BOUNDS_MS[a] : ApmTraceAggregator.MAX_TRACKED_DURATION_MS;
+                }
+            }
+            return ApmTraceAggregator.MAX_TRACKED_DURATION_MS;
+        }
+    }
+
+    private final ViewNameProvider viewNameProvider;
+    private final Map<String, FrameStats> stats = new HashMap<>();
+
+    private long lastFrameNs = -1;
+    private String currentViewName = null;
+    private FrameStats currentStats = null;
+
+    FrameStatsTracker(@NonNull ViewNameProvider viewNameProvider) {
+        this.viewNameProvider = viewNameProvider;
+    }
+
+    @Override public synchronized void onFrame(long frameTimeNanos) {
+        long previousFrameNs = lastFrameNs;
+        lastFrameNs = frameTimeNanos;
+        if (previousFrameNs < 0 || frameTimeNanos <= previousFrameNs) {
+            return;
+        }
+
+        String viewName = viewNameProvider.getCurrentViewName();
+        //noinspection StringEquality
+        if (viewName != currentViewName) {
+            currentViewName = viewName;
+            currentStats = null;
+            if (viewName != null) {
+                currentStats = stats.get(viewName);
+                if (currentStats == null) {
+                    currentStats = new FrameStats(viewName);
+                    stats.put(viewName, currentStats);
+                }
+            }
+        }
+
+        if (currentStats != null) {
+            currentStats.record(frameTimeNanos - previousFrameNs);
+        }
+    }
+
+    /**
+     * The next frame is not measured against the last one, so the time in which no frames were reported,
+     * for example in the background, is not counted
+     */
+    @Override public synchronized void onFramesStarted() {
+        lastFrameNs = -1;
+    }
+
+    /**
+     * Returns the stats of all views that had frames and starts over
+     */
+    synchronized @NonNull List<FrameStats> drain() {
+        List<FrameStats> drained = new ArrayList<>(stats.values());
+        stats.clear();
+        currentViewName = null;
+        currentStats = null;
+        return drained;
+    }
+}
@@ -0,0 +1,27 @@
+package ly.count.android.sdk;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.util.Map;
+
+/**
+ * Persistent string storage used for the request and event queues.
+ * On Android this is backed by 'SharedPreferences'.
+ */
+public interface KeyValueStore {
+    @Nullable String getString(@NonNull String key, @Nullable String defaultValue);
+
+    /**
+     * @param value new value, 'null' removes the key
+     * @param writeInSync if true, the call returns after the value has been persisted
+     */
+    void putString(@NonNull String key, @Nullable String value, boolean writeInSync);
+
+    /**
+     * Writes all given values in a single write
+     *
+     * @param values keys and new values, a 'null' value removes the key
+     * @param writeInSync if true, the call returns after the values have been persisted
+     */
+    void putStrings(@NonNull Map<String, String> values, boolean writeInSync);
+}
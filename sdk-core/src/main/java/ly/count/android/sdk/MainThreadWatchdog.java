@@ -0,0 +1,194 @@
+package ly.count.android.sdk;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Detects when the main thread stops processing messages.
+ *
+ * A heartbeat is posted to the main thread and checked from a separate thread.
+ * If it has not run once the threshold has passed, the stack of the main thread is sampled and reported as a stall.
+ * When the heartbeat finally runs, the stall is reported again with its full duration.
+ *
+ * Stalls with a stack that has been marked as reported with 'markReported' are marked as duplicates,
+ * so that a loop that keeps blocking the main thread in the same place can be reported only once.
+ *
+ * The watchdog is meant to run only while the app is in the foreground, it is started and stopped with the activities.
+ */
+class MainThreadWatchdog {
+    static final String THREAD_NAME = "Countly-MainThreadWatchdog";
+    static final long MIN_CHECK_INTERVAL_MS = 50;
+    //how many stack frames from the top are used to tell stalls apart
+    static final int FINGERPRINT_FRAMES = 20;
+    static final int MAX_REMEMBERED_FINGERPRINTS = 32;
+
+    /**
+     * Access to the thread that is watched, the Android implementation uses the main looper
+     */
+    interface MainThread {
+        void post(@NonNull Runnable runnable);
+
+        @NonNull StackTraceElement[] getStackTrace();
+    }
+
+    interface StallListener {
+        /**
+         * Called on the watchdog thread once the threshold has passed, while the main thread is still blocked
+         */
+        void onStallDetected(@NonNull Stall stall);
+
+        /**
+         * Called on the watchdog thread after the main thread has recovered, 'durationNs' is set
+         */
+        void onStallEnded(@NonNull Stall stall);
+    }
+
+    static class Stall {
+        final StackTraceElement[] stack;
+        final String fingerprint;
+        //true if a stall with the same stack has been reported before
+        final boolean duplicate;
+        final long startNs;
+        long durationNs;
+
+        Stall(@NonNull StackTraceElement[] stack, @NonNull String fingerprint, boolean duplicate, long startNs, long durationNs) {
+            this.stack = stack;
+            this.fingerprint = fingerprint;
+            this.duplicate = duplicate;
+            this.startNs = startNs;
+            this.durationNs = durationNs;
+        }
+    }
+
+    private final MainThread mainThread;
+    private final StallListener listener;
+    private final Clock clock;
+    final long thresholdNs;
+    final long checkIntervalMs;
+
+    private final Runnable heartbeat = new Runnable() {
+        @Override public void run() {
+            heartbeatAnsweredNs = clock.nanoTime();
+            heartbeatPending = false;
+        }
+    };
+
+    private volatile boolean heartbeatPending = false;
+    private volatile long heartbeatAnsweredNs = 0;
+    private long heartbeatPostedNs = 0;
+
+    private Stall currentStall = null;
+    private final Map<String, Boolean> reportedFingerprints = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_REMEMBERED_FINGERPRINTS;
+        }
+    };
+
+    //start and stop do not wait for a running check, which might be calling the listener
+    private final Object threadLock = new Object();
+    private volatile Thread thread = null;
+    private volatile boolean running = false;
+
+    MainThreadWatchdog(@NonNull MainThread mainThread, @NonNull StallListener listener, @NonNull Clock clock, long thresholdMs) {
+        this.mainThread = mainThread;
+        this.listener = listener;
+        this.clock = clock;
+        this.thresholdNs = thresholdMs * 1000000L;
+        //a stall is detected at most a quarter of the threshold late
+        this.checkIntervalMs = Math.max(MIN_CHECK_INTERVAL_MS, thresholdMs / 4);
+    }
+
+    void start() {
+        synchronized (threadLock) {
+            if (running) {
+                return;
+            }
+            running = true;
+
+            //a heartbeat that was left waiting when the watchdog was stopped is not a stall
+            synchronized (this) {
+                heartbeatPending = false;
+                currentStall = null;
+            }
+
+            thread = new Thread(new Runnable() {
+                @Override public void run() {
+                    //a thread of an earlier start might still be finishing its check after the watchdog was restarted
+                    while (running && thread == Thread.currentThread()) {
+                        check();
+                        try {
+                            Thread.sleep(checkIntervalMs);
+                        } catch (InterruptedException ignored) {
+                            return;
+                        }
+                    }
+                }
+            }, THREAD_NAME);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    void stop() {
+        synchronized (threadLock) {
+            running = false;
+            if (thread != null) {
+                thread.interrupt();
+                thread = null;
+            }
+        }
+    }
+
+    /**
+     * One watchdog step: posts a new heartbeat if the last one has run, otherwise checks how long it has been waiting
+     */
+    synchronized void check() {
+        long now = clock.nanoTime();
+
+        if (!heartbeatPending) {
+            if (currentStall != null) {
+                currentStall.durationNs = heartbeatAnsweredNs - heartbeatPostedNs;
+                Stall ended = currentStall;
+                currentStall = null;
+                listener.onStallEnded(ended);
+            }
+
+            heartbeatPending = true;
+            heartbeatPostedNs = now;
+            mainThread.post(heartbeat);
+            return;
+        }
+
+        long waitedNs = now - heartbeatPostedNs;
+        if (currentStall == null && waitedNs >= thresholdNs) {
+            StackTraceElement[] stack = mainThread.getStackTrace();
+            String fingerprint = fingerprint(stack);
+            boolean duplicate;
+            synchronized (reportedFingerprints) {
+                duplicate = reportedFingerprints.get(fingerprint) != null;
+            }
+
+            currentStall = new Stall(stack, fingerprint, duplicate, heartbeatPostedNs, waitedNs);
+            listener.onStallDetected(currentStall);
+        }
+    }
+
+    /**
+     * Called once a stall has been reported, later stalls with the same stack are marked as duplicates.
+     * Can be called from any thread.
+     */
+    void markReported(@NonNull String fingerprint) {
+        synchronized (reportedFingerprints) {
+            reportedFingerprints.put(fingerprint, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * @return hash of the top stack frames, as a hex string
+     */
+    static @NonNull String fingerprint(@Nullable StackTraceElement[] stack) {
+        return Long.toHexString(CrashDeduplicator.hashFrames(CrashDeduplicator.FNV_OFFSET, stack, FINGERPRINT_FRAMES));
+    }
+}
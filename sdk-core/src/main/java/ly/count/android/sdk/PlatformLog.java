@@ -0,0 +1,56 @@
+package ly.count.android.sdk;
+
+/**
+ * Logger used by the platform independent parts of the SDK.
+ * On Android this is implemented by 'ModuleLog'.
+ */
+public interface PlatformLog {
+    void v(String msg);
+
+    void d(String msg);
+
+    void i(String msg);
+
+    void w(String msg);
+
+    void w(String msg, Throwable t);
+
+    void e(String msg);
+
+    void e(String msg, Throwable t);
+
+    /**
+     * @return true if verbose logs would be printed, used to guard building expensive messages
+     */
+    boolean isVerbose();
+
+    /**
+     * Logger that drops everything
+     */
+    PlatformLog NONE = new PlatformLog() {
+        @Override public void v(String msg) {
+        }
+
+        @Override public void d(String msg) {
+        }
+
+        @Override public void i(String msg) {
+        }
+
+        @Override public void w(String msg) {
+        }
+
+        @Override public void w(String msg, Throwable t) {
+        }
+
+        @Override public void e(String msg) {
+        }
+
+        @Override public void e(String msg, Throwable t) {
+        }
+
+        @Override public boolean isVerbose() {
+            return false;
+        }
+    };
+}
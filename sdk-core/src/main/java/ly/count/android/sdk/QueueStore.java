@@ -0,0 +1,671 @@
+package ly.count.android.sdk;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The request and event queues, each stored as a single delimited string in a key-value store.
+ * Used by 'CountlyStore', does not depend on the Android framework.
+ *
+ * Methods are synchronized because they read the stored list, modify it and write it back.
+ * They never call back into the SDK modules, so they can be used while holding any module lock.
+ *
+ * In multi process mode the queues are kept in a file backed store. Every process has its own event queue.
+ * Only the process that holds the drain lock of the 'SharedRequestLog' owns the request queue,
+ * the other processes append their requests to the log and the drainer moves them into its queue.
+ */
+class QueueStore {
+    static final String DELIMITER = ":::";
+    static final String REQUEST_PREFERENCE = "CONNECTIONS";
+    static final String EVENTS_PREFERENCE = "EVENTS";
+    static final int MAX_EVENTS = 1000;//the maximum amount of events that can be held in the event queue
+
+    private final KeyValueStore primaryStore;
+    private KeyValueStore store;
+
+    PlatformLog L;
+
+    int maxRequestQueueSize = 1000;
+
+    //set by the SDK during init, records storage writes and dropped data
+    SdkMetrics metrics = null;
+
+    //multi process fields, set by 'enableSharedRequestLog'
+    SharedRequestLog sharedRequestLog = null;
+    String eventKey = EVENTS_PREFERENCE;
+
+    //explicit storage fields
+    boolean explicitStorageModeEnabled;
+    boolean esDirtyFlag = false;
+    String esRequestQueueCache = null;//'null' is a special value that indicates that it hasn't read what is in persistent storage
+    String esEventQueueCache = null;//'null' is a special value that indicates that it hasn't read what is in persistent storage
+
+    QueueStore(@NonNull KeyValueStore store, @NonNull PlatformLog logger, boolean explicitStorageModeEnabled) {
+        this.primaryStore = store;
+        this.store = store;
+        this.explicitStorageModeEnabled = explicitStorageModeEnabled;
+        L = logger;
+    }
+
+    private @NonNull String storageReadRequestQueue() {
+        if (explicitStorageModeEnabled) {
+            if (esRequestQueueCache == null) {
+                L.v("[CountlyStore] Reading initial RQ from storage");
+                esRequestQueueCache = store.getString(REQUEST_PREFERENCE, "");
+            }
+
+            return esRequestQueueCache;
+        } else if (sharedRequestLog != null && !sharedRequestLog.isDrainer()) {
+            //requests of this process are in the shared log, the queue belongs to the draining process
+            return "";
+        } else {
+            return store.getString(REQUEST_PREFERENCE, "");
+        }
+    }
+
+    private void storageWriteRequestQueue(@Nullable String requestQueue, boolean writeInSync) {
+        if (explicitStorageModeEnabled) {
+            esRequestQueueCache = requestQueue;
+            esDirtyFlag = true;
+        } else if (sharedRequestLog != null && !sharedRequestLog.isDrainer()) {
+            L.w("[CountlyStore] Only the draining process can write the request queue, ignoring write");
+        } else {
+            long writeStart = metrics != null ? metrics.startTiming() : 0;
+            store.putString(REQUEST_PREFERENCE, requestQueue, writeInSync);
+
+            if (metrics != null) {
+                metrics.recordStorageWrite(writeStart, requestQueue == null ? 0 : requestQueue.length());
+            }
+        }
+    }
+
+    private @NonNull String storageReadEventQueue() {
+        if (explicitStorageModeEnabled) {
+            if (esEventQueueCache == null) {
+                L.v("[CountlyStore] Reading initial EQ from storage");
+                esEventQueueCache = store.getString(eventKey, "");
+            }
+
+            return esEventQueueCache;
+        } else {
+            return store.getString(eventKey, "");
+        }
+    }
+
+    private void storageWriteEventQueue(@Nullable String eventQueue, boolean writeInSync) {
+        if (explicitStorageModeEnabled) {
+            L.v("[CountlyStore] Writing EQ to cache");
+            esEventQueueCache = eventQueue;
+            esDirtyFlag = true;
+        } else {
+            L.v("[CountlyStore] Writing EQ to preferences");
+            long writeStart = metrics != null ? metrics.startTiming() : 0;
+            store.putString(eventKey, eventQueue, writeInSync);
+
+            if (metrics != null) {
+                metrics.recordStorageWrite(writeStart, eventQueue == null ? 0 : eventQueue.length());
+            }
+        }
+    }
+
+    synchronized void esWriteCacheToStorage(@Nullable ExplicitStorageCallback callback) {
+        if (L.isVerbose()) {
+            L.v("[CountlyStore] Trying to write ES cache to storage[" + explicitStorageModeEnabled + "], is dirty flag:[" + esDirtyFlag + "]");
+        }
+        if (explicitStorageModeEnabled) {
+            if (esDirtyFlag) {
+                Map<String, String> changes = new HashMap<>();
+
+                //if it's not 'null' then it means that it is written to
+                if (esRequestQueueCache != null) {
+                    //check if the cached request queue matches the one in persistent memory
+                    String currentRQValue = store.getString(REQUEST_PREFERENCE, "");
+                    if (!esRequestQueueCache.equals(currentRQValue)) {
+                        changes.put(REQUEST_PREFERENCE, esRequestQueueCache);
+                    }
+                }
+
+                //if it's not 'null' then it means that it is written to
+                if (esEventQueueCache != null) {
+                    //check if the cached event queue matches the one in persistent memory
+                    String currentEQValue = store.getString(eventKey, "");
+                    if (!esEventQueueCache.equals((currentEQValue))) {
+                        changes.put(eventKey, esEventQueueCache);
+                    }
+                }
+
+                //flag for indicating if anything will be written
+                boolean writePerformed = !changes.isEmpty();
+                if (writePerformed) {
+                    //commit the changes if needed
+                    long writeStart = metrics != null ? metrics.startTiming() : 0;
+                    store.putStrings(changes, true);
+
+                    if (metrics != null) {
+                        long bytes = 0;
+                        for (String value : changes.values()) {
+                            bytes += value.length();
+                        }
+                        metrics.recordStorageWrite(writeStart, bytes);
+                    }
+                }
+                esDirtyFlag = false;//clear the dirty flag
+
+                //signal the caller about the write that was potentially done
+                if (callback != null) {
+                    callback.WriteToStorageFinished(writePerformed);
+                }
+            } else {
+                if (callback != null) {
+                    callback.WriteToStorageFinished(false);
+                }
+            }
+        }
+    }
+
+    /**
+     * Switches to multi process mode. The queues are moved to 'fileStore', which unlike the primary store,
+     * does not keep values cached in memory of a single process.
+     * If this process becomes the drainer, the queues written by the previous SDK versions are moved over as well.
+     *
+     * @param processName name of the current process, used to give each process its own event queue
+     */
+    synchronized void enableSharedRequestLog(@NonNull SharedRequestLog log, @NonNull KeyValueStore fileStore, @NonNull String processName) {
+        if (explicitStorageModeEnabled) {
+            L.w("[CountlyStore] Explicit storage mode is not supported together with the multi process request queue, disabling it");
+            esWriteCacheToStorage(null);
+            explicitStorageModeEnabled = false;
+            clearCache();
+        }
+
+        store = fileStore;
+        sharedRequestLog = log;
+        eventKey = EVENTS_PREFERENCE + "_" + processName;
+
+        if (log.tryBecomeDrainer()) {
+            String legacyRequests = primaryStore.getString(REQUEST_PREFERENCE, null);
+            String legacyEvents = primaryStore.getString(EVENTS_PREFERENCE, null);
+
+            if (legacyRequests != null && legacyRequests.length() > 0) {
+                L.d("[CountlyStore] Moving the request queue to the multi process store");
+                List<String> connections = new ArrayList<>(Arrays.asList(legacyRequests.split(DELIMITER)));
+                connections.addAll(Arrays.asList(getRequests()));
+                storeRequestsWithinLimit(connections);
+            }
+            if (legacyEvents != null && legacyEvents.length() > 0) {
+                L.d("[CountlyStore] Moving the event queue to the multi process store");
+                String events = getEventQueueRaw();
+                storageWriteEventQueue(events.length() == 0 ? legacyEvents : legacyEvents + DELIMITER + events, true);
+            }
+
+            Map<String, String> removals = new HashMap<>();
+            removals.put(REQUEST_PREFERENCE, null);
+            removals.put(EVENTS_PREFERENCE, null);
+            primaryStore.putStrings(removals, true);
+        }
+    }
+
+    /**
+     * Moves requests that other processes appended to the shared log into the request queue.
+     * Does nothing if multi process mode is not enabled or another process is draining the log.
+     */
+    synchronized void importSharedRequests() {
+        if (sharedRequestLog == null || !sharedRequestLog.tryBecomeDrainer()) {
+            return;
+        }
+
+        sharedRequestLog.drain(new SharedRequestLog.DrainTarget() {
+            @Override public void storeDrainedRequests(@NonNull List<String> requests) {
+                L.d("[CountlyStore] Importing [" + requests.size() + "] requests from the shared request log");
+                List<String> connections = new ArrayList<>(Arrays.asList(getRequests()));
+                connections.addAll(requests);
+                storeRequestsWithinLimit(connections);
+            }
+        });
+    }
+
+    /**
+     * @return every request that is waiting to be sent, in multi process mode also the ones other processes appended to the shared log.
+     * Null if this process is not the drainer, because then it can't see the request queue.
+     */
+    synchronized @Nullable List<String> getAllPendingRequests() {
+        List<String> requests = new ArrayList<>(Arrays.asList(getRequests()));
+        if (sharedRequestLog == null) {
+            return requests;
+        }
+        if (!sharedRequestLog.tryBecomeDrainer()) {
+            return null;
+        }
+
+        List<String> appended = sharedRequestLog.peek();
+        if (appended == null) {
+            return null;
+        }
+        requests.addAll(appended);
+        return requests;
+    }
+
+    /**
+     * Removes the queues and the shared log and returns to single process mode
+     */
+    synchronized void clearSharedRequestLog() {
+        if (sharedRequestLog == null) {
+            return;
+        }
+
+        sharedRequestLog.tryBecomeDrainer();
+        storageWriteRequestQueue(null, true);
+        storageWriteEventQueue(null, true);
+        sharedRequestLog.clear();
+        sharedRequestLog.releaseDrainer();
+
+        sharedRequestLog = null;
+        store = primaryStore;
+        eventKey = EVENTS_PREFERENCE;
+    }
+
+    private void storeRequestsWithinLimit(@NonNull List<String> connections) {
+        while (connections.size() > maxRequestQueueSize) {
+            L.w("[CountlyStore] Store reached it's limit, deleting oldest request");
+            connections.remove(0);
+
+            if (metrics != null) {
+                metrics.recordRequestDropped();
+            }
+        }
+        storageWriteRequestQueue(UtilsCore.joinCountlyStore(connections, DELIMITER), true);
+    }
+
+    /**
+     * Returns an unsorted array of the current stored connections.
+     */
+    synchronized String[] getRequests() {
+        final String joinedConnStr = storageReadRequestQueue();
+        return joinedConnStr.length() == 0 ? new String[0] : joinedConnStr.split(DELIMITER);
+    }
+
+    /**
+     * Returns an unsorted array of the current stored event JSON strings.
+     */
+    synchronized String[] getEvents() {
+        final String joinedEventsStr = storageReadEventQueue();
+        return joinedEventsStr.length() == 0 ? new String[0] : joinedEventsStr.split(DELIMITER);
+    }
+
+    /**
+     * Returns a list of the current stored events, sorted by timestamp from oldest to newest.
+     */
+    synchronized List<Event> getEventList() {
+        final String[] array = getEvents();
+        final List<Event> events = new ArrayList<>(array.length);
+        for (String s : array) {
+            try {
+                final Event event = Event.fromJSON(new JSONObject(s));
+                if (event != null) {
+                    events.add(event);
+                }
+            } catch (JSONException ignored) {
+                // should not happen since JSONObject is being constructed from previously stringified JSONObject
+                // events -> json objects -> json strings -> storage -> json strings -> here
+            }
+        }
+        // order the events from least to most recent
+        Collections.sort(events, new Comparator<Event>() {
+            @Override
+            public int compare(final Event e1, final Event e2) {
+                return (int) (e1.timestamp - e2.timestamp);
+            }
+        });
+        return events;
+    }
+
+    /**
+     * Removes all current events from the local queue and returns them as a
+     * URL-encoded JSON string that can be submitted to a ConnectionQueue.
+     *
+     * @return URL-encoded JSON string of event data from the local event queue
+     */
+    synchronized String getEventsForRequestAndEmptyEventQueue() {
+        String result;
+
+        final List<Event> events = getEventList();
+
+        final JSONArray eventArray = new JSONArray();
+        for (Event e : events) {
+            eventArray.put(e.toJSON());
+        }
+
+        result = eventArray.toString();
+
+        removeEvents(events);
+
+        try {
+            result = java.net.URLEncoder.encode(result, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            // should never happen because Android guarantees UTF-8 support
+        }
+
+        return result;
+    }
+
+    @NonNull synchronized String getRequestQueueRaw() {
+        return storageReadRequestQueue();
+    }
+
+    @NonNull synchronized String getEventQueueRaw() {
+        return storageReadEventQueue();
+    }
+
+    /**
+     * @return how many entries a joined request or event queue string contains
+     */
+    static int storedItemCount(@NonNull String joined) {
+        if (joined.length() == 0) {
+            return 0;
+        }
+
+        int count = 1;
+        int index = joined.indexOf(DELIMITER);
+        while (index >= 0) {
+            count++;
+            index = joined.indexOf(DELIMITER, index + DELIMITER.length());
+        }
+        return count;
+    }
+
+    /**
+     * Adds a connection to the local store.
+     *
+     * @param requestStr the connection to be added, ignored if null or empty
+     */
+    synchronized void addRequest(@NonNull final String requestStr, final boolean writeInSync) {
+        if (requestStr != null && requestStr.length() > 0) {
+            if (sharedRequestLog != null && !sharedRequestLog.isDrainer()) {
+                if (L.isVerbose()) {
+                    L.v("[CountlyStore] addRequest, appending to the shared request log, s:[" + writeInSync + "] r:[" + requestStr + "]");
+                }
+                long writeStart = metrics != null ? metrics.startTiming() : 0;
+                if (sharedRequestLog.append(requestStr, writeInSync) && metrics != null) {
+                    metrics.recordStorageWrite(writeStart, requestStr.length());
+                }
+                return;
+            }
+
+            final List<String> connections = new ArrayList<>(Arrays.asList(getRequests()));
+
+            if (L.isVerbose()) {
+                L.v("[CountlyStore] addRequest, s:[" + writeInSync + "] new q size:[" + (connections.size() + 1) + "] r:[" + requestStr + "]");
+            }
+            if (connections.size() < maxRequestQueueSize) {
+                //request under max requests, add as normal
+                connections.add(requestStr);
+                storageWriteRequestQueue(UtilsCore.joinCountlyStore(connections, DELIMITER), writeInSync);
+            } else {
+                //reached the limit, start deleting oldest requests
+                L.w("[CountlyStore] Store reached it's limit, deleting oldest request");
+
+                if (metrics != null) {
+                    metrics.recordRequestDropped();
+                }
+                deleteOldestRequest();
+                addRequest(requestStr, writeInSync);
+            }
+        } else {
+            L.w("[CountlyStore] addRequest, providing null or empty request string");
+        }
+    }
+
+    /**
+     * Adds an event request to the local store. If the last stored request is an event request with the same
+     * parameters, the new events are appended to it instead, as long as the merged request stays within 'maxMergedBytes'.
+     * The first request of the queue is never changed, because it might be in the process of being sent.
+     *
+     * @param requestStr request with an 'events' parameter
+     * @param maxMergedBytes size limit of a merged request, '0' disables merging
+     */
+    synchronized void addEventRequest(@NonNull final String requestStr, final int maxMergedBytes, final boolean writeInSync) {
+        boolean canReadQueue = sharedRequestLog == null || sharedRequestLog.isDrainer();
+        if (maxMergedBytes > 0 && canReadQueue && requestStr != null && requestStr.length() > 0) {
+            final List<String> connections = new ArrayList<>(Arrays.asList(getRequests()));
+            int lastIndex = connections.size() - 1;
+
+            if (lastIndex > 0) {
+                String merged = mergeEventRequests(connections.get(lastIndex), requestStr, maxMergedBytes);
+                if (merged != null) {
+                    if (L.isVerbose()) {
+                        L.v("[CountlyStore] addEventRequest, merged into the last request, s:[" + writeInSync + "] new size:[" + merged.length() + "]");
+                    }
+                    connections.set(lastIndex, merged);
+                    storageWriteRequestQueue(UtilsCore.joinCountlyStore(connections, DELIMITER), writeInSync);
+                    return;
+                }
+            }
+        }
+
+        addRequest(requestStr, writeInSync);
+    }
+
+    /**
+     * Appends the events of 'addition' to the events of 'target'.
+     * Both requests need to have the same parameters in the same order, only the time related ones
+     * and 'events' can differ. The merged request keeps the time parameters of 'target',
+     * every event carries its own timestamp.
+     *
+     * @return the merged request or 'null' if they can't be merged or the result would be larger than 'maxBytes'
+     */
+    static @Nullable String mergeEventRequests(@NonNull String target, @NonNull String addition, int maxBytes) {
+        String[] targetParams = target.split("&");
+        String[] additionParams = addition.split("&");
+        if (targetParams.length != additionParams.length) {
+            return null;
+        }
+
+        String targetEvents = null;
+        String additionEvents = null;
+        for (int a = 0; a < targetParams.length; a++) {
+            int targetSeparator = targetParams[a].indexOf('=');
+            int additionSeparator = additionParams[a].indexOf('=');
+            if (targetSeparator < 0 || additionSeparator < 0) {
+                return null;
+            }
+
+            String key = targetParams[a].substring(0, targetSeparator);
+            if (!key.equals(additionParams[a].substring(0, additionSeparator))) {
+                return null;
+            }
+
+            if (key.equals("events")) {
+                targetEvents = targetParams[a].substring(targetSeparator + 1);
+                additionEvents = additionParams[a].substring(additionSeparator + 1);
+            } else if (!key.equals("timestamp") && !key.equals("hour") && !key.equals("dow") && !targetParams[a].equals(additionParams[a])) {
+                return null;
+            }
+        }
+
+        //the event arrays are URL encoded, '[' is '%5B', ']' is '%5D' and ',' is '%2C'
+        if (targetEvents == null || additionEvents == null || !targetEvents.startsWith("%5B") || !targetEvents.endsWith("%5D") || !additionEvents.startsWith("%5B")
+            || !additionEvents.endsWith("%5D")) {
+            return null;
+        }
+
+        String additionBody = additionEvents.substring(3, additionEvents.length() - 3);
+        if (additionBody.length() == 0) {
+            return target;
+        }
+
+        String targetBody = targetEvents.substring(3, targetEvents.length() - 3);
+        String mergedEvents = "%5B" + targetBody + (targetBody.length() == 0 ? "" : "%2C") + additionBody + "%5D";
+
+        String eventsParam = "events=" + targetEvents;
+        int eventsStart = target.startsWith(eventsParam) ? 0 : target.indexOf("&" + eventsParam) + 1;
+        int mergedLength = target.length() - targetEvents.length() + mergedEvents.length();
+        if (mergedLength > maxBytes) {
+            return null;
+        }
+
+        return target.substring(0, eventsStart) + "events=" + mergedEvents + target.substring(eventsStart + eventsParam.length());
+    }
+
+    synchronized void deleteOldestRequest() {
+        final List<String> connections = new ArrayList<>(Arrays.asList(getRequests()));
+        connections.remove(0);
+        storageWriteRequestQueue(UtilsCore.joinCountlyStore(connections, DELIMITER), false);
+    }
+
+    /**
+     * Removes a connection from the local store.
+     *
+     * @param requestStr the connection to be removed, ignored if null or empty,
+     * or if a matching connection cannot be found
+     */
+    synchronized void removeRequest(final String requestStr) {
+        if (requestStr != null && requestStr.length() > 0) {
+            final List<String> connections = new ArrayList<>(Arrays.asList(getRequests()));
+            if (connections.remove(requestStr)) {
+                storageWriteRequestQueue(UtilsCore.joinCountlyStore(connections, DELIMITER), false);
+            }
+        }
+    }
+
+    synchronized void replaceRequestList(final List<String> newConns) {
+        if (newConns != null) {
+            storageWriteRequestQueue(UtilsCore.joinCountlyStore(newConns, DELIMITER), false);
+        }
+    }
+
+    /**
+     * Adds a custom event to the local store.
+     *
+     * @param event event to be added to the local store, must not be null
+     */
+    synchronized void addEvent(final Event event) {
+        final List<Event> events = getEventList();
+        if (events.size() < MAX_EVENTS) {
+            events.add(event);
+            setEventData(joinEvents(events, DELIMITER));
+        } else {
+            L.w("[CountlyStore] Event queue reached it's limit, dropping event");
+
+            if (metrics != null) {
+                metrics.recordEventDropped();
+            }
+        }
+    }
+
+    /**
+     * set the new value in event data storage
+     *
+     * @param eventData
+     */
+    synchronized void setEventData(String eventData) {
+        storageWriteEventQueue(eventData, false);
+    }
+
+    /**
+     * Adds a custom event to the local store.
+     *
+     * @param key name of the custom event, required, must not be the empty string
+     * @param segmentation segmentation values for the custom event, may be null
+     * @param timestamp timestamp (seconds since 1970) in GMT when the event occurred
+     * @param hour current local hour on device
+     * @param dow current day of the week on device
+     * @param count count associated with the custom event, should be more than zero
+     * @param sum sum associated with the custom event, if not used, pass zero.
+     * NaN and infinity values will be quietly ignored.
+     */
+    void recordEventToEventQueue(final String key, final Map<String, Object> segmentation, final int count, final double sum, final double dur, final long timestamp, final int hour, final int dow, final @NonNull String eventID, final @Nullable String previousViewId,
+        final @Nullable String currentViewId, final @Nullable String previousEventId) {
+        Map<String, String> segmentationString = null;
+        Map<String, Integer> segmentationInt = null;
+        Map<String, Double> segmentationDouble = null;
+        Map<String, Boolean> segmentationBoolean = null;
+
+        if (segmentation != null && segmentation.size() > 0) {
+            segmentationString = new HashMap<>();
+            segmentationInt = new HashMap<>();
+            segmentationDouble = new HashMap<>();
+            segmentationBoolean = new HashMap<>();
+            Map<String, Object> segmentationReminder = new HashMap<>();
+
+            UtilsCore.fillInSegmentation(segmentation, segmentationString, segmentationInt, segmentationDouble, segmentationBoolean, segmentationReminder);
+        }
+
+        final Event event = new Event();
+        event.key = key;
+        event.segmentation = segmentationString;
+        event.segmentationDouble = segmentationDouble;
+        event.segmentationInt = segmentationInt;
+        event.segmentationBoolean = segmentationBoolean;
+        event.timestamp = timestamp;
+        event.hour = hour;
+        event.dow = dow;
+        event.count = count;
+        event.sum = sum;
+        event.dur = dur;
+        event.id = eventID;
+        event.pvid = previousViewId;
+        event.cvid = currentViewId;
+        event.peid = previousEventId;
+
+        addEvent(event);
+    }
+
+    /**
+     * Removes the specified events from the local store. Does nothing if the event collection
+     * is null or empty.
+     *
+     * @param eventsToRemove collection containing the events to remove from the local store
+     */
+    synchronized void removeEvents(final Collection<Event> eventsToRemove) {
+        if (eventsToRemove != null && eventsToRemove.size() > 0) {
+            final List<Event> events = getEventList();
+            if (events.removeAll(eventsToRemove)) {
+                storageWriteEventQueue(joinEvents(events, DELIMITER), false);
+            }
+        }
+    }
+
+    /**
+     * Drops the cached explicit storage values, so that the next read goes to the key-value store
+     */
+    synchronized void clearCache() {
+        esDirtyFlag = false;
+        esRequestQueueCache = null;
+        esEventQueueCache = null;
+    }
+
+    /**
+     * @return true if either queue has been written to the key-value store
+     */
+    boolean anythingSetInStorage() {
+        return store.getString(REQUEST_PREFERENCE, null) != null || store.getString(eventKey, null) != null;
+    }
+
+    /**
+     * Converts a collection of Event objects to URL-encoded JSON to a string, with each
+     * event JSON string delimited by the specified delimiter.
+     *
+     * @param collection events to join into a delimited string
+     * @param delimiter delimiter to use, should not be something that can be found in URL-encoded JSON string
+     */
+    @SuppressWarnings("SameParameterValue")
+    static String joinEvents(final Collection<Event> collection, final String delimiter) {
+        final List<String> strings = new ArrayList<>();
+        for (Event e : collection) {
+            strings.add(e.toJSON().toString());
+        }
+        return UtilsCore.joinCountlyStore(strings, delimiter);
+    }
+}
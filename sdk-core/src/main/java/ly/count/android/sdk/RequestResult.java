@@ -0,0 +1,66 @@
+package ly.count.android.sdk;
+
+import androidx.annotation.NonNull;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Outcome of sending a request from the request queue
+ */
+enum RequestResult {
+    OK,         // success
+    RETRY;      // retry MAX_RETRIES_BEFORE_SLEEP before switching to SLEEP
+
+    /**
+     * Decides if a request was accepted by the server.
+     * A request counts as accepted only if the server returned a 2xx code and a JSON object with a "result" entry.
+     *
+     * @param responseCode HTTP response code
+     * @param responseString response body
+     * @param L logger
+     * @return OK if the request can be removed from the queue, RETRY otherwise
+     */
+    static @NonNull RequestResult fromResponse(int responseCode, @NonNull String responseString, @NonNull PlatformLog L) {
+        if (responseCode >= 200 && responseCode < 300) {
+            if (responseString.isEmpty()) {
+                L.v("[Connection Processor] Response was empty, will retry");
+                return RETRY;
+            }
+
+            JSONObject jsonObject;
+            try {
+                jsonObject = new JSONObject(responseString);
+            } catch (JSONException ex) {
+                //failed to parse, so not a valid json
+                jsonObject = null;
+                L.e("[Connection Processor] Failed to parse response [" + responseString + "].");
+            }
+
+            if (jsonObject == null) {
+                //received unparseable response, retrying
+                L.v("[Connection Processor] Response was a unknown, will retry");
+                return RETRY;
+            }
+
+            if (jsonObject.has("result")) {
+                //contains result entry
+                L.v("[Connection Processor] Response was a success");
+                return OK;
+            }
+
+            L.v("[Connection Processor] Response does not contain 'result', will retry");
+            return RETRY;
+        } else if (responseCode >= 300 && responseCode < 400) {
+            //assume redirect
+            L.d("[Connection Processor] Encountered redirect, will retry");
+        } else if (responseCode == 400 || responseCode == 404) {
+            L.w("[Connection Processor] Bad request, will still retry");
+        } else if (responseCode > 400) {
+            //server down, try again later
+            L.d("[Connection Processor] Server is down, will retry");
+        } else {
+            L.d("[Connection Processor] Bad response code, will retry");
+        }
+        return RETRY;
+    }
+}
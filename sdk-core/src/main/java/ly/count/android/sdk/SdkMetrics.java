@@ -0,0 +1,281 @@
+package ly.count.android.sdk;
+
+import androidx.annotation.NonNull;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Internal health metrics of the SDK.
+ * Used when 'enableSdkMetrics' or 'setSdkMetricsListener' is set in the init config.
+ *
+ * Recording is a single flag check while metrics are disabled.
+ * While enabled, counters are striped by thread so that threads recording at the same time
+ * don't compete for the same memory, and recording does not allocate.
+ */
+public class SdkMetrics {
+    /**
+     * Upper bounds in milliseconds of the request latency histogram buckets.
+     * The last bucket counts everything above the last bound.
+     */
+    public static final long[] LATENCY_BUCKET_BOUNDS_MS = new long[] { 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000 };
+
+    /**
+     * What happened to a request after an attempt to send it
+     */
+    enum RequestOutcome {
+        SENT,       // accepted by the server and removed from the queue
+        RETRIED,    // kept in the queue, it is sent again later
+        FAILED      // removed from the queue without being accepted by the server
+    }
+
+    /**
+     * Counter that spreads increments over multiple cells, one of which is picked by the current thread.
+     * Cells are placed a cache line apart.
+     */
+    static class StripedCounter {
+        static final int STRIPES = 8;
+        //8 longs, 64 bytes
+        static final int CELL_SPACING = 8;
+
+        final AtomicLongArray cells = new AtomicLongArray(STRIPES * CELL_SPACING);
+
+        void add(long value) {
+            int stripe = (int) (Thread.currentThread().getId() & (STRIPES - 1));
+            cells.addAndGet(stripe * CELL_SPACING, value);
+        }
+
+        void increment() {
+            add(1);
+        }
+
+        long sum() {
+            long sum = 0;
+            for (int a = 0; a < STRIPES; a++) {
+                sum += cells.get(a * CELL_SPACING);
+            }
+            return sum;
+        }
+
+        void reset() {
+            for (int a = 0; a < STRIPES; a++) {
+                cells.set(a * CELL_SPACING, 0);
+            }
+        }
+    }
+
+    /**
+     * Latency histogram with fixed buckets
+     */
+    static class LatencyHistogram {
+        //requests are sent from a single thread, so buckets don't need striping
+        final AtomicLongArray buckets = new AtomicLongArray(LATENCY_BUCKET_BOUNDS_MS.length + 1);
+        final StripedCounter totalMs = new StripedCounter();
+
+        void record(long durationMs) {
+            int bucket = 0;
+            while (bucket < LATENCY_BUCKET_BOUNDS_MS.length && durationMs > LATENCY_BUCKET_BOUNDS_MS[bucket]) {
+                bucket++;
+            }
+            buckets.incrementAndGet(bucket);
+            totalMs.add(durationMs);
+        }
+
+        long[] bucketCounts() {
+            long[] counts = new long[buckets.length()];
+            for (int a = 0; a < counts.length; a++) {
+                counts[a] = buckets.get(a);
+            }
+            return counts;
+        }
+
+        void reset() {
+            for (int a = 0; a < buckets.length(); a++) {
+                buckets.set(a, 0);
+            }
+            totalMs.reset();
+        }
+    }
+
+    /**
+     * Values of all metrics at one moment.
+     * Counters and durations are totals since the SDK was initialized.
+     */
+    public static class Snapshot {
+        public final long timestampMs;
+
+        //queue state at the moment of the snapshot, sizes are the length of the stored strings
+        public final int requestQueueDepth;
+        public final long requestQueueBytes;
+        public final int eventQueueDepth;
+        public final long eventQueueBytes;
+
+        //request sending, failed requests were removed from the queue without being accepted by the server
+        public final long requestsSucceeded;
+        public final long requestsRetried;
+        public final long requestsFailed;
+        //counts per bucket of 'LATENCY_BUCKET_BOUNDS_MS', the last one counts requests above the last bound
+        public final long[] requestLatencyBuckets;
+        public final long requestLatencyTotalMs;
+
+        //storage
+        public final long storageWrites;
+        public final long storageWriteTotalNs;
+        //length of the written queue strings
+        public final long storageWriteBytes;
+
+        //data that was dropped because a queue limit was reached
+        public final long eventsDropped;
+        public final long requestsDropped;
+
+        //time spent waiting for the event lock
+        public final long lockWaits;
+        public final long lockWaitTotalNs;
+
+        Snapshot(long timestampMs, int requestQueueDepth, long requestQueueBytes, int eventQueueDepth, long eventQueueBytes, @NonNull SdkMetrics metrics) {
+            this.timestampMs = timestampMs;
+            this.requestQueueDepth = requestQueueDepth;
+            this.requestQueueBytes = requestQueueBytes;
+            this.eventQueueDepth = eventQueueDepth;
+            this.eventQueueBytes = eventQueueBytes;
+
+            requestsSucceeded = metrics.requestsSucceeded.sum();
+            requestsRetried = metrics.requestsRetried.sum();
+            requestsFailed = metrics.requestsFailed.sum();
+            requestLatencyBuckets = metrics.requestLatency.bucketCounts();
+            requestLatencyTotalMs = metrics.requestLatency.totalMs.sum();
+
+            storageWrites = metrics.storageWrites.sum();
+            storageWriteTotalNs = metrics.storageWriteNs.sum();
+            storageWriteBytes = metrics.storageWriteBytes.sum();
+
+            eventsDropped = metrics.eventsDropped.sum();
+            requestsDropped = metrics.requestsDropped.sum();
+
+            lockWaits = metrics.lockWaits.sum();
+            lockWaitTotalNs = metrics.lockWaitNs.sum();
+        }
+
+        @Override public String toString() {
+            StringBuilder sb = new StringBuilder(256);
+            sb.append("SdkMetrics{rq:").append(requestQueueDepth).append("/").append(requestQueueBytes).append("B");
+            sb.append(", eq:").append(eventQueueDepth).append("/").append(eventQueueBytes).append("B");
+            sb.append(", sent:").append(requestsSucceeded).append(", retried:").append(requestsRetried).append(", failed:").append(requestsFailed);
+            sb.append(", latencyTotalMs:").append(requestLatencyTotalMs).append(", latencyBuckets:[");
+            for (int a = 0; a < requestLatencyBuckets.length; a++) {
+                if (a > 0) {
+                    sb.append(",");
+                }
+                sb.append(requestLatencyBuckets[a]);
+            }
+            sb.append("], writes:").append(storageWrites).append("/").append(storageWriteTotalNs).append("ns/").append(storageWriteBytes).append("B");
+            sb.append(", dropped events:").append(eventsDropped).append(", dropped requests:").append(requestsDropped);
+            sb.append(", lock waits:").append(lockWaits).append("/").append(lockWaitTotalNs).append("ns}");
+            return sb.toString();
+        }
+    }
+
+    volatile boolean enabled = false;
+
+    final Clock clock;
+
+    final StripedCounter requestsSucceeded = new StripedCounter();
+    final StripedCounter requestsRetried = new StripedCounter();
+    final StripedCounter requestsFailed = new StripedCounter();
+    final LatencyHistogram requestLatency = new LatencyHistogram();
+
+    final StripedCounter storageWrites = new StripedCounter();
+    final StripedCounter storageWriteNs = new StripedCounter();
+    final StripedCounter storageWriteBytes = new StripedCounter();
+
+    final StripedCounter eventsDropped = new StripedCounter();
+    final StripedCounter requestsDropped = new StripedCounter();
+
+    final StripedCounter lockWaits = new StripedCounter();
+    final StripedCounter lockWaitNs = new StripedCounter();
+
+    public SdkMetrics() {
+        this(Clock.SYSTEM);
+    }
+
+    SdkMetrics(@NonNull Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * @return start time to be passed to the matching 'end' call, or 0 if metrics are disabled
+     */
+    long startTiming() {
+        if (!enabled) {
+            return 0;
+        }
+        return clock.nanoTime();
+    }
+
+    /**
+     * @param timed true if 'startNs' was returned by 'startTiming' while metrics were enabled and the server responded,
+     * only then the latency is recorded
+     */
+    void recordRequestResult(@NonNull RequestOutcome outcome, boolean timed, long startNs) {
+        if (!enabled) {
+            return;
+        }
+
+        if (timed) {
+            requestLatency.record((clock.nanoTime() - startNs) / 1000000L);
+        }
+
+        switch (outcome) {
+            case SENT:
+                requestsSucceeded.increment();
+                break;
+            case RETRIED:
+                requestsRetried.increment();
+                break;
+            case FAILED:
+                requestsFailed.increment();
+                break;
+        }
+    }
+
+    void recordStorageWrite(long startNs, long bytes) {
+        if (!enabled || startNs == 0) {
+            return;
+        }
+        storageWrites.increment();
+        storageWriteNs.add(clock.nanoTime() - startNs);
+        storageWriteBytes.add(bytes);
+    }
+
+    void recordLockAcquired(long startNs) {
+        if (!enabled || startNs == 0) {
+            return;
+        }
+        lockWaits.increment();
+        lockWaitNs.add(clock.nanoTime() - startNs);
+    }
+
+    void recordEventDropped() {
+        if (enabled) {
+            eventsDropped.increment();
+        }
+    }
+
+    void recordRequestDropped() {
+        if (enabled) {
+            requestsDropped.increment();
+        }
+    }
+
+    void reset() {
+        requestsSucceeded.reset();
+        requestsRetried.reset();
+        requestsFailed.reset();
+        requestLatency.reset();
+        storageWrites.reset();
+        storageWriteNs.reset();
+        storageWriteBytes.reset();
+        eventsDropped.reset();
+        requestsDropped.reset();
+        lockWaits.reset();
+        lockWaitNs.reset();
+    }
+}
@@ -0,0 +1,10 @@
+package ly.count.android.sdk;
+
+public interface SdkMetricsListener {
+    /**
+     * Called periodically with the current SDK metrics
+     *
+     * @param snapshot metric values at the time of the call
+     */
+    void onSdkMetrics(SdkMetrics.Snapshot snapshot);
+}
@@ -0,0 +1,19 @@
+package ly.count.android.sdk;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Platform bindings that are used by static code of the platform independent classes,
+ * where no logger can be passed in.
+ * Set by the platform specific part of the SDK when it is loaded.
+ */
+public final class SdkPlatform {
+    private SdkPlatform() {
+    }
+
+    static volatile PlatformLog log = PlatformLog.NONE;
+
+    public static void setLog(@NonNull PlatformLog log) {
+        SdkPlatform.log = log;
+    }
+}
@@ -0,0 +1,347 @@
+package ly.count.android.sdk;
+
+import androidx.annotation.NonNull;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Request log shared by multiple processes of the same app.
+ *
+ * Any process can append requests to the log file. One process at a time holds the drain lock, that process
+ * moves the appended requests into the request queue that it sends from. Both files are guarded with file locks,
+ * which are released by the OS if the process holding them dies, so the drain role moves on to another process.
+ *
+ * Records are written as "[length]:[request]\n". A record that was cut short by a process dying
+ * in the middle of a write does not match its length and is dropped when the log is drained.
+ */
+class SharedRequestLog {
+    static final String LOG_FILE = "countly_request_log";
+    static final String DRAIN_LOCK_FILE = "countly_request_log.drain";
+
+    /**
+     * Receives the drained requests while the log is still locked
+     */
+    interface DrainTarget {
+        void storeDrainedRequests(@NonNull List<String> requests);
+    }
+
+    //file locks are held by the whole process, a second lock on the same file from this process throws instead of waiting,
+    //so the log objects of a file in this process take turns on a shared object first
+    private static final Map<String, Object> processLocks = new HashMap<>();
+
+    private final File logFile;
+    private final File drainLockFile;
+    private final Object processLock;
+    private RandomAccessFile drainLockAccess = null;
+    private FileLock drainLock = null;
+
+    PlatformLog L;
+
+    SharedRequestLog(@NonNull File directory, @NonNull PlatformLog logger) {
+        if (!directory.exists() && !directory.mkdirs()) {
+            logger.w("[SharedRequestLog] Could not create directory [" + directory + "]");
+        }
+        logFile = new File(directory, LOG_FILE);
+        drainLockFile = new File(directory, DRAIN_LOCK_FILE);
+        processLock = processLockFor(logFile);
+        L = logger;
+    }
+
+    private static @NonNull Object processLockFor(@NonNull File file) {
+        String path;
+        try {
+            path = file.getCanonicalPath();
+        } catch (IOException e) {
+            path = file.getAbsolutePath();
+        }
+
+        synchronized (processLocks) {
+            Object lock = processLocks.get(path);
+            if (lock == null) {
+                lock = new Object();
+                processLocks.put(path, lock);
+            }
+            return lock;
+        }
+    }
+
+    /**
+     * A lock that overlaps one taken elsewhere in this process, outside of the shared object, is reported as a failed operation
+     */
+    private static @NonNull FileLock lockLog(@NonNull FileChannel channel) throws IOException {
+        try {
+            return channel.lock();
+        } catch (OverlappingFileLockException e) {
+            throw new IOException("The request log is already locked in this process");
+        }
+    }
+
+    synchronized boolean isDrainer() {
+        return drainLock != null && drainLock.isValid();
+    }
+
+    /**
+     * Takes the drain role if no other process holds it
+     *
+     * @return true if this process is the drainer
+     */
+    synchronized boolean tryBecomeDrainer() {
+        if (isDrainer()) {
+            return true;
+        }
+
+        try {
+            if (drainLockAccess == null) {
+                drainLockAccess = new RandomAccessFile(drainLockFile, "rw");
+            }
+            drainLock = drainLockAccess.getChannel().tryLock();
+        } catch (OverlappingFileLockException e) {
+            //another log object in this process holds it
+            drainLock = null;
+        } catch (IOException e) {
+            L.w("[SharedRequestLog] Failed to acquire the drain lock", e);
+            drainLock = null;
+        }
+
+        if (drainLock != null) {
+            L.d("[SharedRequestLog] This process is now draining the shared request log");
+        }
+        return drainLock != null;
+    }
+
+    /**
+     * Gives up the drain role so that another process can take it
+     */
+    synchronized void releaseDrainer() {
+        try {
+            if (drainLock != null) {
+                drainLock.release();
+            }
+            if (drainLockAccess != null) {
+                drainLockAccess.close();
+            }
+        } catch (IOException e) {
+            L.w("[SharedRequestLog] Failed to release the drain lock", e);
+        }
+        drainLock = null;
+        drainLockAccess = null;
+    }
+
+    /**
+     * Appends a request to the end of the log
+     *
+     * @param writeInSync if true, the call returns after the request has been written to disk
+     * @return false if the request could not be written
+     */
+    synchronized boolean append(@NonNull String request, boolean writeInSync) {
+        synchronized (processLock) {
+            RandomAccessFile file = null;
+            FileLock lock = null;
+            try {
+                file = new RandomAccessFile(logFile, "rw");
+                FileChannel channel = file.getChannel();
+                lock = lockLog(channel);
+
+                byte[] requestBytes = request.getBytes("UTF-8");
+                String prefix = requestBytes.length + ":";
+                long size = channel.size();
+                if (size > 0 && !endsWithNewLine(channel, size)) {
+                    //the previous writer died in the middle of a record, end it so that it can be dropped
+                    prefix = "\n" + prefix;
+                }
+
+                ByteBuffer buffer = ByteBuffer.allocate(prefix.length() + requestBytes.length + 1);
+                buffer.put(prefix.getBytes("UTF-8")).put(requestBytes).put((byte) '\n');
+                buffer.flip();
+
+                channel.position(size);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                if (writeInSync) {
+                    channel.force(false);
+                }
+                return true;
+            } catch (IOException e) {
+                L.e("[SharedRequestLog] Failed to append a request", e);
+                return false;
+            } finally {
+                release(lock, file);
+            }
+        }
+    }
+
+    /**
+     * Reads all appended requests and passes them to the target. The log is emptied after the target returns,
+     * so if this process dies in between, the requests are drained again instead of being lost.
+     * A missing or empty log is detected from its length, without opening and locking it.
+     */
+    synchronized void drain(@NonNull DrainTarget target) {
+        //called on every tick, nothing to do most of the time, so the file is not opened if it is empty
+        if (logFile.length() == 0) {
+            return;
+        }
+
+        synchronized (processLock) {
+            RandomAccessFile file = null;
+            FileLock lock = null;
+            try {
+                file = new RandomAccessFile(logFile, "rw");
+                FileChannel channel = file.getChannel();
+                lock = lockLog(channel);
+
+                long size = channel.size();
+                if (size == 0) {
+                    return;
+                }
+                if (size > Integer.MAX_VALUE) {
+                    L.e("[SharedRequestLog] Request log is too large [" + size + "], dropping it");
+                    channel.truncate(0);
+                    return;
+                }
+
+                ByteBuffer buffer = ByteBuffer.allocate((int) size);
+                channel.position(0);
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                    //read until full
+                }
+
+                List<String> requests = parseRecords(buffer.array(), buffer.position(), L);
+                if (!requests.isEmpty()) {
+                    target.storeDrainedRequests(requests);
+                }
+
+                channel.truncate(0);
+                channel.force(false);
+            } catch (IOException e) {
+                L.e("[SharedRequestLog] Failed to drain the request log", e);
+            } finally {
+                release(lock, file);
+            }
+        }
+    }
+
+    /**
+     * Reads the appended requests without removing them
+     *
+     * @return null if the log could not be read
+     */
+    synchronized List<String> peek() {
+        if (logFile.length() == 0) {
+            return new ArrayList<>();
+        }
+
+        synchronized (processLock) {
+            RandomAccessFile file = null;
+            FileLock lock = null;
+            try {
+                file = new RandomAccessFile(logFile, "rw");
+                FileChannel channel = file.getChannel();
+                lock = lockLog(channel);
+
+                long size = channel.size();
+                if (size == 0) {
+                    return new ArrayList<>();
+                }
+                if (size > Integer.MAX_VALUE) {
+                    return null;
+                }
+
+                ByteBuffer buffer = ByteBuffer.allocate((int) size);
+                channel.position(0);
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                    //read until full
+                }
+                return parseRecords(buffer.array(), buffer.position(), L);
+            } catch (IOException e) {
+                L.e("[SharedRequestLog] Failed to read the request log", e);
+                return null;
+            } finally {
+                release(lock, file);
+            }
+        }
+    }
+
+    /**
+     * Drops all appended requests
+     */
+    synchronized void clear() {
+        synchronized (processLock) {
+            RandomAccessFile file = null;
+            FileLock lock = null;
+            try {
+                file = new RandomAccessFile(logFile, "rw");
+                lock = lockLog(file.getChannel());
+                file.getChannel().truncate(0);
+            } catch (IOException e) {
+                L.e("[SharedRequestLog] Failed to clear the request log", e);
+            } finally {
+                release(lock, file);
+            }
+        }
+    }
+
+    static @NonNull List<String> parseRecords(@NonNull byte[] data, int length, @NonNull PlatformLog L) throws IOException {
+        List<String> requests = new ArrayList<>();
+        int position = 0;
+
+        while (position < length) {
+            int lineEnd = position;
+            while (lineEnd < length && data[lineEnd] != '\n') {
+                lineEnd++;
+            }
+
+            String record = new String(data, position, lineEnd - position, "UTF-8");
+            position = lineEnd + 1;
+            if (record.isEmpty()) {
+                continue;
+            }
+
+            int separator = record.indexOf(':');
+            int expectedLength = -1;
+            if (separator > 0) {
+                try {
+                    expectedLength = Integer.parseInt(record.substring(0, separator));
+                } catch (NumberFormatException ignored) {
+                }
+            }
+
+            String request = separator > 0 ? record.substring(separator + 1) : "";
+            if (expectedLength < 0 || request.getBytes("UTF-8").length != expectedLength) {
+                L.w("[SharedRequestLog] Dropping an incomplete request record");
+                continue;
+            }
+            requests.add(request);
+        }
+
+        return requests;
+    }
+
+    private static boolean endsWithNewLine(@NonNull FileChannel channel, long size) throws IOException {
+        ByteBuffer last = ByteBuffer.allocate(1);
+        channel.read(last, size - 1);
+        return last.get(0) == '\n';
+    }
+
+    private void release(FileLock lock, RandomAccessFile file) {
+        try {
+            if (lock != null) {
+                lock.release();
+            }
+            if (file != null) {
+                file.close();
+            }
+        } catch (IOException e) {
+            L.w("[SharedRequestLog] Failed to close the request log", e);
+        }
+    }
+}
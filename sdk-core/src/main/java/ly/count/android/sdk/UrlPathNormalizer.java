@@ -0,0 +1,93 @@
+package ly.count.android.sdk;
+
+import androidx.annotation.NonNull;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Turns request URLs into network trace keys.
+ * Query and fragment are removed and path segments that look like identifiers are replaced with placeholders,
+ * so that requests to the same endpoint end up under the same key:
+ * "https://api.example.com/users/1234/photos?size=2" -> "api.example.com/users/:id/photos"
+ */
+class UrlPathNormalizer {
+    static final int MAX_SEGMENTS = 8;
+    static final int MAX_SEGMENT_LENGTH = 48;
+
+    static final String PLACEHOLDER_ID = ":id";
+    static final String PLACEHOLDER_UUID = ":uuid";
+    static final String PLACEHOLDER_HASH = ":hash";
+    static final String PLACEHOLDER_TOKEN = ":token";
+
+    private static final Pattern NUMBER = Pattern.compile("-?[0-9]+");
+    private static final Pattern UUID = Pattern.compile("[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+    private static final Pattern HEX = Pattern.compile("[0-9a-fA-F]{16,}");
+    private static final Pattern HAS_DIGIT = Pattern.compile(".*[0-9].*");
+
+    private UrlPathNormalizer() {
+    }
+
+    static @NonNull String normalize(@NonNull String url) {
+        String rest = url;
+
+        int schemeEnd = rest.indexOf("://");
+        if (schemeEnd >= 0) {
+            rest = rest.substring(schemeEnd + 3);
+        }
+
+        int end = rest.length();
+        int query = rest.indexOf('?');
+        if (query >= 0) {
+            end = query;
+        }
+        int fragment = rest.indexOf('#');
+        if (fragment >= 0 && fragment < end) {
+            end = fragment;
+        }
+        rest = rest.substring(0, end);
+
+        int pathStart = rest.indexOf('/');
+        String host = pathStart >= 0 ? rest.substring(0, pathStart) : rest;
+        String path = pathStart >= 0 ? rest.substring(pathStart + 1) : "";
+
+        int userInfoEnd = host.lastIndexOf('@');
+        if (userInfoEnd >= 0) {
+            host = host.substring(userInfoEnd + 1);
+        }
+
+        StringBuilder key = new StringBuilder(url.length());
+        key.append(host.toLowerCase(Locale.US));
+
+        int segmentCount = 0;
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+            if (segmentCount == MAX_SEGMENTS) {
+                key.append("/...");
+                break;
+            }
+            key.append('/').append(normalizeSegment(segment));
+            segmentCount++;
+        }
+
+        return key.toString();
+    }
+
+    static @NonNull String normalizeSegment(@NonNull String segment) {
+        if (NUMBER.matcher(segment).matches()) {
+            return PLACEHOLDER_ID;
+        }
+        if (UUID.matcher(segment).matches()) {
+            return PLACEHOLDER_UUID;
+        }
+        if (HEX.matcher(segment).matches()) {
+            return PLACEHOLDER_HASH;
+        }
+        if (segment.length() > MAX_SEGMENT_LENGTH || (segment.length() >= 16 && HAS_DIGIT.matcher(segment).matches())) {
+            //long or random looking values, for example base64 identifiers
+            return PLACEHOLDER_TOKEN;
+        }
+        return segment;
+    }
+}
@@ -0,0 +1,76 @@
+package ly.count.android.sdk;
+
+import androidx.annotation.NonNull;
+import java.security.SecureRandom;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Helpers that don't need the Android framework.
+ * 'Utils' forwards to these, so the SDK modules keep calling 'Utils'.
+ */
+public class UtilsCore {
+    /**
+     * Joins all the strings in the specified collection into a single string with the specified delimiter.
+     * Used in countlyStore
+     */
+    static String joinCountlyStore(final Collection<String> collection, final String delimiter) {
+        final StringBuilder builder = new StringBuilder();
+
+        int i = 0;
+        for (String s : collection) {
+            builder.append(s);
+            if (++i < collection.size()) {
+                builder.append(delimiter);
+            }
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Used for quickly sorting segments into their respective data type
+     *
+     * @param allSegm
+     * @param segmStr
+     * @param segmInt
+     * @param segmDouble
+     * @param segmBoolean
+     */
+    static void fillInSegmentation(Map<String, Object> allSegm, Map<String, String> segmStr, Map<String, Integer> segmInt, Map<String, Double> segmDouble, Map<String, Boolean> segmBoolean,
+        Map<String, Object> reminder) {
+        for (Map.Entry<String, Object> pair : allSegm.entrySet()) {
+            String key = pair.getKey();
+            Object value = pair.getValue();
+
+            if (value instanceof Integer) {
+                segmInt.put(key, (Integer) value);
+            } else if (value instanceof Double) {
+                segmDouble.put(key, (Double) value);
+            } else if (value instanceof String) {
+                segmStr.put(key, (String) value);
+            } else if (value instanceof Boolean) {
+                segmBoolean.put(key, (Boolean) value);
+            } else {
+                if (reminder != null) {
+                    reminder.put(key, value);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a crypto-safe random value
+     *
+     * @param base64 encoder for the random bytes
+     * @return returns a random string value
+     */
+    static String safeRandomVal(@NonNull Base64Codec base64) {
+        long timestamp = UtilsTime.clock.currentTimeMillis();
+        SecureRandom random = new SecureRandom();
+        byte[] value = new byte[6];
+        random.nextBytes(value);
+        String b64Value = base64.encodeToString(value);
+        return b64Value + timestamp;
+    }
+}
@@ -21,6 +21,22 @@ public class UtilsNetworking {
         return result;
     }
 
+    /**
+     * Builds the parameters that every request starts with
+     *
+     * @param instant time of the request
+     * @param timezoneOffset offset of the device timezone in minutes
+     */
+    static String prepareCommonRequestData(String appKey, UtilsTime.Instant instant, int timezoneOffset, String sdkVersion, String sdkName) {
+        return "app_key=" + urlEncodeString(appKey)
+            + "&timestamp=" + instant.timestampMs
+            + "&hour=" + instant.hour
+            + "&dow=" + instant.dow
+            + "&tz=" + timezoneOffset
+            + "&sdk_version=" + sdkVersion
+            + "&sdk_name=" + sdkName;
+    }
+
     protected static String urlDecodeString(String givenValue) {
         String decodedResult = "";
 
@@ -44,7 +60,7 @@ public class UtilsNetworking {
             // This is ~55x faster than looping and String.formating()
             hash = bytesToHex(bytes);
         } catch (Throwable e) {
-            Countly.sharedInstance().L.e("Cannot tamper-protect params", e);
+            SdkPlatform.log.e("Cannot tamper-protect params", e);
         }
         return hash;
     }
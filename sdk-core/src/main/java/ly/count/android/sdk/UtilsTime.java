@@ -0,0 +1,217 @@
+package ly.count.android.sdk;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class UtilsTime {
+    // source of the current time, replaced in tests
+    static volatile Clock clock = Clock.SYSTEM;
+
+    public static class Instant {
+        public final long timestampMs;
+        public final int hour;
+        public final int dow; //0-Sunday, 1-Monday, 2-Tuesday, 3-Wednesday, 4-Thursday, 5-Friday, 6-Saturday
+
+        protected Instant(long timestampInMillis, int hour, int dow) {
+            this.timestampMs = timestampInMillis;
+            this.hour = hour;
+            this.dow = dow;
+        }
+
+        public static Instant get(long timestampInMillis) {
+            if (timestampInMillis < 0L) {
+                throw new IllegalArgumentException("timestampInMillis must be greater than or equal to zero");
+            }
+
+            HourWindow window = hourWindowFor(timestampInMillis);
+            return new Instant(timestampInMillis, window.hour, window.dow);
+        }
+    }
+
+    /**
+     * A single local hour with its boundaries in epoch milliseconds.
+     * Every timestamp inside [hourStartMs, hourEndMs) has the same local hour and day of week.
+     * Instances are immutable so they can be published without locking.
+     */
+    static class HourWindow {
+        static final long HOUR_MS = 60 * 60 * 1000L;
+
+        final long hourStartMs;
+        final long hourEndMs;
+        final int hour;
+        final int dow;
+        final String timezoneId;
+
+        HourWindow(long hourStartMs, long hourEndMs, int hour, int dow, String timezoneId) {
+            this.hourStartMs = hourStartMs;
+            this.hourEndMs = hourEndMs;
+            this.hour = hour;
+            this.dow = dow;
+            this.timezoneId = timezoneId;
+        }
+
+        boolean contains(long timestampMs) {
+            return timestampMs >= hourStartMs && timestampMs < hourEndMs;
+        }
+
+        static HourWindow create(long timestampMs, TimeZone timeZone) {
+            Calendar calendar = Calendar.getInstance(timeZone);
+            calendar.setTimeInMillis(timestampMs);
+            final int hour = calendar.get(Calendar.HOUR_OF_DAY);
+            // Calendar days are 1-based, Countly days are 0-based
+            final int dow = calendar.get(Calendar.DAY_OF_WEEK) - 1;
+
+            calendar.set(Calendar.MINUTE, 0);
+            calendar.set(Calendar.SECOND, 0);
+            calendar.set(Calendar.MILLISECOND, 0);
+            long start = calendar.getTimeInMillis();
+            long end = start + HOUR_MS;
+
+            if (timeZone.getOffset(start) != timeZone.getOffset(end - 1)) {
+                // the offset changes somewhere inside this hour, only this exact millisecond is known to be correct
+                start = timestampMs;
+                end = timestampMs + 1;
+            }
+
+            return new HourWindow(start, end, hour, dow, timeZone.getID());
+        }
+    }
+
+    /**
+     * How often the default timezone is compared against the one used for the cached hour
+     */
+    static final long TIMEZONE_CHECK_INTERVAL_MS = 60 * 1000L;
+
+    // the window of the current local hour, replaced when the hour rolls over or the timezone changes
+    private static volatile HourWindow currentHourWindow = null;
+    private static volatile long nextTimezoneCheckMs = 0;
+
+    static HourWindow hourWindowFor(long timestampMs) {
+        HourWindow window = currentHourWindow;
+
+        if (window != null && window.contains(timestampMs) && !timezoneChanged(window)) {
+            return window;
+        }
+
+        TimeZone timeZone = TimeZone.getDefault();
+        HourWindow newWindow = HourWindow.create(timestampMs, timeZone);
+
+        if (newWindow.contains(clock.currentTimeMillis())) {
+            // only the current hour is cached, past or future timestamps should not evict it
+            currentHourWindow = newWindow;
+            nextTimezoneCheckMs = clock.currentTimeMillis() + TIMEZONE_CHECK_INTERVAL_MS;
+        }
+
+        return newWindow;
+    }
+
+    private static boolean timezoneChanged(HourWindow window) {
+        long now = clock.currentTimeMillis();
+        if (now < nextTimezoneCheckMs) {
+            return false;
+        }
+
+        nextTimezoneCheckMs = now + TIMEZONE_CHECK_INTERVAL_MS;
+        return !TimeZone.getDefault().getID().equals(window.timezoneId);
+    }
+
+    /**
+     * Drops the cached hour so that the next instant is calculated from the current default timezone
+     */
+    static void resetHourWindow() {
+        currentHourWindow = null;
+        nextTimezoneCheckMs = 0;
+    }
+
+    /**
+     * Get's a instant for the current moment
+     *
+     * @return
+     */
+    public static Instant getCurrentInstant() {
+        long timestamp = currentTimestampMs();
+        return Instant.get(timestamp);
+    }
+
+    /**
+     * Get current timestamp in milliseconds
+     *
+     * @return
+     */
+    public static long currentTimestampMs() {
+        return timeGenerator.uniqueTimestamp();
+    }
+
+    /**
+     * Utility method to return a current timestamp in seconds.
+     */
+    public static int currentTimestampSeconds() {
+        return ((int) (clock.currentTimeMillis() / 1000L));
+    }
+
+    /**
+     * Generates timestamps that are strictly increasing for this process.
+     * If multiple timestamps are requested in the same millisecond, the following ones are moved forward by 1ms.
+     * If the system clock is moved back further than the given threshold, the generator continues from the new clock value.
+     * The threshold is not 0 because threads that read the clock at the same time can observe it going back by a few milliseconds,
+     * resetting then would hand out a value twice. Clock changes up to the threshold are absorbed by continuing from the last
+     * returned value, so timestamps are at most that much ahead of the clock until it has caught up.
+     * A clock value that looks like a change back is only used after a fresh read of the clock confirms it,
+     * so a thread that was paused after reading the clock does not reset the generator to its stale value.
+     */
+    static class UniqueTimestampGenerator {
+        static final long CLOCK_BACK_RESET_THRESHOLD_MS = 1000L;
+
+        // last value that was returned
+        final AtomicLong lastTimestampMs = new AtomicLong(0);
+        // latest observed system clock value, used to tell a clock change apart from a burst of requests
+        final AtomicLong lastClockMs = new AtomicLong(0);
+
+        long currentTimeMillis() {
+            return clock.currentTimeMillis();
+        }
+
+        long uniqueTimestamp() {
+            long ms = currentTimeMillis();
+
+            while (true) {
+                final long lastClock = lastClockMs.get();
+                if (ms > lastClock) {
+                    lastClockMs.compareAndSet(lastClock, ms);
+                }
+
+                final long last = lastTimestampMs.get();
+                final long next;
+                boolean clockMovedBack = false;
+
+                if (ms > last) {
+                    // usual case
+                    next = ms;
+                } else if (lastClock - ms > CLOCK_BACK_RESET_THRESHOLD_MS && last - ms > CLOCK_BACK_RESET_THRESHOLD_MS) {
+                    // either the time was changed back or this thread was paused after reading the clock, a fresh value tells them apart
+                    final long freshMs = currentTimeMillis();
+                    if (lastClock - freshMs <= CLOCK_BACK_RESET_THRESHOLD_MS) {
+                        ms = freshMs;
+                        continue;
+                    }
+                    // change time back case
+                    ms = freshMs;
+                    next = ms;
+                    clockMovedBack = true;
+                } else {
+                    next = last + 1;
+                }
+
+                if (lastTimestampMs.compareAndSet(last, next)) {
+                    if (clockMovedBack) {
+                        lastClockMs.set(ms);
+                    }
+                    return next;
+                }
+            }
+        }
+    }
+
+    private static final UniqueTimestampGenerator timeGenerator = new UniqueTimestampGenerator();
+}
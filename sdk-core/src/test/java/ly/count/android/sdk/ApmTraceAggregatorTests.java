@@ -0,0 +1,145 @@
+package ly.count.android.sdk;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ApmTraceAggregatorTests {
+    @Test
+    public void bucketBounds() {
+        long[] bounds = ApmTraceAggregator.DURATION_BUCKET_BOUNDS_MS;
+        Assert.assertEquals(1, bounds[0]);
+        Assert.assertEquals(10, bounds[8]);
+        Assert.assertEquals(ApmTraceAggregator.MAX_TRACKED_DURATION_MS, bounds[bounds.length - 1]);
+
+        for (int a = 1; a < bounds.length; a++) {
+            Assert.assertTrue(bounds[a] > bounds[a - 1]);
+            Assert.assertTrue(bounds[a] <= 8 || bounds[a] <= bounds[a - 1] * 1.25);
+        }
+    }
+
+    @Test
+    public void bucketIndex() {
+        Assert.assertEquals(0, ApmTraceAggregator.bucketIndex(0));
+        Assert.assertEquals(0, ApmTraceAggregator.bucketIndex(1));
+        Assert.assertEquals(8, ApmTraceAggregator.bucketIndex(9));
+        Assert.assertEquals(8, ApmTraceAggregator.bucketIndex(10));
+        Assert.assertEquals(9, ApmTraceAggregator.bucketIndex(11));
+        Assert.assertEquals(ApmTraceAggregator.DURATION_BUCKET_BOUNDS_MS.length, ApmTraceAggregator.bucketIndex(ApmTraceAggregator.MAX_TRACKED_DURATION_MS + 1));
+    }
+
+    /**
+     * Traces with the same type and name end up in the same summary
+     */
+    @Test
+    public void summaries() {
+        ApmTraceAggregator aggregator = new ApmTraceAggregator(10);
+        Assert.assertTrue(aggregator.isEmpty());
+
+        Map<String, Long> phaseMetrics = new HashMap<>();
+        phaseMetrics.put("ttfb", 40L);
+        aggregator.recordNetworkTrace("api", 50, 200, 10, 100, 1000, 1050, phaseMetrics);
+        aggregator.recordNetworkTrace("api", 150, 503, 30, 0, 2000, 2150, null);
+        Map<String, Integer> customMetrics = new HashMap<>();
+        customMetrics.put("items", 4);
+        aggregator.recordCustomTrace("api", 7, 500, 507, customMetrics);
+        aggregator.recordCustomTrace("api", 3, 600, 603, customMetrics);
+        Assert.assertEquals(4, aggregator.getTraceCount());
+
+        List<ApmTraceAggregator.TraceSummary> summaries = aggregator.drain();
+        Assert.assertEquals(2, summaries.size());
+        Assert.assertTrue(aggregator.isEmpty());
+        Assert.assertEquals(0, aggregator.getTraceCount());
+
+        ApmTraceAggregator.TraceSummary network = summaries.get(0);
+        Assert.assertEquals(ApmTraceAggregator.TYPE_NETWORK, network.type);
+        Assert.assertEquals(2, network.count);
+        Assert.assertEquals(200, network.sumMs);
+        Assert.assertEquals(50, network.minMs);
+        Assert.assertEquals(150, network.maxMs);
+        Assert.assertEquals(1, network.errorCount);
+        Assert.assertEquals(40, network.requestPayloadBytes);
+        Assert.assertEquals(1000, network.firstStartMs);
+        Assert.assertEquals(2150, network.lastEndMs);
+        Assert.assertEquals(1, network.bucketCounts[ApmTraceAggregator.bucketIndex(50)]);
+        Assert.assertEquals(503, network.representativeResponseCode());
+        //the phase is averaged over the traces that reported it
+        Assert.assertEquals(",\"ttfb\":40,\"response_time_min\":50,\"response_time_max\":150,\"response_time_p50\":56,\"response_time_p95\":150,\"error_count\":1,\"trace_count\":2",
+            network.summaryMetricsString());
+
+        ApmTraceAggregator.TraceSummary device = summaries.get(1);
+        Assert.assertEquals(ApmTraceAggregator.TYPE_DEVICE, device.type);
+        Assert.assertEquals(Long.valueOf(8), device.metricSums.get("items"));
+        Assert.assertEquals(5, device.averageMs());
+        Assert.assertEquals(",\"items\":4,\"duration_min\":3,\"duration_max\":7,\"duration_p50\":3,\"duration_p95\":7,\"trace_count\":2", device.summaryMetricsString());
+    }
+
+    /**
+     * The response code is the most frequent error code if there were errors, the most frequent code otherwise,
+     * independent of the order of the traces
+     */
+    @Test
+    public void representativeResponseCode() {
+        ApmTraceAggregator aggregator = new ApmTraceAggregator(10);
+        Assert.assertEquals(0, new ApmTraceAggregator.TraceSummary(ApmTraceAggregator.TYPE_NETWORK, "a").representativeResponseCode());
+
+        aggregator.recordNetworkTrace("a", 1, 204, 0, 0, 0, 1, null);
+        aggregator.recordNetworkTrace("a", 1, 200, 0, 0, 0, 1, null);
+        aggregator.recordNetworkTrace("a", 1, 200, 0, 0, 0, 1, null);
+        aggregator.recordNetworkTrace("a", 1, 304, 0, 0, 0, 1, null);
+
+        aggregator.recordNetworkTrace("b", 1, 200, 0, 0, 0, 1, null);
+        aggregator.recordNetworkTrace("b", 1, 200, 0, 0, 0, 1, null);
+        aggregator.recordNetworkTrace("b", 1, 500, 0, 0, 0, 1, null);
+        aggregator.recordNetworkTrace("b", 1, 404, 0, 0, 0, 1, null);
+        aggregator.recordNetworkTrace("b", 1, 503, 0, 0, 0, 1, null);
+        aggregator.recordNetworkTrace("b", 1, 404, 0, 0, 0, 1, null);
+        aggregator.recordNetworkTrace("b", 1, 200, 0, 0, 0, 1, null);
+
+        aggregator.recordNetworkTrace("c", 1, 502, 0, 0, 0, 1, null);
+        aggregator.recordNetworkTrace("c", 1, 0, 0, 0, 0, 1, null);
+        aggregator.recordNetworkTrace("c", 1, 200, 0, 0, 0, 1, null);
+
+        List<ApmTraceAggregator.TraceSummary> summaries = aggregator.drain();
+        Assert.assertEquals(200, summaries.get(0).representativeResponseCode());
+        Assert.assertEquals(404, summaries.get(1).representativeResponseCode());
+        Assert.assertEquals(4, summaries.get(1).errorCount);
+        //ties go to the lowest code
+        Assert.assertEquals(0, summaries.get(2).representativeResponseCode());
+    }
+
+    /**
+     * Percentiles are the bucket bounds, kept within the measured min and max
+     */
+    @Test
+    public void percentiles() {
+        ApmTraceAggregator.TraceSummary summary = new ApmTraceAggregator.TraceSummary(ApmTraceAggregator.TYPE_DEVICE, "a");
+        Assert.assertEquals(0, summary.percentileMs(50));
+
+        for (int a = 1; a <= 100; a++) {
+            summary.record(a, 0, a);
+        }
+        Assert.assertEquals(56, summary.percentileMs(50));
+        Assert.assertEquals(96, summary.percentileMs(95));
+        Assert.assertEquals(1, summary.percentileMs(1));
+
+        summary.record(100000, 0, 100000);
+        Assert.assertEquals(100000, summary.percentileMs(100));
+    }
+
+    /**
+     * Once the key limit is reached, only traces of known keys are accepted
+     */
+    @Test
+    public void keyLimit() {
+        ApmTraceAggregator aggregator = new ApmTraceAggregator(1);
+
+        Assert.assertTrue(aggregator.recordCustomTrace("a", 1, 0, 1, null));
+        Assert.assertFalse(aggregator.recordCustomTrace("b", 1, 0, 1, null));
+        Assert.assertFalse(aggregator.recordNetworkTrace("a", 1, 200, 0, 0, 0, 1, null));
+        Assert.assertTrue(aggregator.recordCustomTrace("a", 1, 0, 1, null));
+        Assert.assertEquals(2, aggregator.getTraceCount());
+    }
+}
@@ -0,0 +1,220 @@
+package ly.count.android.sdk;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.CountDownLatch;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BreadcrumbRingTests {
+    long nowMs;
+    Clock clock;
+    File mirrorFile;
+
+    @Before
+    public void setUp() throws IOException {
+        nowMs = 1000;
+        clock = new Clock() {
+            @Override public long currentTimeMillis() {
+                return nowMs;
+            }
+
+            @Override public long nanoTime() {
+                return nowMs * 1000000L;
+            }
+        };
+        mirrorFile = File.createTempFile("breadcrumbs", ".mirror");
+    }
+
+    @After
+    public void tearDown() {
+        mirrorFile.delete();
+    }
+
+    static List<String> texts(List<BreadcrumbRing.Breadcrumb> breadcrumbs) {
+        List<String> texts = new ArrayList<>();
+        for (BreadcrumbRing.Breadcrumb breadcrumb : breadcrumbs) {
+            texts.add(breadcrumb.text);
+        }
+        return texts;
+    }
+
+    /**
+     * Only the latest breadcrumbs are kept, the oldest first
+     */
+    @Test
+    public void overwritesOldest() {
+        BreadcrumbRing ring = new BreadcrumbRing(3, clock);
+        Assert.assertFalse(ring.add("a"));
+        Assert.assertFalse(ring.add("b"));
+        Assert.assertFalse(ring.add("c"));
+        Assert.assertTrue(ring.add("d"));
+
+        Assert.assertEquals(3, ring.capacity());
+        Assert.assertEquals("[b, c, d]", texts(ring.snapshot()).toString());
+        //a snapshot does not clear
+        Assert.assertEquals("[b, c, d]", texts(ring.snapshot()).toString());
+    }
+
+    /**
+     * Draining removes only what was returned
+     */
+    @Test
+    public void drain() {
+        BreadcrumbRing ring = new BreadcrumbRing(3, clock);
+        ring.add("a");
+        ring.add("b");
+        Assert.assertEquals("[a, b]", texts(ring.drain()).toString());
+        Assert.assertTrue(ring.drain().isEmpty());
+
+        Assert.assertFalse(ring.add("c"));
+        Assert.assertFalse(ring.add("d"));
+        Assert.assertFalse(ring.add("e"));
+        Assert.assertEquals("[c, d, e]", texts(ring.drain()).toString());
+    }
+
+    @Test
+    public void writeLines() throws IOException {
+        TimeZone defaultZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+        try {
+            BreadcrumbRing ring = new BreadcrumbRing(3, clock);
+            ring.add("a");
+            nowMs += 1500;
+            ring.add("b");
+
+            StringWriter plain = new StringWriter();
+            BreadcrumbRing.writeLines(ring.snapshot(), false, plain);
+            Assert.assertEquals("a\nb\n", plain.toString());
+
+            StringWriter timed = new StringWriter();
+            BreadcrumbRing.writeLines(ring.snapshot(), true, timed);
+            Assert.assertEquals("[1970-01-01 00:00:01.000] a\n[1970-01-01 00:00:02.500] b\n", timed.toString());
+        } finally {
+            TimeZone.setDefault(defaultZone);
+        }
+    }
+
+    /**
+     * Breadcrumbs added from several threads are all kept while they fit
+     */
+    @Test
+    public void concurrentAdds() throws InterruptedException {
+        final int threads = 4;
+        final int perThread = 250;
+        final BreadcrumbRing ring = new BreadcrumbRing(threads * perThread, clock);
+        final CountDownLatch start = new CountDownLatch(1);
+
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            Thread worker = new Thread(new Runnable() {
+                @Override public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException ignored) {
+                    }
+                    for (int a = 0; a < perThread; a++) {
+                        ring.add(thread + "_" + a);
+                    }
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        Set<String> texts = new HashSet<>(texts(ring.drain()));
+        Assert.assertEquals(threads * perThread, texts.size());
+    }
+
+    /**
+     * The mirror file holds the breadcrumbs that have not been drained, a reopened file starts empty
+     */
+    @Test
+    public void mirror() throws IOException {
+        BreadcrumbRing ring = new BreadcrumbRing(3, clock);
+        ring.setMirror(BreadcrumbMirror.open(mirrorFile, 3, 500));
+        ring.add("reported");
+        ring.drain();
+        ring.add("a");
+        ring.add("b \u00fc");
+        ring.add("c");
+        ring.add("d");
+
+        List<BreadcrumbRing.Breadcrumb> mirrored = BreadcrumbMirror.read(mirrorFile);
+        Assert.assertEquals("[b \u00fc, c, d]", texts(mirrored).toString());
+        Assert.assertEquals(1000, mirrored.get(0).timestampMs);
+
+        Assert.assertEquals(500, BreadcrumbMirror.readRunStartMs(mirrorFile));
+
+        BreadcrumbMirror.open(mirrorFile, 3, 2000);
+        Assert.assertTrue(BreadcrumbMirror.read(mirrorFile).isEmpty());
+        Assert.assertEquals(2000, BreadcrumbMirror.readRunStartMs(mirrorFile));
+    }
+
+    /**
+     * A buffer that replaces another one on the same mirror continues its sequence numbers,
+     * so the slots written by the other one are not read as newer breadcrumbs
+     */
+    @Test
+    public void mirrorReplacedBuffer() throws IOException {
+        BreadcrumbMirror mirror = BreadcrumbMirror.open(mirrorFile, 4, 500);
+        BreadcrumbRing ring = new BreadcrumbRing(4, clock);
+        ring.setMirror(mirror);
+        for (int a = 0; a < 6; a++) {
+            ring.add("reported " + a);
+        }
+        ring.drain();
+        ring.add("kept");
+
+        List<BreadcrumbRing.Breadcrumb> kept = ring.drain();
+        BreadcrumbRing replaced = new BreadcrumbRing(2, clock, ring.nextSequence());
+        replaced.setMirror(mirror);
+        for (BreadcrumbRing.Breadcrumb breadcrumb : kept) {
+            replaced.add(breadcrumb.text);
+        }
+
+        replaced.add("new");
+
+        Assert.assertEquals("[kept, new]", texts(replaced.snapshot()).toString());
+        Assert.assertEquals("[kept, new]", texts(BreadcrumbMirror.read(mirrorFile)).toString());
+    }
+
+    /**
+     * Text that does not fit into a slot is cut off without splitting characters
+     */
+    @Test
+    public void mirrorLongText() throws IOException {
+        StringBuilder text = new StringBuilder("a");
+        while (text.length() < BreadcrumbMirror.MAX_TEXT_BYTES) {
+            text.append('\u00fc');
+        }
+
+        BreadcrumbRing ring = new BreadcrumbRing(2, clock);
+        ring.setMirror(BreadcrumbMirror.open(mirrorFile, 2, 500));
+        ring.add(text.toString());
+
+        String mirrored = BreadcrumbMirror.read(mirrorFile).get(0).text;
+        Assert.assertTrue(text.toString().startsWith(mirrored));
+        Assert.assertEquals(1 + (BreadcrumbMirror.MAX_TEXT_BYTES - 1) / 2, mirrored.length());
+    }
+
+    @Test
+    public void mirrorInvalidFile() throws IOException {
+        Assert.assertTrue(BreadcrumbMirror.read(new File(mirrorFile.getPath() + ".missing")).isEmpty());
+        Assert.assertTrue(BreadcrumbMirror.read(mirrorFile).isEmpty());
+        Assert.assertEquals(0, BreadcrumbMirror.readRunStartMs(mirrorFile));
+    }
+}
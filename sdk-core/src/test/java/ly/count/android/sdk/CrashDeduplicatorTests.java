@@ -0,0 +1,237 @@
+package ly.count.android.sdk;
+
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CrashDeduplicatorTests {
+    long nowMs;
+    Clock clock;
+
+    @Before
+    public void setUp() {
+        nowMs = 1000000;
+        clock = new Clock() {
+            @Override public long currentTimeMillis() {
+                return nowMs;
+            }
+
+            @Override public long nanoTime() {
+                return nowMs * 1000000L;
+            }
+        };
+    }
+
+    static Throwable throwFrom(String message) {
+        try {
+            throw new IllegalStateException(message);
+        } catch (IllegalStateException e) {
+            return e;
+        }
+    }
+
+    /**
+     * Occurrences inside the window are counted and reported together with the next occurrence after the window
+     */
+    @Test
+    public void window() {
+        CrashDeduplicator deduplicator = new CrashDeduplicator(60000, clock);
+
+        Assert.assertEquals(1, deduplicator.onOccurrence("a"));
+        for (int a = 0; a < 5; a++) {
+            nowMs += 1000;
+            Assert.assertEquals(0, deduplicator.onOccurrence("a"));
+        }
+        Assert.assertEquals(1, deduplicator.onOccurrence("b"));
+
+        nowMs += 60000;
+        Assert.assertEquals(6, deduplicator.onOccurrence("a"));
+        Assert.assertEquals(0, deduplicator.onOccurrence("a"));
+    }
+
+    /**
+     * Counted occurrences are taken with the text of the first one once the window ends without another occurrence
+     */
+    @Test
+    public void pendingReports() {
+        CrashDeduplicator deduplicator = new CrashDeduplicator(60000, clock);
+
+        Assert.assertEquals(1, deduplicator.onOccurrence("a"));
+        Assert.assertFalse(deduplicator.needsPendingReport("a"));
+        Assert.assertEquals(0, deduplicator.onOccurrence("a"));
+        Assert.assertTrue(deduplicator.needsPendingReport("a"));
+        deduplicator.setPendingReport("a", "first");
+        Assert.assertEquals(0, deduplicator.onOccurrence("a"));
+        Assert.assertFalse(deduplicator.needsPendingReport("a"));
+        deduplicator.setPendingReport("a", "second");
+
+        //still inside the window
+        Assert.assertTrue(deduplicator.takePendingReports().isEmpty());
+
+        nowMs += 60000;
+        List<CrashDeduplicator.PendingReport> pending = deduplicator.takePendingReports();
+        Assert.assertEquals(1, pending.size());
+        Assert.assertEquals("first", pending.get(0).report);
+        Assert.assertEquals(2, pending.get(0).occurrences);
+        Assert.assertTrue(deduplicator.takePendingReports().isEmpty());
+
+        //the pending report started a new window
+        Assert.assertEquals(0, deduplicator.onOccurrence("a"));
+        nowMs += 60000;
+        Assert.assertEquals(2, deduplicator.onOccurrence("a"));
+        Assert.assertTrue(deduplicator.takePendingReports().isEmpty());
+    }
+
+    /**
+     * Counted occurrences of entries that are dropped from the index are kept until they are taken
+     */
+    @Test
+    public void evictedPendingReports() {
+        InMemoryKeyValueStore reportStore = new InMemoryKeyValueStore();
+        CrashDeduplicator deduplicator = new CrashDeduplicator(60000, clock, reportStore);
+        deduplicator.onOccurrence("f0");
+        deduplicator.onOccurrence("f0");
+        deduplicator.setPendingReport("f0", "report");
+        Assert.assertFalse(deduplicator.hasEvictedReports());
+        Assert.assertEquals("report", reportStore.values.get("f0"));
+
+        for (int a = 1; a <= CrashDeduplicator.MAX_ENTRIES; a++) {
+            deduplicator.onOccurrence("f" + a);
+        }
+        Assert.assertTrue(deduplicator.hasEvictedReports());
+        Assert.assertTrue(reportStore.values.isEmpty());
+
+        List<CrashDeduplicator.PendingReport> pending = deduplicator.takePendingReports();
+        Assert.assertEquals(1, pending.size());
+        Assert.assertEquals("report", pending.get(0).report);
+        Assert.assertEquals(1, pending.get(0).occurrences);
+        Assert.assertFalse(deduplicator.hasEvictedReports());
+    }
+
+    /**
+     * A clock that moved back ends the window instead of extending it
+     */
+    @Test
+    public void clockMovedBack() {
+        CrashDeduplicator deduplicator = new CrashDeduplicator(60000, clock);
+
+        Assert.assertEquals(1, deduplicator.onOccurrence("a"));
+        Assert.assertEquals(0, deduplicator.onOccurrence("a"));
+        nowMs -= 1000;
+        Assert.assertEquals(2, deduplicator.onOccurrence("a"));
+    }
+
+    /**
+     * Windows and counts continue after the index is restored, the kept texts are restored from the report store
+     */
+    @Test
+    public void storage() {
+        InMemoryKeyValueStore reportStore = new InMemoryKeyValueStore();
+        CrashDeduplicator deduplicator = new CrashDeduplicator(60000, clock, reportStore);
+        deduplicator.onOccurrence("a");
+        deduplicator.onOccurrence("a");
+        deduplicator.onOccurrence("b");
+        deduplicator.onOccurrence("b");
+        deduplicator.setPendingReport("b", "java.lang.Exception: a:b\n\tat a.b(C.java:1)\n");
+
+        String stored = deduplicator.toStorageString();
+        Assert.assertEquals("a:" + nowMs + ":1\nb:" + nowMs + ":1", stored);
+        Assert.assertEquals("java.lang.Exception: a:b\n\tat a.b(C.java:1)\n", reportStore.values.get("b"));
+
+        CrashDeduplicator restored = new CrashDeduplicator(60000, clock, reportStore);
+        restored.load(stored + "\nbroken\nc:x:1\nd:1:1:%zz");
+        Assert.assertEquals(2, restored.size());
+        Assert.assertEquals(0, restored.onOccurrence("a"));
+
+        nowMs += 60000;
+        Assert.assertEquals(3, restored.onOccurrence("a"));
+
+        List<CrashDeduplicator.PendingReport> pending = restored.takePendingReports();
+        Assert.assertEquals(1, pending.size());
+        Assert.assertEquals("java.lang.Exception: a:b\n\tat a.b(C.java:1)\n", pending.get(0).report);
+        Assert.assertEquals(1, pending.get(0).occurrences);
+        Assert.assertTrue(reportStore.values.isEmpty());
+    }
+
+    /**
+     * Texts saved as part of the index by earlier versions are moved to the report store,
+     * texts whose count was not saved are removed
+     */
+    @Test
+    public void storageMigration() {
+        InMemoryKeyValueStore reportStore = new InMemoryKeyValueStore();
+        reportStore.values.put("b", "lost");
+
+        CrashDeduplicator restored = new CrashDeduplicator(60000, clock, reportStore);
+        restored.load("a:" + nowMs + ":2:java.lang.Exception%3A+a\nb:" + nowMs + ":0");
+        Assert.assertEquals(2, restored.size());
+        Assert.assertEquals("java.lang.Exception: a", reportStore.values.get("a"));
+        Assert.assertNull(reportStore.values.get("b"));
+        Assert.assertTrue(restored.shouldPersist(true));
+        Assert.assertEquals("a:" + nowMs + ":2\nb:" + nowMs + ":0", restored.toStorageString());
+
+        //a new window reports the kept text with the new occurrence
+        nowMs += 60000;
+        Assert.assertEquals(3, restored.onOccurrence("a"));
+        Assert.assertTrue(reportStore.values.isEmpty());
+    }
+
+    /**
+     * Reports are saved right away, counted occurrences at most once per interval
+     */
+    @Test
+    public void shouldPersist() {
+        CrashDeduplicator deduplicator = new CrashDeduplicator(60000, clock);
+        Assert.assertFalse(deduplicator.shouldPersist(true));
+
+        deduplicator.onOccurrence("a");
+        Assert.assertTrue(deduplicator.shouldPersist(true));
+
+        deduplicator.onOccurrence("a");
+        Assert.assertFalse(deduplicator.shouldPersist(false));
+        nowMs += CrashDeduplicator.PERSIST_INTERVAL_MS;
+        Assert.assertTrue(deduplicator.shouldPersist(false));
+        Assert.assertFalse(deduplicator.shouldPersist(false));
+    }
+
+    @Test
+    public void maxEntries() {
+        CrashDeduplicator deduplicator = new CrashDeduplicator(60000, clock);
+        for (int a = 0; a < CrashDeduplicator.MAX_ENTRIES + 10; a++) {
+            deduplicator.onOccurrence("f" + a);
+        }
+        Assert.assertEquals(CrashDeduplicator.MAX_ENTRIES, deduplicator.size());
+        //the oldest ones were dropped
+        Assert.assertEquals(1, deduplicator.onOccurrence("f0"));
+    }
+
+    /**
+     * The same throw site gives the same fingerprint regardless of the message, other sites and causes differ
+     */
+    @Test
+    public void fingerprint() {
+        Throwable[] sameSite = new Throwable[2];
+        for (int a = 0; a < sameSite.length; a++) {
+            sameSite[a] = throwFrom("id " + a);
+        }
+        Throwable otherSite = throwFrom("id 0");
+
+        Assert.assertEquals(CrashDeduplicator.fingerprint(sameSite[0]), CrashDeduplicator.fingerprint(sameSite[1]));
+        Assert.assertNotEquals(CrashDeduplicator.fingerprint(sameSite[0]), CrashDeduplicator.fingerprint(otherSite));
+
+        Throwable withCause = new RuntimeException(sameSite[0]);
+        withCause.setStackTrace(sameSite[0].getStackTrace());
+        Assert.assertNotEquals(CrashDeduplicator.fingerprint(sameSite[0]), CrashDeduplicator.fingerprint(withCause));
+    }
+
+    @Test
+    public void normalizeName() {
+        Assert.assertEquals("a.Main$", CrashDeduplicator.normalizeName("a.Main$12"));
+        Assert.assertEquals("a.Main$Inner$", CrashDeduplicator.normalizeName("a.Main$Inner$3"));
+        Assert.assertEquals("lambda$onCreate$", CrashDeduplicator.normalizeName("lambda$onCreate$0"));
+        Assert.assertEquals("a.Main$$Lambda", CrashDeduplicator.normalizeName("a.Main$$Lambda$4/0x1234"));
+        Assert.assertEquals("a.Main$$ExternalSynthetic", CrashDeduplicator.normalizeName("a.Main$$ExternalSyntheticLambda0"));
+        Assert.assertEquals("run", CrashDeduplicator.normalizeName("run"));
+    }
+}
@@ -0,0 +1,116 @@
+package ly.count.android.sdk;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CrashDumpRequestTests {
+    Base64Codec base64 = new Base64Codec() {
+        @Override public String encodeToString(byte[] value) {
+            return Base64.getEncoder().encodeToString(value);
+        }
+
+        @Override public byte[] decode(String value) {
+            return Base64.getDecoder().decode(value);
+        }
+    };
+
+    File dumpFile;
+    byte[] dump;
+
+    @Before
+    public void setUp() throws IOException {
+        //not a multiple of the chunk size, so the last chunk is padded
+        dump = new byte[CrashDumpRequest.CHUNK_SIZE * 3 + 7];
+        new Random(42).nextBytes(dump);
+
+        dumpFile = File.createTempFile("crash", ".dmp");
+        FileOutputStream out = new FileOutputStream(dumpFile);
+        out.write(dump);
+        out.close();
+    }
+
+    @After
+    public void tearDown() {
+        dumpFile.delete();
+    }
+
+    String request(String crashJson) {
+        return "app_key=abc&crash=" + UtilsNetworking.urlEncodeString(crashJson)
+            + "&" + CrashDumpRequest.DUMP_PATH_KEY + "=" + UtilsNetworking.urlEncodeString(dumpFile.getAbsolutePath())
+            + "&device_id=d1";
+    }
+
+    static String sha256(String value) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        return UtilsNetworking.bytesToHex(digest.digest(value.getBytes("UTF-8")));
+    }
+
+    @Test
+    public void dumpPathFromRequest() {
+        Assert.assertEquals(dumpFile.getAbsolutePath(), CrashDumpRequest.dumpPathFromRequest(request("{}")));
+        Assert.assertNull(CrashDumpRequest.dumpPathFromRequest("app_key=abc&crash=%7B%7D"));
+        Assert.assertNull(CrashDumpRequest.dumpPathFromRequest("app_key=abc&crash_dump="));
+        Assert.assertNull(CrashDumpRequest.fromRequest("app_key=abc&crash=%7B%7D", base64));
+    }
+
+    /**
+     * The dump is added as the '_error' field of the crash object, the dump parameter is left out
+     * and the checksum is the same as if the body had been built as a string
+     */
+    @Test
+    public void body() throws Exception {
+        CrashDumpRequest request = CrashDumpRequest.fromRequest(request("{\"_os\":\"Android\",\"_native_cpp\":true}"), base64);
+        Assert.assertNotNull(request);
+        Assert.assertEquals(dumpFile.getAbsolutePath(), request.getDumpFile().getAbsolutePath());
+
+        String expectedBody = "app_key=abc&crash="
+            + UtilsNetworking.urlEncodeString("{\"_os\":\"Android\",\"_native_cpp\":true,\"_error\":\"" + Base64.getEncoder().encodeToString(dump) + "\"}")
+            + "&device_id=d1";
+
+        CrashDumpRequest.Checksum checksum = request.checksum("salt");
+        Assert.assertEquals(sha256(expectedBody + "salt"), checksum.value);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        request.writeTo(out, checksum.value);
+        String body = out.toString("US-ASCII");
+
+        Assert.assertEquals(expectedBody + "&checksum256=" + checksum.value, body);
+        Assert.assertEquals(body.length(), checksum.bodyLength);
+    }
+
+    /**
+     * Without a salt the checksum is calculated the same way as for other requests
+     */
+    @Test
+    public void emptyCrashObject() throws Exception {
+        CrashDumpRequest request = CrashDumpRequest.fromRequest(request("{}"), base64);
+        Assert.assertNotNull(request);
+
+        CrashDumpRequest.Checksum checksum = request.checksum(null);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        request.writeTo(out, checksum.value);
+        String body = out.toString("US-ASCII");
+        String withoutChecksum = body.substring(0, body.indexOf("&checksum256="));
+
+        Assert.assertEquals(sha256(withoutChecksum + null), checksum.value);
+        String crash = URLDecoder.decode(withoutChecksum.substring("app_key=abc&crash=".length(), withoutChecksum.indexOf("&device_id=")), "UTF-8");
+        Assert.assertEquals("{\"_error\":\"" + Base64.getEncoder().encodeToString(dump) + "\"}", crash);
+    }
+
+    @Test
+    public void urlEncodeBase64() {
+        byte[] out = new byte[64];
+        int length = CrashDumpRequest.urlEncodeBase64("ab+/c=", out);
+        Assert.assertEquals("ab%2B%2Fc%3D", new String(out, 0, length));
+    }
+}
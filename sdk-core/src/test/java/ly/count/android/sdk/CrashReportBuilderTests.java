@@ -0,0 +1,144 @@
+package ly.count.android.sdk;
+
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CrashReportBuilderTests {
+    static String decode(String encoded) throws UnsupportedEncodingException {
+        return URLDecoder.decode(encoded, "UTF-8");
+    }
+
+    /**
+     * Fields are written as URL encoded JSON, the request parameters are put in front
+     */
+    @Test
+    public void fields() throws UnsupportedEncodingException {
+        CrashReportBuilder report = new CrashReportBuilder(4096);
+        report.stringField("_os", "Android");
+        report.stringFieldIfNotEmpty("_empty", "");
+        report.stringFieldIfNotEmpty("_null", null);
+        Assert.assertTrue(report.beginObject("_custom"));
+        report.valueField("int", 5);
+        report.valueField("double", 1.5d);
+        report.valueField("bool", true);
+        report.valueField("nan", Double.NaN);
+        report.valueField("object", new Object());
+        report.endObject();
+        report.stringField("_error", "a \"quoted\" \\ line\n\tat x");
+
+        String request = report.build("app_key=abc&crash=");
+        Assert.assertTrue(request.startsWith("app_key=abc&crash=%7B"));
+        Assert.assertEquals("{\"_os\":\"Android\",\"_custom\":{\"int\":5,\"double\":1.5,\"bool\":true},\"_error\":\"a \\\"quoted\\\" \\\\ line\\n\\tat x\"}",
+            decode(request.substring("app_key=abc&crash=".length())));
+        Assert.assertFalse(report.isTruncated());
+    }
+
+    /**
+     * The encoding is the same as the one of 'URLEncoder', also for characters outside of ASCII
+     */
+    @Test
+    public void encoding() throws UnsupportedEncodingException {
+        String value = "az AZ 09 .-*_ ~!@#$%^&()+=[]{}|;:'<>,?/ \u00fc\u20ac\ud83d\ude00";
+        CrashReportBuilder report = new CrashReportBuilder(4096);
+        report.stringField("k", value);
+
+        Assert.assertEquals(URLEncoder.encode("{\"k\":\"" + value + "\"}", "UTF-8"), report.build(""));
+    }
+
+    @Test
+    public void controlCharacters() throws UnsupportedEncodingException {
+        CrashReportBuilder report = new CrashReportBuilder(4096);
+        report.stringField("k", "\u0001\r\b\f\u2028");
+        Assert.assertEquals("{\"k\":\"\\u0001\\r\\b\\f\\u2028\"}", decode(report.build("")));
+    }
+
+    /**
+     * A stack trace streamed through a PrintWriter is cut off after the given amount of characters
+     */
+    @Test
+    public void streamedField() throws UnsupportedEncodingException {
+        Exception exception = new Exception("Some message");
+
+        CrashReportBuilder report = new CrashReportBuilder(64 * 1024);
+        Writer writer = report.beginStreamedField("_error", 33);
+        PrintWriter printWriter = new PrintWriter(writer);
+        exception.printStackTrace(printWriter);
+        printWriter.flush();
+        report.endStreamedField();
+        report.stringField("_logs", "crumb\n");
+
+        Assert.assertTrue(report.isTruncated());
+        Assert.assertEquals("{\"_error\":\"java.lang.Exception: Some message\",\"_logs\":\"crumb\\n\"}", decode(report.build("")));
+    }
+
+    /**
+     * Surrogate pairs are not split when a streamed value is cut off
+     */
+    @Test
+    public void streamedSurrogatePairs() throws Exception {
+        CrashReportBuilder report = new CrashReportBuilder(4096);
+        Writer writer = report.beginStreamedField("k", 3);
+        writer.write("a\ud83d\ude00\ud83d\ude00");
+        report.endStreamedField();
+
+        Assert.assertEquals("{\"k\":\"a\ud83d\ude00\"}", decode(report.build("")));
+    }
+
+    /**
+     * Fields that do not fit are left out, the report stays valid JSON
+     */
+    @Test
+    public void capacity() throws Exception {
+        CrashReportBuilder report = new CrashReportBuilder(150);
+        Assert.assertTrue(report.stringField("a", "short"));
+        Assert.assertFalse(report.stringField("b", "a value that is far too long for the buffer, a value that is far too long for the buffer"));
+        Assert.assertTrue(report.beginObject("c"));
+        report.valueField("d", 1);
+
+        Writer writer = report.beginStreamedField("e", 1000);
+        for (int a = 0; a < 1000; a++) {
+            writer.write("x");
+        }
+        report.endStreamedField();
+
+        String decoded = decode(report.build(""));
+        Assert.assertTrue(report.isTruncated());
+        Assert.assertTrue(decoded.startsWith("{\"a\":\"short\",\"c\":{\"d\":1,\"e\":\"xxx"));
+        Assert.assertTrue(decoded.endsWith("x\"}}"));
+        Assert.assertTrue(report.length() <= 150);
+    }
+
+    /**
+     * Request parameters longer than the reserved space are still put in front
+     */
+    @Test
+    public void longPrefix() throws UnsupportedEncodingException {
+        StringBuilder prefix = new StringBuilder();
+        for (int a = 0; a < CrashReportBuilder.PREFIX_RESERVE + 10; a++) {
+            prefix.append('p');
+        }
+
+        CrashReportBuilder report = new CrashReportBuilder(100);
+        report.stringField("a", "b");
+        Assert.assertEquals(prefix + "%7B%22a%22%3A%22b%22%7D", report.build(prefix.toString()));
+    }
+
+    /**
+     * A reused builder starts from an empty report
+     */
+    @Test
+    public void reset() throws UnsupportedEncodingException {
+        CrashReportBuilder report = new CrashReportBuilder(100);
+        report.stringField("a", "b");
+        report.build("x");
+
+        report.reset();
+        report.stringField("c", "d");
+        Assert.assertEquals("{\"c\":\"d\"}", decode(report.build("")));
+    }
+}
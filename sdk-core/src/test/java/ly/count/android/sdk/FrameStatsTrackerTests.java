@@ -0,0 +1,122 @@
+package ly.count.android.sdk;
+
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FrameStatsTrackerTests {
+    static final long MS = 1000000L;
+
+    String viewName;
+    FrameStatsTracker tracker;
+    long frameTimeNs;
+
+    @Before
+    public void setUp() {
+        viewName = null;
+        frameTimeNs = 1000 * MS;
+        tracker = new FrameStatsTracker(new FrameStatsTracker.ViewNameProvider() {
+            @Override public String getCurrentViewName() {
+                return viewName;
+            }
+        });
+        //first frame only sets the reference timestamp
+        tracker.onFrame(frameTimeNs);
+    }
+
+    void frame(long durationMs) {
+        frameTimeNs += durationMs * MS;
+        tracker.onFrame(frameTimeNs);
+    }
+
+    /**
+     * Frames are counted for the current view, slow and frozen frames are counted separately
+     */
+    @Test
+    public void slowAndFrozenFrames() {
+        viewName = "main";
+        for (int a = 0; a < 97; a++) {
+            frame(16);
+        }
+        frame(33);
+        frame(50);
+        frame(800);
+
+        List<FrameStatsTracker.FrameStats> stats = tracker.drain();
+        Assert.assertEquals(1, stats.size());
+
+        FrameStatsTracker.FrameStats main = stats.get(0);
+        Assert.assertEquals("main", main.viewName);
+        Assert.assertEquals(100, main.frames);
+        Assert.assertEquals(2, main.slowFrames);
+        Assert.assertEquals(1, main.frozenFrames);
+        Assert.assertEquals((97 * 16 + 33 + 50 + 800) * MS, main.totalNs);
+
+        Assert.assertEquals(16, main.percentileMs(0.5));
+        Assert.assertEquals(16, main.percentileMs(0.9));
+        Assert.assertTrue(main.percentileMs(0.99) >= 50 && main.percentileMs(0.99) < 64);
+        Assert.assertTrue(main.percentileMs(1.0) >= 800 && main.percentileMs(1.0) < 1024);
+
+        Assert.assertTrue(tracker.drain().isEmpty());
+    }
+
+    /**
+     * Frames go to the view that is current when they are reported, frames without a view are ignored
+     */
+    @Test
+    public void framesPerView() {
+        frame(16);
+        viewName = "a";
+        frame(16);
+        frame(16);
+        viewName = "b";
+        frame(40);
+        viewName = "a";
+        frame(16);
+
+        List<FrameStatsTracker.FrameStats> stats = tracker.drain();
+        Assert.assertEquals(2, stats.size());
+        for (FrameStatsTracker.FrameStats viewStats : stats) {
+            if ("a".equals(viewStats.viewName)) {
+                Assert.assertEquals(3, viewStats.frames);
+                Assert.assertEquals(0, viewStats.slowFrames);
+            } else {
+                Assert.assertEquals("b", viewStats.viewName);
+                Assert.assertEquals(1, viewStats.frames);
+                Assert.assertEquals(1, viewStats.slowFrames);
+            }
+        }
+    }
+
+    /**
+     * After a reset the time until the next frame is not counted, for example the time spent in the background
+     */
+    @Test
+    public void framesStarted() {
+        viewName = "main";
+        frame(16);
+        tracker.onFramesStarted();
+        frame(60000);
+        frame(16);
+
+        List<FrameStatsTracker.FrameStats> stats = tracker.drain();
+        Assert.assertEquals(1, stats.size());
+        Assert.assertEquals(2, stats.get(0).frames);
+        Assert.assertEquals(0, stats.get(0).frozenFrames);
+    }
+
+    /**
+     * A timestamp that is not after the previous one is not a frame
+     */
+    @Test
+    public void nonIncreasingTimestamps() {
+        viewName = "main";
+        tracker.onFrame(frameTimeNs);
+        tracker.onFrame(frameTimeNs - MS);
+        frame(16);
+
+        List<FrameStatsTracker.FrameStats> stats = tracker.drain();
+        Assert.assertEquals(1, stats.get(0).frames);
+    }
+}
@@ -0,0 +1,201 @@
+package ly.count.android.sdk;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MainThreadWatchdogTests {
+    static final long MS = 1000000L;
+
+    long nowNs;
+    List<Runnable> mainQueue;
+    StackTraceElement[] mainStack;
+    List<MainThreadWatchdog.Stall> detected;
+    List<MainThreadWatchdog.Stall> ended;
+    MainThreadWatchdog watchdog;
+    //if false, detected stalls are not marked as reported
+    boolean reportStalls;
+
+    @Before
+    public void setUp() {
+        nowNs = 1000 * MS;
+        mainQueue = new ArrayList<>();
+        mainStack = stack("a.Worker", "block");
+        detected = new ArrayList<>();
+        ended = new ArrayList<>();
+        reportStalls = true;
+
+        Clock clock = new Clock() {
+            @Override public long currentTimeMillis() {
+                return nowNs / MS;
+            }
+
+            @Override public long nanoTime() {
+                return nowNs;
+            }
+        };
+
+        MainThreadWatchdog.MainThread mainThread = new MainThreadWatchdog.MainThread() {
+            @Override public void post(Runnable runnable) {
+                mainQueue.add(runnable);
+            }
+
+            @Override public StackTraceElement[] getStackTrace() {
+                return mainStack;
+            }
+        };
+
+        watchdog = new MainThreadWatchdog(mainThread, new MainThreadWatchdog.StallListener() {
+            @Override public void onStallDetected(MainThreadWatchdog.Stall stall) {
+                detected.add(stall);
+                if (reportStalls) {
+                    watchdog.markReported(stall.fingerprint);
+                }
+            }
+
+            @Override public void onStallEnded(MainThreadWatchdog.Stall stall) {
+                ended.add(stall);
+            }
+        }, clock, 2000);
+    }
+
+    static StackTraceElement[] stack(String className, String methodName) {
+        return new StackTraceElement[] {
+            new StackTraceElement(className, methodName, "Worker.java", 10),
+            new StackTraceElement("android.os.Looper", "loop", "Looper.java", 200)
+        };
+    }
+
+    /**
+     * Lets the fake main thread run what has been posted to it
+     */
+    void runMainThread() {
+        List<Runnable> queue = new ArrayList<>(mainQueue);
+        mainQueue.clear();
+        for (Runnable runnable : queue) {
+            runnable.run();
+        }
+    }
+
+    void advance(long ms) {
+        nowNs += ms * MS;
+    }
+
+    @Test
+    public void checkInterval() {
+        Assert.assertEquals(500, watchdog.checkIntervalMs);
+        Assert.assertEquals(2000 * MS, watchdog.thresholdNs);
+    }
+
+    /**
+     * A responsive main thread does not cause stalls
+     */
+    @Test
+    public void responsiveMainThread() {
+        for (int a = 0; a < 10; a++) {
+            watchdog.check();
+            Assert.assertEquals(1, mainQueue.size());
+            advance(500);
+            runMainThread();
+        }
+
+        Assert.assertTrue(detected.isEmpty());
+        Assert.assertTrue(ended.isEmpty());
+    }
+
+    /**
+     * A blocked main thread is detected once the threshold has passed, the stall ends with its full duration
+     */
+    @Test
+    public void stallDetectedAndEnded() {
+        watchdog.check();
+
+        advance(1500);
+        watchdog.check();
+        Assert.assertTrue(detected.isEmpty());
+
+        advance(500);
+        watchdog.check();
+        Assert.assertEquals(1, detected.size());
+        Assert.assertSame(mainStack, detected.get(0).stack);
+        Assert.assertFalse(detected.get(0).duplicate);
+        Assert.assertEquals(2000 * MS, detected.get(0).durationNs);
+
+        //still blocked, not detected again
+        advance(1000);
+        watchdog.check();
+        Assert.assertEquals(1, detected.size());
+        Assert.assertTrue(ended.isEmpty());
+
+        advance(500);
+        runMainThread();
+        advance(500);
+        watchdog.check();
+        Assert.assertEquals(1, ended.size());
+        Assert.assertEquals(3500 * MS, ended.get(0).durationNs);
+
+        //a new heartbeat was posted
+        Assert.assertEquals(1, mainQueue.size());
+    }
+
+    /**
+     * Stalls with the same stack are marked as duplicates, other stacks are not
+     */
+    @Test
+    public void duplicateStalls() {
+        for (int a = 0; a < 3; a++) {
+            watchdog.check();
+            advance(2000);
+            watchdog.check();
+            runMainThread();
+        }
+        mainStack = stack("a.Worker", "otherBlock");
+        watchdog.check();
+        advance(2000);
+        watchdog.check();
+
+        Assert.assertEquals(4, detected.size());
+        Assert.assertFalse(detected.get(0).duplicate);
+        Assert.assertTrue(detected.get(1).duplicate);
+        Assert.assertTrue(detected.get(2).duplicate);
+        Assert.assertFalse(detected.get(3).duplicate);
+        Assert.assertEquals(detected.get(0).fingerprint, detected.get(2).fingerprint);
+        Assert.assertNotEquals(detected.get(0).fingerprint, detected.get(3).fingerprint);
+    }
+
+    /**
+     * A stall that was not reported, for example because of missing consent, does not make the next one a duplicate
+     */
+    @Test
+    public void unreportedStall() {
+        reportStalls = false;
+        watchdog.check();
+        advance(2000);
+        watchdog.check();
+        runMainThread();
+
+        reportStalls = true;
+        watchdog.check();
+        advance(2000);
+        watchdog.check();
+        runMainThread();
+
+        watchdog.check();
+        advance(2000);
+        watchdog.check();
+
+        Assert.assertEquals(3, detected.size());
+        Assert.assertFalse(detected.get(0).duplicate);
+        Assert.assertFalse(detected.get(1).duplicate);
+        Assert.assertTrue(detected.get(2).duplicate);
+    }
+
+    @Test
+    public void fingerprint() {
+        Assert.assertEquals(MainThreadWatchdog.fingerprint(stack("a.B", "c")), MainThreadWatchdog.fingerprint(stack("a.B", "c")));
+        Assert.assertNotEquals(MainThreadWatchdog.fingerprint(stack("a.B", "c")), MainThreadWatchdog.fingerprint(stack("a.B", "d")));
+        Assert.assertEquals(MainThreadWatchdog.fingerprint(null), MainThreadWatchdog.fingerprint(new StackTraceElement[0]));
+    }
+}
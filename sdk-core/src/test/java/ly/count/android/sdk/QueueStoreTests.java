@@ -0,0 +1,469 @@
+package ly.count.android.sdk;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class QueueStoreTests {
+    static final String[] eKeys = new String[] { "eventKey1", "eventKey2", "eventKey3", "eventKey4" };
+    static final String[] requestEntries = new String[] { "blah", "blah1", "blah2", "123", "456" };
+
+    InMemoryKeyValueStore kvs;
+    QueueStore store;
+
+    @Before
+    public void setUp() {
+        kvs = new InMemoryKeyValueStore();
+        store = new QueueStore(kvs, PlatformLog.NONE, false);
+    }
+
+    /**
+     * Records an event with only a key and the current time
+     */
+    void recordEvent(String eventKey) {
+        UtilsTime.Instant instant = UtilsTime.getCurrentInstant();
+        store.recordEventToEventQueue(eventKey, null, 1, 0.0d, 10.0d, instant.timestampMs, instant.hour, instant.dow, "id", null, null, null);
+    }
+
+    /**
+     * Records the given event, only its string segmentation is used
+     */
+    void recordEvent(Event e) {
+        Map<String, Object> segmentation = e.segmentation == null ? null : new HashMap<String, Object>(e.segmentation);
+        store.recordEventToEventQueue(e.key, segmentation, e.count, e.sum, e.dur, e.timestamp, e.hour, e.dow, e.id, e.pvid, e.cvid, e.peid);
+    }
+
+    /**
+     * Creates an event with the given key, the other fields are filled with fixed values
+     */
+    Event createEvent(String eventKey) {
+        Event e = new Event();
+        e.key = eventKey;
+        e.hour = 3;
+        e.dow = 5;
+        e.id = "id_" + eventKey;
+        e.cvid = "a";
+        e.pvid = "t";
+        e.peid = "o";
+        return e;
+    }
+
+    /**
+     * A cleared store returns empty arrays, not 'null'
+     */
+    @Test
+    public void initialState() {
+        Assert.assertArrayEquals(new String[0], store.getRequests());
+        Assert.assertArrayEquals(new String[0], store.getEvents());
+        Assert.assertEquals(new ArrayList<Event>(0), store.getEventList());
+    }
+
+    /**
+     * Adding and removing the same request produces an empty queue
+     */
+    @Test
+    public void getRequests_AddRemoveRequest() {
+        store.addRequest(requestEntries[0], false);
+        store.removeRequest(requestEntries[0]);
+        Assert.assertArrayEquals(new String[0], store.getRequests());
+    }
+
+    @Test
+    public void getRequests_AddTwoEntries() {
+        store.addRequest(requestEntries[0], false);
+        Assert.assertArrayEquals(new String[] { requestEntries[0] }, store.getRequests());
+        store.addRequest(requestEntries[1], false);
+        Assert.assertArrayEquals(new String[] { requestEntries[0], requestEntries[1] }, store.getRequests());
+    }
+
+    @Test
+    public void removeRequest_notFirstConn() {
+        store.addRequest(requestEntries[0], false);
+        store.addRequest(requestEntries[1], false);
+        store.removeRequest(requestEntries[1]);
+        Assert.assertArrayEquals(new String[] { requestEntries[0] }, store.getRequests());
+    }
+
+    @Test
+    public void removeRequest_onlyRemovesFirstMatchingOne() {
+        store.addRequest(requestEntries[0], false);
+        store.addRequest(requestEntries[1], false);
+        store.addRequest(requestEntries[0], false);
+        store.removeRequest(requestEntries[0]);
+        Assert.assertArrayEquals(new String[] { requestEntries[1], requestEntries[0] }, store.getRequests());
+    }
+
+    /**
+     * Removing a non existing request should cause no problems or changes
+     */
+    @Test
+    public void removeRequest_nonExisting() {
+        store.addRequest(requestEntries[0], false);
+        store.addRequest(requestEntries[1], false);
+        store.removeRequest(requestEntries[2]);
+        Assert.assertArrayEquals(new String[] { requestEntries[0], requestEntries[1] }, store.getRequests());
+    }
+
+    @Test
+    public void deleteOldestRequest() {
+        store.addRequest(requestEntries[0], false);
+        store.addRequest(requestEntries[1], false);
+        store.addRequest(requestEntries[2], false);
+        store.deleteOldestRequest();
+        Assert.assertArrayEquals(new String[] { requestEntries[1], requestEntries[2] }, store.getRequests());
+    }
+
+    /**
+     * The oldest request is removed whenever the limit would be exceeded
+     */
+    @Test
+    public void addRequest_MaxQueueLimit() {
+        store.maxRequestQueueSize = 2;
+        store.addRequest(requestEntries[0], false);
+        store.addRequest(requestEntries[1], false);
+        Assert.assertArrayEquals(new String[] { requestEntries[0], requestEntries[1] }, store.getRequests());
+
+        store.addRequest(requestEntries[2], false);
+        Assert.assertArrayEquals(new String[] { requestEntries[1], requestEntries[2] }, store.getRequests());
+
+        store.addRequest(requestEntries[3], false);
+        store.addRequest(requestEntries[4], false);
+        Assert.assertArrayEquals(new String[] { requestEntries[3], requestEntries[4] }, store.getRequests());
+    }
+
+    /**
+     * Adding an event and then removing the whole list of events results in an empty array, not 'null'
+     */
+    @Test
+    public void getEvents_addEventRemoveAll() {
+        recordEvent(eKeys[0]);
+        store.removeEvents(store.getEventList());
+        Assert.assertArrayEquals(new String[0], store.getEvents());
+    }
+
+    @Test
+    public void getEvents_addTwoEntries() throws JSONException {
+        recordEvent(eKeys[0]);
+        recordEvent(eKeys[1]);
+
+        final String[] eventJSONStrings = store.getEvents();
+        Assert.assertEquals(eKeys[0], new JSONObject(eventJSONStrings[0]).getString("key"));
+        Assert.assertEquals(eKeys[1], new JSONObject(eventJSONStrings[1]).getString("key"));
+    }
+
+    @Test
+    public void recordEventToEventQueue() {
+        final Event event = createEvent(eKeys[3]);
+        event.segmentation = new HashMap<>(2);
+        event.segmentation.put("segKey1", "segValue1");
+        event.segmentation.put("segKey2", "segValue2");
+
+        recordEvent(event);
+
+        final List<Event> addedEvents = store.getEventList();
+        Assert.assertEquals(1, addedEvents.size());
+        final Event addedEvent = addedEvents.get(0);
+        Assert.assertEquals(event, addedEvent);
+        Assert.assertEquals(event.count, addedEvent.count);
+        Assert.assertEquals(event.sum, addedEvent.sum, 0.0000001);
+    }
+
+    /**
+     * Events are ordered by their timestamp
+     */
+    @Test
+    public void getEventList_sortingOfMultipleEvents() {
+        final Event event1 = createEvent(eKeys[0]);
+        event1.timestamp = 100000;
+        final Event event2 = createEvent(eKeys[1]);
+        event2.timestamp = 40000;
+        final Event event3 = createEvent(eKeys[2]);
+        event3.timestamp = 70000;
+
+        recordEvent(event1);
+        recordEvent(event2);
+        recordEvent(event3);
+        Assert.assertEquals(Arrays.asList(event2, event3, event1), store.getEventList());
+    }
+
+    /**
+     * Stored entries that are not valid JSON or have no key are skipped
+     */
+    @Test
+    public void getEventList_badEntriesStored() {
+        final Event event1 = createEvent(eKeys[0]);
+        event1.timestamp = 100000;
+        final Event event2 = createEvent(eKeys[1]);
+        event2.timestamp = 40000;
+
+        kvs.putString(QueueStore.EVENTS_PREFERENCE, event1.toJSON().toString() + ":::blah:::{\"key\":null}:::" + event2.toJSON().toString(), true);
+        Assert.assertEquals(Arrays.asList(event2, event1), store.getEventList());
+    }
+
+    /**
+     * Only the given events are removed, events added later are kept
+     */
+    @Test
+    public void removeEvents() {
+        final Event event1 = createEvent(eKeys[1]);
+        event1.timestamp = 40000;
+        final Event event2 = createEvent(eKeys[2]);
+        event2.timestamp = 70000;
+        final Event event3 = createEvent(eKeys[3]);
+        event3.timestamp = 100000;
+
+        recordEvent(event1);
+        recordEvent(event2);
+        final List<Event> eventsToRemove = store.getEventList();
+        recordEvent(event3);
+
+        store.removeEvents(eventsToRemove);
+        Assert.assertEquals(Arrays.asList(event3), store.getEventList());
+    }
+
+    @Test
+    public void eventQueueSize() {
+        store.setEventData("");
+        Assert.assertEquals(0, QueueStore.storedItemCount(store.getEventQueueRaw()));
+        store.setEventData("a" + QueueStore.DELIMITER + "b");
+        Assert.assertEquals(2, QueueStore.storedItemCount(store.getEventQueueRaw()));
+    }
+
+    /**
+     * Without events the request parameter is an empty array
+     */
+    @Test
+    public void getEventsForRequestAndEmptyEventQueueWithNoEvents() throws UnsupportedEncodingException {
+        store.setEventData("");
+        Assert.assertEquals(URLEncoder.encode("[]", "UTF-8"), store.getEventsForRequestAndEmptyEventQueue());
+        Assert.assertEquals(0, store.getEvents().length);
+    }
+
+    @Test
+    public void getEventsForRequestAndEmptyEventQueueWithSimpleEvents() throws UnsupportedEncodingException {
+        final Event event1 = createEvent(eKeys[0]);
+        store.addEvent(event1);
+        final Event event2 = createEvent(eKeys[1]);
+        store.addEvent(event2);
+
+        final String expected = URLEncoder.encode("[" + event1.toJSON().toString() + "," + event2.toJSON().toString() + "]", "UTF-8");
+        Assert.assertEquals(expected, store.getEventsForRequestAndEmptyEventQueue());
+        Assert.assertEquals(0, store.getEvents().length);
+    }
+
+    @Test
+    public void storedItemCount() {
+        Assert.assertEquals(0, QueueStore.storedItemCount(""));
+        Assert.assertEquals(1, QueueStore.storedItemCount("a"));
+        Assert.assertEquals(3, QueueStore.storedItemCount("a:::b:::c"));
+    }
+
+    @Test
+    public void addAndRemoveRequests() {
+        store.addRequest("a=1", false);
+        store.addRequest("b=2", true);
+        store.addRequest("", false);
+
+        Assert.assertArrayEquals(new String[] { "a=1", "b=2" }, store.getRequests());
+        Assert.assertEquals("a=1:::b=2", kvs.values.get(QueueStore.REQUEST_PREFERENCE));
+
+        store.removeRequest("a=1");
+        Assert.assertArrayEquals(new String[] { "b=2" }, store.getRequests());
+
+        store.replaceRequestList(Arrays.asList("c=3", "d=4"));
+        Assert.assertEquals(2, QueueStore.storedItemCount(store.getRequestQueueRaw()));
+    }
+
+    /**
+     * When the queue is full, the oldest request is dropped
+     */
+    @Test
+    public void requestQueueLimit() {
+        SdkMetrics metrics = new SdkMetrics();
+        metrics.enabled = true;
+        store.metrics = metrics;
+        store.maxRequestQueueSize = 2;
+
+        store.addRequest("a=1", false);
+        store.addRequest("b=2", false);
+        store.addRequest("c=3", false);
+
+        Assert.assertArrayEquals(new String[] { "b=2", "c=3" }, store.getRequests());
+        Assert.assertEquals(1, metrics.requestsDropped.sum());
+    }
+
+    /**
+     * Events are returned ordered by timestamp and the request parameter empties the queue
+     */
+    @Test
+    public void eventQueue() {
+        Map<String, Object> segmentation = new HashMap<>();
+        segmentation.put("s", "v");
+        segmentation.put("i", 5);
+
+        store.recordEventToEventQueue("second", segmentation, 1, 0, 0, 2000, 1, 2, "id2", null, null, null);
+        store.recordEventToEventQueue("first", null, 2, 3.0, 0, 1000, 1, 2, "id1", null, null, null);
+
+        List<Event> events = store.getEventList();
+        Assert.assertEquals(2, events.size());
+        Assert.assertEquals("first", events.get(0).key);
+        Assert.assertEquals("second", events.get(1).key);
+        Assert.assertEquals("v", events.get(1).segmentation.get("s"));
+        Assert.assertEquals(5, (int) events.get(1).segmentationInt.get("i"));
+
+        String requestParameter = store.getEventsForRequestAndEmptyEventQueue();
+        Assert.assertTrue(requestParameter.startsWith("%5B"));
+        Assert.assertEquals(0, store.getEvents().length);
+    }
+
+    /**
+     * In explicit storage mode, writes are kept in memory until they are written out in a single write
+     */
+    @Test
+    public void explicitStorage() {
+        store = new QueueStore(kvs, PlatformLog.NONE, true);
+
+        store.addRequest("a=1", false);
+        store.setEventData("{}");
+        Assert.assertEquals(0, kvs.writeCount);
+        Assert.assertArrayEquals(new String[] { "a=1" }, store.getRequests());
+
+        final boolean[] written = new boolean[1];
+        store.esWriteCacheToStorage(new ExplicitStorageCallback() {
+            @Override public void WriteToStorageFinished(boolean writeWasPerformed) {
+                written[0] = writeWasPerformed;
+            }
+        });
+
+        Assert.assertTrue(written[0]);
+        Assert.assertEquals(1, kvs.writeCount);
+        Assert.assertEquals("a=1", kvs.values.get(QueueStore.REQUEST_PREFERENCE));
+        Assert.assertEquals("{}", kvs.values.get(QueueStore.EVENTS_PREFERENCE));
+        Assert.assertTrue(store.anythingSetInStorage());
+    }
+
+    @Test
+    public void requestResultFromResponse() {
+        Assert.assertEquals(RequestResult.OK, RequestResult.fromResponse(200, "{\"result\":\"Success\"}", PlatformLog.NONE));
+        Assert.assertEquals(RequestResult.RETRY, RequestResult.fromResponse(200, "{}", PlatformLog.NONE));
+        Assert.assertEquals(RequestResult.RETRY, RequestResult.fromResponse(200, "", PlatformLog.NONE));
+        Assert.assertEquals(RequestResult.RETRY, RequestResult.fromResponse(200, "not json", PlatformLog.NONE));
+        Assert.assertEquals(RequestResult.RETRY, RequestResult.fromResponse(302, "{\"result\":\"Success\"}", PlatformLog.NONE));
+        Assert.assertEquals(RequestResult.RETRY, RequestResult.fromResponse(500, "{\"result\":\"Success\"}", PlatformLog.NONE));
+    }
+
+    @Test
+    public void mergeEventRequests() {
+        String header = "app_key=abc&timestamp=1&hour=2&dow=3&tz=60&sdk_version=22.12.0&sdk_name=java-native-android";
+        String target = header + "&events=%5B%7B%22key%22%3A%22a%22%7D%5D";
+        String addition = header.replace("timestamp=1", "timestamp=5") + "&events=%5B%7B%22key%22%3A%22b%22%7D%5D";
+
+        Assert.assertEquals(header + "&events=%5B%7B%22key%22%3A%22a%22%7D%2C%7B%22key%22%3A%22b%22%7D%5D", QueueStore.mergeEventRequests(target, addition, 1000));
+        Assert.assertEquals(target, QueueStore.mergeEventRequests(target, header + "&events=%5B%5D", 1000));
+
+        //too large, different parameters, not an event request
+        Assert.assertNull(QueueStore.mergeEventRequests(target, addition, target.length()));
+        Assert.assertNull(QueueStore.mergeEventRequests(target, addition.replace("app_key=abc", "app_key=def"), 1000));
+        Assert.assertNull(QueueStore.mergeEventRequests(header + "&begin_session=1", addition, 1000));
+        Assert.assertNull(QueueStore.mergeEventRequests(target + "&device_id=1", addition + "&override_id=1", 1000));
+    }
+
+    /**
+     * Event requests are merged into the last request, but never into the first one
+     */
+    @Test
+    public void addEventRequest() {
+        String header = "app_key=abc&timestamp=1";
+        store.addEventRequest(header + "&events=%5B1%5D", 1000, false);
+        store.addEventRequest(header + "&events=%5B2%5D", 1000, false);
+        store.addEventRequest(header + "&events=%5B3%5D", 1000, false);
+        store.addEventRequest(header + "&events=%5B4%5D", header.length() + 20, false);
+
+        Assert.assertArrayEquals(new String[] { header + "&events=%5B1%5D", header + "&events=%5B2%2C3%5D", header + "&events=%5B4%5D" }, store.getRequests());
+
+        //merging disabled
+        store.addEventRequest(header + "&events=%5B5%5D", 0, false);
+        Assert.assertEquals(4, store.getRequests().length);
+    }
+
+    /**
+     * Two stores sharing a directory, as two processes would. Requests of the one that is not draining
+     * end up in the queue of the drainer, each keeps its own event queue.
+     */
+    @Test
+    public void multiProcessRequestQueue() throws IOException {
+        File directory = Files.createTempDirectory("countly_multi_process").toFile();
+        kvs.putString(QueueStore.REQUEST_PREFERENCE, "old=1", false);
+
+        QueueStore main = store;
+        main.enableSharedRequestLog(new SharedRequestLog(directory, PlatformLog.NONE), new FileKeyValueStore(directory, PlatformLog.NONE), "app");
+        QueueStore remote = new QueueStore(new InMemoryKeyValueStore(), PlatformLog.NONE, false);
+        remote.enableSharedRequestLog(new SharedRequestLog(directory, PlatformLog.NONE), new FileKeyValueStore(directory, PlatformLog.NONE), "app:remote");
+
+        //the queue of the previous version is moved over
+        Assert.assertTrue(main.sharedRequestLog.isDrainer());
+        Assert.assertNull(kvs.values.get(QueueStore.REQUEST_PREFERENCE));
+        Assert.assertArrayEquals(new String[] { "old=1" }, main.getRequests());
+
+        main.addRequest("a=1", false);
+        remote.addRequest("b=2", false);
+        remote.addRequest("c=3", true);
+        Assert.assertEquals(0, remote.getRequests().length);
+
+        main.importSharedRequests();
+        Assert.assertArrayEquals(new String[] { "old=1", "a=1", "b=2", "c=3" }, main.getRequests());
+        remote.importSharedRequests();
+        Assert.assertEquals(0, remote.getRequests().length);
+
+        main.setEventData("main_event");
+        remote.setEventData("remote_event");
+        Assert.assertEquals("main_event", main.getEventQueueRaw());
+        Assert.assertEquals("remote_event", remote.getEventQueueRaw());
+
+        //the other process takes over after the drainer is gone
+        main.clearSharedRequestLog();
+        remote.addRequest("d=4", false);
+        remote.importSharedRequests();
+        Assert.assertTrue(remote.sharedRequestLog.isDrainer());
+        Assert.assertArrayEquals(new String[] { "d=4" }, remote.getRequests());
+        remote.clearSharedRequestLog();
+    }
+
+    /**
+     * Only the drainer sees every pending request, including the ones not imported yet
+     */
+    @Test
+    public void allPendingRequests() throws IOException {
+        Assert.assertNotNull(store.getAllPendingRequests());
+
+        File directory = Files.createTempDirectory("countly_multi_process").toFile();
+        QueueStore main = store;
+        main.enableSharedRequestLog(new SharedRequestLog(directory, PlatformLog.NONE), new FileKeyValueStore(directory, PlatformLog.NONE), "app");
+        QueueStore remote = new QueueStore(new InMemoryKeyValueStore(), PlatformLog.NONE, false);
+        remote.enableSharedRequestLog(new SharedRequestLog(directory, PlatformLog.NONE), new FileKeyValueStore(directory, PlatformLog.NONE), "app:remote");
+
+        main.addRequest("a=1", false);
+        remote.addRequest("b=2", false);
+
+        Assert.assertEquals("[a=1, b=2]", String.valueOf(main.getAllPendingRequests()));
+        Assert.assertNull(remote.getAllPendingRequests());
+        //peeking leaves the shared log as it is
+        main.importSharedRequests();
+        Assert.assertArrayEquals(new String[] { "a=1", "b=2" }, main.getRequests());
+
+        main.clearSharedRequestLog();
+        remote.clearSharedRequestLog();
+    }
+}
@@ -0,0 +1,73 @@
+package ly.count.android.sdk;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SdkMetricsTests {
+    /**
+     * Increments from multiple threads are all counted
+     */
+    @Test
+    public void stripedCounter() throws InterruptedException {
+        final SdkMetrics.StripedCounter counter = new SdkMetrics.StripedCounter();
+        Thread[] threads = new Thread[10];
+
+        for (int a = 0; a < threads.length; a++) {
+            threads[a] = new Thread(new Runnable() {
+                @Override public void run() {
+                    for (int b = 0; b < 1000; b++) {
+                        counter.increment();
+                    }
+                }
+            });
+            threads[a].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertEquals(10000, counter.sum());
+        counter.reset();
+        Assert.assertEquals(0, counter.sum());
+    }
+
+    @Test
+    public void latencyHistogramBuckets() {
+        SdkMetrics.LatencyHistogram histogram = new SdkMetrics.LatencyHistogram();
+        histogram.record(0);
+        histogram.record(50);
+        histogram.record(51);
+        histogram.record(40000);
+
+        long[] counts = histogram.bucketCounts();
+        Assert.assertEquals(SdkMetrics.LATENCY_BUCKET_BOUNDS_MS.length + 1, counts.length);
+        Assert.assertEquals(2, counts[0]);
+        Assert.assertEquals(1, counts[1]);
+        Assert.assertEquals(1, counts[counts.length - 1]);
+        Assert.assertEquals(40101, histogram.totalMs.sum());
+    }
+
+    /**
+     * Requests are counted by what happened to them, latency only if the request was timed
+     */
+    @Test
+    public void requestOutcomes() {
+        SdkMetrics metrics = new SdkMetrics();
+        metrics.enabled = true;
+
+        metrics.recordRequestResult(SdkMetrics.RequestOutcome.SENT, true, metrics.startTiming());
+        metrics.recordRequestResult(SdkMetrics.RequestOutcome.RETRIED, true, metrics.startTiming());
+        metrics.recordRequestResult(SdkMetrics.RequestOutcome.RETRIED, false, 0);
+        metrics.recordRequestResult(SdkMetrics.RequestOutcome.FAILED, false, 0);
+
+        Assert.assertEquals(1, metrics.requestsSucceeded.sum());
+        Assert.assertEquals(2, metrics.requestsRetried.sum());
+        Assert.assertEquals(1, metrics.requestsFailed.sum());
+
+        long timed = 0;
+        for (long count : metrics.requestLatency.bucketCounts()) {
+            timed += count;
+        }
+        Assert.assertEquals(2, timed);
+    }
+}
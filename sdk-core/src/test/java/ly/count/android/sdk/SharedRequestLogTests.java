@@ -0,0 +1,141 @@
+package ly.count.android.sdk;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SharedRequestLogTests {
+    File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("countly_shared_log").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    /**
+     * Appended requests are drained in order and the log is empty afterwards
+     */
+    @Test
+    public void appendAndDrain() {
+        SharedRequestLog log = new SharedRequestLog(directory, PlatformLog.NONE);
+        Assert.assertTrue(log.append("a=1", false));
+        Assert.assertTrue(log.append("b=\u00fc&c=:::", true));
+
+        List<String> drained = drain(log);
+        Assert.assertArrayEquals(new String[] { "a=1", "b=\u00fc&c=:::" }, drained.toArray());
+        Assert.assertEquals(0, drain(log).size());
+    }
+
+    /**
+     * Only one log object can hold the drain lock at a time, the role can be taken over after it is released
+     */
+    @Test
+    public void singleDrainer() {
+        SharedRequestLog first = new SharedRequestLog(directory, PlatformLog.NONE);
+        SharedRequestLog second = new SharedRequestLog(directory, PlatformLog.NONE);
+
+        Assert.assertTrue(first.tryBecomeDrainer());
+        Assert.assertTrue(first.tryBecomeDrainer());
+        Assert.assertFalse(second.tryBecomeDrainer());
+        Assert.assertFalse(second.isDrainer());
+
+        first.releaseDrainer();
+        Assert.assertFalse(first.isDrainer());
+        Assert.assertTrue(second.tryBecomeDrainer());
+        second.releaseDrainer();
+    }
+
+    /**
+     * A record cut short by a writer that died is dropped, the records around it are kept
+     */
+    @Test
+    public void partialRecordDropped() throws IOException {
+        SharedRequestLog log = new SharedRequestLog(directory, PlatformLog.NONE);
+        log.append("a=1", false);
+
+        FileOutputStream out = new FileOutputStream(new File(directory, SharedRequestLog.LOG_FILE), true);
+        out.write("20:b=2".getBytes("UTF-8"));
+        out.close();
+
+        log.append("c=3", false);
+
+        Assert.assertArrayEquals(new String[] { "a=1", "c=3" }, drain(log).toArray());
+    }
+
+    /**
+     * Log objects of the same file in one process take turns instead of failing on the process wide file lock
+     */
+    @Test
+    public void sameProcessLogs() throws InterruptedException {
+        final SharedRequestLog first = new SharedRequestLog(directory, PlatformLog.NONE);
+        final SharedRequestLog second = new SharedRequestLog(directory, PlatformLog.NONE);
+        final int perThread = 200;
+        final boolean[] failed = new boolean[1];
+
+        List<Thread> writers = new ArrayList<>();
+        for (final SharedRequestLog log : new SharedRequestLog[] { first, second }) {
+            Thread writer = new Thread(new Runnable() {
+                @Override public void run() {
+                    for (int a = 0; a < perThread; a++) {
+                        if (!log.append("a=" + a, false)) {
+                            failed[0] = true;
+                        }
+                    }
+                }
+            });
+            writer.start();
+            writers.add(writer);
+        }
+
+        List<String> drained = new ArrayList<>();
+        while (writers.get(0).isAlive() || writers.get(1).isAlive()) {
+            drained.addAll(drain(first));
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        drained.addAll(drain(second));
+
+        Assert.assertFalse(failed[0]);
+        Assert.assertEquals(2 * perThread, drained.size());
+    }
+
+    /**
+     * An empty or missing log is drained without creating it
+     */
+    @Test
+    public void drainMissingLog() {
+        SharedRequestLog log = new SharedRequestLog(directory, PlatformLog.NONE);
+        Assert.assertEquals(0, drain(log).size());
+        Assert.assertEquals(0, log.peek().size());
+        Assert.assertFalse(new File(directory, SharedRequestLog.LOG_FILE).exists());
+    }
+
+    List<String> drain(SharedRequestLog log) {
+        final List<String> drained = new ArrayList<>();
+        log.drain(new SharedRequestLog.DrainTarget() {
+            @Override public void storeDrainedRequests(List<String> requests) {
+                drained.addAll(requests);
+            }
+        });
+        return drained;
+    }
+}
@@ -0,0 +1,30 @@
+package ly.count.android.sdk;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class UrlPathNormalizerTests {
+    @Test
+    public void queryAndIdentifiers() {
+        Assert.assertEquals("api.example.com/users/:id/photos", UrlPathNormalizer.normalize("https://api.example.com/users/1234/photos?size=2#top"));
+        Assert.assertEquals("api.example.com:8080/orders/:uuid", UrlPathNormalizer.normalize("http://user:pw@API.example.com:8080/orders/123e4567-e89b-12d3-a456-426614174000/"));
+        Assert.assertEquals("cdn.example.com/img/:token", UrlPathNormalizer.normalize("https://cdn.example.com/img/0123456789abcdef0123.png"));
+        Assert.assertEquals("example.com/files/:hash", UrlPathNormalizer.normalize("https://example.com/files/0123456789abcdef0123"));
+        Assert.assertEquals("example.com/s/:token", UrlPathNormalizer.normalize("https://example.com/s/aZ3kL9pQ2mX7vB1n"));
+        Assert.assertEquals("example.com", UrlPathNormalizer.normalize("https://example.com?a=1"));
+        Assert.assertEquals("example.com/about", UrlPathNormalizer.normalize("example.com/about"));
+    }
+
+    @Test
+    public void segmentLimit() {
+        Assert.assertEquals("e.com/a/b/c/d/e/f/g/h/...", UrlPathNormalizer.normalize("https://e.com/a/b/c/d/e/f/g/h/i/j"));
+    }
+
+    @Test
+    public void segments() {
+        Assert.assertEquals(":id", UrlPathNormalizer.normalizeSegment("-42"));
+        Assert.assertEquals("v2", UrlPathNormalizer.normalizeSegment("v2"));
+        Assert.assertEquals("profile", UrlPathNormalizer.normalizeSegment("profile"));
+        Assert.assertEquals(":token", UrlPathNormalizer.normalizeSegment("a_very_long_segment_name_that_goes_over_the_length_limit"));
+    }
+}
@@ -0,0 +1,257 @@
+package ly.count.android.sdk;
+
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class UtilsTimeTests {
+
+    @After
+    public void tearDown() {
+        UtilsTime.resetHourWindow();
+    }
+
+    /**
+     * Test an improper get usage
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidGet() {
+        UtilsTime.Instant.get(-1L);
+    }
+
+    @Test
+    public void testInstant() {
+        UtilsTime.Instant i1 = UtilsTime.Instant.get(1579463653876L);
+        Assert.assertEquals(0, i1.dow);
+        Assert.assertEquals(1579463653876L, i1.timestampMs);
+
+        //weird stuff to account for timezones and daylight saving
+        int diff = Math.abs((int) (i1.hour - (18 + TimeUnit.HOURS.convert(Calendar.getInstance().getTimeZone().getRawOffset(), TimeUnit.MILLISECONDS))));
+        Assert.assertTrue(diff <= 1);
+    }
+
+    @Test
+    public void testSeconds() {
+        long tms = UtilsTime.currentTimestampMs();
+        int tsec = UtilsTime.currentTimestampSeconds();
+
+        long diff = tms / 1000 - tsec;
+        Assert.assertTrue(diff < 1);
+    }
+
+    @Test
+    public void testDiff() throws InterruptedException {
+        long tms = UtilsTime.currentTimestampMs();
+        Thread.sleep(250);
+
+        long tms2 = UtilsTime.currentTimestampMs();
+
+        Assert.assertTrue(tms2 - tms < 260);
+    }
+
+    /**
+     * Instants that are served from the cached hour have to match the ones calculated with a calendar
+     */
+    @Test
+    public void instantMatchesCalendar() {
+        long start = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(2);
+
+        for (long ts = start; ts < start + TimeUnit.DAYS.toMillis(4); ts += 7 * 60 * 1000 + 13) {
+            validateInstantAgainstCalendar(UtilsTime.Instant.get(ts));
+        }
+        validateInstantAgainstCalendar(UtilsTime.getCurrentInstant());
+    }
+
+    /**
+     * Past timestamps should not replace the cached window of the current hour
+     */
+    @Test
+    public void hourWindowCachesOnlyCurrentHour() {
+        long now = System.currentTimeMillis();
+        UtilsTime.HourWindow current = UtilsTime.hourWindowFor(now);
+        Assert.assertTrue(current.contains(now));
+
+        UtilsTime.HourWindow past = UtilsTime.hourWindowFor(now - TimeUnit.DAYS.toMillis(1));
+        Assert.assertNotSame(current, past);
+
+        Assert.assertSame(current, UtilsTime.hourWindowFor(now));
+    }
+
+    /**
+     * Changing the default timezone should be picked up after the cache is reset
+     */
+    @Test
+    public void hourWindowTimezoneChange() {
+        TimeZone original = TimeZone.getDefault();
+        try {
+            TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+            UtilsTime.resetHourWindow();
+            validateInstantAgainstCalendar(UtilsTime.getCurrentInstant());
+
+            TimeZone.setDefault(TimeZone.getTimeZone("Asia/Kathmandu"));
+            UtilsTime.resetHourWindow();
+            validateInstantAgainstCalendar(UtilsTime.getCurrentInstant());
+            Assert.assertEquals("Asia/Kathmandu", UtilsTime.hourWindowFor(System.currentTimeMillis()).timezoneId);
+        } finally {
+            TimeZone.setDefault(original);
+        }
+    }
+
+    /**
+     * Timestamps in the same millisecond are moved forward
+     */
+    @Test
+    public void uniqueTimestampSameMillisecond() {
+        final long[] clock = { 1_000_000L };
+        UtilsTime.UniqueTimestampGenerator generator = new UtilsTime.UniqueTimestampGenerator() {
+            @Override long currentTimeMillis() {
+                return clock[0];
+            }
+        };
+
+        Assert.assertEquals(1_000_000L, generator.uniqueTimestamp());
+        Assert.assertEquals(1_000_001L, generator.uniqueTimestamp());
+        Assert.assertEquals(1_000_002L, generator.uniqueTimestamp());
+
+        clock[0] = 1_000_010L;
+        Assert.assertEquals(1_000_010L, generator.uniqueTimestamp());
+    }
+
+    /**
+     * A clock change back within the threshold is absorbed, a larger one resets the generator to the new clock value
+     */
+    @Test
+    public void uniqueTimestampClockBack() {
+        final long[] clock = { 100_000_000L };
+        UtilsTime.UniqueTimestampGenerator generator = new UtilsTime.UniqueTimestampGenerator() {
+            @Override long currentTimeMillis() {
+                return clock[0];
+            }
+        };
+
+        Assert.assertEquals(100_000_000L, generator.uniqueTimestamp());
+
+        clock[0] -= UtilsTime.UniqueTimestampGenerator.CLOCK_BACK_RESET_THRESHOLD_MS;
+        Assert.assertEquals(100_000_001L, generator.uniqueTimestamp());
+
+        //once the clock has caught up, its values are used again
+        clock[0] = 100_000_010L;
+        Assert.assertEquals(100_000_010L, generator.uniqueTimestamp());
+
+        clock[0] -= UtilsTime.UniqueTimestampGenerator.CLOCK_BACK_RESET_THRESHOLD_MS + 1;
+        Assert.assertEquals(clock[0], generator.uniqueTimestamp());
+        Assert.assertEquals(clock[0] + 1, generator.uniqueTimestamp());
+
+        //a change of a few seconds is not absorbed anymore
+        clock[0] -= 5_000;
+        Assert.assertEquals(clock[0], generator.uniqueTimestamp());
+    }
+
+    /**
+     * A caller that is paused for longer than the threshold after reading the clock must not be mistaken
+     * for a change of the time, it still has to get a value larger than all values returned before it
+     */
+    @Test
+    public void uniqueTimestampPausedCaller() throws InterruptedException {
+        final long[] clock = { 100_000_000L };
+        final Thread[] pausedThread = { null };
+        final CountDownLatch clockRead = new CountDownLatch(1);
+        final CountDownLatch resume = new CountDownLatch(1);
+        final UtilsTime.UniqueTimestampGenerator generator = new UtilsTime.UniqueTimestampGenerator() {
+            @Override long currentTimeMillis() {
+                long value;
+                synchronized (clock) {
+                    value = clock[0];
+                }
+                if (Thread.currentThread() == pausedThread[0] && clockRead.getCount() > 0) {
+                    clockRead.countDown();
+                    try {
+                        resume.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+                return value;
+            }
+        };
+        Assert.assertEquals(100_000_000L, generator.uniqueTimestamp());
+
+        final long[] pausedResult = { 0 };
+        pausedThread[0] = new Thread(new Runnable() {
+            @Override public void run() {
+                pausedResult[0] = generator.uniqueTimestamp();
+            }
+        });
+        pausedThread[0].start();
+        Assert.assertTrue(clockRead.await(5, TimeUnit.SECONDS));
+
+        long latest = 0;
+        for (int a = 0; a < 5; a++) {
+            synchronized (clock) {
+                clock[0] += UtilsTime.UniqueTimestampGenerator.CLOCK_BACK_RESET_THRESHOLD_MS;
+            }
+            latest = generator.uniqueTimestamp();
+        }
+
+        resume.countDown();
+        pausedThread[0].join(5000);
+        Assert.assertTrue(pausedResult[0] > latest);
+    }
+
+    /**
+     * Multiple threads requesting timestamps at the same time should all get unique values
+     * and every thread should see them strictly increasing
+     */
+    @Test
+    public void uniqueTimestampMultiThreaded() throws InterruptedException {
+        final int threadCount = 8;
+        final int perThread = 20_000;
+        final long[][] results = new long[threadCount][perThread];
+        final UtilsTime.UniqueTimestampGenerator generator = new UtilsTime.UniqueTimestampGenerator();
+        final CountDownLatch startSignal = new CountDownLatch(1);
+        Thread[] threads = new Thread[threadCount];
+
+        for (int a = 0; a < threadCount; a++) {
+            final int threadIndex = a;
+            threads[a] = new Thread(new Runnable() {
+                @Override public void run() {
+                    try {
+                        startSignal.await();
+                    } catch (InterruptedException ignored) {
+                    }
+                    for (int b = 0; b < perThread; b++) {
+                        results[threadIndex][b] = generator.uniqueTimestamp();
+                    }
+                }
+            });
+            threads[a].start();
+        }
+
+        startSignal.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Set<Long> allValues = new HashSet<>();
+        for (int a = 0; a < threadCount; a++) {
+            for (int b = 0; b < perThread; b++) {
+                if (b > 0) {
+                    Assert.assertTrue(results[a][b] > results[a][b - 1]);
+                }
+                Assert.assertTrue(allValues.add(results[a][b]));
+            }
+        }
+    }
+
+    void validateInstantAgainstCalendar(UtilsTime.Instant instant) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(instant.timestampMs);
+        Assert.assertEquals(calendar.get(Calendar.HOUR_OF_DAY), instant.hour);
+        Assert.assertEquals(calendar.get(Calendar.DAY_OF_WEEK) - 1, instant.dow);
+    }
+}
@@ -0,0 +1,37 @@
+package ly.count.android.sdk;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Key-value store kept in a map, used to test and benchmark the core classes on the JVM
+ */
+class InMemoryKeyValueStore implements KeyValueStore {
+    final Map<String, String> values = new HashMap<>();
+    int writeCount = 0;
+
+    @Override public synchronized String getString(String key, String defaultValue) {
+        String value = values.get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    @Override public synchronized void putString(String key, String value, boolean writeInSync) {
+        writeCount++;
+        if (value == null) {
+            values.remove(key);
+        } else {
+            values.put(key, value);
+        }
+    }
+
+    @Override public synchronized void putStrings(Map<String, String> changes, boolean writeInSync) {
+        writeCount++;
+        for (Map.Entry<String, String> entry : changes.entrySet()) {
+            if (entry.getValue() == null) {
+                values.remove(entry.getKey());
+            } else {
+                values.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+}
@@ -24,14 +24,8 @@ package ly.count.android.sdk;
 import android.content.Context;
 import android.content.SharedPreferences;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
-import java.io.UnsupportedEncodingException;
-import java.net.URLEncoder;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import org.json.JSONException;
-import org.json.JSONObject;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -45,9 +39,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
-import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.verify;
 
 @RunWith(AndroidJUnit4.class)
 public class CountlyStoreTests {
@@ -84,37 +76,6 @@ public class CountlyStoreTests {
         cs.recordEventToEventQueue(eventKey, null, 1, 0.0d, 10.0d, instant.timestampMs, instant.hour, instant.dow, null, null, null, null);
     }
 
-    /**
-     * Convenience function for tests
-     * Uses the event object to record an event to EQ
-     * This wraps the messy recording function
-     *
-     * @param e
-     * @param cs
-     */
-    void RecordEvent(Event e, CountlyStore cs) {
-        cs.recordEventToEventQueue(e.key, TestUtils.combineSegmentation(e), e.count, e.sum, e.dur, e.timestamp, e.hour, e.dow, e.id, e.pvid, e.cvid, e.peid);
-    }
-
-    /**
-     * Convenience function for creating an event with just a event key
-     * It populates other fields
-     *
-     * @param eventKey
-     * @return
-     */
-    Event CreateEvent(String eventKey) {
-        Event e = new Event();
-        e.key = eventKey;
-        e.hour = 3;
-        e.dow = 5;
-        e.cvid = "a";
-        e.pvid = "t";
-        e.peid = "o";
-
-        return e;
-    }
-
     @Test
     public void testConstructor_nullContext() {
         try {
@@ -132,228 +93,6 @@ public class CountlyStoreTests {
         verify(mockContext).getSharedPreferences(countlyStoreName, Context.MODE_PRIVATE);
     }
 
-    /**
-     * When store is cleared, it should still return empty array
-     */
-    @Test
-    public void getRequests_InitialState() {
-        assertArrayEquals(new String[0], store.getRequests());
-    }
-
-    /**
-     * Adding and removing the same requests should produce an empty queue that is returned as empty array
-     */
-    @Test
-    public void getRequests_AddRemoveRequest() {
-        store.addRequest(requestEntries[0], false);
-        store.removeRequest(requestEntries[0]);
-        assertArrayEquals(new String[0], store.getRequests());
-    }
-
-    /**
-     * Adding a single entry to the request queue should work as intended
-     */
-    @Test
-    public void getRequests_AddSingleEntry() {
-        store.addRequest(requestEntries[0], false);
-        assertArrayEquals(new String[] { requestEntries[0] }, store.getRequests());
-    }
-
-    /**
-     * Adding two entries to the request queue should work as intended
-     */
-    @Test
-    public void getRequests_AddTwoEntries() {
-        store.addRequest(requestEntries[0], false);
-        store.addRequest(requestEntries[1], false);
-        assertArrayEquals(new String[] { requestEntries[0], requestEntries[1] }, store.getRequests());
-    }
-
-    /**
-     * When store is cleared, it should still return empty array
-     */
-    @Test
-    public void getEvents_InitialState() {
-        assertArrayEquals(new String[0], store.getEvents());
-    }
-
-    /**
-     * Adding an event and then removing the whole list of events should result in an empty String array when requesting the list again.
-     * This should not return 'null'
-     */
-    @Test
-    public void getEvents_addEventRemoveAll() {
-        RecordEvent(eKeys[0], store);
-        store.removeEvents(store.getEventList());
-        assertArrayEquals(new String[0], store.getEvents());
-    }
-
-    @Test
-    public void getEvents_addSingleEntry() throws JSONException {
-        RecordEvent(eKeys[0], store);
-        final String[] eventJSONStrings = store.getEvents();
-        assertEquals(eKeys[0], new JSONObject(eventJSONStrings[0]).getString("key"));
-        // this is good enough, we verify the entire JSON content is written in later unit tests
-    }
-
-    @Test
-    public void getEvents_addTwoEntries() throws JSONException {
-        RecordEvent(eKeys[0], store);
-        RecordEvent(eKeys[1], store);
-
-        final String[] eventJSONStrs = store.getEvents();
-        assertEquals(eKeys[0], new JSONObject(eventJSONStrs[0]).getString("key"));
-        assertEquals(eKeys[1], new JSONObject(eventJSONStrs[1]).getString("key"));
-        // this is good enough, we verify the entire JSON content is written in later unit tests
-    }
-
-    @Test
-    public void getEventList_InitialState() {
-        assertEquals(new ArrayList<Event>(0), store.getEventList());
-    }
-
-    @Test
-    public void getEventList_singleEvent() {
-        final Event event1 = CreateEvent(eKeys[1]);
-        RecordEvent(event1, store);
-        final List<Event> expected = new ArrayList<>(1);
-        expected.add(event1);
-        final List<Event> actual = store.getEventList();
-        Assert.assertEquals(expected, actual);
-    }
-
-    /**
-     * Validating 'getEventList' to make sure events are correctly ordered by their timestamp
-     */
-    @Test
-    public void getEventList_sortingOfMultipleEvents() {
-        final Event event1 = CreateEvent(eKeys[0]);
-        event1.timestamp = UtilsTime.currentTimestampMs();
-        final Event event2 = CreateEvent(eKeys[1]);
-        event2.timestamp = UtilsTime.currentTimestampMs() - 60000;
-        final Event event3 = CreateEvent(eKeys[2]);
-        event3.timestamp = UtilsTime.currentTimestampMs() - 30000;
-
-        RecordEvent(event1, store);
-        RecordEvent(event2, store);
-        RecordEvent(event3, store);
-        final List<Event> expected = new ArrayList<>(3);
-        expected.add(event2);
-        expected.add(event3);
-        expected.add(event1);
-        final List<Event> actual = store.getEventList();
-        assertEquals(expected, actual);
-    }
-
-    /**
-     * Store events with a bad string snippet in the middle.
-     * The list should correctly return the correct entries and bad entry should be skipped
-     */
-    @Test
-    public void getEventList_badJSONStored() {
-        final Event event1 = CreateEvent(eKeys[0]);
-        event1.timestamp = UtilsTime.getCurrentInstant().timestampMs;
-
-        final Event event2 = CreateEvent(eKeys[1]);
-        event2.timestamp = UtilsTime.getCurrentInstant().timestampMs - 60000;
-
-        //insert bad entry
-        final String joinedEventsWithBadJSON = event1.toJSON().toString() + ":::blah:::" + event2.toJSON().toString();
-        final SharedPreferences prefs = getContext().getSharedPreferences(countlyStoreName, Context.MODE_PRIVATE);
-        prefs.edit().putString("EVENTS", joinedEventsWithBadJSON).commit();
-
-        final List<Event> expected = new ArrayList<>(2);
-        expected.add(event2);
-        expected.add(event1);
-        final List<Event> actual = store.getEventList();
-        assertEquals(expected, actual);
-    }
-
-    /**
-     * Store events with a null entry in the middle.
-     * The list should correctly return the correct entries and bad entry should be skipped
-     */
-    @Test
-    public void getEventList_nullEntryStored() {
-        final Event event1 = CreateEvent(eKeys[2]);
-        event1.timestamp = UtilsTime.getCurrentInstant().timestampMs;
-
-        final Event event2 = CreateEvent(eKeys[3]);
-        event2.timestamp = UtilsTime.getCurrentInstant().timestampMs - 60000;
-
-        //insert null entry
-        final String joinedEventsWithBadJSON = event1.toJSON().toString() + ":::{\"key\":null}:::" + event2.toJSON().toString();
-        final SharedPreferences prefs = getContext().getSharedPreferences(countlyStoreName, Context.MODE_PRIVATE);
-        prefs.edit().putString("EVENTS", joinedEventsWithBadJSON).commit();
-
-        final List<Event> expected = new ArrayList<>(2);
-        expected.add(event2);
-        expected.add(event1);
-        final List<Event> actual = store.getEventList();
-        assertEquals(expected, actual);
-    }
-
-    @Test
-    public void removeRequest_notFirstConn() {
-        store.addRequest(requestEntries[0], false);
-        store.addRequest(requestEntries[1], false);
-        assertEquals(2, store.getRequests().length);
-        store.removeRequest(requestEntries[1]);
-        assertEquals(1, store.getRequests().length);
-    }
-
-    @Test
-    public void removeRequest_onlyRemovesFirstMatchingOne() {
-        store.addRequest(requestEntries[0], false);
-        store.addRequest(requestEntries[1], false);
-        store.addRequest(requestEntries[0], false);
-        assertEquals(3, store.getRequests().length);
-        store.removeRequest(requestEntries[0]);
-        assertTrue(Arrays.equals(new String[] { requestEntries[1], requestEntries[0] }, store.getRequests()));
-    }
-
-    @Test
-    public void recordEventToEventQueue() {
-        final Event event = CreateEvent(eKeys[3]);
-        event.segmentation = new HashMap<>(2);
-        event.segmentation.put("segKey1", "segValue1");
-        event.segmentation.put("segKey2", "segValue2");
-
-        RecordEvent(event, store);
-
-        final List<Event> addedEvents = store.getEventList();
-        assertEquals(1, addedEvents.size());
-        final Event addedEvent = addedEvents.get(0);
-        assertEquals(event, addedEvent);
-        assertEquals(event.count, addedEvent.count);
-        assertEquals(event.sum, addedEvent.sum, 0.0000001);
-    }
-
-    @Test
-    public void testRemoveEvents() {
-        final Event event1 = CreateEvent(eKeys[1]);
-        event1.timestamp = UtilsTime.currentTimestampMs() - 60000;
-
-        final Event event2 = CreateEvent(eKeys[2]);
-        event2.timestamp = UtilsTime.currentTimestampMs() - 30000;
-
-        final Event event3 = CreateEvent(eKeys[3]);
-        event3.timestamp = UtilsTime.currentTimestampMs();
-
-        RecordEvent(event1, store);
-        RecordEvent(event2, store);
-
-        final List<Event> eventsToRemove = store.getEventList();
-
-        RecordEvent(event3, store);
-
-        store.removeEvents(eventsToRemove);
-
-        final List<Event> events = store.getEventList();
-        assertEquals(1, events.size());
-        assertEquals(event3, events.get(0));
-    }
-
     @Test
     public void testClear() {
         final SharedPreferences prefs = getContext().getSharedPreferences(countlyStoreName, Context.MODE_PRIVATE);
@@ -464,19 +203,6 @@ public class CountlyStoreTests {
         assertEquals("123", sp.getStarRatingPreferences());
     }
 
-    /**
-     * Removing a non existing request should cause no problems or changes
-     */
-    @Test
-    public void removeRequest_nonExisting() {
-        store.addRequest(requestEntries[0], false);
-        store.addRequest(requestEntries[1], false);
-        assertEquals(2, store.getRequests().length);
-        store.removeRequest(requestEntries[2]);
-        assertEquals(2, store.getRequests().length);
-        assertTrue(Arrays.equals(new String[] { requestEntries[0], requestEntries[1] }, store.getRequests()));
-    }
-
     /**
      * Validating that 'replaceRequests' and 'replaceRequestList' work as intended
      */
@@ -499,40 +225,6 @@ public class CountlyStoreTests {
         assertArrayEquals(new String[] { requestEntries[5], requestEntries[6] }, store.getRequests());
     }
 
-    /**
-     * Validating that 'deleteOldestRequest' deletes the oldest request
-     */
-    @Test
-    public void deleteOldestRequest() {
-        store.addRequest(requestEntries[0], false);
-        store.addRequest(requestEntries[1], false);
-        store.addRequest(requestEntries[2], false);
-        assertArrayEquals(new String[] { requestEntries[0], requestEntries[1], requestEntries[2] }, store.getRequests());
-        store.deleteOldestRequest();
-        assertArrayEquals(new String[] { requestEntries[1], requestEntries[2] }, store.getRequests());
-    }
-
-    /**
-     * Validating that the max request queue size is respected,
-     * And that it removes the oldest entry when it is about to be exceeded
-     */
-    @Test
-    public void addRequest_MaxQueueLimit() {
-        store.setLimits(2);
-        store.addRequest(requestEntries[0], false);
-        store.addRequest(requestEntries[1], false);
-        assertArrayEquals(new String[] { requestEntries[0], requestEntries[1] }, store.getRequests());
-
-        store.addRequest(requestEntries[2], false);
-        assertArrayEquals(new String[] { requestEntries[1], requestEntries[2] }, store.getRequests());
-
-        store.addRequest(requestEntries[3], false);
-        assertArrayEquals(new String[] { requestEntries[2], requestEntries[3] }, store.getRequests());
-
-        store.addRequest(requestEntries[4], false);
-        assertArrayEquals(new String[] { requestEntries[3], requestEntries[4] }, store.getRequests());
-    }
-
     /**
      * Validate that setting and retrieving device ID and device ID type works as intended
      */
@@ -700,36 +392,4 @@ public class CountlyStoreTests {
         assertEquals(2, sp.getEventQueueSize());
     }
 
-    /**
-     * Validate 'getEventsForRequestAndEmptyEventQueue' in a situation where there are no events
-     * This should return an empty array
-     *
-     * @throws UnsupportedEncodingException
-     */
-    @Test
-    public void getEventsForRequestAndEmptyEventQueueWithNoEvents() throws UnsupportedEncodingException {
-        store.setEventData("");
-        final String expected = URLEncoder.encode("[]", "UTF-8");
-        assertEquals(expected, sp.getEventsForRequestAndEmptyEventQueue());
-        Assert.assertEquals(0, sp.getEventQueueSize());
-    }
-
-    /**
-     * Validate 'getEventsForRequestAndEmptyEventQueue' in a situation where there are 2 events
-     * Both event should be added to the return value
-     *
-     * @throws UnsupportedEncodingException
-     */
-    @Test
-    public void getEventsForRequestAndEmptyEventQueueWithSimpleEvents() throws UnsupportedEncodingException {
-        final Event event1 = CreateEvent(eKeys[0]);
-        store.addEvent(event1);
-        final Event event2 = CreateEvent(eKeys[1]);
-        store.addEvent(event2);
-
-        final String jsonToEncode = "[" + event1.toJSON().toString() + "," + event2.toJSON().toString() + "]";
-        final String expected = URLEncoder.encode(jsonToEncode, "UTF-8");
-        assertEquals(expected, sp.getEventsForRequestAndEmptyEventQueue());
-        Assert.assertEquals(0, sp.getEventQueueSize());
-    }
 }
@@ -47,7 +47,11 @@ import static androidx.test.InstrumentationRegistry.getContext;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
@@ -298,4 +302,58 @@ public class DeviceInfoTests {
         final JSONObject calculatedJSON = new JSONObject(calculatedMetrics);
         TestUtils.bothJSONObjEqual(json, calculatedJSON);
     }
+
+    /**
+     * Metric values are collected once and reused until the locale changes,
+     * the encoded metrics are reused as long as the same override is passed
+     */
+    @Test
+    public void metricsSnapshotCached() throws UnsupportedEncodingException, JSONException {
+        MetricProvider mp = mock(MetricProvider.class);
+        when(mp.getDevice()).thenReturn("dev");
+        when(mp.getResolution(any(Context.class))).thenReturn("100x200");
+        DeviceInfo deviceInfo = new DeviceInfo(mp);
+
+        String first = deviceInfo.getMetrics(getContext(), deviceInfo, null);
+        assertSame(first, deviceInfo.getMetrics(getContext(), deviceInfo, null));
+        assertEquals("100x200", new JSONObject(URLDecoder.decode(first, "UTF-8")).getString("_resolution"));
+
+        Map<String, String> metricOverride = new HashMap<>();
+        metricOverride.put("_device", "other");
+        String overridden = URLDecoder.decode(deviceInfo.getMetrics(getContext(), deviceInfo, metricOverride), "UTF-8");
+        assertEquals("other", new JSONObject(overridden).getString("_device"));
+        deviceInfo.getCommonMetrics(getContext(), deviceInfo, null);
+        verify(mp, times(1)).getResolution(any(Context.class));
+
+        Locale defaultLocale = Locale.getDefault();
+        try {
+            Locale.setDefault(defaultLocale.equals(Locale.JAPAN) ? Locale.GERMANY : Locale.JAPAN);
+            deviceInfo.getMetrics(getContext(), deviceInfo, null);
+            verify(mp, times(2)).getResolution(any(Context.class));
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+
+    /**
+     * Crash metrics that don't change are collected once
+     */
+    @Test
+    public void crashMetricsCached() {
+        MetricProvider mp = mock(MetricProvider.class);
+        when(mp.getCpu()).thenReturn("arm64");
+        DeviceInfo deviceInfo = new DeviceInfo(mp);
+
+        assertEquals("arm64", deviceInfo.getCrashMetrics(getContext()).cpu);
+        assertSame(deviceInfo.getCrashMetrics(getContext()), deviceInfo.getCrashMetrics(getContext()));
+        verify(mp, times(1)).getCpu();
+        verify(mp, times(1)).getOpenGL(any(Context.class));
+    }
+
+    @Test
+    public void lastNumberIn() {
+        assertEquals(3809036L, DeviceInfo.lastNumberIn("MemTotal:        3809036 kB"));
+        assertEquals(0L, DeviceInfo.lastNumberIn("MemTotal: kB"));
+        assertEquals(0L, DeviceInfo.lastNumberIn(null));
+    }
 }
@@ -0,0 +1,390 @@
+package ly.count.android.sdk;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Minimal Countly server for tests. It listens on an ephemeral port of the loopback interface.
+ * Implements '/i', '/i/bulk', '/o/sdk' and the feedback widget endpoints.
+ *
+ * Latency, error rate, 5xx bursts and slow response bodies can be changed while it is running.
+ * Received requests and events are counted, every request that is answered with a 200 counts as accepted.
+ * Exceptions while handling a connection are collected, so that tests can check that there were none. For events that have the 'SEGMENTATION_RECORD_TIME_KEY'
+ * segmentation value, the time from recording until the server received them is kept as a latency sample.
+ */
+public class MockCountlyServer {
+    /**
+     * Segmentation key with the wall clock time in ms when the event was recorded
+     */
+    static final String SEGMENTATION_RECORD_TIME_KEY = "mock_record_time";
+
+    static final String RESPONSE_SUCCESS = "{\"result\":\"Success\"}";
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService connectionExecutor = Executors.newCachedThreadPool();
+    private final Thread acceptThread;
+    private final Random random = new Random(7);
+
+    //behaviour
+    volatile long latencyMs = 0;
+    volatile double errorRate = 0;
+    final AtomicInteger failNextRequests = new AtomicInteger(0);
+    volatile int slowBodyChunkSize = 0;
+    volatile long slowBodyChunkDelayMs = 0;
+
+    //statistics
+    final AtomicLong requestsReceived = new AtomicLong(0);
+    final AtomicLong requestsAccepted = new AtomicLong(0);
+    final AtomicLong requestsFailed = new AtomicLong(0);
+    final AtomicLong bytesReceived = new AtomicLong(0);
+    final AtomicLong eventsReceived = new AtomicLong(0);
+    private final List<Throwable> handlerErrors = Collections.synchronizedList(new ArrayList<Throwable>());
+    private long[] latencySamplesMs = new long[1024];
+    private int latencySampleCount = 0;
+
+    public MockCountlyServer() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        acceptThread = new Thread(new Runnable() {
+            @Override public void run() {
+                acceptConnections();
+            }
+        }, "MockCountlyServer");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    /**
+     * @return server URL that can be given to the SDK init config
+     */
+    public @NonNull String getUrl() {
+        return "http://127.0.0.1:" + serverSocket.getLocalPort();
+    }
+
+    /**
+     * @param latencyMs delay before each response is written
+     */
+    public MockCountlyServer setLatency(long latencyMs) {
+        this.latencyMs = latencyMs;
+        return this;
+    }
+
+    /**
+     * @param errorRate share of requests, from 0 to 1, that are answered with a 500
+     */
+    public MockCountlyServer setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    /**
+     * The next 'count' requests are answered with a 503, simulating a server outage
+     */
+    public MockCountlyServer failNextRequests(int count) {
+        failNextRequests.set(count);
+        return this;
+    }
+
+    /**
+     * Response bodies are written in chunks of the given size with a delay after each chunk.
+     * A chunk size of 0 writes the body at once.
+     */
+    public MockCountlyServer setSlowBody(int chunkSize, long chunkDelayMs) {
+        slowBodyChunkSize = chunkSize;
+        slowBodyChunkDelayMs = chunkDelayMs;
+        return this;
+    }
+
+    public void stop() {
+        try {
+            serverSocket.close();
+        } catch (IOException ignored) {
+        }
+        connectionExecutor.shutdownNow();
+        try {
+            connectionExecutor.awaitTermination(5, TimeUnit.SECONDS);
+            acceptThread.join(5000);
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return exceptions that were thrown while handling connections, not counting closed connections
+     */
+    @NonNull List<Throwable> getHandlerErrors() {
+        synchronized (handlerErrors) {
+            return new ArrayList<>(handlerErrors);
+        }
+    }
+
+    /**
+     * @return recorded latency samples, sorted from the lowest
+     */
+    synchronized long[] getLatencySamplesMs() {
+        long[] samples = Arrays.copyOf(latencySamplesMs, latencySampleCount);
+        Arrays.sort(samples);
+        return samples;
+    }
+
+    private synchronized void addLatencySample(long latency) {
+        if (latencySampleCount == latencySamplesMs.length) {
+            latencySamplesMs = Arrays.copyOf(latencySamplesMs, latencySamplesMs.length * 2);
+        }
+        latencySamplesMs[latencySampleCount++] = latency;
+    }
+
+    private void acceptConnections() {
+        while (!serverSocket.isClosed()) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                //closed
+                return;
+            }
+
+            try {
+                connectionExecutor.execute(new Runnable() {
+                    @Override public void run() {
+                        handleConnection(socket);
+                    }
+                });
+            } catch (Exception e) {
+                closeQuietly(socket);
+                return;
+            }
+        }
+    }
+
+    private void handleConnection(Socket socket) {
+        try {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+
+            String requestLine = readLine(in);
+            if (requestLine == null || requestLine.isEmpty()) {
+                return;
+            }
+
+            int contentLength = 0;
+            String header;
+            while ((header = readLine(in)) != null && !header.isEmpty()) {
+                int separator = header.indexOf(':');
+                if (separator > 0 && header.substring(0, separator).trim().equalsIgnoreCase("Content-Length")) {
+                    contentLength = Integer.parseInt(header.substring(separator + 1).trim());
+                }
+            }
+
+            byte[] body = new byte[contentLength];
+            int read = 0;
+            while (read < contentLength) {
+                int count = in.read(body, read, contentLength - read);
+                if (count < 0) {
+                    break;
+                }
+                read += count;
+            }
+
+            requestsReceived.incrementAndGet();
+            bytesReceived.addAndGet(requestLine.length() + contentLength);
+
+            //"GET /i?app_key=... HTTP/1.1"
+            String[] parts = requestLine.split(" ");
+            String target = parts.length > 1 ? parts[1] : "/";
+            int queryStart = target.indexOf('?');
+            String path = queryStart >= 0 ? target.substring(0, queryStart) : target;
+            String query = queryStart >= 0 ? target.substring(queryStart + 1) : "";
+            String bodyString = new String(body, 0, read, "UTF-8");
+            Map<String, String> params = parseParams(bodyString.isEmpty() ? query : query + "&" + bodyString);
+
+            if (latencyMs > 0) {
+                Thread.sleep(latencyMs);
+            }
+
+            int failureCode = pickFailure();
+            if (failureCode != 0) {
+                requestsFailed.incrementAndGet();
+                writeResponse(out, failureCode, "{\"result\":\"Error\"}");
+                return;
+            }
+
+            String response = handleRequest(path, params);
+            if (response == null) {
+                writeResponse(out, 404, "{\"result\":\"Unknown endpoint\"}");
+                return;
+            }
+
+            requestsAccepted.incrementAndGet();
+            writeResponse(out, 200, response);
+        } catch (SocketException ignored) {
+            //connection closed by the SDK or the server is stopping
+        } catch (InterruptedException ignored) {
+            //server is stopping
+        } catch (Exception e) {
+            handlerErrors.add(e);
+        } finally {
+            closeQuietly(socket);
+        }
+    }
+
+    private int pickFailure() {
+        if (failNextRequests.getAndDecrement() > 0) {
+            return 503;
+        }
+        //don't let the counter wander off into negative values
+        failNextRequests.compareAndSet(-1, 0);
+
+        if (errorRate > 0) {
+            synchronized (random) {
+                if (random.nextDouble() < errorRate) {
+                    return 500;
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return the response body, or null if the endpoint is not known
+     */
+    @Nullable String handleRequest(@NonNull String path, @NonNull Map<String, String> params) throws JSONException {
+        long receivedAt = System.currentTimeMillis();
+
+        switch (path) {
+            case "/i":
+                countEvents(params.get("events"), receivedAt);
+                return RESPONSE_SUCCESS;
+            case "/i/bulk":
+                String requests = params.get("requests");
+                if (requests != null) {
+                    JSONArray requestArray = new JSONArray(requests);
+                    for (int a = 0; a < requestArray.length(); a++) {
+                        JSONObject request = requestArray.optJSONObject(a);
+                        if (request != null && request.has("events")) {
+                            Object events = request.get("events");
+                            countEvents(events instanceof String ? (String) events : events.toString(), receivedAt);
+                        }
+                    }
+                }
+                return RESPONSE_SUCCESS;
+            case "/o/sdk":
+                if ("feedback".equals(params.get("method"))) {
+                    return "{\"result\":[]}";
+                }
+                //remote config
+                return "{}";
+            case "/o/feedback/widget":
+                return "{\"_id\":\"mock_widget\",\"popup_header_text\":\"How was it?\"}";
+            case "/o/surveys/survey/widget":
+            case "/o/surveys/nps/widget":
+            case "/o/surveys/rating/widget":
+                return "{\"_id\":\"mock_widget\"}";
+            default:
+                return null;
+        }
+    }
+
+    private void countEvents(@Nullable String eventsJson, long receivedAt) throws JSONException {
+        if (eventsJson == null || eventsJson.isEmpty()) {
+            return;
+        }
+
+        JSONArray events = new JSONArray(eventsJson);
+        eventsReceived.addAndGet(events.length());
+
+        for (int a = 0; a < events.length(); a++) {
+            JSONObject segmentation = events.getJSONObject(a).optJSONObject("segmentation");
+            if (segmentation != null && segmentation.has(SEGMENTATION_RECORD_TIME_KEY)) {
+                addLatencySample(receivedAt - segmentation.getLong(SEGMENTATION_RECORD_TIME_KEY));
+            }
+        }
+    }
+
+    private void writeResponse(OutputStream out, int code, String body) throws IOException, InterruptedException {
+        byte[] bodyBytes = body.getBytes("UTF-8");
+        String head = "HTTP/1.1 " + code + (code == 200 ? " OK" : " Error") + "\r\n"
+            + "Content-Type: application/json\r\n"
+            + "Content-Length: " + bodyBytes.length + "\r\n"
+            + "Connection: close\r\n\r\n";
+        out.write(head.getBytes("US-ASCII"));
+
+        int chunkSize = slowBodyChunkSize;
+        if (chunkSize <= 0) {
+            out.write(bodyBytes);
+        } else {
+            for (int position = 0; position < bodyBytes.length; position += chunkSize) {
+                out.write(bodyBytes, position, Math.min(chunkSize, bodyBytes.length - position));
+                out.flush();
+                Thread.sleep(slowBodyChunkDelayMs);
+            }
+        }
+        out.flush();
+    }
+
+    static @NonNull Map<String, String> parseParams(@NonNull String paramString) {
+        Map<String, String> params = new HashMap<>();
+        for (String pair : paramString.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int separator = pair.indexOf('=');
+            if (separator < 0) {
+                params.put(UtilsNetworking.urlDecodeString(pair), "");
+            } else {
+                params.put(UtilsNetworking.urlDecodeString(pair.substring(0, separator)), UtilsNetworking.urlDecodeString(pair.substring(separator + 1)));
+            }
+        }
+        return params;
+    }
+
+    /**
+     * Reads a single header line, without the line break
+     */
+    private static @Nullable String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int b;
+        while ((b = in.read()) >= 0) {
+            if (b == '\n') {
+                break;
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        if (b < 0 && line.size() == 0) {
+            return null;
+        }
+        return line.toString("US-ASCII");
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
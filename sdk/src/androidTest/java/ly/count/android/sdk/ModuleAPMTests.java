@@ -1,6 +1,11 @@
 package ly.count.android.sdk;
 
 import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.HashMap;
 import java.util.Map;
 import org.junit.After;
@@ -11,8 +16,12 @@ import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 
 import static androidx.test.InstrumentationRegistry.getContext;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 @RunWith(AndroidJUnit4.class)
@@ -236,4 +245,239 @@ public class ModuleAPMTests {
 
         Assert.assertEquals(0, mCountly.moduleAPM.networkTraces.size());
     }
+
+    /**
+     * Init records the duration of each init step
+     */
+    @Test
+    public void initTimingReport() {
+        InitTimingReport report = mCountly.getInitTimingReport();
+        Assert.assertNotNull(report);
+
+        Assert.assertTrue(report.getInitCallDurationNs() > 0);
+        Assert.assertTrue(report.getTotalDurationNs() >= report.getInitCallDurationNs());
+
+        Assert.assertTrue(report.getPhaseDurationNs(InitTimingReport.PHASE_STORE_CREATE) >= 0);
+        Assert.assertTrue(report.getPhaseDurationNs(InitTimingReport.PHASE_STORE_FIRST_READ) >= 0);
+        Assert.assertTrue(report.getPhaseDurationNs(InitTimingReport.PHASE_MIGRATION) >= 0);
+        Assert.assertTrue(report.getPhaseDurationNs(InitTimingReport.PHASE_DEVICE_INFO) >= 0);
+        Assert.assertTrue(report.getPhaseDurationNs("ModuleAPM constructor") >= 0);
+        Assert.assertTrue(report.getPhaseDurationNs("ModuleCrash initFinished") >= 0);
+        Assert.assertEquals(-1, report.getPhaseDurationNs("not a phase"));
+
+        //constructors and initFinished for every module and the storage and device info steps
+        Assert.assertTrue(report.getPhases().size() >= mCountly.modules.size() * 2 + 4);
+    }
+
+    /**
+     * A nested step is recorded as its own phase and is not counted again in the phase around it
+     */
+    @Test
+    public void initTimingNestedPhase() throws InterruptedException {
+        InitTimingReport report = new InitTimingReport();
+        long outerStart = System.nanoTime();
+        long nestedStart = System.nanoTime();
+        Thread.sleep(50);
+        report.endNestedPhase("nested", nestedStart);
+        report.endPhase("outer", outerStart);
+
+        Assert.assertTrue(report.getPhaseDurationNs("nested") >= 50000000L);
+        Assert.assertTrue(report.getPhaseDurationNs("outer") < 50000000L);
+        Assert.assertEquals("nested", report.getPhases().get(0).name);
+    }
+
+    /**
+     * Init timing is sent as a custom trace with the step durations as custom metrics
+     */
+    @Test
+    public void initTimingTrace() {
+        mCountly.moduleAPM.recordInitTimingTrace(mCountly.getInitTimingReport());
+
+        ArgumentCaptor<String> metrics = ArgumentCaptor.forClass(String.class);
+        verify(requestQueueProvider).sendAPMCustomTrace(eq(ModuleAPM.INIT_TIMING_TRACE_KEY), any(Long.class), any(Long.class), any(Long.class), metrics.capture());
+        Assert.assertTrue(metrics.getValue().contains("\"init_call_us\":"));
+        Assert.assertTrue(metrics.getValue().contains("\"APM_constructor_us\":"));
+    }
+
+    @Test
+    public void initPhaseMetricKey() {
+        Assert.assertEquals("RemoteConfig_initFinished_us", ModuleAPM.initPhaseMetricKey("ModuleRemoteConfig initFinished"));
+        Assert.assertEquals("CountlyStore_first_read_us", ModuleAPM.initPhaseMetricKey(InitTimingReport.PHASE_STORE_FIRST_READ));
+        Assert.assertEquals("native_crash_dump_scan_us", ModuleAPM.initPhaseMetricKey(InitTimingReport.PHASE_NATIVE_DUMP_SCAN));
+        Assert.assertNull(ModuleAPM.initPhaseMetricKey("a very long phase name that goes over the limit"));
+
+        for (String key : ModuleAPM.INIT_PHASE_METRIC_KEYS.values()) {
+            Assert.assertTrue(key, key.length() <= 32);
+        }
+    }
+
+    /**
+     * With aggregation enabled, traces are not sent one by one but as one regular trace per key
+     */
+    @Test
+    public void aggregatedTraces() {
+        mCountly.halt();
+        mCountly = new Countly();
+        mCountly.init((new CountlyConfig(getContext(), "appkey", "http://test.count.ly")).setDeviceId("1234").enableApmTraceAggregation(1000));
+        requestQueueProvider = TestUtils.setRequestQueueProviderToMock(mCountly, mock(RequestQueueProvider.class));
+
+        mCountly.apm().recordNetworkTrace("api_call", 200, 10, 20, 1000, 1050);
+        mCountly.apm().recordNetworkTrace("api_call", 500, 10, 20, 2000, 2300);
+        mCountly.apm().startTrace("a");
+        mCountly.apm().endTrace("a", null);
+
+        verify(requestQueueProvider, never()).sendAPMNetworkTrace(any(String.class), any(Long.class), anyInt(), anyInt(), anyInt(), any(Long.class), any(Long.class));
+        verify(requestQueueProvider, never()).sendAPMCustomTrace(any(String.class), any(Long.class), any(Long.class), any(Long.class), any(String.class));
+
+        mCountly.apm().flushAggregatedTraces();
+        ArgumentCaptor<String> networkMetrics = ArgumentCaptor.forClass(String.class);
+        verify(requestQueueProvider).sendAPMNetworkTrace(eq("api_call"), eq(175L), eq(200), eq(10), eq(20), eq(1000L), eq(2300L), networkMetrics.capture());
+        Assert.assertTrue(networkMetrics.getValue().contains("\"response_time_max\":300"));
+        Assert.assertTrue(networkMetrics.getValue().contains("\"trace_count\":2"));
+        ArgumentCaptor<String> customMetrics = ArgumentCaptor.forClass(String.class);
+        verify(requestQueueProvider).sendAPMCustomTrace(eq("a"), any(Long.class), any(Long.class), any(Long.class), customMetrics.capture());
+        Assert.assertTrue(customMetrics.getValue().contains("\"trace_count\":1"));
+        Assert.assertTrue(mCountly.moduleAPM.traceAggregator.isEmpty());
+
+        //nothing left to send
+        mCountly.apm().flushAggregatedTraces();
+        verify(requestQueueProvider, times(1)).sendAPMNetworkTrace(any(String.class), any(Long.class), anyInt(), anyInt(), anyInt(), any(Long.class), any(Long.class), any(String.class));
+        verify(requestQueueProvider, times(1)).sendAPMCustomTrace(any(String.class), any(Long.class), any(Long.class), any(Long.class), any(String.class));
+    }
+
+    /**
+     * Frame source driven by the test instead of the display
+     */
+    static class FakeFrameSource implements FrameSource {
+        FrameListener listener = null;
+
+        @Override public void start(FrameListener frameListener) {
+            listener = frameListener;
+            frameListener.onFramesStarted();
+        }
+
+        @Override public void stop() {
+            listener = null;
+        }
+    }
+
+    /**
+     * Frames are tracked while an activity is open and their stats are sent per view when the app goes to the background
+     */
+    @Test
+    public void frameTracking() {
+        FakeFrameSource frameSource = new FakeFrameSource();
+        CountlyConfig config = new CountlyConfig(getContext(), "appkey", "http://test.count.ly").setDeviceId("1234").enableFrameTracking();
+        config.frameSourceOverride = frameSource;
+
+        mCountly.halt();
+        mCountly = new Countly();
+        mCountly.init(config);
+        requestQueueProvider = TestUtils.setRequestQueueProviderToMock(mCountly, mock(RequestQueueProvider.class));
+
+        Assert.assertNull(frameSource.listener);
+        mCountly.moduleAPM.callbackOnActivityResumed(null);
+        Assert.assertNotNull(frameSource.listener);
+
+        mCountly.views().recordView("main_view");
+        long frameTimeNs = 1000000000L;
+        for (int a = 0; a <= 10; a++) {
+            frameTimeNs += a == 10 ? 1000000000L : 16000000L;
+            frameSource.listener.onFrame(frameTimeNs);
+        }
+
+        mCountly.moduleAPM.callbackOnActivityStopped(null);
+        Assert.assertNull(frameSource.listener);
+
+        ArgumentCaptor<String> metrics = ArgumentCaptor.forClass(String.class);
+        verify(requestQueueProvider).sendAPMCustomTrace(eq(ModuleAPM.FRAME_STATS_TRACE_PREFIX + "main_view"), any(Long.class), any(Long.class), any(Long.class), metrics.capture());
+        Assert.assertTrue(metrics.getValue().contains("\"frozen_frames\":1"));
+        Assert.assertTrue(metrics.getValue().contains("\"slow_rendering_frames\":0"));
+        Assert.assertTrue(metrics.getValue().contains("\"frame_count\":10"));
+    }
+
+    /**
+     * Handles with the same key run independently, only the first end call records the trace
+     */
+    @Test
+    public void traceHandles() throws InterruptedException {
+        final TraceHandle first = mCountly.apm().startTraceHandle("handle_trace");
+        TraceHandle second = mCountly.apm().startTraceHandle("handle_trace");
+        TraceHandle cancelled = mCountly.apm().startTraceHandle("handle_trace");
+        Assert.assertTrue(first.isRunning());
+
+        Thread thread = new Thread(new Runnable() {
+            @Override public void run() {
+                first.end();
+            }
+        });
+        thread.start();
+        thread.join();
+
+        Map<String, Integer> customMetrics = new HashMap<>();
+        customMetrics.put("items", 3);
+        second.end(customMetrics);
+        second.end();
+        cancelled.cancel();
+        cancelled.end();
+        Assert.assertFalse(first.isRunning());
+
+        ArgumentCaptor<String> metrics = ArgumentCaptor.forClass(String.class);
+        verify(requestQueueProvider, times(2)).sendAPMCustomTrace(eq("handle_trace"), any(Long.class), any(Long.class), any(Long.class), metrics.capture());
+        Assert.assertTrue(metrics.getAllValues().get(0).contains("\"" + ModuleAPM.DURATION_US_KEY + "\":"));
+        Assert.assertTrue(metrics.getAllValues().get(1).contains("\"items\":3"));
+        Assert.assertEquals(0, mCountly.moduleAPM.codeTraces.size());
+
+        //invalid keys give a handle that does nothing
+        TraceHandle invalid = mCountly.apm().startTraceHandle("");
+        Assert.assertFalse(invalid.isRunning());
+        invalid.end();
+        verify(requestQueueProvider, times(2)).sendAPMCustomTrace(any(String.class), any(Long.class), any(Long.class), any(Long.class), any(String.class));
+    }
+
+    /**
+     * Stream sizes are counted, closing the response stream ends the trace with the normalized key and phase timings
+     */
+    @Test
+    public void networkTraceStreams() throws IOException {
+        NetworkTrace trace = mCountly.apm().startNetworkTrace("https://api.example.com/users/1234?fields=name");
+        Assert.assertEquals("api.example.com/users/:id", trace.getKey());
+
+        trace.connectStart();
+        trace.connectEnd();
+        OutputStream out = trace.wrapRequestBody(new ByteArrayOutputStream());
+        out.write(new byte[] { 1, 2, 3 });
+        out.write(4);
+        trace.responseHeaders(200);
+
+        InputStream in = trace.wrapResponseBody(new ByteArrayInputStream(new byte[10]));
+        Assert.assertEquals(8, in.read(new byte[8]));
+        in.read();
+        verify(requestQueueProvider, never()).sendAPMNetworkTrace(any(String.class), any(Long.class), anyInt(), anyInt(), anyInt(), any(Long.class), any(Long.class), any(String.class));
+        in.close();
+        trace.end();
+
+        ArgumentCaptor<String> phases = ArgumentCaptor.forClass(String.class);
+        verify(requestQueueProvider, times(1)).sendAPMNetworkTrace(eq("api.example.com/users/:id"), any(Long.class), eq(200), eq(4), eq(9), any(Long.class), any(Long.class), phases.capture());
+        Assert.assertTrue(phases.getValue().contains("\"connect_time\":"));
+        Assert.assertTrue(phases.getValue().contains("\"ttfb\":"));
+        Assert.assertTrue(phases.getValue().contains("\"transfer_time\":"));
+        Assert.assertFalse(phases.getValue().contains("dns_time"));
+    }
+
+    /**
+     * A failed request is recorded with the response code '0', invalid URLs give a trace that does nothing
+     */
+    @Test
+    public void networkTraceFailed() {
+        NetworkTrace trace = mCountly.apm().startNetworkTrace("https://example.com/a");
+        trace.responseHeaders(200);
+        trace.fail();
+        verify(requestQueueProvider).sendAPMNetworkTrace(eq("example.com/a"), any(Long.class), eq(0), eq(0), eq(0), any(Long.class), any(Long.class), any(String.class));
+
+        NetworkTrace invalid = mCountly.apm().startNetworkTrace(null);
+        Assert.assertFalse(invalid.isRunning());
+        invalid.end();
+        verify(requestQueueProvider, times(1)).sendAPMNetworkTrace(any(String.class), any(Long.class), anyInt(), anyInt(), anyInt(), any(Long.class), any(Long.class), any(String.class));
+    }
 }
@@ -68,6 +68,67 @@ public class ModuleConsentTests {
         }
     }
 
+    /**
+     * Make sure that the feature indexes used for the consent state match the feature name order
+     */
+    @Test
+    public void featureIndexesMatchNames() {
+        int[] usedFeatureIndexes = new int[] {
+            ModuleConsent.FEATURE_SESSIONS,
+            ModuleConsent.FEATURE_EVENTS,
+            ModuleConsent.FEATURE_VIEWS,
+            ModuleConsent.FEATURE_LOCATION,
+            ModuleConsent.FEATURE_CRASHES,
+            ModuleConsent.FEATURE_ATTRIBUTION,
+            ModuleConsent.FEATURE_USERS,
+            ModuleConsent.FEATURE_PUSH,
+            ModuleConsent.FEATURE_STAR_RATING,
+            ModuleConsent.FEATURE_REMOTE_CONFIG,
+            ModuleConsent.FEATURE_APM,
+            ModuleConsent.FEATURE_FEEDBACK,
+            ModuleConsent.FEATURE_CLICKS,
+            ModuleConsent.FEATURE_SCROLLS,
+        };
+
+        Assert.assertEquals(usedFeatureNames.length, usedFeatureIndexes.length);
+        for (int a = 0; a < usedFeatureNames.length; a++) {
+            Assert.assertEquals(usedFeatureIndexes[a], ModuleConsent.getFeatureIndex(usedFeatureNames[a]));
+        }
+
+        Assert.assertEquals(-1, ModuleConsent.getFeatureIndex("unknown"));
+        Assert.assertEquals(-1, ModuleConsent.getFeatureIndex(null));
+    }
+
+    /**
+     * The index based and name based consent checks should always return the same value
+     */
+    @Test
+    public void indexAndNameConsentMatch() {
+        Countly mCountly = new Countly().init(TestUtils.createConsentCountlyConfig(true, new String[] { Countly.CountlyFeatureNames.events, Countly.CountlyFeatureNames.apm }, null));
+        ModuleConsent mc = mCountly.moduleConsent;
+
+        for (int a = 0; a < usedFeatureNames.length; a++) {
+            Assert.assertEquals(mc.getConsent(usedFeatureNames[a]), mc.getConsent(ModuleConsent.getFeatureIndex(usedFeatureNames[a])));
+        }
+        Assert.assertTrue(mc.getConsent(ModuleConsent.FEATURE_EVENTS));
+        Assert.assertTrue(mc.getConsent(ModuleConsent.FEATURE_APM));
+        Assert.assertFalse(mc.getConsent(ModuleConsent.FEATURE_VIEWS));
+
+        mCountly.consent().removeConsent(new String[] { Countly.CountlyFeatureNames.events });
+        mCountly.consent().giveConsent(new String[] { Countly.CountlyFeatureNames.views, Countly.CountlyFeatureNames.views });
+
+        for (int a = 0; a < usedFeatureNames.length; a++) {
+            Assert.assertEquals(mc.getConsent(usedFeatureNames[a]), mc.getConsent(ModuleConsent.getFeatureIndex(usedFeatureNames[a])));
+        }
+        Assert.assertFalse(mc.getConsent(ModuleConsent.FEATURE_EVENTS));
+        Assert.assertTrue(mc.getConsent(ModuleConsent.FEATURE_VIEWS));
+        Assert.assertTrue(mc.anyConsentGiven());
+
+        mCountly.consent().removeConsentAll();
+        Assert.assertFalse(mc.anyConsentGiven());
+        Assert.assertEquals(0, mc.consentState.get());
+    }
+
     /**
      * Test scenario were consent is required but no consent given on init
      * This should create a scenario where "getConsent" returns "false" for all features
@@ -18,6 +18,7 @@ import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 @RunWith(AndroidJUnit4.class)
@@ -84,23 +85,23 @@ public class ModuleCrashTests {
 
         countly.crashes().recordHandledException(exception);
 
-        verify(requestQueueProvider, never()).sendCrashReport(any(String.class), any(Boolean.class));
+        verify(requestQueueProvider, never()).sendEncodedCrashReport(any(CrashReportBuilder.class), any(Boolean.class));
 
         Throwable throwable = new Throwable("Secret message");
 
         countly.crashes().recordUnhandledException(throwable);
 
-        verify(requestQueueProvider, never()).sendCrashReport(any(String.class), any(Boolean.class));
+        verify(requestQueueProvider, never()).sendEncodedCrashReport(any(CrashReportBuilder.class), any(Boolean.class));
 
         exception = new Exception("Reasonable message");
 
         countly.crashes().recordHandledException(exception);
 
-        ArgumentCaptor<String> arg = ArgumentCaptor.forClass(String.class);
-        verify(requestQueueProvider).sendCrashReport(arg.capture(), any(Boolean.class));
+        ArgumentCaptor<CrashReportBuilder> arg = ArgumentCaptor.forClass(CrashReportBuilder.class);
+        verify(requestQueueProvider).sendEncodedCrashReport(arg.capture(), any(Boolean.class));
 
         //todo improve this
-        Assert.assertTrue(arg.getValue().contains("java.lang.Exception: Reasonable message\\n" +
+        Assert.assertTrue(TestUtils.crashReportJson(arg.getValue()).contains("java.lang.Exception: Reasonable message\\n" +
             "\\tat ly.count.android.sdk.ModuleCrashTests.crashFilterTest(ModuleCrashTests.java:"));
     }
 
@@ -163,10 +164,10 @@ public class ModuleCrashTests {
 
         Exception exception = new Exception("Some message");
         countly.crashes().recordHandledException(exception, segm3);
-        ArgumentCaptor<String> arg = ArgumentCaptor.forClass(String.class);
-        verify(requestQueueProvider).sendCrashReport(arg.capture(), any(Boolean.class));
+        ArgumentCaptor<CrashReportBuilder> arg = ArgumentCaptor.forClass(CrashReportBuilder.class);
+        verify(requestQueueProvider).sendEncodedCrashReport(arg.capture(), any(Boolean.class));
 
-        String argVal = arg.getValue();
+        String argVal = TestUtils.crashReportJson(arg.getValue());
 
         JSONObject jobj = new JSONObject(argVal);
         Assert.assertTrue(jobj.getString("_error").startsWith("java.lang.Exception: Some message"));
@@ -179,6 +180,50 @@ public class ModuleCrashTests {
         Assert.assertEquals(true, jCus.get("3"));
     }
 
+    /**
+     * Repeated handled exceptions from the same place are reported once per window, the index is saved
+     */
+    @Test
+    public void crashDeduplication() {
+        Countly countly = new Countly();
+        countly.init((new CountlyConfig(getContext(), "appkey", "http://test.count.ly")).setDeviceId("1234").enableCrashDeduplication(3600));
+        requestQueueProvider = TestUtils.setRequestQueueProviderToMock(countly, mock(RequestQueueProvider.class));
+
+        for (int a = 0; a < 5; a++) {
+            countly.crashes().recordHandledException(new Exception("Loop " + a));
+        }
+        verify(requestQueueProvider, times(1)).sendEncodedCrashReport(any(CrashReportBuilder.class), any(Boolean.class));
+
+        countly.crashes().recordHandledException(new IllegalStateException("Other"));
+        verify(requestQueueProvider, times(2)).sendEncodedCrashReport(any(CrashReportBuilder.class), any(Boolean.class));
+
+        Assert.assertEquals(2, countly.moduleCrash.crashDeduplicator.size());
+        Assert.assertFalse(countly.countlyStore.getCrashIndex().isEmpty());
+        //the kept text of the counted occurrences is not part of the index
+        Assert.assertFalse(countly.countlyStore.getCrashIndex().contains("Loop"));
+    }
+
+    /**
+     * An exception that the crash filter drops does not start a deduplication window
+     */
+    @Test
+    public void crashDeduplicationAfterFilter() {
+        Countly countly = new Countly();
+        countly.init((new CountlyConfig(getContext(), "appkey", "http://test.count.ly")).setDeviceId("1234").enableCrashDeduplication(3600)
+            .setCrashFilterCallback(new CrashFilterCallback() {
+                @Override public boolean filterCrash(String crash) {
+                    return crash.contains("Ignored");
+                }
+            }));
+        requestQueueProvider = TestUtils.setRequestQueueProviderToMock(countly, mock(RequestQueueProvider.class));
+
+        for (int a = 0; a < 3; a++) {
+            countly.crashes().recordHandledException(new Exception(a == 0 ? "Ignored" : "Loop " + a));
+        }
+        verify(requestQueueProvider, times(1)).sendEncodedCrashReport(any(CrashReportBuilder.class), any(Boolean.class));
+        Assert.assertEquals(1, countly.moduleCrash.crashDeduplicator.size());
+    }
+
     @Test
     public void addCrashBreadcrumb() {
         mCountly.crashes().addCrashBreadcrumb("Breadcrumb_1");
@@ -215,11 +260,11 @@ public class ModuleCrashTests {
 
         mCountly.crashes().recordHandledException(exception);
 
-        ArgumentCaptor<String> arg = ArgumentCaptor.forClass(String.class);
-        verify(requestQueueProvider).sendCrashReport(arg.capture(), any(Boolean.class));
+        ArgumentCaptor<CrashReportBuilder> arg = ArgumentCaptor.forClass(CrashReportBuilder.class);
+        verify(requestQueueProvider).sendEncodedCrashReport(arg.capture(), any(Boolean.class));
 
         //todo improve this
-        Assert.assertTrue(arg.getValue().contains("java.lang.Exception: Some message\\n" +
+        Assert.assertTrue(TestUtils.crashReportJson(arg.getValue()).contains("java.lang.Exception: Some message\\n" +
             "\\tat ly.count.android.sdk.ModuleCrashTests.recordHandledExceptionException(ModuleCrashTests.java:"));
     }
 
@@ -229,10 +274,10 @@ public class ModuleCrashTests {
 
         mCountly.crashes().recordHandledException(throwable);
 
-        ArgumentCaptor<String> arg = ArgumentCaptor.forClass(String.class);
-        verify(requestQueueProvider).sendCrashReport(arg.capture(), any(Boolean.class));
+        ArgumentCaptor<CrashReportBuilder> arg = ArgumentCaptor.forClass(CrashReportBuilder.class);
+        verify(requestQueueProvider).sendEncodedCrashReport(arg.capture(), any(Boolean.class));
 
-        String crash = arg.getValue();
+        String crash = TestUtils.crashReportJson(arg.getValue());
 
         //todo improve this
         Assert.assertTrue(crash.contains("java.lang.Throwable: Some message\\n" +
@@ -245,10 +290,10 @@ public class ModuleCrashTests {
 
         mCountly.crashes().recordUnhandledException(exception);
 
-        ArgumentCaptor<String> arg = ArgumentCaptor.forClass(String.class);
-        verify(requestQueueProvider).sendCrashReport(arg.capture(), any(Boolean.class));
+        ArgumentCaptor<CrashReportBuilder> arg = ArgumentCaptor.forClass(CrashReportBuilder.class);
+        verify(requestQueueProvider).sendEncodedCrashReport(arg.capture(), any(Boolean.class));
 
-        String crash = arg.getValue();
+        String crash = TestUtils.crashReportJson(arg.getValue());
 
         //todo improve this
         Assert.assertTrue(crash.contains("java.lang.Exception: Some message\\n" +
@@ -261,10 +306,10 @@ public class ModuleCrashTests {
 
         mCountly.crashes().recordUnhandledException(throwable);
 
-        ArgumentCaptor<String> arg = ArgumentCaptor.forClass(String.class);
-        verify(requestQueueProvider).sendCrashReport(arg.capture(), any(Boolean.class));
+        ArgumentCaptor<CrashReportBuilder> arg = ArgumentCaptor.forClass(CrashReportBuilder.class);
+        verify(requestQueueProvider).sendEncodedCrashReport(arg.capture(), any(Boolean.class));
 
-        String crash = arg.getValue();
+        String crash = TestUtils.crashReportJson(arg.getValue());
 
         //todo improve this
         Assert.assertTrue(crash.contains("java.lang.Throwable: Some message\\n" +
@@ -1,7 +1,13 @@
 package ly.count.android.sdk;
 
 import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import org.junit.After;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -57,4 +63,180 @@ public class ModuleLogTests {
     public void checkListenerSimple() {
 
     }
+
+    /**
+     * Placeholders are replaced in order and missing arguments leave the rest of the format untouched
+     */
+    @Test
+    public void formatMessage() {
+        Assert.assertEquals("a [1] b [true]", ModuleLog.formatMessage("a [{}] b [{}]", 1, true, null, null, 2));
+        Assert.assertEquals("[x][null][{}]", ModuleLog.formatMessage("[{}][{}][{}]", "x", null, null, null, 2));
+        Assert.assertEquals("no placeholders", ModuleLog.formatMessage("no placeholders", "x", null, null, null, 1));
+        Assert.assertEquals("1234", ModuleLog.formatMessage("{}{}{}{}", 1, 2, 3, 4, 4));
+        Assert.assertEquals("", ModuleLog.formatMessage(null, 1, null, null, null, 1));
+    }
+
+    /**
+     * Lazy log calls should not build the message while logging is disabled
+     */
+    @Test
+    public void lazyLogsNotBuiltWhileDisabled() {
+        Countly.sharedInstance().setLoggingEnabled(false);
+        ModuleLog log = new ModuleLog();
+        final int[] supplierCalls = { 0 };
+        ModuleLog.MessageSupplier supplier = new ModuleLog.MessageSupplier() {
+            @Override public String get() {
+                supplierCalls[0]++;
+                return "aa";
+            }
+        };
+
+        Assert.assertFalse(log.isVerbose());
+        log.v(supplier);
+        log.d(supplier);
+        log.i(supplier);
+        log.w(supplier);
+        log.e(supplier);
+        Assert.assertEquals(0, supplierCalls[0]);
+
+        Countly.sharedInstance().setLoggingEnabled(true);
+        Assert.assertTrue(log.isVerbose());
+        log.v(supplier);
+        Assert.assertEquals(1, supplierCalls[0]);
+    }
+
+    /**
+     * Logs below the configured level are not built and do not reach the listener
+     */
+    @Test
+    public void logLevel() {
+        Countly.sharedInstance().setLoggingEnabled(false);
+        ModuleLog log = new ModuleLog();
+        final List<ModuleLog.LogLevel> levels = new ArrayList<>();
+        log.SetListener(new ModuleLog.LogCallback() {
+            @Override public void LogHappened(String logMessage, ModuleLog.LogLevel logLevel) {
+                levels.add(logLevel);
+            }
+        });
+        log.setLogLevel(ModuleLog.LogLevel.Info);
+
+        Assert.assertFalse(log.isVerbose());
+        Assert.assertFalse(log.isDebug());
+        Assert.assertTrue(log.isInfo());
+        Assert.assertTrue(log.isError());
+
+        log.v("aa");
+        log.d("[Tag] value:[{}]", 5);
+        log.i("cc");
+        log.w("dd");
+        log.e("ee");
+        Assert.assertEquals("[Info, Warning, Error]", levels.toString());
+
+        log.setLogLevel(null);
+        Assert.assertTrue(log.isVerbose());
+    }
+
+    /**
+     * Lazy log calls should pass the formatted message to the listener
+     */
+    @Test
+    public void lazyLogsReachListener() {
+        Countly.sharedInstance().setLoggingEnabled(false);
+        ModuleLog log = new ModuleLog();
+        final String[] lastMessage = { null };
+        final ModuleLog.LogLevel[] lastLevel = { null };
+
+        log.SetListener(new ModuleLog.LogCallback() {
+            @Override public void LogHappened(String logMessage, ModuleLog.LogLevel logLevel) {
+                lastMessage[0] = logMessage;
+                lastLevel[0] = logLevel;
+            }
+        });
+
+        log.d("[Tag] value:[{}] other:[{}]", 5, "x");
+        Assert.assertEquals("[Tag] value:[5] other:[x]", lastMessage[0]);
+        Assert.assertEquals(ModuleLog.LogLevel.Debug, lastLevel[0]);
+
+        log.w("[Tag] warn:[{}]", "y");
+        Assert.assertEquals("[Tag] warn:[y]", lastMessage[0]);
+        Assert.assertEquals(ModuleLog.LogLevel.Warning, lastLevel[0]);
+    }
+
+    /**
+     * With async dispatch the listener is called from a background thread and receives all messages in order
+     */
+    @Test
+    public void asyncListenerDelivery() throws InterruptedException {
+        Countly.sharedInstance().setLoggingEnabled(false);
+        ModuleLog log = new ModuleLog();
+        final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+        final List<Thread> listenerThreads = Collections.synchronizedList(new ArrayList<Thread>());
+        final CountDownLatch allReceived = new CountDownLatch(50);
+
+        log.SetListener(new ModuleLog.LogCallback() {
+            @Override public void LogHappened(String logMessage, ModuleLog.LogLevel logLevel) {
+                received.add(logMessage);
+                listenerThreads.add(Thread.currentThread());
+                allReceived.countDown();
+            }
+        });
+        log.enableAsyncListenerDispatch(100);
+
+        for (int a = 0; a < 50; a++) {
+            log.d("m" + a);
+        }
+
+        Assert.assertTrue(allReceived.await(5, TimeUnit.SECONDS));
+        for (int a = 0; a < 50; a++) {
+            Assert.assertEquals("m" + a, received.get(a));
+            Assert.assertNotSame(Thread.currentThread(), listenerThreads.get(a));
+        }
+        Assert.assertEquals(0, log.getDroppedListenerLogCount());
+
+        log.SetListener(null);
+    }
+
+    /**
+     * When the buffer is full, messages are dropped, counted and the drop is reported to the listener.
+     * Flushing delivers the buffered messages on the calling thread.
+     */
+    @Test
+    public void asyncListenerOverflowAndFlush() throws InterruptedException {
+        final CountDownLatch firstMessageReceived = new CountDownLatch(1);
+        final CountDownLatch releaseListener = new CountDownLatch(1);
+        final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+
+        AsyncLogDispatcher dispatcher = new AsyncLogDispatcher(new ModuleLog.LogCallback() {
+            @Override public void LogHappened(String logMessage, ModuleLog.LogLevel logLevel) {
+                received.add(logMessage);
+                firstMessageReceived.countDown();
+                try {
+                    releaseListener.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException ignored) {
+                }
+            }
+        }, 3);
+
+        //the background thread picks this one up and blocks in the listener
+        Assert.assertTrue(dispatcher.enqueue("first", ModuleLog.LogLevel.Info));
+        Assert.assertTrue(firstMessageReceived.await(5, TimeUnit.SECONDS));
+
+        Assert.assertTrue(dispatcher.enqueue("a", ModuleLog.LogLevel.Info));
+        Assert.assertTrue(dispatcher.enqueue("b", ModuleLog.LogLevel.Info));
+        Assert.assertTrue(dispatcher.enqueue("c", ModuleLog.LogLevel.Info));
+        Assert.assertFalse(dispatcher.enqueue("d", ModuleLog.LogLevel.Info));
+        Assert.assertFalse(dispatcher.enqueue("e", ModuleLog.LogLevel.Info));
+        Assert.assertEquals(2, dispatcher.getOverflowCount());
+
+        releaseListener.countDown();
+        dispatcher.flush();
+        dispatcher.stop();
+
+        Assert.assertEquals(5, received.size());
+        Assert.assertEquals("first", received.get(0));
+        Assert.assertTrue(received.get(1).contains("[2] messages were dropped"));
+        Assert.assertEquals("a", received.get(2));
+        Assert.assertEquals("b", received.get(3));
+        Assert.assertEquals("c", received.get(4));
+    }
 }
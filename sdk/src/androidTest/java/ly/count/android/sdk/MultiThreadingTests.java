@@ -2,11 +2,15 @@ package ly.count.android.sdk;
 
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -72,6 +76,176 @@ public class MultiThreadingTests {
         //todo add validation
     }
 
+    /**
+     * Calls to all modules, lifecycle calls and timer ticks running in parallel.
+     * No call should throw and all threads should finish, a thread that doesn't would point to a deadlock.
+     */
+    @Test
+    public void busyThreads_allModules() throws BrokenBarrierException, InterruptedException {
+        int threadsPerJob = 10;
+        ThreadCall[] jobs = new ThreadCall[] {
+            createEventJob(), createTimedEventJob(), createViewJob(), createCrashJob(), createRatingsJob(), createLocationJob(),
+            createApmJob(), createUserProfileJob(), createRemoteConfigJob(), createRequestQueueJob(), createLifecycleJob(), createConsentJob()
+        };
+
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        final CyclicBarrier gate = new CyclicBarrier(jobs.length * threadsPerJob + 1);
+        List<Thread> runs = new ArrayList<>();
+
+        for (ThreadCall job : jobs) {
+            for (int a = 0; a < threadsPerJob; a++) {
+                runs.add(tBase(gate, a, 20, 0, recordFailures(job, failures)));
+            }
+        }
+
+        for (Thread t : runs) {
+            t.start();
+        }
+
+        gate.await();
+
+        joinAll(runs, 60000);
+
+        Assert.assertEquals("failed calls: " + failures, 0, failures.size());
+    }
+
+    /**
+     * Events recorded in parallel from many threads should all end up in the event queue exactly once
+     */
+    @Test
+    public void parallelEventsAllRecorded() throws BrokenBarrierException, InterruptedException {
+        mCountly.halt();
+        mCountly.init((new CountlyConfig(getContext(), "appkey", "https://test.count.ly")).setDeviceId("1234").setLoggingEnabled(true).setEventQueueSizeToSend(1000));
+
+        final int threadCount = 20;
+        final int iterationCount = 25;
+
+        final CyclicBarrier gate = new CyclicBarrier(threadCount + 1);
+        List<Thread> runs = new ArrayList<>();
+
+        for (int a = 0; a < threadCount; a++) {
+            runs.add(tBase(gate, a, iterationCount, 0, new ThreadCall() {
+                @Override public void call(int threadNumber, int iter, long sleepTime) {
+                    String key = "mt_event_" + threadNumber + "_" + iter;
+                    if (iter % 2 == 0) {
+                        mCountly.events().recordEvent(key);
+                    } else {
+                        mCountly.events().startEvent(key);
+                        mCountly.events().endEvent(key);
+                    }
+                }
+            }));
+        }
+
+        for (Thread t : runs) {
+            t.start();
+        }
+
+        gate.await();
+
+        joinAll(runs, 30000);
+
+        String[] events = mCountly.countlyStore.getEvents();
+        Assert.assertEquals(threadCount * iterationCount, events.length);
+
+        for (int a = 0; a < threadCount; a++) {
+            for (int b = 0; b < iterationCount; b++) {
+                String key = "\"mt_event_" + a + "_" + b + "\"";
+                int found = 0;
+                for (String event : events) {
+                    if (event.contains(key)) {
+                        found++;
+                    }
+                }
+                Assert.assertEquals(1, found);
+            }
+        }
+    }
+
+    /**
+     * A module that is busy should not block calls to other modules
+     */
+    @Test
+    public void busyModuleDoesNotBlockEvents() throws InterruptedException {
+        final CountDownLatch lockTaken = new CountDownLatch(1);
+        final CountDownLatch releaseLock = new CountDownLatch(1);
+
+        Thread busyThread = new Thread() {
+            @Override public void run() {
+                synchronized (mCountly.moduleAPM.moduleLock) {
+                    lockTaken.countDown();
+                    try {
+                        releaseLock.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+            }
+        };
+        busyThread.start();
+        Assert.assertTrue(lockTaken.await(5, TimeUnit.SECONDS));
+
+        final CountDownLatch eventRecorded = new CountDownLatch(1);
+        Thread eventThread = new Thread() {
+            @Override public void run() {
+                mCountly.events().recordEvent("not_blocked");
+                mCountly.views().recordView("not_blocked_view");
+                mCountly.crashes().addCrashBreadcrumb("not_blocked_crumb");
+                eventRecorded.countDown();
+            }
+        };
+        eventThread.start();
+
+        try {
+            Assert.assertTrue(eventRecorded.await(5, TimeUnit.SECONDS));
+        } finally {
+            releaseLock.countDown();
+            busyThread.join();
+            eventThread.join();
+        }
+    }
+
+    /**
+     * Lifecycle calls hold the Countly lock, event recording should not wait for them
+     */
+    @Test
+    public void lifecycleLockDoesNotBlockEvents() throws InterruptedException {
+        final CountDownLatch lockTaken = new CountDownLatch(1);
+        final CountDownLatch releaseLock = new CountDownLatch(1);
+
+        Thread busyThread = new Thread() {
+            @Override public void run() {
+                synchronized (mCountly) {
+                    lockTaken.countDown();
+                    try {
+                        releaseLock.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+            }
+        };
+        busyThread.start();
+        Assert.assertTrue(lockTaken.await(5, TimeUnit.SECONDS));
+
+        final CountDownLatch eventRecorded = new CountDownLatch(1);
+        Thread eventThread = new Thread() {
+            @Override public void run() {
+                mCountly.events().recordEvent("not_blocked");
+                mCountly.apm().startTrace("not_blocked_trace");
+                mCountly.apm().endTrace("not_blocked_trace", null);
+                eventRecorded.countDown();
+            }
+        };
+        eventThread.start();
+
+        try {
+            Assert.assertTrue(eventRecorded.await(5, TimeUnit.SECONDS));
+        } finally {
+            releaseLock.countDown();
+            busyThread.join();
+            eventThread.join();
+        }
+    }
+
     ThreadCall createEventJob() {
         return new ThreadCall() {
             @Override public void call(int threadNumber, int iter, long sleepTime) {
@@ -158,6 +332,122 @@ public class MultiThreadingTests {
         };
     }
 
+    ThreadCall createTimedEventJob() {
+        return new ThreadCall() {
+            @Override public void call(int threadNumber, int iter, long sleepTime) {
+                String key = "timed__" + threadNumber + "__" + iter;
+                mCountly.events().startEvent(key);
+                if (iter % 3 == 0) {
+                    mCountly.events().cancelEvent(key);
+                } else {
+                    mCountly.events().endEvent(key, createSegmentation(iter), 1, iter);
+                }
+            }
+        };
+    }
+
+    ThreadCall createApmJob() {
+        return new ThreadCall() {
+            @Override public void call(int threadNumber, int iter, long sleepTime) {
+                String key = "trace_" + threadNumber + "_" + iter;
+                switch ((threadNumber + iter) % 3) {
+                    case 0:
+                        mCountly.apm().startTrace(key);
+                        mCountly.apm().endTrace(key, null);
+                        break;
+                    case 1:
+                        mCountly.apm().startNetworkRequest(key, "id" + iter);
+                        mCountly.apm().endNetworkRequest(key, "id" + iter, 200, 100 + iter, 200 + iter);
+                        break;
+                    case 2:
+                        mCountly.apm().startTrace(key);
+                        mCountly.apm().cancelTrace(key);
+                        break;
+                }
+            }
+        };
+    }
+
+    ThreadCall createUserProfileJob() {
+        return new ThreadCall() {
+            @Override public void call(int threadNumber, int iter, long sleepTime) {
+                mCountly.userProfile().setProperty("prop_" + threadNumber, "value_" + iter);
+                mCountly.userProfile().incrementBy("counter_" + threadNumber, iter);
+                if (iter % 5 == 0) {
+                    mCountly.userProfile().save();
+                }
+            }
+        };
+    }
+
+    ThreadCall createRemoteConfigJob() {
+        return new ThreadCall() {
+            @Override public void call(int threadNumber, int iter, long sleepTime) {
+                mCountly.remoteConfig().getAllValues();
+                mCountly.remoteConfig().getValueForKey("key_" + iter);
+            }
+        };
+    }
+
+    ThreadCall createRequestQueueJob() {
+        return new ThreadCall() {
+            @Override public void call(int threadNumber, int iter, long sleepTime) {
+                Map<String, String> request = new HashMap<>();
+                request.put("direct_" + threadNumber, "" + iter);
+                mCountly.requestQueue().addDirectRequest(request);
+                mCountly.requestQueue().attemptToSendStoredRequests();
+            }
+        };
+    }
+
+    ThreadCall createLifecycleJob() {
+        return new ThreadCall() {
+            @Override public void call(int threadNumber, int iter, long sleepTime) {
+                switch ((threadNumber + iter) % 3) {
+                    case 0:
+                        mCountly.onStart(null);
+                        mCountly.onStop();
+                        break;
+                    case 1:
+                        mCountly.onTimer();
+                        break;
+                    case 2:
+                        mCountly.sessions().updateSession();
+                        break;
+                }
+            }
+        };
+    }
+
+    ThreadCall createConsentJob() {
+        return new ThreadCall() {
+            @Override public void call(int threadNumber, int iter, long sleepTime) {
+                mCountly.consent().checkAllConsent();
+                mCountly.consent().getConsent(Countly.CountlyFeatureNames.events);
+            }
+        };
+    }
+
+    ThreadCall recordFailures(final ThreadCall threadCall, final List<Throwable> failures) {
+        return new ThreadCall() {
+            @Override public void call(int threadNumber, int iter, long sleepTime) {
+                try {
+                    threadCall.call(threadNumber, iter, sleepTime);
+                } catch (Throwable t) {
+                    failures.add(t);
+                }
+            }
+        };
+    }
+
+    void joinAll(List<Thread> threads, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        for (Thread t : threads) {
+            t.join(Math.max(1, deadline - System.currentTimeMillis()));
+            Assert.assertFalse("Thread did not finish, possible deadlock", t.isAlive());
+        }
+    }
+
     ThreadCall createRatingsJob() {
         return new ThreadCall() {
             @Override public void call(int threadNumber, int iter, long sleepTime) {
@@ -0,0 +1,208 @@
+package ly.count.android.sdk;
+
+import android.os.Bundle;
+import android.util.Log;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static androidx.test.InstrumentationRegistry.getContext;
+import static org.mockito.Mockito.mock;
+
+/**
+ * End to end load tests of the request pipeline: ModuleEvents -> CountlyStore -> ConnectionProcessor -> MockCountlyServer.
+ *
+ * The amount of events defaults to a small number so that these run with the rest of the tests.
+ * Larger runs can be started with instrumentation arguments, for example:
+ * ./gradlew :sdk:connectedAndroidTest -Pandroid.testInstrumentationRunnerArguments.class=ly.count.android.sdk.RequestPipelineLoadTests -Pandroid.testInstrumentationRunnerArguments.loadEventCount=1000000
+ * The results are written to logcat with the tag 'CountlyLoadTest'.
+ */
+@RunWith(AndroidJUnit4.class)
+public class RequestPipelineLoadTests {
+    static final String TAG = "CountlyLoadTest";
+    static final int EVENTS_PER_REQUEST = 100;
+    static final int RECORDING_THREADS = 4;
+
+    MockCountlyServer server;
+    Countly countly;
+    int eventCount;
+
+    /**
+     * Results of a single load run
+     */
+    static class LoadReport {
+        int events;
+        long recordDurationMs;
+        long deliveryDurationMs;
+        long eventsDelivered;
+
+        long latencyP50Ms;
+        long latencyP90Ms;
+        long latencyP99Ms;
+        long latencyMaxMs;
+
+        long storageWrites;
+        long storageWriteBytes;
+
+        long requestsSent;
+        long requestsAccepted;
+        long bytesSent;
+
+        double recordThroughput() {
+            return events * 1000.0 / Math.max(1, recordDurationMs);
+        }
+
+        double deliveryThroughput() {
+            return eventsDelivered * 1000.0 / Math.max(1, deliveryDurationMs);
+        }
+
+        /**
+         * @return how many times a request was sent on average until the server accepted it
+         */
+        double retryAmplification() {
+            return requestsAccepted == 0 ? 0 : (double) requestsSent / requestsAccepted;
+        }
+
+        @Override public String toString() {
+            return "LoadReport{events:" + events + ", delivered:" + eventsDelivered
+                + ", record:" + recordDurationMs + "ms (" + (long) recordThroughput() + " ev/s)"
+                + ", delivery:" + deliveryDurationMs + "ms (" + (long) deliveryThroughput() + " ev/s)"
+                + ", latency p50/p90/p99/max:" + latencyP50Ms + "/" + latencyP90Ms + "/" + latencyP99Ms + "/" + latencyMaxMs + "ms"
+                + ", storage writes:" + storageWrites + " (" + storageWriteBytes + "B)"
+                + ", requests sent/accepted:" + requestsSent + "/" + requestsAccepted + " (" + bytesSent + "B)"
+                + ", retry amplification:" + String.format("%.3f", retryAmplification()) + "}";
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        final CountlyStore countlyStore = new CountlyStore(getContext(), mock(ModuleLog.class));
+        countlyStore.clear();
+
+        Bundle arguments = InstrumentationRegistry.getArguments();
+        eventCount = Integer.parseInt(arguments.getString("loadEventCount", "2000"));
+
+        server = new MockCountlyServer();
+    }
+
+    @After
+    public void tearDown() {
+        if (countly != null) {
+            countly.halt();
+        }
+        server.stop();
+
+        Assert.assertEquals("mock server errors: " + server.getHandlerErrors(), 0, server.getHandlerErrors().size());
+    }
+
+    /**
+     * All events reach a well behaving server, every request is accepted on the first try
+     */
+    @Test
+    public void baseline() throws InterruptedException {
+        LoadReport report = runLoad(eventCount);
+
+        Assert.assertEquals(eventCount, report.eventsDelivered);
+        Assert.assertEquals(0, server.requestsFailed.get());
+        Assert.assertEquals(1.0, report.retryAmplification(), 0.0001);
+    }
+
+    /**
+     * A slow server with random errors and an outage at the start. All events still arrive, failed requests are retried.
+     */
+    @Test
+    public void faultyServer() throws InterruptedException {
+        server.setLatency(5).setErrorRate(0.1).failNextRequests(5).setSlowBody(4, 1);
+
+        LoadReport report = runLoad(eventCount);
+
+        Assert.assertTrue(report.eventsDelivered >= eventCount);
+        Assert.assertTrue(server.requestsFailed.get() >= 5);
+        Assert.assertTrue(report.retryAmplification() > 1.0);
+    }
+
+    /**
+     * Records 'events' events from multiple threads and waits until the server has received all of them
+     */
+    LoadReport runLoad(final int events) throws InterruptedException {
+        countly = new Countly();
+        countly.init(new CountlyConfig(getContext(), "appkey", server.getUrl()).setDeviceId("load_test").setEventQueueSizeToSend(EVENTS_PER_REQUEST).enableSdkMetrics());
+
+        LoadReport report = new LoadReport();
+        report.events = events;
+
+        //record
+        long recordStart = System.currentTimeMillis();
+        Thread[] threads = new Thread[RECORDING_THREADS];
+        for (int a = 0; a < threads.length; a++) {
+            final int threadIndex = a;
+            threads[a] = new Thread(new Runnable() {
+                @Override public void run() {
+                    for (int b = threadIndex; b < events; b += RECORDING_THREADS) {
+                        Map<String, Object> segmentation = new HashMap<>();
+                        segmentation.put("index", b);
+                        segmentation.put("thread", threadIndex);
+                        segmentation.put(MockCountlyServer.SEGMENTATION_RECORD_TIME_KEY, String.valueOf(System.currentTimeMillis()));
+                        countly.events().recordEvent("load_event_" + (b % 10), segmentation, 1, b);
+                    }
+                }
+            });
+            threads[a].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        report.recordDurationMs = System.currentTimeMillis() - recordStart;
+
+        //the last batch is smaller than the event queue threshold, move it to the request queue as well
+        countly.moduleRequestQueue.sendEventsIfNeeded(true);
+
+        //deliver, failed requests are only retried on the next tick
+        long deadline = System.currentTimeMillis() + 60000L + events / 1000L * 1000L;
+        while (server.eventsReceived.get() < events && System.currentTimeMillis() < deadline) {
+            countly.requestQueue().attemptToSendStoredRequests();
+            Thread.sleep(100);
+        }
+        report.deliveryDurationMs = System.currentTimeMillis() - recordStart;
+
+        fillReport(report, countly.getSdkMetricsSnapshot());
+        Log.i(TAG, report.toString());
+        return report;
+    }
+
+    void fillReport(LoadReport report, SdkMetrics.Snapshot snapshot) {
+        report.eventsDelivered = server.eventsReceived.get();
+
+        long[] latencies = server.getLatencySamplesMs();
+        report.latencyP50Ms = percentile(latencies, 0.5);
+        report.latencyP90Ms = percentile(latencies, 0.9);
+        report.latencyP99Ms = percentile(latencies, 0.99);
+        report.latencyMaxMs = latencies.length == 0 ? 0 : latencies[latencies.length - 1];
+
+        Assert.assertNotNull(snapshot);
+        report.storageWrites = snapshot.storageWrites;
+        report.storageWriteBytes = snapshot.storageWriteBytes;
+
+        report.requestsSent = server.requestsReceived.get();
+        report.requestsAccepted = server.requestsAccepted.get();
+        report.bytesSent = server.bytesReceived.get();
+    }
+
+    /**
+     * @param sorted values sorted from the lowest
+     * @param quantile between 0 and 1
+     */
+    static long percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+}
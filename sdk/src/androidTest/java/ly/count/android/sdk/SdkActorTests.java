@@ -0,0 +1,297 @@
+package ly.count.android.sdk;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static androidx.test.InstrumentationRegistry.getContext;
+import static org.mockito.Mockito.mock;
+
+@RunWith(AndroidJUnit4.class)
+public class SdkActorTests {
+    Countly mCountly;
+
+    @Before
+    public void setUp() {
+        final CountlyStore countlyStore = new CountlyStore(getContext(), mock(ModuleLog.class));
+        countlyStore.clear();
+
+        mCountly = new Countly();
+        mCountly.init((new CountlyConfig(getContext(), "appkey", "https://test.count.ly")).setDeviceId("1234").setLoggingEnabled(true).setEventQueueSizeToSend(1000).enableSdkActorThread());
+    }
+
+    @After
+    public void tearDown() {
+        mCountly.halt();
+    }
+
+    /**
+     * Posted calls are run one at a time on the same thread, in the order in which they were posted
+     */
+    @Test
+    public void postedCallsRunInOrder() {
+        SdkActor actor = new SdkActor(mock(ModuleLog.class));
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        final List<String> threadNames = Collections.synchronizedList(new ArrayList<String>());
+
+        for (int a = 0; a < 100; a++) {
+            final int index = a;
+            actor.post(new Runnable() {
+                @Override public void run() {
+                    order.add(index);
+                    threadNames.add(Thread.currentThread().getName());
+                }
+            });
+        }
+
+        Assert.assertTrue(actor.awaitIdle(5000));
+        Assert.assertEquals(100, order.size());
+        for (int a = 0; a < 100; a++) {
+            Assert.assertEquals(a, (int) order.get(a));
+            Assert.assertEquals(SdkActor.THREAD_NAME, threadNames.get(a));
+        }
+
+        actor.stop();
+    }
+
+    /**
+     * A failing call should not stop the calls after it, calls posted after stopping are ignored
+     */
+    @Test
+    public void failingCallAndStop() {
+        SdkActor actor = new SdkActor(mock(ModuleLog.class));
+        final List<Integer> done = Collections.synchronizedList(new ArrayList<Integer>());
+
+        actor.post(new Runnable() {
+            @Override public void run() {
+                throw new IllegalStateException("failing call");
+            }
+        });
+        actor.post(new Runnable() {
+            @Override public void run() {
+                done.add(1);
+            }
+        });
+
+        Assert.assertTrue(actor.awaitIdle(5000));
+        Assert.assertEquals(1, done.size());
+
+        actor.stop();
+        actor.post(new Runnable() {
+            @Override public void run() {
+                done.add(2);
+            }
+        });
+        Assert.assertEquals(1, done.size());
+    }
+
+    /**
+     * While the SDK thread is blocked, calls that don't fit into the queue are dropped and counted
+     */
+    @Test
+    public void fullQueueDropsCalls() throws InterruptedException {
+        SdkActor actor = new SdkActor(mock(ModuleLog.class), 2);
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(2);
+        final List<Integer> done = Collections.synchronizedList(new ArrayList<Integer>());
+
+        actor.post(new Runnable() {
+            @Override public void run() {
+                running.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException ignored) {
+                }
+            }
+        });
+        Assert.assertTrue(running.await(5, TimeUnit.SECONDS));
+
+        for (int a = 0; a < 4; a++) {
+            final int index = a;
+            boolean posted = actor.post(new Runnable() {
+                @Override public void run() {
+                    done.add(index);
+                    finished.countDown();
+                }
+            });
+            Assert.assertEquals(a < 2, posted);
+        }
+        Assert.assertEquals(2, actor.getDroppedCallCount());
+
+        release.countDown();
+        Assert.assertTrue(finished.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(Arrays.asList(0, 1), done);
+
+        actor.stop();
+    }
+
+    /**
+     * Events are validated on the calling thread and stored on the SDK thread with the time of the call
+     */
+    @Test
+    public void eventsRecordedOnActorThread() {
+        Assert.assertNotNull(mCountly.sdkActor);
+
+        Map<String, Object> segmentation = new HashMap<>();
+        segmentation.put("a", "b");
+
+        long before = UtilsTime.currentTimestampMs();
+        mCountly.events().recordEvent("actor_event", segmentation, 2, 3.0);
+        //changing the map after the call should not change the recorded event
+        segmentation.put("c", "d");
+
+        mCountly.events().startEvent("actor_timed");
+        Assert.assertTrue(mCountly.events().endEvent("actor_timed"));
+        Assert.assertFalse(mCountly.events().endEvent("actor_timed"));
+
+        Assert.assertTrue(mCountly.sdkActor.awaitIdle(5000));
+
+        List<Event> events = mCountly.countlyStore.getEventList();
+        Assert.assertEquals(2, events.size());
+
+        Event event = events.get(0);
+        Assert.assertEquals("actor_event", event.key);
+        Assert.assertEquals(2, event.count);
+        Assert.assertEquals(1, event.segmentation.size());
+        Assert.assertTrue(event.timestamp >= before);
+
+        Assert.assertEquals("actor_timed", events.get(1).key);
+    }
+
+    /**
+     * Invalid arguments are still reported to the caller
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidEventThrowsOnCaller() {
+        mCountly.events().recordEvent("", null, 1, 0);
+    }
+
+    /**
+     * Getters return published values without going through the SDK thread
+     */
+    @Test
+    public void gettersServedFromSnapshots() throws Exception {
+        Assert.assertEquals("1234", mCountly.getDeviceID());
+        Assert.assertEquals("1234", mCountly.deviceId().getID());
+
+        Assert.assertEquals(0, mCountly.remoteConfig().getAllValues().size());
+
+        ModuleRemoteConfig.RemoteConfigValueStore rcvs = ModuleRemoteConfig.RemoteConfigValueStore.dataFromString(null);
+        rcvs.mergeValues(new JSONObject("{\"key\":\"value\",\"number\":5}"));
+        mCountly.moduleRemoteConfig.saveConfig(rcvs);
+
+        Assert.assertEquals("value", mCountly.remoteConfig().getValueForKey("key"));
+        Assert.assertEquals(5, mCountly.remoteConfig().getValueForKey("number"));
+        Assert.assertEquals(2, mCountly.remoteConfig().getAllValues().size());
+
+        mCountly.remoteConfig().clearStoredValues();
+        Assert.assertNull(mCountly.remoteConfig().getValueForKey("key"));
+    }
+
+    /**
+     * Async init returns before the modules have finished starting up.
+     * Calls made before that are processed after it and the callback is called once it is done.
+     */
+    @Test
+    public void asyncInitBuffersCalls() throws InterruptedException {
+        mCountly.halt();
+
+        final CountDownLatch initFinished = new CountDownLatch(1);
+        final List<String> callbackThreads = Collections.synchronizedList(new ArrayList<String>());
+
+        mCountly = new Countly();
+        mCountly.init((new CountlyConfig(getContext(), "appkey", "https://test.count.ly")).setDeviceId("1234").setEventQueueSizeToSend(1000).enableAsyncInit(new InitFinishedCallback() {
+            @Override public void onInitFinished() {
+                callbackThreads.add(Thread.currentThread().getName());
+                initFinished.countDown();
+            }
+        }));
+
+        Assert.assertTrue(mCountly.isInitialized());
+        Assert.assertNotNull(mCountly.sdkActor);
+
+        mCountly.events().recordEvent("early_event");
+
+        Assert.assertTrue(initFinished.await(5, TimeUnit.SECONDS));
+        Assert.assertFalse(mCountly.deferredInitPending);
+        Assert.assertEquals(1, callbackThreads.size());
+        Assert.assertEquals(SdkActor.THREAD_NAME, callbackThreads.get(0));
+
+        Assert.assertTrue(mCountly.sdkActor.awaitIdle(5000));
+        List<Event> events = mCountly.countlyStore.getEventList();
+        Assert.assertEquals(1, events.size());
+        Assert.assertEquals("early_event", events.get(0).key);
+    }
+
+    /**
+     * Calls made before the deferred init work has run are queued behind it in the order of the calls,
+     * the crash handler is installed before init returns
+     */
+    @Test
+    public void asyncInitQueuesCalls() {
+        mCountly.halt();
+
+        final List<String> callbackThreads = Collections.synchronizedList(new ArrayList<String>());
+        Thread.UncaughtExceptionHandler previousHandler = Thread.getDefaultUncaughtExceptionHandler();
+
+        try {
+            mCountly = new Countly();
+            mCountly.init((new CountlyConfig(getContext(), "appkey", "https://test.count.ly")).setDeviceId("1234").enableManualSessionControl().enableCrashReporting()
+                .enableAsyncInit(new InitFinishedCallback() {
+                    @Override public void onInitFinished() {
+                        callbackThreads.add(Thread.currentThread().getName());
+                    }
+                }));
+            Assert.assertNotSame(previousHandler, Thread.getDefaultUncaughtExceptionHandler());
+
+            mCountly.sessions().beginSession();
+            mCountly.userProfile().setProperty("name", "early");
+            mCountly.userProfile().save();
+            Map<String, String> direct = new HashMap<>();
+            direct.put("direct_key", "early");
+            mCountly.requestQueue().addDirectRequest(direct);
+            //changing the map after the call does not change the queued request
+            direct.put("direct_key", "changed");
+
+            Assert.assertTrue(mCountly.sdkActor.awaitIdle(5000));
+            Assert.assertFalse(mCountly.deferredInitPending);
+            Assert.assertEquals(0, mCountly.callsQueuedBehindInit.get());
+            Assert.assertEquals(1, callbackThreads.size());
+
+            List<String> requests = Arrays.asList(mCountly.countlyStore.getRequests());
+            int session = indexOfRequestWith(requests, "begin_session=1");
+            int userDetails = indexOfRequestWith(requests, "user_details=");
+            int direct = indexOfRequestWith(requests, "direct_key=early");
+            Assert.assertTrue(session >= 0);
+            Assert.assertTrue(session < userDetails);
+            Assert.assertTrue(userDetails < direct);
+
+            //once the queue has been worked off, calls are run on the calling thread again
+            Assert.assertFalse(mCountly.shouldQueueBehindInit());
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(previousHandler);
+        }
+    }
+
+    static int indexOfRequestWith(List<String> requests, String part) {
+        for (int a = 0; a < requests.size(); a++) {
+            if (requests.get(a).contains(part)) {
+                return a;
+            }
+        }
+        return -1;
+    }
+}
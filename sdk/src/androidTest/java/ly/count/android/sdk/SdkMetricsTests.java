@@ -0,0 +1,95 @@
+package ly.count.android.sdk;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static androidx.test.InstrumentationRegistry.getContext;
+import static org.mockito.Mockito.mock;
+
+@RunWith(AndroidJUnit4.class)
+public class SdkMetricsTests {
+    Countly mCountly;
+
+    @Before
+    public void setUp() {
+        final CountlyStore countlyStore = new CountlyStore(getContext(), mock(ModuleLog.class));
+        countlyStore.clear();
+
+        mCountly = new Countly();
+    }
+
+    @After
+    public void tearDown() {
+        mCountly.halt();
+    }
+
+    /**
+     * Nothing is recorded and no snapshot is given if metrics are not enabled
+     */
+    @Test
+    public void disabledByDefault() {
+        mCountly.init(new CountlyConfig(getContext(), "appkey", "http://test.count.ly").setDeviceId("1234"));
+
+        mCountly.sdkMetrics.recordEventDropped();
+        mCountly.sdkMetrics.recordStorageWrite(mCountly.sdkMetrics.startTiming(), 10);
+        Assert.assertEquals(0, mCountly.sdkMetrics.eventsDropped.sum());
+        Assert.assertEquals(0, mCountly.sdkMetrics.storageWrites.sum());
+
+        Assert.assertNull(mCountly.getSdkMetricsSnapshot());
+    }
+
+    /**
+     * Snapshot contains the queue state and recorded storage writes and drops
+     */
+    @Test
+    public void snapshotValues() {
+        mCountly.init(new CountlyConfig(getContext(), "appkey", "http://test.count.ly").setDeviceId("1234").setEventQueueSizeToSend(1000).setMaxRequestQueueSize(2).enableSdkMetrics());
+
+        mCountly.events().recordEvent("a");
+        mCountly.events().recordEvent("b");
+
+        mCountly.countlyStore.replaceRequests(new String[0]);
+        mCountly.countlyStore.addRequest("a=1", false);
+        mCountly.countlyStore.addRequest("b=2", false);
+        mCountly.countlyStore.addRequest("c=3", false);
+
+        SdkMetrics.Snapshot snapshot = mCountly.getSdkMetricsSnapshot();
+        Assert.assertNotNull(snapshot);
+
+        Assert.assertEquals(2, snapshot.eventQueueDepth);
+        Assert.assertEquals(mCountly.countlyStore.getEventQueueRaw().length(), snapshot.eventQueueBytes);
+        Assert.assertEquals(2, snapshot.requestQueueDepth);
+        Assert.assertEquals("b=2:::c=3".length(), snapshot.requestQueueBytes);
+
+        Assert.assertEquals(1, snapshot.requestsDropped);
+        Assert.assertTrue(snapshot.storageWrites >= 6);
+        Assert.assertTrue(snapshot.storageWriteBytes > 0);
+        Assert.assertEquals(2, snapshot.lockWaits);
+    }
+
+    /**
+     * The listener is called periodically from a background thread
+     */
+    @Test
+    public void periodicListener() throws InterruptedException {
+        final CountDownLatch called = new CountDownLatch(1);
+        final AtomicReference<SdkMetrics.Snapshot> received = new AtomicReference<>();
+
+        mCountly.init(new CountlyConfig(getContext(), "appkey", "http://test.count.ly").setDeviceId("1234").setSdkMetricsListener(new SdkMetricsListener() {
+            @Override public void onSdkMetrics(SdkMetrics.Snapshot snapshot) {
+                received.set(snapshot);
+                called.countDown();
+            }
+        }, 1));
+
+        Assert.assertTrue(called.await(5, TimeUnit.SECONDS));
+        Assert.assertNotNull(received.get());
+    }
+}
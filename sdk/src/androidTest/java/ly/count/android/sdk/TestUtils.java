@@ -264,6 +264,13 @@ public class TestUtils {
         return null;
     }
 
+    /**
+     * @return the crash data JSON of a report that was given to the request queue
+     */
+    public static String crashReportJson(CrashReportBuilder report) {
+        return UtilsNetworking.urlDecodeString(report.build(""));
+    }
+
     public static void validateThatRQContainsCorrectEntry(CountlyStore store, String param, String targetValue, int entryCount) {
         List<String> filteredVals = TestUtils.getRequestsWithParam(store.getRequests(), param);
         Assert.assertEquals(entryCount, filteredVals.size());
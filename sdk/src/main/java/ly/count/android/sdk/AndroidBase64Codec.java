@@ -0,0 +1,19 @@
+package ly.count.android.sdk;
+
+import android.util.Base64;
+import androidx.annotation.NonNull;
+
+/**
+ * Base64 binding that uses the framework implementation
+ */
+class AndroidBase64Codec implements Base64Codec {
+    static final AndroidBase64Codec INSTANCE = new AndroidBase64Codec();
+
+    @NonNull @Override public String encodeToString(@NonNull byte[] value) {
+        return Base64.encodeToString(value, Base64.NO_WRAP);
+    }
+
+    @NonNull @Override public byte[] decode(@NonNull String value) {
+        return Base64.decode(value, Base64.DEFAULT);
+    }
+}
@@ -0,0 +1,165 @@
+package ly.count.android.sdk;
+
+import android.util.Log;
+import androidx.annotation.NonNull;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers log messages to the log listener on a background thread.
+ *
+ * Logging threads only copy the message into a fixed size ring buffer and return.
+ * If the buffer is full, the message is dropped and counted as an overflow.
+ * The background thread takes all pending records at once and delivers them to the listener as a batch.
+ */
+class AsyncLogDispatcher {
+    static final int DEFAULT_CAPACITY = 512;
+
+    private final ModuleLog.LogCallback listener;
+
+    //ring buffer
+    private final String[] messages;
+    private final ModuleLog.LogLevel[] levels;
+    private int head = 0;//index of the oldest record
+    private int count = 0;//amount of records in the buffer
+
+    private final Object bufferLock = new Object();
+    //makes sure that batches are delivered in order, even when flushing from another thread
+    private final Object deliveryLock = new Object();
+
+    private final AtomicLong overflowCount = new AtomicLong(0);
+    private long reportedOverflowCount = 0;
+
+    private final Thread dispatchThread;
+    private volatile boolean running = true;
+
+    AsyncLogDispatcher(@NonNull ModuleLog.LogCallback listener, int capacity) {
+        if (capacity < 1) {
+            capacity = 1;
+        }
+
+        this.listener = listener;
+        messages = new String[capacity];
+        levels = new ModuleLog.LogLevel[capacity];
+
+        dispatchThread = new Thread(new Runnable() {
+            @Override public void run() {
+                dispatchLoop();
+            }
+        }, "Countly-LogDispatcher");
+        dispatchThread.setDaemon(true);
+        dispatchThread.start();
+    }
+
+    /**
+     * Adds a record to the buffer. Never blocks on the listener.
+     *
+     * @return false if the buffer was full and the record was dropped
+     */
+    boolean enqueue(@NonNull String message, @NonNull ModuleLog.LogLevel level) {
+        synchronized (bufferLock) {
+            if (count == messages.length) {
+                overflowCount.incrementAndGet();
+                return false;
+            }
+
+            int index = (head + count) % messages.length;
+            messages[index] = message;
+            levels[index] = level;
+            count++;
+
+            if (count == 1) {
+                bufferLock.notify();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns how many messages have been dropped because the buffer was full
+     */
+    long getOverflowCount() {
+        return overflowCount.get();
+    }
+
+    /**
+     * Delivers all currently buffered records on the calling thread.
+     * Meant to be called from the crash handler before the process goes down.
+     */
+    void flush() {
+        deliverPending();
+    }
+
+    /**
+     * Stops the background thread. Records that are still buffered are delivered before it exits.
+     */
+    void stop() {
+        running = false;
+        synchronized (bufferLock) {
+            bufferLock.notify();
+        }
+    }
+
+    private void dispatchLoop() {
+        while (running) {
+            synchronized (bufferLock) {
+                while (count == 0 && running) {
+                    try {
+                        bufferLock.wait();
+                    } catch (InterruptedException ignored) {
+                        running = false;
+                    }
+                }
+            }
+
+            deliverPending();
+        }
+
+        deliverPending();
+    }
+
+    private void deliverPending() {
+        synchronized (deliveryLock) {
+            String[] batchMessages;
+            ModuleLog.LogLevel[] batchLevels;
+            int batchSize;
+
+            //take all pending records so that the buffer is free again before calling the listener
+            synchronized (bufferLock) {
+                batchSize = count;
+                if (batchSize == 0 && overflowCount.get() == reportedOverflowCount) {
+                    return;
+                }
+
+                batchMessages = new String[batchSize];
+                batchLevels = new ModuleLog.LogLevel[batchSize];
+                for (int a = 0; a < batchSize; a++) {
+                    int index = (head + a) % messages.length;
+                    batchMessages[a] = messages[index];
+                    batchLevels[a] = levels[index];
+                    messages[index] = null;
+                    levels[index] = null;
+                }
+                head = (head + batchSize) % messages.length;
+                count = 0;
+            }
+
+            long currentOverflow = overflowCount.get();
+            if (currentOverflow != reportedOverflowCount) {
+                deliver("[ModuleLog] Log listener buffer overflowed, [" + (currentOverflow - reportedOverflowCount) + "] messages were dropped", ModuleLog.LogLevel.Warning);
+                reportedOverflowCount = currentOverflow;
+            }
+
+            for (int a = 0; a < batchSize; a++) {
+                deliver(batchMessages[a], batchLevels[a]);
+            }
+        }
+    }
+
+    private void deliver(String message, ModuleLog.LogLevel level) {
+        try {
+            listener.LogHappened(message, level);
+        } catch (Exception ex) {
+            Log.e(Countly.TAG, "[AsyncLogDispatcher] Failed to inform listener [" + ex.toString() + "]");
+        }
+    }
+}
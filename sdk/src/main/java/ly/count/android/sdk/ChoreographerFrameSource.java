@@ -0,0 +1,51 @@
+package ly.count.android.sdk;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+import androidx.annotation.NonNull;
+
+/**
+ * Frame source backed by the main thread 'Choreographer'.
+ * A frame callback is posted for every frame while started, so frames are reported even while nothing is redrawn,
+ * in that case they have the regular frame duration.
+ */
+class ChoreographerFrameSource implements FrameSource, Choreographer.FrameCallback {
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    //only accessed on the main thread
+    private FrameListener listener = null;
+    private boolean running = false;
+
+    @Override public void start(@NonNull final FrameListener frameListener) {
+        mainHandler.post(new Runnable() {
+            @Override public void run() {
+                listener = frameListener;
+                if (!running) {
+                    running = true;
+                    //frames stopped being reported while stopped, the stop call has already run on this thread
+                    frameListener.onFramesStarted();
+                    Choreographer.getInstance().postFrameCallback(ChoreographerFrameSource.this);
+                }
+            }
+        });
+    }
+
+    @Override public void stop() {
+        mainHandler.post(new Runnable() {
+            @Override public void run() {
+                running = false;
+                Choreographer.getInstance().removeFrameCallback(ChoreographerFrameSource.this);
+            }
+        });
+    }
+
+    @Override public void doFrame(long frameTimeNanos) {
+        if (!running) {
+            return;
+        }
+
+        listener.onFrame(frameTimeNanos);
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+}
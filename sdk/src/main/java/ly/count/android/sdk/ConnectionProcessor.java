@@ -35,8 +35,6 @@ import java.net.URLConnection;
 import java.util.Map;
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
-import org.json.JSONException;
-import org.json.JSONObject;
 
 /**
  * ConnectionProcessor is a Runnable that is executed on a background
@@ -60,10 +58,8 @@ public class ConnectionProcessor implements Runnable {
 
     ModuleLog L;
 
-    private enum RequestResult {
-        OK,         // success
-        RETRY       // retry MAX_RETRIES_BEFORE_SLEEP before switching to SLEEP
-    }
+    //records request latency and results, set for processors that send the request queue
+    SdkMetrics metrics = null;
 
     ConnectionProcessor(final String serverURL, final StorageProvider storageProvider, final DeviceIdProvider deviceIdProvider, final SSLContext sslContext, final Map<String, String> requestHeaderCustomValues, ModuleLog logModule) {
         serverURL_ = serverURL;
@@ -80,20 +76,26 @@ public class ConnectionProcessor implements Runnable {
             urlEndpoint = customEndpoint;
         }
 
-        boolean usingHttpPost = (requestData.contains("&crash=") || requestData.length() >= 2048 || Countly.sharedInstance().isHttpPostForced());
+        //native crash dumps are streamed from their file into the request body
+        final CrashDumpRequest crashDumpRequest = CrashDumpRequest.fromRequest(requestData, AndroidBase64Codec.INSTANCE);
+
+        boolean usingHttpPost = (crashDumpRequest != null || requestData.contains("&crash=") || requestData.length() >= 2048 || Countly.sharedInstance().isHttpPostForced());
 
         long approximateDateSize = 0L;
         String urlStr = serverURL_ + urlEndpoint;
-        if (usingHttpPost) {
+        if (crashDumpRequest != null) {
+            //the checksum is calculated over the streamed body when writing it
+            L.v("[Connection Processor] Request references native crash dump [{}]", crashDumpRequest.getDumpFile().getName());
+        } else if (usingHttpPost) {
             String checksum = UtilsNetworking.sha256Hash(requestData + salt);
             requestData += "&checksum256=" + checksum;
             approximateDateSize += requestData.length();
-            L.v("[Connection Processor] The following checksum was added:[" + checksum + "]");
+            L.v("[Connection Processor] The following checksum was added:[{}]", checksum);
         } else {
             urlStr += "?" + requestData;
             String checksum = UtilsNetworking.sha256Hash(requestData + salt);
             urlStr += "&checksum256=" + checksum;
-            L.v("[Connection Processor] The following checksum was added:[" + checksum + "]");
+            L.v("[Connection Processor] The following checksum was added:[{}]", checksum);
         }
         approximateDateSize += urlStr.length();
 
@@ -114,7 +116,7 @@ public class ConnectionProcessor implements Runnable {
 
         if (requestHeaderCustomValues_ != null) {
             //if there are custom header values, add them
-            L.v("[Connection Processor] Adding [" + requestHeaderCustomValues_.size() + "] custom header fields");
+            L.v("[Connection Processor] Adding [{}] custom header fields", requestHeaderCustomValues_.size());
             for (Map.Entry<String, String> entry : requestHeaderCustomValues_.entrySet()) {
                 String key = entry.getKey();
                 String value = entry.getValue();
@@ -125,9 +127,28 @@ public class ConnectionProcessor implements Runnable {
         }
 
         String picturePath = ModuleUserProfile.getPicturePathFromQuery(url);
-        L.v("[Connection Processor] Got picturePath: " + picturePath);
+        L.v("[Connection Processor] Got picturePath: {}", picturePath);
         //Log.v(Countly.TAG, "Used url: " + urlStr);
-        if (!picturePath.equals("")) {
+        if (crashDumpRequest != null) {
+            //the dump is read twice, for the checksum and while writing, but never held in memory as a whole
+            CrashDumpRequest.Checksum checksum = crashDumpRequest.checksum(salt);
+            L.v("[Connection Processor] The following checksum was added:[{}]", checksum.value);
+
+            conn.setDoOutput(true);
+            conn.setRequestMethod("POST");
+            if (checksum.bodyLength <= Integer.MAX_VALUE) {
+                conn.setFixedLengthStreamingMode((int) checksum.bodyLength);
+            } else {
+                conn.setChunkedStreamingMode(0);
+            }
+            OutputStream os = conn.getOutputStream();
+            try {
+                crashDumpRequest.writeTo(os, checksum.value);
+            } finally {
+                os.close();
+            }
+            approximateDateSize += checksum.bodyLength;
+        } else if (!picturePath.equals("")) {
             //Uploading files:
             //http://stackoverflow.com/questions/2793150/how-to-use-java-net-urlconnection-to-fire-and-handle-http-requests
 
@@ -191,7 +212,9 @@ public class ConnectionProcessor implements Runnable {
             approximateDateSize += key.getBytes("US-ASCII").length + value.getBytes("US-ASCII").length + 2L;
         }
 
-        L.v("[Connection Processor] Using HTTP POST: [" + usingHttpPost + "] forced:[" + Countly.sharedInstance().isHttpPostForced() + "] length:[" + (requestData.length() >= 2048) + "] crash:[" + requestData.contains("&crash=") + "] | Approx data size: [" + approximateDateSize + " B]");
+        if (L.isVerbose()) {
+            L.v("[Connection Processor] Using HTTP POST: [" + usingHttpPost + "] forced:[" + Countly.sharedInstance().isHttpPostForced() + "] length:[" + (requestData.length() >= 2048) + "] crash:[" + requestData.contains("&crash=") + "] | Approx data size: [" + approximateDateSize + " B]");
+        }
         return conn;
     }
 
@@ -219,10 +242,21 @@ public class ConnectionProcessor implements Runnable {
             if (deviceIdProvider_.getDeviceId() == null) {
                 // When device ID is supplied by OpenUDID or by Google Advertising ID.
                 // In some cases it might take time for them to initialize. So, just wait for it.
-                L.i("[Connection Processor] No Device ID available yet, skipping request " + storedEvents[0]);
+                L.i("[Connection Processor] No Device ID available yet, skipping request {}", storedEvents[0]);
                 break;
             }
 
+            //a native crash request can only be sent while its dump file exists
+            final String crashDumpPath = CrashDumpRequest.dumpPathFromRequest(storedEvents[0]);
+            if (crashDumpPath != null && !new File(crashDumpPath).exists()) {
+                L.w("[Connection Processor] Native crash dump [{}] does not exist anymore, removing request", crashDumpPath);
+                storageProvider_.removeRequest(storedEvents[0]);
+                if (metrics != null) {
+                    metrics.recordRequestResult(SdkMetrics.RequestOutcome.FAILED, false, 0);
+                }
+                continue;
+            }
+
             String temporaryIdOverrideTag = "&override_id=" + DeviceId.temporaryCountlyDeviceId;
             String temporaryIdTag = "&device_id=" + DeviceId.temporaryCountlyDeviceId;
             boolean containsTemporaryIdOverride = storedEvents[0].contains(temporaryIdOverrideTag);
@@ -282,6 +316,8 @@ public class ConnectionProcessor implements Runnable {
                 //continue with sending the request to the server
                 URLConnection conn = null;
                 InputStream connInputStream = null;
+                final boolean timingStarted = metrics != null && metrics.enabled;
+                long requestStart = timingStarted ? metrics.startTiming() : 0;
                 try {
                     // initialize and open connection
                     conn = urlConnectionForServerRequest(eventData, null);
@@ -304,54 +340,15 @@ public class ConnectionProcessor implements Runnable {
                         responseString = Utils.inputStreamToString(connInputStream);
                     }
 
-                    L.d("[Connection Processor] code:[" + responseCode + "], response:[" + responseString + "], response size:[" + responseString.length() + " B], request: " + eventData + ", url: " + serverURL_);
-
-                    final RequestResult rRes;
+                    if (L.isDebug()) {
+                        L.d("[Connection Processor] code:[" + responseCode + "], response:[" + responseString + "], response size:[" + responseString.length() + " B], request: " + eventData + ", url: " + serverURL_);
+                    }
 
-                    if (responseCode >= 200 && responseCode < 300) {
+                    final RequestResult rRes = RequestResult.fromResponse(responseCode, responseString, L);
 
-                        if (responseString.isEmpty()) {
-                            L.v("[Connection Processor] Response was empty, will retry");
-                            rRes = RequestResult.RETRY;
-                        } else {
-                            JSONObject jsonObject;
-                            try {
-                                jsonObject = new JSONObject(responseString);
-                            } catch (JSONException ex) {
-                                //failed to parse, so not a valid json
-                                jsonObject = null;
-                                L.e("[Connection Processor] Failed to parse response [" + responseString + "].");
-                            }
-
-                            if (jsonObject == null) {
-                                //received unparseable response, retrying
-                                L.v("[Connection Processor] Response was a unknown, will retry");
-                                rRes = RequestResult.RETRY;
-                            } else {
-                                if (jsonObject.has("result")) {
-                                    //contains result entry
-                                    L.v("[Connection Processor] Response was a success");
-                                    rRes = RequestResult.OK;
-                                } else {
-                                    L.v("[Connection Processor] Response does not contain 'result', will retry");
-                                    rRes = RequestResult.RETRY;
-                                }
-                            }
-                        }
-                    } else if (responseCode >= 300 && responseCode < 400) {
-                        //assume redirect
-                        L.d("[Connection Processor] Encountered redirect, will retry");
-                        rRes = RequestResult.RETRY;
-                    } else if (responseCode == 400 || responseCode == 404) {
-                        L.w("[Connection Processor] Bad request, will still retry");
-                        rRes = RequestResult.RETRY;
-                    } else if (responseCode > 400) {
-                        //server down, try again later
-                        L.d("[Connection Processor] Server is down, will retry");
-                        rRes = RequestResult.RETRY;
-                    } else {
-                        L.d("[Connection Processor] Bad response code, will retry");
-                        rRes = RequestResult.RETRY;
+                    if (metrics != null) {
+                        //a request that was not accepted stays in the queue and is sent again on a later tick
+                        metrics.recordRequestResult(rRes == RequestResult.OK ? SdkMetrics.RequestOutcome.SENT : SdkMetrics.RequestOutcome.RETRIED, timingStarted, requestStart);
                     }
 
                     // an 'if' needs to be used here so that a 'switch' statement does not 'eat' the 'break' call
@@ -360,6 +357,7 @@ public class ConnectionProcessor implements Runnable {
                         // successfully submitted event data to Count.ly server, so remove
                         // this one from the stored events collection
                         storageProvider_.removeRequest(storedEvents[0]);
+                        deleteCrashDump(crashDumpPath);
 
                         if (deviceIdChange) {
                             if (newId != null && !newId.isEmpty()) {
@@ -370,7 +368,7 @@ public class ConnectionProcessor implements Runnable {
                         }
 
                         if (deviceIdChange || deviceIdOverride) {
-                            L.v("[Connection Processor] Device ID changed, change:[" + deviceIdChange + "] | override:[" + deviceIdOverride + "]");
+                            L.v("[Connection Processor] Device ID changed, change:[{}] | override:[{}]", deviceIdChange, deviceIdOverride);
                             Countly.sharedInstance().notifyDeviceIdChange();
                         }
                     } else {
@@ -379,7 +377,11 @@ public class ConnectionProcessor implements Runnable {
                         break;
                     }
                 } catch (Exception e) {
-                    L.w("[Connection Processor] Got exception while trying to submit event data: [" + eventData + "] [" + e + "]");
+                    L.w("[Connection Processor] Got exception while trying to submit event data: [{}] [{}]", eventData, e);
+                    if (metrics != null) {
+                        //the request stays in the queue, without a response there is no latency to record
+                        metrics.recordRequestResult(SdkMetrics.RequestOutcome.RETRIED, false, requestStart);
+                    }
                     // if exception occurred, stop processing, let next tick take care of retrying
                     break;
                 } finally {
@@ -397,14 +399,24 @@ public class ConnectionProcessor implements Runnable {
                 }
             } else {
                 //device is identified as a app crawler and nothing is sent to the server
-                L.i("[Connection Processor] Device identified as a app crawler, skipping request " + storedEvents[0]);
+                L.i("[Connection Processor] Device identified as a app crawler, skipping request {}", storedEvents[0]);
 
                 //remove stored data
                 storageProvider_.removeRequest(storedEvents[0]);
+                deleteCrashDump(crashDumpPath);
             }
         }
     }
 
+    /**
+     * Deletes the dump of a native crash request once the request is not needed anymore
+     */
+    private void deleteCrashDump(final String crashDumpPath) {
+        if (crashDumpPath != null && !new File(crashDumpPath).delete()) {
+            L.w("[Connection Processor] Failed to delete native crash dump [{}]", crashDumpPath);
+        }
+    }
+
     String getServerURL() {
         return serverURL_;
     }
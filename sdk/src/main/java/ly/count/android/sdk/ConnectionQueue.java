@@ -37,8 +37,9 @@ import javax.net.ssl.TrustManager;
  * ConnectionQueue queues session and event data and periodically sends that data to
  * a Count.ly server on a background thread.
  *
- * None of the methods in this class are synchronized because access to this class is
- * controlled by the Countly singleton, which is synchronized.
+ * Requests are created from multiple modules, each holding only its own lock.
+ * Request creation does not keep any state in this class and storing is done by the thread safe storage provider.
+ * The executor and the running ConnectionProcessor are guarded by this instance.
  *
  * NOTE: This class is only public to facilitate unit testing, because
  * of this bug in dexmaker: https://code.google.com/p/dexmaker/issues/detail?id=34
@@ -59,6 +60,8 @@ class ConnectionQueue implements RequestQueueProvider {
     protected ModuleRequestQueue moduleRequestQueue = null;//todo remove in the future
     protected DeviceInfo deviceInfo = null;//todo ?remove in the future?
     StorageProvider storageProvider;
+    SdkMetrics sdkMetrics = null;
+    int eventRequestMergeLimit = 0;//if larger than 0, event requests are merged into the last queued event request up to this size
 
     void setBaseInfoProvider(BaseInfoProvider bip) {
         baseInfoProvider = bip;
@@ -152,7 +155,7 @@ class ConnectionQueue implements RequestQueueProvider {
         boolean dataAvailable = false;//will only send data if there is something valuable to send
         String data = prepareCommonRequestData();
 
-        if (consentProvider.getConsent(Countly.CountlyFeatureNames.sessions)) {
+        if (consentProvider.getConsent(ModuleConsent.FEATURE_SESSIONS)) {
             //add session data if consent given
             data += "&begin_session=1"
                 + "&metrics=" + preparedMetrics;//can be only sent with begin session
@@ -188,7 +191,7 @@ class ConnectionQueue implements RequestQueueProvider {
             boolean dataAvailable = false;//will only send data if there is something valuable to send
             String data = prepareCommonRequestData();
 
-            if (consentProvider.getConsent(Countly.CountlyFeatureNames.sessions)) {
+            if (consentProvider.getConsent(ModuleConsent.FEATURE_SESSIONS)) {
                 data += "&session_duration=" + duration;
                 dataAvailable = true;
             }
@@ -212,7 +215,7 @@ class ConnectionQueue implements RequestQueueProvider {
 
         String data = prepareCommonRequestData();
 
-        if (consentProvider.getConsent(Countly.CountlyFeatureNames.sessions)) {
+        if (consentProvider.getConsent(ModuleConsent.FEATURE_SESSIONS)) {
             data += "&session_duration=" + duration;
         }
 
@@ -227,7 +230,7 @@ class ConnectionQueue implements RequestQueueProvider {
         checkInternalState();
         L.d("[Connection Queue] tokenSession");
 
-        if (!consentProvider.getConsent(Countly.CountlyFeatureNames.push)) {
+        if (!consentProvider.getConsent(ModuleConsent.FEATURE_PUSH)) {
             L.d("[Connection Queue] request ignored, consent not given");
             return;
         }
@@ -271,7 +274,7 @@ class ConnectionQueue implements RequestQueueProvider {
         boolean dataAvailable = false;//will only send data if there is something valuable to send
         String data = prepareCommonRequestData();
 
-        if (consentProvider.getConsent(Countly.CountlyFeatureNames.sessions)) {
+        if (consentProvider.getConsent(ModuleConsent.FEATURE_SESSIONS)) {
             data += "&end_session=1";
             if (duration > 0) {
                 data += "&session_duration=" + duration;
@@ -316,7 +319,7 @@ class ConnectionQueue implements RequestQueueProvider {
         checkInternalState();
         L.d("[Connection Queue] sendUserData");
 
-        if (!consentProvider.getConsent(Countly.CountlyFeatureNames.users)) {
+        if (!consentProvider.getConsent(ModuleConsent.FEATURE_USERS)) {
             L.d("[Connection Queue] request ignored, consent not given");
             return;
         }
@@ -337,7 +340,7 @@ class ConnectionQueue implements RequestQueueProvider {
         checkInternalState();
         L.d("[Connection Queue] sendIndirectAttribution");
 
-        if (!consentProvider.getConsent(Countly.CountlyFeatureNames.attribution)) {
+        if (!consentProvider.getConsent(ModuleConsent.FEATURE_ATTRIBUTION)) {
             L.d("[Connection Queue] request ignored, consent not given");
             return;
         }
@@ -359,7 +362,7 @@ class ConnectionQueue implements RequestQueueProvider {
         checkInternalState();
         L.d("[Connection Queue] sendDirectAttributionTest");
 
-        if (!consentProvider.getConsent(Countly.CountlyFeatureNames.attribution)) {
+        if (!consentProvider.getConsent(ModuleConsent.FEATURE_ATTRIBUTION)) {
             L.d("[Connection Queue] request ignored, consent not given");
             return;
         }
@@ -381,7 +384,7 @@ class ConnectionQueue implements RequestQueueProvider {
         checkInternalState();
         L.d("[Connection Queue] sendDirectAttributionLegacy");
 
-        if (!consentProvider.getConsent(Countly.CountlyFeatureNames.attribution)) {
+        if (!consentProvider.getConsent(ModuleConsent.FEATURE_ATTRIBUTION)) {
             L.d("[Connection Queue] request ignored, consent not given");
             return;
         }
@@ -415,7 +418,7 @@ class ConnectionQueue implements RequestQueueProvider {
         checkInternalState();
         L.d("[Connection Queue] sendCrashReport");
 
-        if (!consentProvider.getConsent(Countly.CountlyFeatureNames.crashes)) {
+        if (!consentProvider.getConsent(ModuleConsent.FEATURE_CRASHES)) {
             L.d("[Connection Queue] request ignored, consent not given");
             return;
         }
@@ -429,6 +432,50 @@ class ConnectionQueue implements RequestQueueProvider {
         tick();
     }
 
+    /**
+     * Same as 'sendCrashReport' for a report that has been written in its encoded form,
+     * the request parameters are put in front of it without copying the report again
+     */
+    public void sendEncodedCrashReport(@NonNull final CrashReportBuilder report, final boolean nonFatalCrash) {
+        checkInternalState();
+        L.d("[Connection Queue] sendEncodedCrashReport");
+
+        if (!consentProvider.getConsent(ModuleConsent.FEATURE_CRASHES)) {
+            L.d("[Connection Queue] request ignored, consent not given");
+            return;
+        }
+
+        final String data = report.build(prepareCommonRequestData() + "&crash=");
+
+        //in case of a fatal crash, write it in sync to shared preferences
+        addRequestToQueue(data, !nonFatalCrash);
+
+        tick();
+    }
+
+    /**
+     * Reports a native crash, the dump stays in its file and is read only when the request is sent
+     *
+     * @param dumpPath path of the dump file, it is deleted after the request has been sent
+     */
+    public void sendNativeCrashReport(@NonNull final String crashData, @NonNull final String dumpPath) {
+        checkInternalState();
+        L.d("[Connection Queue] sendNativeCrashReport");
+
+        if (!consentProvider.getConsent(ModuleConsent.FEATURE_CRASHES)) {
+            L.d("[Connection Queue] request ignored, consent not given");
+            return;
+        }
+
+        final String data = prepareCommonRequestData()
+            + "&crash=" + UtilsNetworking.urlEncodeString(crashData)
+            + "&" + CrashDumpRequest.DUMP_PATH_KEY + "=" + UtilsNetworking.urlEncodeString(dumpPath);
+
+        addRequestToQueue(data, true);
+
+        tick();
+    }
+
     /**
      * Send a direct request to server
      * We have encoded each key and value as http url encoded.
@@ -477,7 +524,11 @@ class ConnectionQueue implements RequestQueueProvider {
         final String data = prepareCommonRequestData()
             + "&events=" + events;
 
-        addRequestToQueue(data, false);
+        if (eventRequestMergeLimit > 0) {
+            storageProvider.addEventRequest(data, eventRequestMergeLimit, false);
+        } else {
+            addRequestToQueue(data, false);
+        }
         tick();
     }
 
@@ -498,7 +549,7 @@ class ConnectionQueue implements RequestQueueProvider {
 
         L.d("[Connection Queue] sendAPMCustomTrace");
 
-        if (!consentProvider.getConsent(Countly.CountlyFeatureNames.apm)) {
+        if (!consentProvider.getConsent(ModuleConsent.FEATURE_APM)) {
             L.d("[Connection Queue] request ignored, consent not given");
             return;
         }
@@ -519,11 +570,18 @@ class ConnectionQueue implements RequestQueueProvider {
     }
 
     public void sendAPMNetworkTrace(String networkTraceKey, Long responseTimeMs, int responseCode, int requestPayloadSize, int responsePayloadSize, Long startMs, Long endMs) {
+        sendAPMNetworkTrace(networkTraceKey, responseTimeMs, responseCode, requestPayloadSize, responsePayloadSize, startMs, endMs, "");
+    }
+
+    /**
+     * @param phaseMetrics additional metrics in the same format as custom trace metrics, for example ',"ttfb":120'
+     */
+    public void sendAPMNetworkTrace(String networkTraceKey, Long responseTimeMs, int responseCode, int requestPayloadSize, int responsePayloadSize, Long startMs, Long endMs, @NonNull String phaseMetrics) {
         checkInternalState();
 
         L.d("[Connection Queue] sendAPMNetworkTrace");
 
-        if (!consentProvider.getConsent(Countly.CountlyFeatureNames.apm)) {
+        if (!consentProvider.getConsent(ModuleConsent.FEATURE_APM)) {
             L.d("[Connection Queue] request ignored, consent not given");
             return;
         }
@@ -532,7 +590,7 @@ class ConnectionQueue implements RequestQueueProvider {
         // &apm={"type":"network","name":"/count.ly/about","apm_metrics":{"response_time":1330,"response_payload_size":120, "response_code": 300, "request_payload_size": 70}, "stz": 1584698900, "etz": 1584699900}
         // &timestamp=1584698900&count=1
 
-        String apmMetrics = "{\"response_time\": " + responseTimeMs + ", \"response_payload_size\":" + responsePayloadSize + ", \"response_code\":" + responseCode + ", \"request_payload_size\":" + requestPayloadSize + "}";
+        String apmMetrics = "{\"response_time\": " + responseTimeMs + ", \"response_payload_size\":" + responsePayloadSize + ", \"response_code\":" + responseCode + ", \"request_payload_size\":" + requestPayloadSize + phaseMetrics + "}";
         String apmData = "{\"type\":\"network\",\"name\":\"" + networkTraceKey + "\", \"apm_metrics\":" + apmMetrics + ", \"stz\": " + startMs + ", \"etz\": " + endMs + "}";
 
         final String data = prepareCommonRequestData()
@@ -549,7 +607,7 @@ class ConnectionQueue implements RequestQueueProvider {
 
         L.d("[Connection Queue] sendAPMAppStart");
 
-        if (!consentProvider.getConsent(Countly.CountlyFeatureNames.apm)) {
+        if (!consentProvider.getConsent(ModuleConsent.FEATURE_APM)) {
             L.d("[Connection Queue] request ignored, consent not given");
             return;
         }
@@ -570,9 +628,9 @@ class ConnectionQueue implements RequestQueueProvider {
     public void sendAPMScreenTime(boolean recordForegroundTime, long durationMs, Long startMs, Long endMs) {
         checkInternalState();
 
-        L.d("[Connection Queue] sendAPMScreenTime, recording foreground time: [" + recordForegroundTime + "]");
+        L.d("[Connection Queue] sendAPMScreenTime, recording foreground time: [{}]", recordForegroundTime);
 
-        if (!consentProvider.getConsent(Countly.CountlyFeatureNames.apm)) {
+        if (!consentProvider.getConsent(ModuleConsent.FEATURE_APM)) {
             L.d("[Connection Queue] request ignored, consent not given");
             return;
         }
@@ -591,21 +649,14 @@ class ConnectionQueue implements RequestQueueProvider {
     }
 
     String prepareCommonRequestData() {
-        UtilsTime.Instant instant = UtilsTime.getCurrentInstant();
-
-        return "app_key=" + UtilsNetworking.urlEncodeString(baseInfoProvider.getAppKey())
-            + "&timestamp=" + instant.timestampMs
-            + "&hour=" + instant.hour
-            + "&dow=" + instant.dow
-            + "&tz=" + deviceInfo.mp.getTimezoneOffset()
-            + "&sdk_version=" + Countly.sharedInstance().COUNTLY_SDK_VERSION_STRING
-            + "&sdk_name=" + Countly.sharedInstance().COUNTLY_SDK_NAME;
+        return UtilsNetworking.prepareCommonRequestData(baseInfoProvider.getAppKey(), UtilsTime.getCurrentInstant(), deviceInfo.mp.getTimezoneOffset(),
+            Countly.sharedInstance().COUNTLY_SDK_VERSION_STRING, Countly.sharedInstance().COUNTLY_SDK_NAME);
     }
 
     private String prepareLocationData(boolean locationDisabled, String locationCountryCode, String locationCity, String locationGpsCoordinates, String locationIpAddress) {
         String data = "";
 
-        if (locationDisabled || !consentProvider.getConsent(Countly.CountlyFeatureNames.location)) {
+        if (locationDisabled || !consentProvider.getConsent(ModuleConsent.FEATURE_LOCATION)) {
             //if location is disabled or consent not given, send empty location info
             //this way it is cleared server side and geoip is not used
             //do this only if allowed
@@ -638,7 +689,7 @@ class ConnectionQueue implements RequestQueueProvider {
             + "&method=fetch_remote_config"
             + "&device_id=" + UtilsNetworking.urlEncodeString(deviceIdProvider_.getDeviceId());
 
-        if (consentProvider.getConsent(Countly.CountlyFeatureNames.sessions)) {
+        if (consentProvider.getConsent(ModuleConsent.FEATURE_SESSIONS)) {
             //add session data if consent given
             data += "&metrics=" + preparedMetrics;
         }
@@ -668,10 +719,29 @@ class ConnectionQueue implements RequestQueueProvider {
         return data;
     }
 
+    /**
+     * Collects the device metrics on the request thread, so that the first session request does not have to do it on the calling thread
+     */
+    synchronized void prefetchMetrics() {
+        final DeviceInfo info = deviceInfo;
+        final Context context = context_;
+        final Map<String, String> override = metricOverride;
+        if (info == null || context == null) {
+            return;
+        }
+
+        ensureExecutor();
+        executor_.submit(new Runnable() {
+            @Override public void run() {
+                info.prefetchMetrics(context, override);
+            }
+        });
+    }
+
     /**
      * Ensures that an executor has been created for ConnectionProcessor instances to be submitted to.
      */
-    void ensureExecutor() {
+    synchronized void ensureExecutor() {
         if (executor_ == null) {
             executor_ = Executors.newSingleThreadExecutor();
         }
@@ -683,18 +753,24 @@ class ConnectionQueue implements RequestQueueProvider {
      * Does nothing if there is connection queue data or if a ConnectionProcessor
      * is already running.
      */
-    public void tick() {
-        L.v("[Connection Queue] tick, Not empty:[" + !isRequestQueueEmpty() + "], Has processor:[" + (connectionProcessorFuture_ == null) + "], Done or null:[" + (connectionProcessorFuture_ == null
-            || connectionProcessorFuture_.isDone()) + "]");
+    public synchronized void tick() {
+        if (L.isVerbose()) {
+            L.v("[Connection Queue] tick, Not empty:[" + !isRequestQueueEmpty() + "], Has processor:[" + (connectionProcessorFuture_ == null) + "], Done or null:[" + (connectionProcessorFuture_ == null
+                || connectionProcessorFuture_.isDone()) + "]");
+        }
 
         if (!Countly.sharedInstance().isInitialized()) {
             //attempting to tick when the SDK is not initialized
             return;
         }
 
+        storageProvider.importSharedRequests();
+
         if (!isRequestQueueEmpty() && (connectionProcessorFuture_ == null || connectionProcessorFuture_.isDone())) {
             ensureExecutor();
-            connectionProcessorFuture_ = executor_.submit(createConnectionProcessor());
+            ConnectionProcessor cp = createConnectionProcessor();
+            cp.metrics = sdkMetrics;
+            connectionProcessorFuture_ = executor_.submit(cp);
         }
     }
 
@@ -732,19 +808,19 @@ class ConnectionQueue implements RequestQueueProvider {
     }
 
     // for unit testing
-    ExecutorService getExecutor() {
+    synchronized ExecutorService getExecutor() {
         return executor_;
     }
 
-    void setExecutor(final ExecutorService executor) {
+    synchronized void setExecutor(final ExecutorService executor) {
         executor_ = executor;
     }
 
-    Future<?> getConnectionProcessorFuture() {
+    synchronized Future<?> getConnectionProcessorFuture() {
         return connectionProcessorFuture_;
     }
 
-    void setConnectionProcessorFuture(final Future<?> connectionProcessorFuture) {
+    synchronized void setConnectionProcessorFuture(final Future<?> connectionProcessorFuture) {
         connectionProcessorFuture_ = connectionProcessorFuture;
     }
 }
@@ -5,5 +5,11 @@ import androidx.annotation.NonNull;
 interface ConsentProvider {
     boolean getConsent(@NonNull String featureName);
 
+    /**
+     * Same as the string variant, but takes the feature index from 'ModuleConsent'
+     * and only needs a single bit test.
+     */
+    boolean getConsent(int featureIndex);
+
     boolean anyConsentGiven();
 }
@@ -28,6 +28,7 @@ import android.content.Context;
 import android.content.res.Configuration;
 import android.os.Bundle;
 import androidx.annotation.NonNull;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -37,6 +38,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This class is the public API for the Countly Android SDK.
@@ -72,6 +74,11 @@ public class Countly {
      */
     public static final String TAG = "Countly";
 
+    /**
+     * Directory in the app's files directory that holds the multi process request queue
+     */
+    static final String MULTI_PROCESS_DIRECTORY = "countly_multi_process";
+
     /**
      * Countly internal logger
      * Should not be used outside of the SDK
@@ -132,15 +139,22 @@ public class Countly {
     private static class SingletonHolder {
         @SuppressLint("StaticFieldLeak")
         static final Countly instance = new Countly();
+
+        static {
+            //static code of the platform independent classes logs through the shared instance
+            SdkPlatform.setLog(instance.L);
+        }
     }
 
     ConnectionQueue connectionQueue_;
     private final ScheduledExecutorService timerService_;
     private ScheduledFuture<?> timerFuture = null;
+    private ScheduledFuture<?> sdkMetricsFuture = null;
     private int activityCount_;
     boolean disableUpdateSessionRequests_ = false;//todo, move to module after 'setDisableUpdateSessionRequests' is removed
 
-    boolean sdkIsInitialised = false;
+    //read by module calls that don't hold the Countly lock
+    volatile boolean sdkIsInitialised = false;
 
     BaseInfoProvider baseInfoProvider;
     RequestQueueProvider requestQueueProvider;
@@ -150,11 +164,26 @@ public class Countly {
     //i - user accessible calls and important SDK internals
     //d - regular SDK internals
     //v - spammy SDK internals
-    private boolean enableLogging_;
+    private volatile boolean enableLogging_;
     Context context_;
 
     //Internal modules for functionality grouping
     List<ModuleBase> modules = new ArrayList<>();
+
+    //set if calls that write SDK state should be run on a single SDK thread
+    volatile SdkActor sdkActor = null;
+
+    //set after an async init until the module 'initFinished' work has been run
+    volatile boolean deferredInitPending = false;
+
+    //calls that were posted to the SDK thread behind the deferred init and have not been run yet
+    final AtomicInteger callsQueuedBehindInit = new AtomicInteger(0);
+
+    //durations of the init steps of the first init call
+    volatile InitTimingReport initTimingReport = null;
+
+    //internal health metrics, only recorded if enabled in the init config
+    final SdkMetrics sdkMetrics = new SdkMetrics();
     ModuleCrash moduleCrash = null;
     ModuleEvents moduleEvents = null;
     ModuleViews moduleViews = null;
@@ -272,14 +301,21 @@ public class Countly {
             throw new IllegalArgumentException("Can't init SDK with 'null' config");
         }
 
+        InitTimingReport timing = new InitTimingReport();
+
         //enable logging
         if (config.loggingEnabled) {
             //enable logging before any potential logging calls
             setLoggingEnabled(true);
         }
 
+        L.setLogLevel(config.logLevel);
         L.SetListener(config.providedLogCallback);
 
+        if (config.asyncLogListenerDispatch) {
+            L.enableAsyncListenerDispatch(config.asyncLogListenerBufferSize);
+        }
+
         L.d("[Init] Initializing Countly [" + COUNTLY_SDK_NAME + "] SDK version [" + COUNTLY_SDK_VERSION_STRING + "]");
 
         if (config.context == null) {
@@ -367,6 +403,7 @@ public class Countly {
             L.d("[Init] About to init internal systems");
 
             config_ = config;
+            initTimingReport = timing;
 
             // Have a look at the SDK limit values
             if (config.maxKeyLength != null) {
@@ -440,6 +477,7 @@ public class Countly {
             }
 
             //set or create the CountlyStore
+            long phaseStart = System.nanoTime();
             if (config.countlyStore != null) {
                 //we are running a test and using a mock object
                 countlyStore = config.countlyStore;
@@ -447,6 +485,13 @@ public class Countly {
                 countlyStore = new CountlyStore(config.context, L, config.explicitStorageModeEnabled);
                 config.setCountlyStore(countlyStore);
             }
+            timing.endPhase(InitTimingReport.PHASE_STORE_CREATE, phaseStart);
+
+            if (config.sdkMetricsEnabled) {
+                L.d("[Init] SDK metrics will be collected");
+                sdkMetrics.enabled = true;
+            }
+            countlyStore.setMetrics(sdkMetrics);
 
             if (config.maxRequestQueueSize < 1) {
                 L.e("[Init] provided request queue size is less than 1. Replacing it with 1.");
@@ -455,6 +500,12 @@ public class Countly {
             L.d("[Init] request queue size set to [" + config.maxRequestQueueSize + "]");
             countlyStore.setLimits(config.maxRequestQueueSize);
 
+            if (config.multiProcessRequestQueueEnabled) {
+                String processName = Utils.currentProcessName(config.context);
+                L.i("[Init] Enabling the multi process request queue, process:[" + processName + "]");
+                countlyStore.enableMultiProcessRequestQueue(new File(config.context.getFilesDir(), MULTI_PROCESS_DIRECTORY), processName);
+            }
+
             if (config.storageProvider == null) {
                 // outside of tests this should be null
                 config.storageProvider = config.countlyStore;
@@ -495,7 +546,9 @@ public class Countly {
             if (config.metricProviderOverride != null) {
                 L.d("[Init] Custom metric provider was provided");
             }
+            phaseStart = System.nanoTime();
             config.deviceInfo = new DeviceInfo(config.metricProviderOverride);
+            timing.endPhase(InitTimingReport.PHASE_DEVICE_INFO, phaseStart);
 
             if (config.tamperingProtectionSalt != null) {
                 L.d("[Init] Parameter tampering protection salt set");
@@ -518,31 +571,57 @@ public class Countly {
 
             //perform data migration if needed
             try {
+                //the first read waits until the preferences file is loaded, it's timed on it's own so that the migration time doesn't include it
+                phaseStart = System.nanoTime();
+                config.storageProvider.getDataSchemaVersion();
+                phaseStart = timing.endPhase(InitTimingReport.PHASE_STORE_FIRST_READ, phaseStart);
+
                 Map<String, Object> migrationParams = new HashMap<>();
                 migrationParams.put(MigrationHelper.key_from_0_to_1_custom_id_set, config.deviceID != null);
 
                 MigrationHelper mHelper = new MigrationHelper(config.storageProvider, L);
                 mHelper.doWork(migrationParams);
+                timing.endPhase(InitTimingReport.PHASE_MIGRATION, phaseStart);
             } catch (Exception ex) {
                 L.e("[Init] SDK failed while performing data migration. SDK is not capable to initialize.");
                 return this;
             }
 
+            if (config.sdkActorThreadEnabled) {
+                L.d("[Init] Calls that write SDK state will be run on the SDK thread");
+                sdkActor = new SdkActor(L);
+            }
+
             //initialise modules
+            phaseStart = System.nanoTime();
             moduleRequestQueue = new ModuleRequestQueue(this, config);
+            phaseStart = timing.endPhase("ModuleRequestQueue constructor", phaseStart);
             moduleConsent = new ModuleConsent(this, config);
+            phaseStart = timing.endPhase("ModuleConsent constructor", phaseStart);
             moduleDeviceId = new ModuleDeviceId(this, config);
+            phaseStart = timing.endPhase("ModuleDeviceId constructor", phaseStart);
             moduleCrash = new ModuleCrash(this, config);
+            phaseStart = timing.endPhase("ModuleCrash constructor", phaseStart);
             moduleEvents = new ModuleEvents(this, config);
+            phaseStart = timing.endPhase("ModuleEvents constructor", phaseStart);
             moduleUserProfile = new ModuleUserProfile(this, config);//this has to be set before the session module so that we can update remote config before sending anything session related
+            phaseStart = timing.endPhase("ModuleUserProfile constructor", phaseStart);
             moduleViews = new ModuleViews(this, config);
+            phaseStart = timing.endPhase("ModuleViews constructor", phaseStart);
             moduleRatings = new ModuleRatings(this, config);
+            phaseStart = timing.endPhase("ModuleRatings constructor", phaseStart);
             moduleSessions = new ModuleSessions(this, config);
+            phaseStart = timing.endPhase("ModuleSessions constructor", phaseStart);
             moduleRemoteConfig = new ModuleRemoteConfig(this, config);
+            phaseStart = timing.endPhase("ModuleRemoteConfig constructor", phaseStart);
             moduleAPM = new ModuleAPM(this, config);
+            phaseStart = timing.endPhase("ModuleAPM constructor", phaseStart);
             moduleLocation = new ModuleLocation(this, config);
+            phaseStart = timing.endPhase("ModuleLocation constructor", phaseStart);
             moduleFeedback = new ModuleFeedback(this, config);
+            phaseStart = timing.endPhase("ModuleFeedback constructor", phaseStart);
             moduleAttribution = new ModuleAttribution(this, config);
+            phaseStart = timing.endPhase("ModuleAttribution constructor", phaseStart);
 
             modules.clear();
             modules.add(moduleRequestQueue);
@@ -633,10 +712,21 @@ public class Countly {
             connectionQueue_.setRequestHeaderCustomValues(requestHeaderCustomValues);
             connectionQueue_.setMetricOverride(config.metricOverride);
             connectionQueue_.setContext(context_);
+            connectionQueue_.sdkMetrics = sdkMetrics;
+            connectionQueue_.prefetchMetrics();
+
+            if (config.eventRequestMergeLimit > 0) {
+                L.d("[Init] Event requests will be merged up to [" + config.eventRequestMergeLimit + "] bytes");
+            }
+            connectionQueue_.eventRequestMergeLimit = config.eventRequestMergeLimit;
 
             sdkIsInitialised = true;
             //AFTER THIS POINT THE SDK IS COUNTED AS INITIALISED
 
+            if (config.sdkMetricsListener != null) {
+                startSdkMetricsListener(config.sdkMetricsListener, config.sdkMetricsListenerIntervalSeconds);
+            }
+
             //set global application listeners
             if (config.application != null) {
                 config.application.registerActivityLifecycleCallbacks(new Application.ActivityLifecycleCallbacks() {
@@ -725,13 +815,24 @@ public class Countly {
  */
             }
 
-            L.i("[Init] About to call module 'initFinished'");
-
-            for (ModuleBase module : modules) {
-                module.initFinished(config);
+            if (config.asyncInitEnabled) {
+                //the SDK thread runs calls in order, so every call made after this point is processed after the deferred init
+                L.i("[Init] Deferring module 'initFinished' to the SDK thread");
+                if (config.enableUnhandledCrashReporting) {
+                    //installed right away, so that crashes before and during the deferred init are reported
+                    moduleCrash.enableCrashReporting();
+                }
+                deferredInitPending = true;
+                sdkActor.post(new Runnable() {
+                    @Override public void run() {
+                        runDeferredInitIfPending();
+                    }
+                });
+            } else {
+                finishModuleInit(config);
             }
 
-            L.i("[Init] Finished initialising SDK");
+            timing.initCallFinished();
         } else {
             //if this is not the first time we are calling init
             L.i("[Init] Getting in the 'else' block");
@@ -743,6 +844,101 @@ public class Countly {
         return this;
     }
 
+    void finishModuleInit(@NonNull CountlyConfig config) {
+        L.i("[Init] About to call module 'initFinished'");
+
+        InitTimingReport timing = initTimingReport;
+        long phaseStart = System.nanoTime();
+        for (ModuleBase module : modules) {
+            module.initFinished(config);
+            phaseStart = timing.endPhase(module.getClass().getSimpleName() + " initFinished", phaseStart);
+        }
+        timing.initFinished();
+
+        L.i("[Init] Finished initialising SDK");
+        if (L.logEnabled()) {
+            L.d("[Init] " + timing);
+        }
+
+        if (config.initTimingTraceEnabled) {
+            moduleAPM.recordInitTimingTrace(timing);
+        }
+    }
+
+    /**
+     * Returns how long the steps of SDK init took.
+     * With async init, module startup durations are added once it has finished, see 'getTotalDurationNs'.
+     *
+     * @return the report of the first init call, or null if the SDK has not been initialized
+     */
+    public InitTimingReport getInitTimingReport() {
+        return initTimingReport;
+    }
+
+    /**
+     * Runs the module 'initFinished' work that was deferred by an async init, if it has not been run yet.
+     * Called from the SDK thread, calls made before it has run are queued behind it with 'queueBehindInit'.
+     */
+    void runDeferredInitIfPending() {
+        if (!deferredInitPending) {
+            return;
+        }
+
+        InitFinishedCallback callback;
+        synchronized (this) {
+            if (!deferredInitPending) {
+                return;
+            }
+            deferredInitPending = false;
+
+            finishModuleInit(config_);
+            callback = config_.initFinishedCallback;
+        }
+
+        if (callback != null) {
+            try {
+                callback.onInitFinished();
+            } catch (Exception ex) {
+                L.e("[Init] Init finished callback failed, " + ex.toString(), ex);
+            }
+        }
+    }
+
+    /**
+     * @return true while the work deferred by an async init, or calls that were queued behind it, have not been run.
+     * Public calls made from other threads during that time are posted with 'queueBehindInit'.
+     */
+    boolean shouldQueueBehindInit() {
+        SdkActor actor = sdkActor;
+        return actor != null && !actor.isActorThread() && (deferredInitPending || callsQueuedBehindInit.get() > 0);
+    }
+
+    /**
+     * Posts the call to the SDK thread, it is processed after the deferred init and the calls queued before it.
+     * Once the queue has been worked off calls are run on the calling thread again.
+     */
+    void queueBehindInit(@NonNull final Runnable call) {
+        SdkActor actor = sdkActor;
+        if (actor == null) {
+            return;
+        }
+
+        callsQueuedBehindInit.incrementAndGet();
+        boolean posted = actor.post(new Runnable() {
+            @Override public void run() {
+                try {
+                    call.run();
+                } finally {
+                    callsQueuedBehindInit.decrementAndGet();
+                }
+            }
+        });
+        if (!posted) {
+            //the SDK was halted, the call is dropped like every other call posted after that
+            callsQueuedBehindInit.decrementAndGet();
+        }
+    }
+
     /**
      * Checks whether Countly.init has been already called.
      *
@@ -763,6 +959,7 @@ public class Countly {
     public synchronized void halt() {
         L.i("Halting Countly!");
         sdkIsInitialised = false;
+        deferredInitPending = false;
         L.SetListener(null);
 
         if (connectionQueue_ != null) {
@@ -775,6 +972,18 @@ public class Countly {
 
         activityCount_ = 0;
 
+        if (sdkMetricsFuture != null) {
+            sdkMetricsFuture.cancel(false);
+            sdkMetricsFuture = null;
+        }
+        sdkMetrics.enabled = false;
+        sdkMetrics.reset();
+
+        if (sdkActor != null) {
+            sdkActor.stop();
+            sdkActor = null;
+        }
+
         for (ModuleBase module : modules) {
             module.halt();
         }
@@ -799,6 +1008,61 @@ public class Countly {
         staticInit();
     }
 
+    private void startSdkMetricsListener(@NonNull final SdkMetricsListener listener, long intervalSeconds) {
+        if (intervalSeconds < 1) {
+            intervalSeconds = 1;
+        }
+
+        L.d("[Init] SDK metrics will be passed to the listener every [" + intervalSeconds + "] seconds");
+        sdkMetricsFuture = timerService_.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                SdkMetrics.Snapshot snapshot = createSdkMetricsSnapshot();
+                if (snapshot == null) {
+                    return;
+                }
+
+                try {
+                    listener.onSdkMetrics(snapshot);
+                } catch (Exception ex) {
+                    L.e("[Countly] SDK metrics listener failed, " + ex.toString(), ex);
+                }
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Returns the current values of the internal SDK health metrics.
+     * Metrics have to be enabled in the init config with 'enableSdkMetrics' or 'setSdkMetricsListener'.
+     *
+     * @return metric values, or null if the SDK is not initialized or metrics are not enabled
+     */
+    public SdkMetrics.Snapshot getSdkMetricsSnapshot() {
+        if (!isInitialized()) {
+            L.e("Countly.sharedInstance().init must be called before getSdkMetricsSnapshot");
+            return null;
+        }
+
+        if (!sdkMetrics.enabled) {
+            L.w("[Countly] getSdkMetricsSnapshot, SDK metrics are not enabled");
+            return null;
+        }
+
+        return createSdkMetricsSnapshot();
+    }
+
+    SdkMetrics.Snapshot createSdkMetricsSnapshot() {
+        CountlyStore store = countlyStore;
+        if (store == null || !sdkMetrics.enabled) {
+            return null;
+        }
+
+        String requestQueue = store.getRequestQueueRaw();
+        String eventQueue = store.getEventQueueRaw();
+        return new SdkMetrics.Snapshot(UtilsTime.currentTimestampMs(), CountlyStore.storedItemCount(requestQueue), requestQueue.length(),
+            CountlyStore.storedItemCount(eventQueue), eventQueue.length(), sdkMetrics);
+    }
+
     synchronized void notifyDeviceIdChange() {
         L.d("Notifying modules that device ID changed");
 
@@ -807,42 +1071,67 @@ public class Countly {
         }
     }
 
+    /**
+     * Posts the call to the SDK thread if that mode is enabled and this is not already the SDK thread
+     *
+     * @return true if the call was posted and should not be run on the calling thread
+     */
+    boolean postToSdkActor(@NonNull Runnable call) {
+        SdkActor actor = sdkActor;
+        if (actor == null || actor.isActorThread()) {
+            return false;
+        }
+
+        actor.post(call);
+        return true;
+    }
+
     /**
      * Tells the Countly SDK that an Activity has started. Since Android does not have an
      * easy way to determine when an application instance starts and stops, you must call this
      * method from every one of your Activity's onStart methods for accurate application
      * session tracking.
      */
-    public synchronized void onStart(Activity activity) {
-        if (L.logEnabled()) {
-            String activityName = "NULL ACTIVITY PROVIDED";
-            if (activity != null) {
-                activityName = activity.getClass().getSimpleName();
+    public void onStart(final Activity activity) {
+        if (postToSdkActor(new Runnable() {
+            @Override public void run() {
+                onStart(activity);
             }
-            L.d("Countly onStart called, name:[" + activityName + "], [" + activityCount_ + "] -> [" + (activityCount_ + 1) + "] activities now open");
-        }
-
-        if (!isInitialized()) {
-            L.e("init must be called before onStart");
+        })) {
             return;
         }
 
-        ++activityCount_;
-        if (activityCount_ == 1 && !moduleSessions.manualSessionControlEnabled) {
-            //if we open the first activity
-            //and we are not using manual session control,
-            //begin a session
+        synchronized (this) {
+            if (L.logEnabled()) {
+                String activityName = "NULL ACTIVITY PROVIDED";
+                if (activity != null) {
+                    activityName = activity.getClass().getSimpleName();
+                }
+                L.d("Countly onStart called, name:[" + activityName + "], [" + activityCount_ + "] -> [" + (activityCount_ + 1) + "] activities now open");
+            }
 
-            moduleSessions.beginSessionInternal();
-        }
+            if (!isInitialized()) {
+                L.e("init must be called before onStart");
+                return;
+            }
 
-        config_.deviceInfo.inForeground();
+            ++activityCount_;
+            if (activityCount_ == 1 && !moduleSessions.manualSessionControlEnabled) {
+                //if we open the first activity
+                //and we are not using manual session control,
+                //begin a session
 
-        for (ModuleBase module : modules) {
-            module.onActivityStarted(activity);
-        }
+                moduleSessions.beginSessionInternal();
+            }
+
+            config_.deviceInfo.inForeground();
+
+            for (ModuleBase module : modules) {
+                module.onActivityStarted(activity);
+            }
 
-        calledAtLeastOnceOnStart = true;
+            calledAtLeastOnceOnStart = true;
+        }
     }
 
     /**
@@ -852,42 +1141,62 @@ public class Countly {
      * session tracking.
      * unbalanced calls to onStart/onStop are detected
      */
-    public synchronized void onStop() {
-        L.d("Countly onStop called, [" + activityCount_ + "] -> [" + (activityCount_ - 1) + "] activities now open");
-
-        if (!isInitialized()) {
-            L.e("init must be called before onStop");
-            return;
-        }
-        if (activityCount_ == 0) {
-            L.e("must call onStart before onStop");
+    public void onStop() {
+        if (postToSdkActor(new Runnable() {
+            @Override public void run() {
+                onStop();
+            }
+        })) {
             return;
         }
 
-        --activityCount_;
-        if (activityCount_ == 0 && !moduleSessions.manualSessionControlEnabled) {
-            // if we don't use manual session control
-            // Called when final Activity is stopped.
-            // Sends an end session event to the server, also sends any unsent custom events.
-            moduleSessions.endSessionInternal(null);
-        }
+        synchronized (this) {
+            L.d("Countly onStop called, [" + activityCount_ + "] -> [" + (activityCount_ - 1) + "] activities now open");
+
+            if (!isInitialized()) {
+                L.e("init must be called before onStop");
+                return;
+            }
+            if (activityCount_ == 0) {
+                L.e("must call onStart before onStop");
+                return;
+            }
 
-        config_.deviceInfo.inBackground();
+            --activityCount_;
+            if (activityCount_ == 0 && !moduleSessions.manualSessionControlEnabled) {
+                // if we don't use manual session control
+                // Called when final Activity is stopped.
+                // Sends an end session event to the server, also sends any unsent custom events.
+                moduleSessions.endSessionInternal(null);
+            }
 
-        for (ModuleBase module : modules) {
-            module.onActivityStopped(activityCount_);
+            config_.deviceInfo.inBackground();
+
+            for (ModuleBase module : modules) {
+                module.onActivityStopped(activityCount_);
+            }
         }
     }
 
-    public synchronized void onConfigurationChanged(Configuration newConfig) {
-        L.d("Calling [onConfigurationChanged]");
-        if (!isInitialized()) {
-            L.e("init must be called before onConfigurationChanged");
+    public void onConfigurationChanged(final Configuration newConfig) {
+        if (postToSdkActor(new Runnable() {
+            @Override public void run() {
+                onConfigurationChanged(newConfig);
+            }
+        })) {
             return;
         }
 
-        for (ModuleBase module : modules) {
-            module.onConfigurationChanged(newConfig);
+        synchronized (this) {
+            L.d("Calling [onConfigurationChanged]");
+            if (!isInitialized()) {
+                L.e("init must be called before onConfigurationChanged");
+                return;
+            }
+
+            for (ModuleBase module : modules) {
+                module.onConfigurationChanged(newConfig);
+            }
         }
     }
 
@@ -901,11 +1210,30 @@ public class Countly {
     /**
      * Called every 60 seconds to send a session heartbeat to the server. Does nothing if there
      * is not an active application session.
+     * Only the session update is done while holding the Countly lock,
+     * flushing the event queue and sending requests is guarded by the request queue itself.
      */
-    synchronized void onTimer() {
-        L.v("[onTimer] Calling heartbeat, Activity count:[" + activityCount_ + "]");
+    void onTimer() {
+        if (postToSdkActor(new Runnable() {
+            @Override public void run() {
+                onTimer();
+            }
+        })) {
+            return;
+        }
+
+        final ModuleRequestQueue requestQueue;
+        final RequestQueueProvider rqProvider;
+        final ModuleAPM apm;
+        final ModuleCrash crash;
+
+        synchronized (this) {
+            L.v("[onTimer] Calling heartbeat, Activity count:[" + activityCount_ + "]");
+
+            if (!isInitialized()) {
+                return;
+            }
 
-        if (isInitialized()) {
             final boolean hasActiveSession = activityCount_ > 0;
             if (hasActiveSession) {
                 if (!moduleSessions.manualSessionControlEnabled) {
@@ -913,10 +1241,22 @@ public class Countly {
                 }
             }
 
-            //on every timer tick we collect all events and attempt to send requests
-            moduleRequestQueue.sendEventsIfNeeded(true);
-            requestQueueProvider.tick();
+            //halt could clear these while the events are being flushed
+            requestQueue = moduleRequestQueue;
+            rqProvider = requestQueueProvider;
+            apm = moduleAPM;
+            crash = moduleCrash;
+        }
+
+        //on every timer tick we collect all events and attempt to send requests
+        requestQueue.sendEventsIfNeeded(true);
+        if (apm != null) {
+            apm.onTimer();
+        }
+        if (crash != null) {
+            crash.onTimer();
         }
+        rqProvider.tick();
     }
 
     /**
@@ -990,7 +1330,7 @@ public class Countly {
      * @return device ID
      * @deprecated Use 'Countly.sharedInstance().deviceId().getID();'
      */
-    public synchronized String getDeviceID() {
+    public String getDeviceID() {
         if (!isInitialized()) {
             L.e("init must be called before getDeviceID");
             return null;
@@ -1006,7 +1346,7 @@ public class Countly {
      * @return device ID type
      * @deprecated Use 'Countly.sharedInstance().deviceId().getType();'
      */
-    public synchronized DeviceId.Type getDeviceIDType() {
+    public DeviceId.Type getDeviceIDType() {
         if (!isInitialized()) {
             L.e("init must be called before getDeviceID");
             return null;
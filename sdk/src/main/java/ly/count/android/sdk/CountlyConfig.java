@@ -142,6 +142,14 @@ public class CountlyConfig {
 
     protected boolean recordAllThreadsWithCrash = false;
 
+    long mainThreadStallThresholdMs = 0;
+
+    int crashDeduplicationWindowSeconds = 0;
+
+    boolean breadcrumbTimestampsEnabled = false;
+
+    boolean breadcrumbMirroringEnabled = false;
+
     protected boolean disableUpdateSessionRequests = false;
 
     protected boolean shouldIgnoreAppCrawlers = false;
@@ -186,16 +194,46 @@ public class CountlyConfig {
 
     boolean manualForegroundBackgroundTrigger = false;
 
+    boolean apmTraceAggregationEnabled = false;
+    int apmTraceAggregationIntervalSeconds = 60;
+
+    boolean frameTrackingEnabled = false;
+    FrameSource frameSourceOverride = null;//used in tests instead of the Choreographer
+
     int maxRequestQueueSize = 1000;
 
+    int eventRequestMergeLimit = 0;
+
     ModuleLog.LogCallback providedLogCallback;
 
+    ModuleLog.LogLevel logLevel = ModuleLog.LogLevel.Verbose;
+
+    boolean asyncLogListenerDispatch = false;
+
+    int asyncLogListenerBufferSize = AsyncLogDispatcher.DEFAULT_CAPACITY;
+
+    boolean sdkActorThreadEnabled = false;
+
+    boolean asyncInitEnabled = false;
+
+    InitFinishedCallback initFinishedCallback = null;
+
+    boolean initTimingTraceEnabled = false;
+
+    boolean sdkMetricsEnabled = false;
+
+    SdkMetricsListener sdkMetricsListener = null;
+
+    int sdkMetricsListenerIntervalSeconds = 60;
+
     String daCampaignType = null;
     String daCampaignData = null;
     Map<String, String> iaAttributionValues = null;
 
     public boolean explicitStorageModeEnabled = false;
 
+    boolean multiProcessRequestQueueEnabled = false;
+
     //SDK internal limits
     Integer maxKeyLength;
     Integer maxValueSize;
@@ -412,6 +450,60 @@ public class CountlyConfig {
         return this;
     }
 
+    /**
+     * Watch the main thread for stalls that could turn into ANRs.
+     * When the main thread has been blocked for longer than the threshold, its stack is reported as a non fatal crash
+     * and once it recovers, the stall duration is recorded as an APM trace.
+     * Stalls with the same stack are reported as a crash only once.
+     * The main thread is watched while an activity is started, which is tracked through the application set with 'setApplication'.
+     * Without it, the main thread is also watched in the background.
+     *
+     * @param thresholdMs how long the main thread has to be blocked to be reported, ANRs happen after 5000 ms
+     * @return Returns the same config object for convenient linking
+     */
+    public synchronized CountlyConfig enableMainThreadStallDetection(long thresholdMs) {
+        mainThreadStallThresholdMs = thresholdMs;
+        return this;
+    }
+
+    /**
+     * Collapse repeated handled exceptions into one crash report per time window.
+     * The first occurrence of an exception is reported, further occurrences with the same exception classes and stack frames
+     * are only counted until the window has passed. The next report after that contains the count in the 'occurrences' segment.
+     * If there is no further occurrence, the counted ones are reported on their own with the stack of the first of them once the window has passed.
+     * Exceptions that are dropped by the crash filter are not counted.
+     *
+     * @param windowSeconds how long repeated occurrences are collapsed after a report
+     * @return Returns the same config object for convenient linking
+     */
+    public synchronized CountlyConfig enableCrashDeduplication(int windowSeconds) {
+        crashDeduplicationWindowSeconds = windowSeconds;
+        return this;
+    }
+
+    /**
+     * Put the time a breadcrumb was added in front of it in crash reports
+     *
+     * @return Returns the same config object for convenient linking
+     */
+    public synchronized CountlyConfig enableBreadcrumbTimestamps() {
+        breadcrumbTimestampsEnabled = true;
+        return this;
+    }
+
+    /**
+     * Keep a copy of the breadcrumbs in a small memory mapped file in the cache folder.
+     * The copy survives a native crash, so the breadcrumbs of the crashed run are added to its native crash report.
+     * If the previous run did not end with a native crash, its breadcrumbs are not added to older crash dumps.
+     * Breadcrumbs longer than 238 bytes are cut off in the copy.
+     *
+     * @return Returns the same config object for convenient linking
+     */
+    public synchronized CountlyConfig enableBreadcrumbMirroring() {
+        breadcrumbMirroringEnabled = true;
+        return this;
+    }
+
     /**
      * Set if automatic view tracking should be enabled
      *
@@ -845,6 +937,35 @@ public class CountlyConfig {
         return this;
     }
 
+    /**
+     * Track the rendering time of frames while the app is in the foreground.
+     * Slow and frozen frame counts and frame time percentiles are reported per view,
+     * frames are attributed to the last view recorded with 'views().recordView'.
+     * The traces are named after the view with a 'countly_frames_' prefix.
+     *
+     * @return Returns the same config object for convenient linking
+     */
+    public synchronized CountlyConfig enableFrameTracking() {
+        frameTrackingEnabled = true;
+        return this;
+    }
+
+    /**
+     * Custom and network traces are summarized per trace key instead of being sent one request per trace.
+     * Each summary is sent as a single trace with the average duration and the count, min, max, p50 and p95 of the durations as additional metrics,
+     * they are sent when the interval has passed and when the app goes to the background.
+     * Network summaries also carry the amount of failed requests as 'error_count'. Their response code is the most frequent error code
+     * if any request failed and the most frequent code otherwise.
+     *
+     * @param flushIntervalSeconds how often the summaries are sent, at least once per session update tick
+     * @return Returns the same config object for convenient linking
+     */
+    public synchronized CountlyConfig enableApmTraceAggregation(int flushIntervalSeconds) {
+        apmTraceAggregationEnabled = true;
+        apmTraceAggregationIntervalSeconds = flushIntervalSeconds;
+        return this;
+    }
+
     /**
      * Add a log callback that will duplicate all logs done by the SDK.
      * For each message you will receive the message string and it's targeted log level.
@@ -857,6 +978,102 @@ public class CountlyConfig {
         return this;
     }
 
+    /**
+     * Set the lowest level of SDK logs that are printed and passed to the log listener.
+     * Messages of lower levels are not built at all. By default all levels are logged.
+     *
+     * @param logLevel the lowest level that is logged
+     * @return Returns the same config object for convenient linking
+     */
+    public synchronized CountlyConfig setLogLevel(ModuleLog.LogLevel logLevel) {
+        this.logLevel = logLevel;
+        return this;
+    }
+
+    /**
+     * Deliver logs to the log listener from a background thread instead of the thread that logged them.
+     * This way a slow listener does not stall the SDK.
+     * If more than 'bufferSize' logs are waiting for delivery, new ones are dropped and the dropped amount is reported to the listener.
+     *
+     * @param bufferSize how many logs can wait for delivery. Minimum value is "1".
+     * @return Returns the same config object for convenient linking
+     */
+    public synchronized CountlyConfig enableAsyncLogListenerDispatch(int bufferSize) {
+        asyncLogListenerDispatch = true;
+        asyncLogListenerBufferSize = bufferSize;
+        return this;
+    }
+
+    /**
+     * Run calls that write SDK state on a single SDK thread instead of the calling thread.
+     * Event, view, crash and activity lifecycle calls check their arguments on the calling thread and then return,
+     * storing and queueing requests is done on the SDK thread in the order of the calls.
+     * Device ID and remote config getters return the latest published values without waiting for other SDK calls.
+     * Up to 10000 calls can wait for the SDK thread, calls made while that many are waiting are dropped and logged.
+     *
+     * @return Returns the same config object for convenient linking
+     */
+    public synchronized CountlyConfig enableSdkActorThread() {
+        sdkActorThreadEnabled = true;
+        return this;
+    }
+
+    /**
+     * Return from init after the minimal work needed to accept SDK calls.
+     * The rest of the init work (module startup, checking for native crash dumps, sending cached push and attribution data)
+     * is done on the SDK thread, calls made before it finishes are processed after it in the order they were made.
+     * Timestamps of such calls, like trace start and end times, are taken when the call is made.
+     * The unhandled crash handler is installed before init returns.
+     * This also enables the SDK thread, see 'enableSdkActorThread'.
+     *
+     * @param callback called from the SDK thread once init has finished, can be null
+     * @return Returns the same config object for convenient linking
+     */
+    public synchronized CountlyConfig enableAsyncInit(InitFinishedCallback callback) {
+        asyncInitEnabled = true;
+        sdkActorThreadEnabled = true;
+        initFinishedCallback = callback;
+        return this;
+    }
+
+    /**
+     * Send the durations of the SDK init steps as an APM trace named "countly_sdk_init".
+     * The trace duration is the total init time, step durations are added as custom metrics in microseconds.
+     * Requires APM consent. The same values are available locally through 'Countly.getInitTimingReport'.
+     *
+     * @return Returns the same config object for convenient linking
+     */
+    public synchronized CountlyConfig enableInitTimingTrace() {
+        initTimingTraceEnabled = true;
+        return this;
+    }
+
+    /**
+     * Collect internal SDK health metrics: queue sizes, request latency and results, storage writes, dropped data and lock waits.
+     * They can be read with 'Countly.getSdkMetricsSnapshot'.
+     *
+     * @return Returns the same config object for convenient linking
+     */
+    public synchronized CountlyConfig enableSdkMetrics() {
+        sdkMetricsEnabled = true;
+        return this;
+    }
+
+    /**
+     * Collect internal SDK health metrics and periodically pass them to the given listener.
+     * The listener is called from a background thread.
+     *
+     * @param listener listener that receives the metrics
+     * @param intervalSeconds how often the listener is called, minimum value is "1"
+     * @return Returns the same config object for convenient linking
+     */
+    public synchronized CountlyConfig setSdkMetricsListener(SdkMetricsListener listener, int intervalSeconds) {
+        sdkMetricsEnabled = true;
+        sdkMetricsListener = listener;
+        sdkMetricsListenerIntervalSeconds = intervalSeconds;
+        return this;
+    }
+
     /**
      * Set's the new maximum size for the request queue.
      *
@@ -868,6 +1085,19 @@ public class CountlyConfig {
         return this;
     }
 
+    /**
+     * Allows events to be added to an event request that is already in the request queue and hasn't been sent yet,
+     * instead of creating a new request each time the event queue is flushed.
+     * This reduces the amount of requests that pile up while the device is offline.
+     *
+     * @param maxRequestBytes size limit of a merged request. Values of '0' or less disable merging, which is the default.
+     * @return Returns the same config object for convenient linking
+     */
+    public synchronized CountlyConfig setEventRequestMergeLimit(int maxRequestBytes) {
+        eventRequestMergeLimit = maxRequestBytes;
+        return this;
+    }
+
     /**
      * Report direct user attribution
      *
@@ -914,4 +1144,18 @@ public class CountlyConfig {
         explicitStorageModeEnabled = true;
         return this;
     }
+
+    /**
+     * Enable this if the SDK is initialized in more than one process of the app.
+     *
+     * Every process then records its own events, the requests of all processes are collected
+     * into a single request queue and only one process sends them to the server.
+     * This mode can't be used together with explicit storage mode.
+     *
+     * @return Returns the same config object for convenient linking
+     */
+    public synchronized CountlyConfig enableMultiProcessRequestQueue() {
+        multiProcessRequestQueueEnabled = true;
+        return this;
+    }
 }
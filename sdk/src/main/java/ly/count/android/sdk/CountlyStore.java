@@ -21,33 +21,28 @@ THE SOFTWARE.
 */
 package ly.count.android.sdk;
 
-import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.SharedPreferences;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import java.io.UnsupportedEncodingException;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
 
 /**
  * This class provides a persistence layer for the local event &amp; connection queues.
+ * The queue logic itself is in 'QueueStore', which is backed by this class's shared preferences.
  *
  * The "read" methods in this class are not synchronized, because the underlying data store
- * provides thread-safe reads.  The "write" methods in this class are synchronized, because
+ * provides thread-safe reads.  The "write" methods in this class and in 'QueueStore' are synchronized, because
  * 1) they often read a list of items, modify the list, and then commit it back to the underlying
- * data store, and 2) while the Countly singleton is synchronized to ensure only a single writer
- * at a time from the public API side, the internal implementation has a background thread that
- * submits data to a Countly server, and it writes to this store as well.
+ * data store, and 2) SDK modules write to this store from multiple threads, each holding only
+ * its own module lock, and the background thread that submits data to a Countly server writes
+ * to this store as well.
+ * Methods of this class never call back into the SDK modules, so it can be used while holding any module lock.
  *
  * NOTE: This class is only public to facilitate unit testing, because
  * of this bug in dexmaker: https://code.google.com/p/dexmaker/issues/detail?id=34
@@ -55,11 +50,10 @@ import org.json.JSONObject;
 public class CountlyStore implements StorageProvider, EventQueueProvider {
     private static final String PREFERENCES = "COUNTLY_STORE";
     private static final String PREFERENCES_PUSH = "ly.count.android.api.messaging";
-    static final String DELIMITER = ":::";
-    private static final String REQUEST_PREFERENCE = "CONNECTIONS";
-    private static final String EVENTS_PREFERENCE = "EVENTS";
+    static final String DELIMITER = QueueStore.DELIMITER;
     private static final String STAR_RATING_PREFERENCE = "STAR_RATING";
     private static final String CACHED_ADVERTISING_ID = "ADVERTISING_ID";
+    private static final String CRASH_INDEX = "CRASH_INDEX";
     private static final String REMOTE_CONFIG_VALUES = "REMOTE_CONFIG";
     private static final String STORAGE_SCHEMA_VERSION = "SCHEMA_VERSION";
     private static final String PREFERENCE_KEY_ID_ID = "ly.count.android.api.DeviceId.id";
@@ -69,7 +63,6 @@ public class CountlyStore implements StorageProvider, EventQueueProvider {
     private static final String CACHED_PUSH_ACTION_INDEX = "PUSH_ACTION_INDEX";
     private static final String CACHED_PUSH_MESSAGING_MODE = "PUSH_MESSAGING_MODE";
     private static final String CACHED_PUSH_MESSAGING_PROVIDER = "PUSH_MESSAGING_PROVIDER";
-    private static final int MAX_EVENTS = 1000;//the maximum amount of events that can be held in the event queue
 
     private final SharedPreferences preferences_;
     private final SharedPreferences preferencesPush_;
@@ -78,13 +71,8 @@ public class CountlyStore implements StorageProvider, EventQueueProvider {
 
     ModuleLog L;
 
-    int maxRequestQueueSize = 1000;
-
-    //explicit storage fields
-    boolean explicitStorageModeEnabled = false;
-    boolean esDirtyFlag = false;
-    String esRequestQueueCache = null;//'null' is a special value that indicates that it hasn't read what is in persistent storage
-    String esEventQueueCache = null;//'null' is a special value that indicates that it hasn't read what is in persistent storage
+    //request and event queues, kept in 'preferences_'
+    final QueueStore queues;
 
     /**
      * Constructs a CountlyStore object.
@@ -99,170 +87,77 @@ public class CountlyStore implements StorageProvider, EventQueueProvider {
         if (context == null) {
             throw new IllegalArgumentException("must provide valid context");
         }
-        this.explicitStorageModeEnabled = explicitStorageModeEnabled;
         preferences_ = context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
         preferencesPush_ = createPreferencesPush(context);
         L = logModule;
+        queues = new QueueStore(new SharedPreferencesStore(preferences_), logModule, explicitStorageModeEnabled);
     }
 
     public void setLimits(final int maxRequestQueueSize) {
-        this.maxRequestQueueSize = maxRequestQueueSize;
+        queues.maxRequestQueueSize = maxRequestQueueSize;
     }
 
-    static SharedPreferences createPreferencesPush(Context context) {
-        return context.getSharedPreferences(PREFERENCES_PUSH, Context.MODE_PRIVATE);
+    /**
+     * @param metrics records storage writes and dropped data, set by the SDK during init
+     */
+    void setMetrics(@Nullable SdkMetrics metrics) {
+        queues.metrics = metrics;
     }
 
-    private @NonNull String storageReadRequestQueue() {
-        if (explicitStorageModeEnabled) {
-            //L.v("[CountlyStore] Returning RQ from cache");
-            if (esRequestQueueCache == null) {
-                L.v("[CountlyStore] Reading initial RQ from storage");
-                esRequestQueueCache = preferences_.getString(REQUEST_PREFERENCE, "");
-            }
-
-            return esRequestQueueCache;
-        } else {
-            //L.v("[CountlyStore] Returning RQ from preferences");
-            return preferences_.getString(REQUEST_PREFERENCE, "");
-        }
+    /**
+     * Moves the request and event queues to files in 'directory', so that multiple processes can record data.
+     * Requests recorded by other processes are imported with 'importSharedRequests'.
+     *
+     * @param processName name of the current process
+     */
+    void enableMultiProcessRequestQueue(@NonNull File directory, @NonNull String processName) {
+        queues.enableSharedRequestLog(new SharedRequestLog(directory, L), new FileKeyValueStore(directory, L), processName);
     }
 
-    private void storageWriteRequestQueue(@Nullable String requestQueue, boolean writeInSync) {
-        if (explicitStorageModeEnabled) {
-            //L.v("[CountlyStore] Writing RQ to cache");
-            esRequestQueueCache = requestQueue;
-            esDirtyFlag = true;
-        } else {
-            //L.v("[CountlyStore] Writing RQ to preferences");
-            SharedPreferences.Editor editor = preferences_.edit().putString(REQUEST_PREFERENCE, requestQueue);
-
-            if (writeInSync) {
-                editor.commit();
-            } else {
-                editor.apply();
-            }
-        }
+    /**
+     * Moves requests that other processes have recorded into the request queue,
+     * if this process is the one that sends them
+     */
+    public void importSharedRequests() {
+        queues.importSharedRequests();
     }
 
-    private @NonNull String storageReadEventQueue() {
-        if (explicitStorageModeEnabled) {
-            //L.v("[CountlyStore] Returning EQ from cache");
-            if (esEventQueueCache == null) {
-                L.v("[CountlyStore] Reading initial EQ from storage");
-                esEventQueueCache = preferences_.getString(EVENTS_PREFERENCE, "");
-            }
-
-            return esEventQueueCache;
-        } else {
-            //L.v("[CountlyStore] Returning EQ from preferences");
-            return preferences_.getString(EVENTS_PREFERENCE, "");
-        }
+    /**
+     * Returns the queued requests and, in multi process mode, the ones appended by other processes.
+     * Null if another process owns the request queue.
+     */
+    @Override
+    public @Nullable List<String> getAllPendingRequests() {
+        return queues.getAllPendingRequests();
     }
 
-    private void storageWriteEventQueue(@Nullable String eventQueue, boolean writeInSync) {
-        if (explicitStorageModeEnabled) {
-            L.v("[CountlyStore] Writing EQ to cache");
-            esEventQueueCache = eventQueue;
-            esDirtyFlag = true;
-        } else {
-            L.v("[CountlyStore] Writing EQ to preferences");
-            SharedPreferences.Editor editor = preferences_.edit().putString(EVENTS_PREFERENCE, eventQueue);
-
-            if (writeInSync) {
-                editor.commit();
-            } else {
-                editor.apply();
-            }
-        }
+    static SharedPreferences createPreferencesPush(Context context) {
+        return context.getSharedPreferences(PREFERENCES_PUSH, Context.MODE_PRIVATE);
     }
 
-    public synchronized void esWriteCacheToStorage(@Nullable ExplicitStorageCallback callback) {
-        L.v("[CountlyStore] Trying to write ES cache to storage[" + explicitStorageModeEnabled + "], is dirty flag:[" + esDirtyFlag + "]");
-        if (explicitStorageModeEnabled) {
-            if (esDirtyFlag) {
-                boolean writePerformed = false;//flag for indicating if anything will be written
-                SharedPreferences.Editor spe = preferences_.edit();
-
-                //if it's not 'null' then it means that it is written to
-                if (esRequestQueueCache != null) {
-                    //check if the cached request queue matches the one in persistent memory
-                    String currentRQValue = preferences_.getString(REQUEST_PREFERENCE, "");
-                    if (!esRequestQueueCache.equals(currentRQValue)) {
-                        writePerformed = true;
-                        spe.putString(REQUEST_PREFERENCE, esRequestQueueCache);
-                    }
-                }
-
-                //if it's not 'null' then it means that it is written to
-                if (esEventQueueCache != null) {
-                    //check if the cached event queue matches the one in persistent memory
-                    String currentEQValue = preferences_.getString(EVENTS_PREFERENCE, "");
-                    if (!esEventQueueCache.equals((currentEQValue))) {
-                        writePerformed = true;
-                        spe.putString(EVENTS_PREFERENCE, esEventQueueCache);
-                    }
-                }
-
-                if (writePerformed) {
-                    //commit the changes if needed
-                    spe.commit();
-                }
-                esDirtyFlag = false;//clear the dirty flag
-
-                //signal the caller about the write that was potentially done
-                if (callback != null) {
-                    callback.WriteToStorageFinished(writePerformed);
-                }
-            } else {
-                if (callback != null) {
-                    callback.WriteToStorageFinished(false);
-                }
-            }
-        }
+    public void esWriteCacheToStorage(@Nullable ExplicitStorageCallback callback) {
+        queues.esWriteCacheToStorage(callback);
     }
 
     /**
      * Returns an unsorted array of the current stored connections.
      */
-    public synchronized String[] getRequests() {
-        final String joinedConnStr = storageReadRequestQueue();
-        return joinedConnStr.length() == 0 ? new String[0] : joinedConnStr.split(DELIMITER);
+    public String[] getRequests() {
+        return queues.getRequests();
     }
 
     /**
      * Returns an unsorted array of the current stored event JSON strings.
      */
-    public synchronized String[] getEvents() {
-        final String joinedEventsStr = storageReadEventQueue();
-        return joinedEventsStr.length() == 0 ? new String[0] : joinedEventsStr.split(DELIMITER);
+    public String[] getEvents() {
+        return queues.getEvents();
     }
 
     /**
      * Returns a list of the current stored events, sorted by timestamp from oldest to newest.
      */
-    public synchronized List<Event> getEventList() {
-        final String[] array = getEvents();
-        final List<Event> events = new ArrayList<>(array.length);
-        for (String s : array) {
-            try {
-                final Event event = Event.fromJSON(new JSONObject(s));
-                if (event != null) {
-                    events.add(event);
-                }
-            } catch (JSONException ignored) {
-                // should not happen since JSONObject is being constructed from previously stringified JSONObject
-                // events -> json objects -> json strings -> storage -> json strings -> here
-            }
-        }
-        // order the events from least to most recent
-        Collections.sort(events, new Comparator<Event>() {
-            @Override
-            public int compare(final Event e1, final Event e2) {
-                return (int) (e1.timestamp - e2.timestamp);
-            }
-        });
-        return events;
+    public List<Event> getEventList() {
+        return queues.getEventList();
     }
 
     /**
@@ -270,8 +165,8 @@ public class CountlyStore implements StorageProvider, EventQueueProvider {
      *
      * @return the number of events in the local event queue
      */
-    public synchronized int getEventQueueSize() {
-        return getEvents().length;
+    public int getEventQueueSize() {
+        return queues.getEvents().length;
     }
 
     /**
@@ -280,31 +175,23 @@ public class CountlyStore implements StorageProvider, EventQueueProvider {
      *
      * @return URL-encoded JSON string of event data from the local event queue
      */
-    public synchronized String getEventsForRequestAndEmptyEventQueue() {
-        String result;
-
-        final List<Event> events = getEventList();
-
-        final JSONArray eventArray = new JSONArray();
-        for (Event e : events) {
-            eventArray.put(e.toJSON());
-        }
-
-        result = eventArray.toString();
-
-        removeEvents(events);
+    public String getEventsForRequestAndEmptyEventQueue() {
+        return queues.getEventsForRequestAndEmptyEventQueue();
+    }
 
-        try {
-            result = java.net.URLEncoder.encode(result, "UTF-8");
-        } catch (UnsupportedEncodingException e) {
-            // should never happen because Android guarantees UTF-8 support
-        }
+    @NonNull public String getRequestQueueRaw() {
+        return queues.getRequestQueueRaw();
+    }
 
-        return result;
+    @NonNull String getEventQueueRaw() {
+        return queues.getEventQueueRaw();
     }
 
-    @NonNull public synchronized String getRequestQueueRaw() {
-        return storageReadRequestQueue();
+    /**
+     * @return how many entries a joined request or event queue string contains
+     */
+    static int storedItemCount(@NonNull String joined) {
+        return QueueStore.storedItemCount(joined);
     }
 
     /**
@@ -312,32 +199,22 @@ public class CountlyStore implements StorageProvider, EventQueueProvider {
      *
      * @param requestStr the connection to be added, ignored if null or empty
      */
-    @SuppressLint("ApplySharedPref")
-    public synchronized void addRequest(@NonNull final String requestStr, final boolean writeInSync) {
-        if (requestStr != null && requestStr.length() > 0) {
-            final List<String> connections = new ArrayList<>(Arrays.asList(getRequests()));
-
-            L.v("[CountlyStore] addRequest, s:[" + writeInSync + "] new q size:[" + (connections.size() + 1) + "] r:[" + requestStr + "]");
-            if (connections.size() < maxRequestQueueSize) {
-                //request under max requests, add as normal
-                connections.add(requestStr);
-                storageWriteRequestQueue(Utils.joinCountlyStore(connections, DELIMITER), writeInSync);
-            } else {
-                //reached the limit, start deleting oldest requests
-                L.w("[CountlyStore] Store reached it's limit, deleting oldest request");
-
-                deleteOldestRequest();
-                addRequest(requestStr, writeInSync);
-            }
-        } else {
-            L.w("[CountlyStore] addRequest, providing null or empty request string");
-        }
+    public void addRequest(@NonNull final String requestStr, final boolean writeInSync) {
+        queues.addRequest(requestStr, writeInSync);
+    }
+
+    /**
+     * Adds an event request to the local store, merging it into the last queued event request if possible.
+     *
+     * @param requestStr the request to be added, ignored if null or empty
+     * @param maxMergedBytes size limit of a merged request, '0' disables merging
+     */
+    public void addEventRequest(@NonNull final String requestStr, final int maxMergedBytes, final boolean writeInSync) {
+        queues.addEventRequest(requestStr, maxMergedBytes, writeInSync);
     }
 
-    synchronized void deleteOldestRequest() {
-        final List<String> connections = new ArrayList<>(Arrays.asList(getRequests()));
-        connections.remove(0);
-        storageWriteRequestQueue(Utils.joinCountlyStore(connections, DELIMITER), false);
+    void deleteOldestRequest() {
+        queues.deleteOldestRequest();
     }
 
     /**
@@ -346,26 +223,18 @@ public class CountlyStore implements StorageProvider, EventQueueProvider {
      * @param requestStr the connection to be removed, ignored if null or empty,
      * or if a matching connection cannot be found
      */
-    public synchronized void removeRequest(final String requestStr) {
-        if (requestStr != null && requestStr.length() > 0) {
-            final List<String> connections = new ArrayList<>(Arrays.asList(getRequests()));
-            if (connections.remove(requestStr)) {
-                storageWriteRequestQueue(Utils.joinCountlyStore(connections, DELIMITER), false);
-            }
-        }
+    public void removeRequest(final String requestStr) {
+        queues.removeRequest(requestStr);
     }
 
-    public synchronized void replaceRequests(final String[] newConns) {
+    public void replaceRequests(final String[] newConns) {
         if (newConns != null) {
-            final List<String> connections = new ArrayList<>(Arrays.asList(newConns));
-            replaceRequestList(connections);
+            queues.replaceRequestList(new ArrayList<>(Arrays.asList(newConns)));
         }
     }
 
-    public synchronized void replaceRequestList(final List<String> newConns) {
-        if (newConns != null) {
-            storageWriteRequestQueue(Utils.joinCountlyStore(newConns, DELIMITER), false);
-        }
+    public void replaceRequestList(final List<String> newConns) {
+        queues.replaceRequestList(newConns);
     }
 
     /**
@@ -373,13 +242,8 @@ public class CountlyStore implements StorageProvider, EventQueueProvider {
      *
      * @param event event to be added to the local store, must not be null
      */
-    // TODO:
     void addEvent(final Event event) {
-        final List<Event> events = getEventList();
-        if (events.size() < MAX_EVENTS) {
-            events.add(event);
-            setEventData(joinEvents(events, DELIMITER));
-        }
+        queues.addEvent(event);
     }
 
     /**
@@ -388,7 +252,7 @@ public class CountlyStore implements StorageProvider, EventQueueProvider {
      * @param eventData
      */
     void setEventData(String eventData) {
-        storageWriteEventQueue(eventData, false);
+        queues.setEventData(eventData);
     }
 
     /**
@@ -421,6 +285,17 @@ public class CountlyStore implements StorageProvider, EventQueueProvider {
         return preferences_.getString(CACHED_ADVERTISING_ID, "");
     }
 
+    /**
+     * Set the fingerprints of recently reported crashes, used to collapse repeated crashes
+     */
+    public synchronized void setCrashIndex(String index) {
+        preferences_.edit().putString(CRASH_INDEX, index).apply();
+    }
+
+    public synchronized String getCrashIndex() {
+        return preferences_.getString(CRASH_INDEX, "");
+    }
+
     void setConsentPush(boolean consentValue) {
         preferencesPush_.edit().putBoolean(CONSENT_GCM_PREFERENCES, consentValue).apply();
     }
@@ -448,39 +323,7 @@ public class CountlyStore implements StorageProvider, EventQueueProvider {
      */
     public void recordEventToEventQueue(final String key, final Map<String, Object> segmentation, final int count, final double sum, final double dur, final long timestamp, final int hour, final int dow, final @NonNull String eventID, final @Nullable String previousViewId,
         final @Nullable String currentViewId, final @Nullable String previousEventId) {
-        Map<String, String> segmentationString = null;
-        Map<String, Integer> segmentationInt = null;
-        Map<String, Double> segmentationDouble = null;
-        Map<String, Boolean> segmentationBoolean = null;
-
-        if (segmentation != null && segmentation.size() > 0) {
-            segmentationString = new HashMap<>();
-            segmentationInt = new HashMap<>();
-            segmentationDouble = new HashMap<>();
-            segmentationBoolean = new HashMap<>();
-            Map<String, Object> segmentationReminder = new HashMap<>();
-
-            Utils.fillInSegmentation(segmentation, segmentationString, segmentationInt, segmentationDouble, segmentationBoolean, segmentationReminder);
-        }
-
-        final Event event = new Event();
-        event.key = key;
-        event.segmentation = segmentationString;
-        event.segmentationDouble = segmentationDouble;
-        event.segmentationInt = segmentationInt;
-        event.segmentationBoolean = segmentationBoolean;
-        event.timestamp = timestamp;
-        event.hour = hour;
-        event.dow = dow;
-        event.count = count;
-        event.sum = sum;
-        event.dur = dur;
-        event.id = eventID;
-        event.pvid = previousViewId;
-        event.cvid = currentViewId;
-        event.peid = previousEventId;
-
-        addEvent(event);
+        queues.recordEventToEventQueue(key, segmentation, count, sum, dur, timestamp, hour, dow, eventID, previousViewId, currentViewId, previousEventId);
     }
 
     /**
@@ -489,13 +332,8 @@ public class CountlyStore implements StorageProvider, EventQueueProvider {
      *
      * @param eventsToRemove collection containing the events to remove from the local store
      */
-    public synchronized void removeEvents(final Collection<Event> eventsToRemove) {
-        if (eventsToRemove != null && eventsToRemove.size() > 0) {
-            final List<Event> events = getEventList();
-            if (events.removeAll(eventsToRemove)) {
-                storageWriteEventQueue(joinEvents(events, DELIMITER), false);
-            }
-        }
+    public void removeEvents(final Collection<Event> eventsToRemove) {
+        queues.removeEvents(eventsToRemove);
     }
 
     /**
@@ -507,13 +345,10 @@ public class CountlyStore implements StorageProvider, EventQueueProvider {
      */
     @SuppressWarnings("SameParameterValue")
     static String joinEvents(final Collection<Event> collection, final String delimiter) {
-        final List<String> strings = new ArrayList<>();
-        for (Event e : collection) {
-            strings.add(e.toJSON().toString());
-        }
-        return Utils.joinCountlyStore(strings, delimiter);
+        return QueueStore.joinEvents(collection, delimiter);
     }
 
+
     public static synchronized void cachePushData(String id_key, String index_key, Context context) {
         SharedPreferences sp = createPreferencesPush(context);
         SharedPreferences.Editor spe = sp.edit();
@@ -562,15 +397,16 @@ public class CountlyStore implements StorageProvider, EventQueueProvider {
     // for unit testing
     public synchronized void clear() {
         final SharedPreferences.Editor prefsEditor = preferences_.edit();
-        prefsEditor.remove(EVENTS_PREFERENCE);
-        prefsEditor.remove(REQUEST_PREFERENCE);
+        prefsEditor.remove(QueueStore.EVENTS_PREFERENCE);
+        prefsEditor.remove(QueueStore.REQUEST_PREFERENCE);
         prefsEditor.clear();
         prefsEditor.apply();
 
         //clear explicit storage things
-        esDirtyFlag = false;
-        esRequestQueueCache = null;
-        esEventQueueCache = null;
+        queues.clearCache();
+
+        //clear multi process things
+        queues.clearSharedRequestLog();
 
         preferencesPush_.edit().clear().apply();
     }
@@ -616,11 +452,7 @@ public class CountlyStore implements StorageProvider, EventQueueProvider {
      * @return
      */
     @Override public boolean anythingSetInStorage() {
-        if (preferences_.getString(REQUEST_PREFERENCE, null) != null) {
-            return true;
-        }
-
-        if (preferences_.getString(EVENTS_PREFERENCE, null) != null) {
+        if (queues.anythingSetInStorage()) {
             return true;
         }
 
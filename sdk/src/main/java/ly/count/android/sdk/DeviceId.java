@@ -22,10 +22,10 @@ public class DeviceId {
     protected final static String temporaryCountlyDeviceId = "CLYTemporaryDeviceID";
 
     @Nullable
-    private String id;
+    private volatile String id;
 
     @Nullable
-    private DeviceIdType type;
+    private volatile DeviceIdType type;
 
     ModuleLog L;
 
@@ -45,14 +45,15 @@ import androidx.annotation.Nullable;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.util.Date;
-import java.util.LinkedList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.TimeZone;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -62,13 +63,97 @@ import org.json.JSONObject;
  */
 class DeviceInfo {
     //crash related fields
-    private static final LinkedList<String> logs = new LinkedList<>();
+    private static volatile BreadcrumbRing logs = new BreadcrumbRing(100, Clock.SYSTEM);
+    private static volatile boolean logTimestamps = false;
     private final static int startTime = UtilsTime.currentTimestampSeconds();
     private boolean inBackground = true;
     private static long totalMemory = 0;
 
     MetricProvider mp;
 
+    //metric values that only change with the configuration, replaced when it changes
+    @Nullable
+    private volatile MetricsSnapshot metricsSnapshot = null;
+    //crash metric values that don't change while the process runs
+    @Nullable
+    private volatile CrashMetrics crashMetrics = null;
+
+    /**
+     * Metric values of one configuration and locale, together with the last encoded 'getMetrics' result
+     */
+    static class MetricsSnapshot {
+        @Nullable final Configuration configuration;
+        @NonNull final Locale locale;
+
+        final String device;
+        final String os;
+        final String osVersion;
+        final String resolution;
+        final String appVersion;
+        final String manufacturer;
+        final String carrier;
+        final String density;
+        final String localeMetric;
+        final String store;
+        final String deviceType;
+
+        //the override map the encoded metrics were built with, compared by identity
+        @Nullable volatile EncodedMetrics encodedMetrics = null;
+
+        MetricsSnapshot(@NonNull Context context, @NonNull MetricProvider mp, @Nullable Configuration configuration, @NonNull Locale locale) {
+            this.configuration = configuration == null ? null : new Configuration(configuration);
+            this.locale = locale;
+
+            device = mp.getDevice();
+            os = mp.getOS();
+            osVersion = mp.getOSVersion();
+            resolution = mp.getResolution(context);
+            appVersion = mp.getAppVersion(context);
+            manufacturer = mp.getManufacturer();
+            carrier = mp.getCarrier(context);
+            density = mp.getDensity(context);
+            localeMetric = mp.getLocale();
+            store = mp.getStore(context);
+            deviceType = mp.getDeviceType(context);
+        }
+
+        boolean matches(@Nullable Configuration currentConfiguration, @NonNull Locale currentLocale) {
+            if (!locale.equals(currentLocale)) {
+                return false;
+            }
+            if (configuration == null || currentConfiguration == null) {
+                return configuration == currentConfiguration;
+            }
+            return currentConfiguration.diff(configuration) == 0;
+        }
+    }
+
+    static class EncodedMetrics {
+        @Nullable final Map<String, String> metricOverride;
+        @NonNull final String value;
+
+        EncodedMetrics(@Nullable Map<String, String> metricOverride, @NonNull String value) {
+            this.metricOverride = metricOverride;
+            this.value = value;
+        }
+    }
+
+    static class CrashMetrics {
+        final String cpu;
+        final String openGL;
+        final String root;
+        final String ramTotal;
+        final String diskTotal;
+
+        CrashMetrics(@NonNull Context context, @NonNull MetricProvider mp) {
+            cpu = mp.getCpu();
+            openGL = mp.getOpenGL(context);
+            root = mp.isRooted();
+            ramTotal = mp.getRamTotal();
+            diskTotal = mp.getDiskTotal();
+        }
+    }
+
     public DeviceInfo(MetricProvider mpOverride) {
         mp = mpOverride;
 
@@ -290,22 +375,8 @@ class DeviceInfo {
                             reader = new RandomAccessFile("/proc/meminfo", "r");
                             load = reader.readLine();
 
-                            // Get the Number value from the string
-                            Pattern p = Pattern.compile("(\\d+)");
-                            Matcher m = p.matcher(load);
-                            String value = "";
-                            while (m.find()) {
-                                value = m.group(1);
-                            }
-                            try {
-                                if (value != null) {
-                                    totalMemory = Long.parseLong(value) / 1024;
-                                } else {
-                                    totalMemory = 0;
-                                }
-                            } catch (NumberFormatException ex) {
-                                totalMemory = 0;
-                            }
+                            // Get the last Number value from the string, the line looks like "MemTotal: 3809036 kB"
+                            totalMemory = lastNumberIn(load) / 1024;
                         } catch (IOException ex) {
                             try {
                                 if (reader != null) {
@@ -531,6 +602,75 @@ class DeviceInfo {
         }
     }
 
+    /**
+     * @return the last number in the line, 0 if there is none
+     */
+    static long lastNumberIn(@Nullable String line) {
+        if (line == null) {
+            return 0;
+        }
+
+        int end = line.length();
+        while (end > 0 && !Character.isDigit(line.charAt(end - 1))) {
+            end--;
+        }
+        int start = end;
+        while (start > 0 && Character.isDigit(line.charAt(start - 1))) {
+            start--;
+        }
+        if (start == end) {
+            return 0;
+        }
+
+        try {
+            return Long.parseLong(line.substring(start, end));
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+
+    /**
+     * Returns the metric values of the current configuration and locale,
+     * they are only collected again after one of them has changed
+     */
+    @NonNull
+    MetricsSnapshot getMetricsSnapshot(@NonNull final Context context) {
+        Configuration configuration = null;
+        if (context.getResources() != null) {
+            configuration = context.getResources().getConfiguration();
+        }
+        Locale locale = Locale.getDefault();
+
+        MetricsSnapshot snapshot = metricsSnapshot;
+        if (snapshot == null || !snapshot.matches(configuration, locale)) {
+            //threads that get here at the same time collect the same values, the last one is kept
+            snapshot = new MetricsSnapshot(context, mp, configuration, locale);
+            metricsSnapshot = snapshot;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Returns the crash metric values that don't change while the process runs, they are collected once
+     */
+    @NonNull
+    CrashMetrics getCrashMetrics(@NonNull final Context context) {
+        CrashMetrics metrics = crashMetrics;
+        if (metrics == null) {
+            metrics = new CrashMetrics(context, mp);
+            crashMetrics = metrics;
+        }
+        return metrics;
+    }
+
+    /**
+     * Collects the cached metric values ahead of time, called on a background thread during init
+     */
+    void prefetchMetrics(@NonNull final Context context, @Nullable final Map<String, String> metricOverride) {
+        getMetrics(context, this, metricOverride);
+        getCrashMetrics(context);
+    }
+
     /**
      * Returns the common metrics that would be shared with session, remote config and crash metrics
      * If metric override is provided, it will check for specific keys and override them
@@ -542,14 +682,15 @@ class DeviceInfo {
     @NonNull
     JSONObject getCommonMetrics(@NonNull final Context context, @NonNull DeviceInfo deviceInfo, @Nullable final Map<String, String> metricOverride) {
         final JSONObject json = new JSONObject();
+        final MetricsSnapshot snapshot = deviceInfo.getMetricsSnapshot(context);
 
         Utils.fillJSONIfValuesNotEmpty(json,
-            "_device", deviceInfo.mp.getDevice(),
-            "_os", deviceInfo.mp.getOS(),
-            "_os_version", deviceInfo.mp.getOSVersion(),
-            "_resolution", deviceInfo.mp.getResolution(context),
-            "_app_version", deviceInfo.mp.getAppVersion(context),
-            "_manufacturer", deviceInfo.mp.getManufacturer());
+            "_device", snapshot.device,
+            "_os", snapshot.os,
+            "_os_version", snapshot.osVersion,
+            "_resolution", snapshot.resolution,
+            "_app_version", snapshot.appVersion,
+            "_manufacturer", snapshot.manufacturer);
 
         if (metricOverride != null) {
             try {
@@ -580,7 +721,8 @@ class DeviceInfo {
     }
 
     /**
-     * Returns url encoded metrics that would be used for "begin_session" requests and remote config
+     * Returns url encoded metrics that would be used for "begin_session" requests and remote config.
+     * The result is reused until the configuration or the locale changes.
      *
      * @param context
      * @param metricOverride
@@ -588,15 +730,21 @@ class DeviceInfo {
      */
     @NonNull
     String getMetrics(@NonNull final Context context, @NonNull DeviceInfo deviceInfo, @Nullable final Map<String, String> metricOverride) {
+        final MetricsSnapshot snapshot = deviceInfo.getMetricsSnapshot(context);
+        final EncodedMetrics encoded = snapshot.encodedMetrics;
+        if (encoded != null && encoded.metricOverride == metricOverride) {
+            return encoded.value;
+        }
+
         //we set the override to null because all of the entries will be overwritten anyway
         final JSONObject json = getCommonMetrics(context, deviceInfo, null);
 
         Utils.fillJSONIfValuesNotEmpty(json,
-            "_carrier", deviceInfo.mp.getCarrier(context),
-            "_density", deviceInfo.mp.getDensity(context),
-            "_locale", deviceInfo.mp.getLocale(),
-            "_store", deviceInfo.mp.getStore(context),
-            "_device_type", deviceInfo.mp.getDeviceType(context));
+            "_carrier", snapshot.carrier,
+            "_density", snapshot.density,
+            "_locale", snapshot.localeMetric,
+            "_store", snapshot.store,
+            "_device_type", snapshot.deviceType);
 
         //override metric values
         if (metricOverride != null) {
@@ -630,6 +778,7 @@ class DeviceInfo {
             Countly.sharedInstance().L.e("[getMetrics] encode failed, [" + ex + "]");
         }
 
+        snapshot.encodedMetrics = new EncodedMetrics(metricOverride, result);
         return result;
     }
 
@@ -641,15 +790,16 @@ class DeviceInfo {
         @NonNull final String crashBreadcrumbs, @Nullable final Map<String, Object> customCrashSegmentation, @NonNull DeviceInfo deviceInfo, @Nullable final Map<String, String> metricOverride) {
 
         final JSONObject json = getCommonMetrics(context, deviceInfo, metricOverride);
+        final CrashMetrics crashMetrics = deviceInfo.getCrashMetrics(context);
 
         Utils.fillJSONIfValuesNotEmpty(json,
             "_error", error,
             "_nonfatal", Boolean.toString(nonfatal),
-            "_cpu", deviceInfo.mp.getCpu(),
-            "_opengl", deviceInfo.mp.getOpenGL(context),
-            "_root", deviceInfo.mp.isRooted(),
-            "_ram_total", deviceInfo.mp.getRamTotal(),
-            "_disk_total", deviceInfo.mp.getDiskTotal()
+            "_cpu", crashMetrics.cpu,
+            "_opengl", crashMetrics.openGL,
+            "_root", crashMetrics.root,
+            "_ram_total", crashMetrics.ramTotal,
+            "_disk_total", crashMetrics.diskTotal
         );
 
         if (!isNativeCrash) {
@@ -682,6 +832,46 @@ class DeviceInfo {
         return json;
     }
 
+    /**
+     * Writes the device part of a java crash report, the same fields as 'getCrashDataStringJSON' without the error and the logs
+     */
+    void writeCrashData(@NonNull CrashReportBuilder report, @NonNull final Context context, final boolean nonfatal,
+        @Nullable final Map<String, Object> customCrashSegmentation, @NonNull DeviceInfo deviceInfo, @Nullable final Map<String, String> metricOverride) {
+        //the common metrics are small, they are copied from the JSON object
+        final JSONObject metrics = getCommonMetrics(context, deviceInfo, metricOverride);
+        Iterator<String> keys = metrics.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            report.valueField(key, metrics.opt(key));
+        }
+
+        //the values that don't change are collected once, the current ones are sampled for every report
+        final CrashMetrics crashMetrics = deviceInfo.getCrashMetrics(context);
+        report.stringFieldIfNotEmpty("_nonfatal", Boolean.toString(nonfatal));
+        report.stringFieldIfNotEmpty("_cpu", crashMetrics.cpu);
+        report.stringFieldIfNotEmpty("_opengl", crashMetrics.openGL);
+        report.stringFieldIfNotEmpty("_root", crashMetrics.root);
+        report.stringFieldIfNotEmpty("_ram_total", crashMetrics.ramTotal);
+        report.stringFieldIfNotEmpty("_disk_total", crashMetrics.diskTotal);
+        report.stringFieldIfNotEmpty("_ram_current", deviceInfo.mp.getRamCurrent(context));
+        report.stringFieldIfNotEmpty("_disk_current", deviceInfo.mp.getDiskCurrent());
+        report.stringFieldIfNotEmpty("_bat", deviceInfo.mp.getBatteryLevel(context));
+        report.stringFieldIfNotEmpty("_run", getRunningTime());
+        report.stringFieldIfNotEmpty("_orientation", deviceInfo.mp.getOrientation(context));
+        report.stringFieldIfNotEmpty("_online", deviceInfo.mp.isOnline(context));
+        report.stringFieldIfNotEmpty("_muted", deviceInfo.mp.isMuted(context));
+        report.stringFieldIfNotEmpty("_background", isInBackground());
+
+        if (customCrashSegmentation != null && !customCrashSegmentation.isEmpty() && report.beginObject("_custom")) {
+            for (Map.Entry<String, Object> entry : customCrashSegmentation.entrySet()) {
+                if (entry.getKey() != null) {
+                    report.valueField(entry.getKey(), entry.getValue());
+                }
+            }
+            report.endObject();
+        }
+    }
+
     /**
      * Returns a JSON string containing the device crash report
      */
@@ -715,7 +905,34 @@ class DeviceInfo {
     }
 
     /**
-     * Adds a record in the log
+     * Sets up the breadcrumb buffer, the breadcrumbs collected so far are kept if they fit
+     *
+     * @param mirror file the breadcrumbs are copied to, null if they are only kept in memory
+     */
+    static synchronized void configureLogs(int maxBreadcrumbCount, boolean timestamps, @Nullable BreadcrumbMirror mirror) {
+        logTimestamps = timestamps;
+        logs.setMirror(mirror);
+        resizeLogs(maxBreadcrumbCount);
+    }
+
+    private static synchronized void resizeLogs(int maxBreadcrumbCount) {
+        BreadcrumbRing current = logs;
+        if (current.capacity() == maxBreadcrumbCount) {
+            return;
+        }
+
+        List<BreadcrumbRing.Breadcrumb> kept = current.drain();
+        //the new buffer continues the sequence numbers, so the mirror slots of the current one are cleared
+        BreadcrumbRing resized = new BreadcrumbRing(maxBreadcrumbCount, Clock.SYSTEM, current.nextSequence());
+        resized.setMirror(current.getMirror());
+        for (BreadcrumbRing.Breadcrumb breadcrumb : kept) {
+            resized.add(breadcrumb.text);
+        }
+        logs = resized;
+    }
+
+    /**
+     * Adds a record in the log, does not lock unless the limit has changed
      */
     static void addLog(@NonNull String record, int maxBreadcrumbCount, int maxBreadcrumbLength) {
         int recordLength = record.length();
@@ -724,11 +941,14 @@ class DeviceInfo {
             record = record.substring(0, maxBreadcrumbLength);
         }
 
-        logs.add(record);
+        BreadcrumbRing current = logs;
+        if (current.capacity() != maxBreadcrumbCount) {
+            resizeLogs(maxBreadcrumbCount);
+            current = logs;
+        }
 
-        if (logs.size() > maxBreadcrumbCount) {
+        if (current.add(record)) {
             Countly.sharedInstance().L.d("Breadcrumb amount limit exceeded, deleting the oldest one");
-            logs.removeFirst();
         }
     }
 
@@ -737,15 +957,42 @@ class DeviceInfo {
      */
     @NonNull
     static String getLogs() {
-        StringBuilder allLogs = new StringBuilder();
+        return formatLogs(logs.drain(), logTimestamps);
+    }
 
-        for (String s : logs) {
-            allLogs.append(s).append("\n");
+    /**
+     * Returns the given breadcrumbs in the same form as 'getLogs'
+     */
+    @NonNull
+    static String formatLogs(@NonNull List<BreadcrumbRing.Breadcrumb> breadcrumbs, boolean timestamps) {
+        StringWriter allLogs = new StringWriter();
+        try {
+            BreadcrumbRing.writeLines(breadcrumbs, timestamps, allLogs);
+        } catch (IOException ignored) {
+            //a string writer does not throw
         }
-        logs.clear();
         return allLogs.toString();
     }
 
+    /**
+     * Writes the collected logs into the crash report and clears them, the same as 'getLogs'.
+     * Does not lock, so it can be called while other threads add breadcrumbs.
+     */
+    static void writeLogs(@NonNull CrashReportBuilder report) {
+        List<BreadcrumbRing.Breadcrumb> breadcrumbs = logs.drain();
+        if (breadcrumbs.isEmpty()) {
+            return;
+        }
+
+        Writer writer = report.beginStreamedField("_logs", Integer.MAX_VALUE);
+        try {
+            BreadcrumbRing.writeLines(breadcrumbs, logTimestamps, writer);
+        } catch (IOException ignored) {
+            //the report writer does not throw
+        }
+        report.endStreamedField();
+    }
+
     /**
      * Get custom segments json string from the provided map
      */
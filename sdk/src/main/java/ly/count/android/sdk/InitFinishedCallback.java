@@ -0,0 +1,9 @@
+package ly.count.android.sdk;
+
+public interface InitFinishedCallback {
+    /**
+     * Called after the deferred part of an async init has been finished
+     * and all calls that were made before it have been processed
+     */
+    void onInitFinished();
+}
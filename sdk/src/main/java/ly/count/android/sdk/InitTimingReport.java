@@ -0,0 +1,137 @@
+package ly.count.android.sdk;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Durations of the steps that were performed during SDK init.
+ * Measured with 'System.nanoTime', so values can be compared between app starts and SDK versions.
+ *
+ * Phases are listed in the order in which they ended. Module phases are named
+ * "[module class name] constructor" and "[module class name] initFinished".
+ * A step that is performed inside another phase, like the native crash dump scan, is recorded as its own phase
+ * and is not included in the duration of the phase around it, so the durations never overlap.
+ */
+public class InitTimingReport {
+    public static final String PHASE_STORE_CREATE = "CountlyStore create";
+    public static final String PHASE_STORE_FIRST_READ = "CountlyStore first read";
+    public static final String PHASE_DEVICE_INFO = "DeviceInfo";
+    public static final String PHASE_MIGRATION = "MigrationHelper";
+    public static final String PHASE_NATIVE_DUMP_SCAN = "native crash dump scan";
+
+    public static class Phase {
+        public final String name;
+        public final long durationNs;
+
+        Phase(@NonNull String name, long durationNs) {
+            this.name = name;
+            this.durationNs = durationNs;
+        }
+
+        public double getDurationMs() {
+            return durationNs / 1000000.0;
+        }
+
+        @Override public String toString() {
+            return name + ":" + durationNs + "ns";
+        }
+    }
+
+    final long initStartNs;
+    //wall clock time of the init call, used as the start of the APM trace
+    final long initStartTimestampMs;
+
+    private final List<Phase> phases = new ArrayList<>();
+    private long initCallDurationNs = -1;
+    private long totalDurationNs = -1;
+    //duration of the nested phases that ended since the last regular phase ended
+    private long nestedDurationNs = 0;
+
+    InitTimingReport() {
+        initStartNs = System.nanoTime();
+        initStartTimestampMs = UtilsTime.currentTimestampMs();
+    }
+
+    /**
+     * Records a phase that started at the given time and ended now
+     *
+     * @param name name of the phase
+     * @param phaseStartNs value of 'System.nanoTime' when the phase started
+     * @return the end time of this phase, so that it can be used as the start of the next one
+     */
+    synchronized long endPhase(@NonNull String name, long phaseStartNs) {
+        long now = System.nanoTime();
+        phases.add(new Phase(name, Math.max(0, now - phaseStartNs - nestedDurationNs)));
+        nestedDurationNs = 0;
+        return now;
+    }
+
+    /**
+     * Records a phase that is performed inside another one. Its duration is taken out of the phase that ends next.
+     *
+     * @param name name of the phase
+     * @param phaseStartNs value of 'System.nanoTime' when the phase started
+     */
+    synchronized void endNestedPhase(@NonNull String name, long phaseStartNs) {
+        long duration = System.nanoTime() - phaseStartNs;
+        phases.add(new Phase(name, duration));
+        nestedDurationNs += duration;
+    }
+
+    /**
+     * Called when 'init' returns to the caller
+     */
+    synchronized void initCallFinished() {
+        initCallDurationNs = System.nanoTime() - initStartNs;
+    }
+
+    /**
+     * Called after all module 'initFinished' calls have been performed
+     */
+    synchronized void initFinished() {
+        totalDurationNs = System.nanoTime() - initStartNs;
+    }
+
+    /**
+     * @return all recorded phases in the order they were performed
+     */
+    public synchronized @NonNull List<Phase> getPhases() {
+        return Collections.unmodifiableList(new ArrayList<>(phases));
+    }
+
+    /**
+     * @param name name of the phase
+     * @return the duration of the phase in nanoseconds, or -1 if such a phase was not recorded
+     */
+    public synchronized long getPhaseDurationNs(@Nullable String name) {
+        for (Phase phase : phases) {
+            if (phase.name.equals(name)) {
+                return phase.durationNs;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return how long the 'init' call blocked the calling thread, in nanoseconds
+     */
+    public synchronized long getInitCallDurationNs() {
+        return initCallDurationNs;
+    }
+
+    /**
+     * With async init, this includes the module startup that was done on the SDK thread
+     *
+     * @return time from the start of 'init' until all modules had finished starting up, in nanoseconds
+     */
+    public synchronized long getTotalDurationNs() {
+        return totalDurationNs;
+    }
+
+    @Override public synchronized String toString() {
+        return "InitTimingReport{initCall:" + initCallDurationNs + "ns, total:" + totalDurationNs + "ns, phases:" + phases + "}";
+    }
+}
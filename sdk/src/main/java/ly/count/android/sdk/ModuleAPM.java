@@ -2,14 +2,47 @@ package ly.count.android.sdk;
 
 import android.app.Activity;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 public class ModuleAPM extends ModuleBase {
 
-    final static String[] reservedKeys = new String[] { "response_time", "response_payload_size", "response_code", "request_payload_size", "duration", "slow_rendering_frames", "frozen_frames" };
+    final static String INIT_TIMING_TRACE_KEY = "countly_sdk_init";
+
+    //custom metric keys of the init steps, all of them fit into the 32 character key limit
+    final static Map<String, String> INIT_PHASE_METRIC_KEYS = new HashMap<>();
+
+    static {
+        INIT_PHASE_METRIC_KEYS.put(InitTimingReport.PHASE_STORE_CREATE, "CountlyStore_create_us");
+        INIT_PHASE_METRIC_KEYS.put(InitTimingReport.PHASE_STORE_FIRST_READ, "CountlyStore_first_read_us");
+        INIT_PHASE_METRIC_KEYS.put(InitTimingReport.PHASE_DEVICE_INFO, "DeviceInfo_us");
+        INIT_PHASE_METRIC_KEYS.put(InitTimingReport.PHASE_MIGRATION, "MigrationHelper_us");
+        INIT_PHASE_METRIC_KEYS.put(InitTimingReport.PHASE_NATIVE_DUMP_SCAN, "native_crash_dump_scan_us");
+
+        String[] modules = {
+            "RequestQueue", "Consent", "DeviceId", "Crash", "Events", "UserProfile", "Views",
+            "Ratings", "Sessions", "RemoteConfig", "APM", "Location", "Feedback", "Attribution"
+        };
+        for (String module : modules) {
+            INIT_PHASE_METRIC_KEYS.put("Module" + module + " constructor", module + "_constructor_us");
+            INIT_PHASE_METRIC_KEYS.put("Module" + module + " initFinished", module + "_initFinished_us");
+        }
+    }
+
+    //how many different trace keys are summarized at once while aggregating
+    final static int MAX_AGGREGATED_TRACE_KEYS = 100;
+
+    //custom metric with the precise duration of traces recorded through a 'TraceHandle'
+    final static String DURATION_US_KEY = "duration_us";
+    final static String MAIN_THREAD_STALL_TRACE_KEY = "main_thread_stall";
+    //frame stats are sent per view, the prefix keeps them apart from custom traces with the same name as a view
+    final static String FRAME_STATS_TRACE_PREFIX = "countly_frames_";
+
+    final static String[] reservedKeys = new String[] { "response_time", "response_payload_size", "response_code", "request_payload_size", "duration", "slow_rendering_frames", "frozen_frames", DURATION_US_KEY };
 
     Apm apmInterface = null;
 
@@ -30,6 +63,15 @@ public class ModuleAPM extends ModuleBase {
     boolean manualForegroundBackgroundTriggers = false;
     boolean manualOverrideInForeground = false;//app starts in background
 
+    //set if traces are aggregated instead of sent one by one
+    ApmTraceAggregator traceAggregator = null;
+    long traceAggregationIntervalMs = 0;
+    long lastTraceAggregationFlushMs = 0;
+
+    //set if frame tracking is enabled, frames are reported while an activity is open
+    FrameSource frameSource = null;
+    FrameStatsTracker frameStatsTracker = null;
+
     ModuleAPM(Countly cly, CountlyConfig config) {
         super(cly, config);
         L.v("[ModuleAPM] Initialising");
@@ -59,10 +101,28 @@ public class ModuleAPM extends ModuleBase {
             L.d("[ModuleAPM] Using manual foreground/background triggers");
         }
 
+        if (config.apmTraceAggregationEnabled) {
+            L.d("[ModuleAPM] Aggregating traces, flush interval:[" + config.apmTraceAggregationIntervalSeconds + "s]");
+            traceAggregator = new ApmTraceAggregator(MAX_AGGREGATED_TRACE_KEYS);
+            traceAggregationIntervalMs = Math.max(0, config.apmTraceAggregationIntervalSeconds) * 1000L;
+            lastTraceAggregationFlushMs = UtilsTime.currentTimestampMs();
+        }
+
+        if (config.frameTrackingEnabled) {
+            L.d("[ModuleAPM] Tracking frames");
+            frameSource = config.frameSourceOverride != null ? config.frameSourceOverride : new ChoreographerFrameSource();
+            frameStatsTracker = new FrameStatsTracker(new FrameStatsTracker.ViewNameProvider() {
+                @Nullable @Override public String getCurrentViewName() {
+                    ModuleViews views = _cly.moduleViews;
+                    return views == null ? null : views.getCurrentViewName();
+                }
+            });
+        }
+
         apmInterface = new Apm();
     }
 
-    void startTraceInternal(String traceKey) {
+    void startTraceInternal(String traceKey, long currentTimestamp) {
         L.d("[ModuleAPM] Calling 'startTraceInternal' with key:[" + traceKey + "]");
 
         if (traceKey == null || traceKey.isEmpty()) {
@@ -70,14 +130,10 @@ public class ModuleAPM extends ModuleBase {
             return;
         }
 
-        Long currentTimestamp = UtilsTime.currentTimestampMs();
         codeTraces.put(traceKey, currentTimestamp);
     }
 
-    void endTraceInternal(String traceKey, Map<String, Integer> customMetrics) {
-        //end time counting as fast as possible
-        Long currentTimestamp = UtilsTime.currentTimestampMs();
-
+    void endTraceInternal(String traceKey, Map<String, Integer> customMetrics, long currentTimestamp) {
         L.d("[ModuleAPM] Calling 'endTraceInternal' with key:[" + traceKey + "]");
 
         if (traceKey == null || traceKey.isEmpty()) {
@@ -103,6 +159,10 @@ public class ModuleAPM extends ModuleBase {
 
                 traceKey = validateAndModifyTraceKey(traceKey);
 
+                if (traceAggregator != null && traceAggregator.recordCustomTrace(traceKey, durationMs, startTimestamp, currentTimestamp, customMetrics)) {
+                    return;
+                }
+
                 requestQueueProvider.sendAPMCustomTrace(traceKey, durationMs, startTimestamp, currentTimestamp, metricString);
             }
         } else {
@@ -110,6 +170,74 @@ public class ModuleAPM extends ModuleBase {
         }
     }
 
+    /**
+     * Records a trace that was ended through a 'TraceHandle'.
+     * The duration is measured before this is called, the module lock is only held while the trace is recorded.
+     */
+    void endTraceHandleInternal(@NonNull final TraceHandle handle, final long durationNs, @Nullable Map<String, Integer> customMetrics) {
+        final long endTimestamp = System.currentTimeMillis();
+        final Map<String, Integer> metrics = customMetrics == null ? new HashMap<String, Integer>() : new HashMap<>(customMetrics);
+
+        if (_cly.shouldQueueBehindInit()) {
+            _cly.queueBehindInit(new Runnable() {
+                @Override public void run() {
+                    recordTraceHandle(handle, durationNs, endTimestamp, metrics);
+                }
+            });
+            return;
+        }
+
+        recordTraceHandle(handle, durationNs, endTimestamp, metrics);
+    }
+
+    private void recordTraceHandle(@NonNull TraceHandle handle, long durationNs, long endTimestamp, @NonNull Map<String, Integer> metrics) {
+        long durationMs = (durationNs + 500000L) / 1000000L;
+        long startTimestamp = endTimestamp - durationMs;
+
+        synchronized (moduleLock) {
+            L.d("[ModuleAPM] Calling 'endTraceHandleInternal' with key:[" + handle.key + "], duration:[" + durationNs + "ns]");
+
+            if (codeTraces == null) {
+                L.w("[ModuleAPM] endTraceHandleInternal, SDK has been halted, dropping trace");
+                return;
+            }
+
+            removeReservedInvalidKeys(metrics);
+            metrics.put(DURATION_US_KEY, (int) Math.min(Integer.MAX_VALUE, durationNs / 1000L));
+
+            String traceKey = validateAndModifyTraceKey(handle.key);
+
+            if (traceAggregator != null && traceAggregator.recordCustomTrace(traceKey, durationMs, startTimestamp, endTimestamp, metrics)) {
+                return;
+            }
+
+            requestQueueProvider.sendAPMCustomTrace(traceKey, durationMs, startTimestamp, endTimestamp, customMetricsToString(metrics));
+        }
+    }
+
+    /**
+     * Records how long the main thread was blocked, reported by the main thread watchdog after the main thread recovered
+     */
+    void recordMainThreadStall(long durationMs) {
+        long endTimestamp = System.currentTimeMillis();
+        long startTimestamp = endTimestamp - durationMs;
+
+        synchronized (moduleLock) {
+            L.d("[ModuleAPM] Calling 'recordMainThreadStall', duration:[" + durationMs + "ms]");
+
+            if (codeTraces == null) {
+                L.w("[ModuleAPM] recordMainThreadStall, SDK has been halted, dropping trace");
+                return;
+            }
+
+            if (traceAggregator != null && traceAggregator.recordCustomTrace(MAIN_THREAD_STALL_TRACE_KEY, durationMs, startTimestamp, endTimestamp, null)) {
+                return;
+            }
+
+            requestQueueProvider.sendAPMCustomTrace(MAIN_THREAD_STALL_TRACE_KEY, durationMs, startTimestamp, endTimestamp, "");
+        }
+    }
+
     void cancelTraceInternal(String traceKey) {
         L.d("[ModuleAPM] Calling 'cancelTraceInternal' with key:[" + traceKey + "]");
 
@@ -216,8 +344,9 @@ public class ModuleAPM extends ModuleBase {
      * @param networkTraceKey key that identifies the network trace
      * @param uniqueId this is important in cases where multiple requests in parallel are done
      * for the same trace. This helps to distinguish them
+     * @param currentTimestamp time at which the request started
      */
-    void startNetworkRequestInternal(String networkTraceKey, String uniqueId) {
+    void startNetworkRequestInternal(String networkTraceKey, String uniqueId, long currentTimestamp) {
         L.d("[ModuleAPM] Calling 'startNetworkRequestInternal' with key:[" + networkTraceKey + "]");
 
         if (networkTraceKey == null || networkTraceKey.isEmpty()) {
@@ -231,7 +360,6 @@ public class ModuleAPM extends ModuleBase {
         }
 
         String internalTraceKey = networkTraceKey + "|" + uniqueId;
-        Long currentTimestamp = UtilsTime.currentTimestampMs();
         networkTraces.put(internalTraceKey, currentTimestamp);
     }
 
@@ -244,11 +372,9 @@ public class ModuleAPM extends ModuleBase {
      * @param responseCode returned response code
      * @param requestPayloadSize sent request payload size in bytes
      * @param responsePayloadSize received response payload size in bytes
+     * @param currentTimestamp time at which the request ended
      */
-    void endNetworkRequestInternal(String networkTraceKey, String uniqueId, int responseCode, int requestPayloadSize, int responsePayloadSize) {
-        //end time counting as fast as possible
-        long currentTimestamp = UtilsTime.currentTimestampMs();
-
+    void endNetworkRequestInternal(String networkTraceKey, String uniqueId, int responseCode, int requestPayloadSize, int responsePayloadSize, long currentTimestamp) {
         L.d("[ModuleAPM] Calling 'endNetworkRequestInternal' with key:[" + networkTraceKey + "]");
 
         if (networkTraceKey == null || networkTraceKey.isEmpty()) {
@@ -321,15 +447,172 @@ public class ModuleAPM extends ModuleBase {
         networkTraceKey = validateAndModifyTraceKey(networkTraceKey);
 
         Long responseTimeMs = endTimestamp - startTimestamp;
+
+        if (traceAggregator != null && traceAggregator.recordNetworkTrace(networkTraceKey, responseTimeMs, responseCode, requestPayloadSize, responsePayloadSize, startTimestamp, endTimestamp, null)) {
+            return;
+        }
+
         requestQueueProvider.sendAPMNetworkTrace(networkTraceKey, responseTimeMs, responseCode, requestPayloadSize, responsePayloadSize, startTimestamp, endTimestamp);
     }
 
+    /**
+     * Records a network trace that was ended through a 'NetworkTrace'
+     */
+    void endNetworkTraceInternal(@NonNull final NetworkTrace trace, long endNs) {
+        final long endTimestamp = System.currentTimeMillis();
+        final long responseTimeMs = (endNs - trace.startNs + 500000L) / 1000000L;
+        final Map<String, Long> phaseMetrics = trace.phaseMetrics(endNs);
+
+        if (_cly.shouldQueueBehindInit()) {
+            _cly.queueBehindInit(new Runnable() {
+                @Override public void run() {
+                    recordNetworkTrace(trace, responseTimeMs, endTimestamp, phaseMetrics);
+                }
+            });
+            return;
+        }
+
+        recordNetworkTrace(trace, responseTimeMs, endTimestamp, phaseMetrics);
+    }
+
+    private void recordNetworkTrace(@NonNull NetworkTrace trace, long responseTimeMs, long endTimestamp, @NonNull Map<String, Long> phaseMetrics) {
+        long startTimestamp = endTimestamp - responseTimeMs;
+
+        int responseCode = trace.responseCode;
+        int requestPayloadSize = (int) Math.min(Integer.MAX_VALUE, trace.requestBytes);
+        int responsePayloadSize = (int) Math.min(Integer.MAX_VALUE, trace.responseBytes);
+
+        synchronized (moduleLock) {
+            L.d("[ModuleAPM] Calling 'endNetworkTraceInternal' with key:[" + trace.key + "], code:[" + responseCode + "], duration:[" + responseTimeMs + "ms]");
+
+            if (networkTraces == null) {
+                L.w("[ModuleAPM] endNetworkTraceInternal, SDK has been halted, dropping trace");
+                return;
+            }
+
+            if (!(responseCode >= 100 && responseCode < 600)) {
+                responseCode = 0;
+            }
+
+            String networkTraceKey = validateAndModifyTraceKey(trace.key);
+
+            if (traceAggregator != null && traceAggregator.recordNetworkTrace(networkTraceKey, responseTimeMs, responseCode, requestPayloadSize, responsePayloadSize, startTimestamp, endTimestamp, phaseMetrics)) {
+                return;
+            }
+
+            requestQueueProvider.sendAPMNetworkTrace(networkTraceKey, responseTimeMs, responseCode, requestPayloadSize, responsePayloadSize, startTimestamp, endTimestamp, NetworkTrace.phaseMetricsString(phaseMetrics));
+        }
+    }
+
     void clearNetworkTraces() {
         L.v("[ModuleAPM] Calling 'clearNetworkTraces'");
 
         networkTraces.clear();
     }
 
+    /**
+     * Sends every aggregated trace key as one regular APM trace, see 'ApmTraceAggregator'
+     *
+     * @param force if false, they are sent only if the flush interval has passed
+     */
+    void flushAggregatedTracesInternal(boolean force) {
+        if (traceAggregator == null) {
+            return;
+        }
+
+        long currentTimestamp = UtilsTime.currentTimestampMs();
+        if (!force && currentTimestamp - lastTraceAggregationFlushMs < traceAggregationIntervalMs) {
+            return;
+        }
+        lastTraceAggregationFlushMs = currentTimestamp;
+
+        if (traceAggregator.isEmpty()) {
+            return;
+        }
+
+        long traceCount = traceAggregator.getTraceCount();
+        List<ApmTraceAggregator.TraceSummary> summaries = traceAggregator.drain();
+        L.d("[ModuleAPM] Sending [" + traceCount + "] aggregated traces with [" + summaries.size() + "] keys");
+
+        for (ApmTraceAggregator.TraceSummary summary : summaries) {
+            if (ApmTraceAggregator.TYPE_NETWORK.equals(summary.type)) {
+                requestQueueProvider.sendAPMNetworkTrace(summary.name, summary.averageMs(), summary.representativeResponseCode(), (int) summary.averageRequestPayloadSize(), (int) summary.averageResponsePayloadSize(),
+                    summary.firstStartMs, summary.lastEndMs, summary.summaryMetricsString());
+            } else {
+                requestQueueProvider.sendAPMCustomTrace(summary.name, summary.averageMs(), summary.firstStartMs, summary.lastEndMs, summary.summaryMetricsString());
+            }
+        }
+    }
+
+    /**
+     * Sends the frame stats of every view that had frames since the last call as a custom trace named after the view with the 'countly_frames_' prefix.
+     * The trace duration is the total time of those frames.
+     */
+    void flushFrameStatsInternal() {
+        if (frameStatsTracker == null) {
+            return;
+        }
+
+        long currentTimestamp = UtilsTime.currentTimestampMs();
+        for (FrameStatsTracker.FrameStats stats : frameStatsTracker.drain()) {
+            if (stats.frames == 0) {
+                continue;
+            }
+
+            String traceKey = validateAndModifyTraceKey(FRAME_STATS_TRACE_PREFIX + stats.viewName);
+            long durationMs = stats.totalNs / 1000000L;
+            String metrics = ",\"slow_rendering_frames\":" + stats.slowFrames
+                + ",\"frozen_frames\":" + stats.frozenFrames
+                + ",\"frame_count\":" + stats.frames
+                + ",\"frame_time_p50\":" + stats.percentileMs(0.5)
+                + ",\"frame_time_p90\":" + stats.percentileMs(0.9)
+                + ",\"frame_time_p99\":" + stats.percentileMs(0.99);
+
+            L.d("[ModuleAPM] Sending frame stats of [" + traceKey + "], frames:[" + stats.frames + "] slow:[" + stats.slowFrames + "] frozen:[" + stats.frozenFrames + "]");
+            requestQueueProvider.sendAPMCustomTrace(traceKey, durationMs, currentTimestamp - durationMs, currentTimestamp, metrics);
+        }
+    }
+
+    /**
+     * Called on every SDK timer tick
+     */
+    void onTimer() {
+        synchronized (moduleLock) {
+            flushAggregatedTracesInternal(false);
+            flushFrameStatsInternal();
+        }
+    }
+
+    /**
+     * Sends the init step durations as a custom trace.
+     * Custom metric keys have to match the server side key rules, so every step has a fixed key like "RemoteConfig_initFinished_us".
+     * Steps without a key, like the ones of a test module, are left out.
+     */
+    void recordInitTimingTrace(@NonNull InitTimingReport report) {
+        L.d("[ModuleAPM] Calling 'recordInitTimingTrace'");
+
+        long durationMs = report.getTotalDurationNs() / 1000000L;
+        long endTimestamp = report.initStartTimestampMs + durationMs;
+
+        Map<String, Integer> customMetrics = new LinkedHashMap<>();
+        customMetrics.put("init_call_us", (int) (report.getInitCallDurationNs() / 1000L));
+        for (InitTimingReport.Phase phase : report.getPhases()) {
+            String key = initPhaseMetricKey(phase.name);
+            if (key == null) {
+                L.d("[ModuleAPM] recordInitTimingTrace, no metric key for the step [" + phase.name + "], it will be left out");
+                continue;
+            }
+            customMetrics.put(key, (int) (phase.durationNs / 1000L));
+        }
+        removeReservedInvalidKeys(customMetrics);
+
+        requestQueueProvider.sendAPMCustomTrace(INIT_TIMING_TRACE_KEY, durationMs, report.initStartTimestampMs, endTimestamp, customMetricsToString(customMetrics));
+    }
+
+    static @Nullable String initPhaseMetricKey(@NonNull String phaseName) {
+        return INIT_PHASE_METRIC_KEYS.get(phaseName);
+    }
+
     void recordAppStart(long appLoadedTimestamp) {
         L.d("[ModuleAPM] Calling 'recordAppStart'");
         if (_cly.config_.recordAppStartTime) {
@@ -350,15 +633,13 @@ public class ModuleAPM extends ModuleBase {
 
         L.v("[ModuleAPM] calculateAppRunningTimes, toBG[" + goingToBackground + "] toFG[" + goingToForeground + "]");
 
-        doForegroundBackgroundCalculations(goingToBackground, goingToForeground);
+        doForegroundBackgroundCalculations(goingToBackground, goingToForeground, UtilsTime.currentTimestampMs());
     }
 
-    void doForegroundBackgroundCalculations(boolean goingToBackground, boolean goingToForeground) {
+    void doForegroundBackgroundCalculations(boolean goingToBackground, boolean goingToForeground, long currentTimeMs) {
         L.d("[ModuleAPM] Calling 'doForegroundBackgroundCalculations', [" + goingToBackground + "] [" + goingToForeground + "]");
         if (goingToBackground || goingToForeground) {
 
-            long currentTimeMs = UtilsTime.currentTimestampMs();
-
             if (lastScreenSwitchTime != -1) {
                 // if it was '-1' then it just started, todo might be a issue with halt where it is only reset on first screen change
                 long durationMs = currentTimeMs - lastScreenSwitchTime;
@@ -381,30 +662,39 @@ public class ModuleAPM extends ModuleBase {
         }
     }
 
-    void goToForeground() {
+    void goToForeground(long currentTimeMs) {
         L.d("[ModuleAPM] Calling 'goToForeground'");
         if (manualOverrideInForeground) {
             //if we already are in foreground, do nothing
             return;
         }
         manualOverrideInForeground = true;
-        doForegroundBackgroundCalculations(false, true);
+        doForegroundBackgroundCalculations(false, true, currentTimeMs);
     }
 
-    void goToBackground() {
+    void goToBackground(long currentTimeMs) {
         L.d("[ModuleAPM] Calling 'goToBackground'");
         if (!manualOverrideInForeground) {
             //if we already are in background, do nothing
             return;
         }
         manualOverrideInForeground = false;
-        doForegroundBackgroundCalculations(true, false);
+        doForegroundBackgroundCalculations(true, false, currentTimeMs);
     }
 
     @Override
     void halt() {
-        codeTraces = null;
-        networkTraces = null;
+        synchronized (moduleLock) {
+            codeTraces = null;
+            networkTraces = null;
+            traceAggregator = null;
+
+            if (frameSource != null) {
+                frameSource.stop();
+            }
+            frameSource = null;
+            frameStatsTracker = null;
+        }
     }
 
     /**
@@ -414,19 +704,25 @@ public class ModuleAPM extends ModuleBase {
      */
     @Override
     void callbackOnActivityResumed(Activity activity) {
-        L.d("[Apm] Calling 'callbackOnActivityResumed', [" + activitiesOpen + "] -> [" + (activitiesOpen + 1) + "]");
+        synchronized (moduleLock) {
+            L.d("[Apm] Calling 'callbackOnActivityResumed', [" + activitiesOpen + "] -> [" + (activitiesOpen + 1) + "]");
 
-        long currentTimestamp = System.currentTimeMillis();
+            long currentTimestamp = System.currentTimeMillis();
 
-        if (!manualForegroundBackgroundTriggers) {
-            calculateAppRunningTimes(activitiesOpen, activitiesOpen + 1);
-        }
-        activitiesOpen++;
+            if (!manualForegroundBackgroundTriggers) {
+                calculateAppRunningTimes(activitiesOpen, activitiesOpen + 1);
+            }
+            activitiesOpen++;
 
-        if (!hasFirstOnResumeHappened) {
-            hasFirstOnResumeHappened = true;
-            if (!useManualAppLoadedTrigger) {
-                recordAppStart(currentTimestamp);
+            if (activitiesOpen == 1 && frameSource != null) {
+                frameSource.start(frameStatsTracker);
+            }
+
+            if (!hasFirstOnResumeHappened) {
+                hasFirstOnResumeHappened = true;
+                if (!useManualAppLoadedTrigger) {
+                    recordAppStart(currentTimestamp);
+                }
             }
         }
     }
@@ -438,12 +734,24 @@ public class ModuleAPM extends ModuleBase {
      */
     @Override
     void callbackOnActivityStopped(Activity activity) {
-        L.d("[Apm] Calling 'callbackOnActivityStopped', [" + activitiesOpen + "] -> [" + (activitiesOpen - 1) + "]");
+        synchronized (moduleLock) {
+            L.d("[Apm] Calling 'callbackOnActivityStopped', [" + activitiesOpen + "] -> [" + (activitiesOpen - 1) + "]");
+
+            if (!manualForegroundBackgroundTriggers) {
+                calculateAppRunningTimes(activitiesOpen, activitiesOpen - 1);
+            }
+            activitiesOpen--;
+
+            if (activitiesOpen == 0) {
+                if (frameSource != null) {
+                    frameSource.stop();
+                }
 
-        if (!manualForegroundBackgroundTriggers) {
-            calculateAppRunningTimes(activitiesOpen, activitiesOpen - 1);
+                //the app might not come back, send what has been aggregated
+                flushAggregatedTracesInternal(true);
+                flushFrameStatsInternal();
+            }
         }
-        activitiesOpen--;
     }
 
     @Override
@@ -451,8 +759,17 @@ public class ModuleAPM extends ModuleBase {
         if (consentChangeDelta.contains(Countly.CountlyFeatureNames.apm)) {
             if (!newConsent) {
                 //in case APM consent is removed, clear custom and network traces
-                _cly.moduleAPM.clearNetworkTraces();
-                _cly.moduleAPM.cancelAllTracesInternal();
+                synchronized (moduleLock) {
+                    clearNetworkTraces();
+                    cancelAllTracesInternal();
+
+                    if (traceAggregator != null) {
+                        traceAggregator.clear();
+                    }
+                    if (frameStatsTracker != null) {
+                        frameStatsTracker.drain();
+                    }
+                }
             }
         }
     }
@@ -463,11 +780,23 @@ public class ModuleAPM extends ModuleBase {
          *
          * @param traceKey key by which this action is identified
          */
-        public void startTrace(String traceKey) {
-            synchronized (_cly) {
+        public void startTrace(final String traceKey) {
+            final long timestamp = UtilsTime.currentTimestampMs();
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        synchronized (moduleLock) {
+                            startTraceInternal(traceKey, timestamp);
+                        }
+                    }
+                });
+                return;
+            }
+
+            synchronized (moduleLock) {
                 L.i("[Apm] Calling 'startTrace' with key:[" + traceKey + "]");
 
-                startTraceInternal(traceKey);
+                startTraceInternal(traceKey, timestamp);
             }
         }
 
@@ -476,16 +805,91 @@ public class ModuleAPM extends ModuleBase {
          *
          * @param traceKey key by which this action is identified
          */
-        public void endTrace(String traceKey, Map<String, Integer> customMetrics) {
-            synchronized (_cly) {
+        public void endTrace(final String traceKey, Map<String, Integer> customMetrics) {
+            //end time counting as fast as possible
+            final long timestamp = UtilsTime.currentTimestampMs();
+            if (_cly.shouldQueueBehindInit()) {
+                final Map<String, Integer> customMetricsCopy = customMetrics == null ? null : new HashMap<>(customMetrics);
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        synchronized (moduleLock) {
+                            endTraceInternal(traceKey, customMetricsCopy, timestamp);
+                        }
+                    }
+                });
+                return;
+            }
+
+            synchronized (moduleLock) {
                 L.i("[Apm] Calling 'endTrace' with key:[" + traceKey + "]");
 
-                endTraceInternal(traceKey, customMetrics);
+                endTraceInternal(traceKey, customMetrics, timestamp);
             }
         }
 
-        public void cancelTrace(String traceKey) {
-            synchronized (_cly) {
+        /**
+         * Start a trace that is identified by the returned handle instead of its key.
+         * Multiple traces with the same key can run at the same time and the handle can be ended from any thread.
+         * The duration is measured with nanosecond precision.
+         *
+         * @param traceKey key by which this action is identified
+         * @return handle that ends the trace, if the key is invalid the handle does nothing
+         */
+        public @NonNull TraceHandle startTraceHandle(@Nullable String traceKey) {
+            long startNs = System.nanoTime();
+
+            if (traceKey == null || traceKey.isEmpty()) {
+                L.e("[Apm] startTraceHandle, provided a invalid trace key");
+                return new TraceHandle("", startNs, null);
+            }
+
+            if (L.logEnabled()) {
+                L.i("[Apm] Calling 'startTraceHandle' with key:[" + traceKey + "]");
+            }
+
+            return new TraceHandle(traceKey, startNs, ModuleAPM.this);
+        }
+
+        /**
+         * Start tracing a network request. The phases, sizes and the end of the request are reported to the returned trace,
+         * see 'NetworkTrace' for how to use it with 'HttpURLConnection' or forward a HTTP client's events to it.
+         * Starting and reporting phases doesn't take any SDK locks.
+         *
+         * @param url full request URL, it is turned into a trace key by removing the query and replacing identifier-like path segments
+         * @return trace of the request, if the URL is invalid the trace does nothing
+         */
+        public @NonNull NetworkTrace startNetworkTrace(@Nullable String url) {
+            long startNs = System.nanoTime();
+
+            if (url == null || url.isEmpty()) {
+                L.e("[Apm] startNetworkTrace, provided a invalid URL");
+                return new NetworkTrace("", startNs, null);
+            }
+
+            String key = UrlPathNormalizer.normalize(url);
+            if (key.isEmpty()) {
+                L.e("[Apm] startNetworkTrace, could not create a trace key from the URL");
+                return new NetworkTrace("", startNs, null);
+            }
+
+            if (L.logEnabled()) {
+                L.i("[Apm] Calling 'startNetworkTrace' with key:[" + key + "]");
+            }
+
+            return new NetworkTrace(key, startNs, ModuleAPM.this);
+        }
+
+        public void cancelTrace(final String traceKey) {
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        cancelTrace(traceKey);
+                    }
+                });
+                return;
+            }
+
+            synchronized (moduleLock) {
                 L.i("[Apm] Calling 'cancelTrace' with key:[" + traceKey + "]");
 
                 cancelTraceInternal(traceKey);
@@ -493,7 +897,16 @@ public class ModuleAPM extends ModuleBase {
         }
 
         public void cancelAllTraces() {
-            synchronized (_cly) {
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        cancelAllTraces();
+                    }
+                });
+                return;
+            }
+
+            synchronized (moduleLock) {
                 L.i("[Apm] Calling 'cancelAllTraces'");
 
                 cancelAllTracesInternal();
@@ -508,11 +921,23 @@ public class ModuleAPM extends ModuleBase {
          * @param uniqueId this is important in cases where multiple requests in parallel are done
          * for the same trace. This helps to distinguish them.
          */
-        public void startNetworkRequest(String networkTraceKey, String uniqueId) {
-            synchronized (_cly) {
+        public void startNetworkRequest(final String networkTraceKey, final String uniqueId) {
+            final long timestamp = UtilsTime.currentTimestampMs();
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        synchronized (moduleLock) {
+                            startNetworkRequestInternal(networkTraceKey, uniqueId, timestamp);
+                        }
+                    }
+                });
+                return;
+            }
+
+            synchronized (moduleLock) {
                 L.i("[Apm] Calling 'startNetworkRequest' with key:[" + networkTraceKey + "], uniqueID:[" + uniqueId + "]");
 
-                startNetworkRequestInternal(networkTraceKey, uniqueId);
+                startNetworkRequestInternal(networkTraceKey, uniqueId, timestamp);
             }
         }
 
@@ -526,11 +951,24 @@ public class ModuleAPM extends ModuleBase {
          * @param requestPayloadSize sent request payload size in bytes
          * @param responsePayloadSize received response payload size in bytes
          */
-        public void endNetworkRequest(String networkTraceKey, String uniqueId, int responseCode, int requestPayloadSize, int responsePayloadSize) {
-            synchronized (_cly) {
+        public void endNetworkRequest(final String networkTraceKey, final String uniqueId, final int responseCode, final int requestPayloadSize, final int responsePayloadSize) {
+            //end time counting as fast as possible
+            final long timestamp = UtilsTime.currentTimestampMs();
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        synchronized (moduleLock) {
+                            endNetworkRequestInternal(networkTraceKey, uniqueId, responseCode, requestPayloadSize, responsePayloadSize, timestamp);
+                        }
+                    }
+                });
+                return;
+            }
+
+            synchronized (moduleLock) {
                 L.i("[Apm] Calling 'endNetworkRequest' with key:[" + networkTraceKey + "], uniqueID:[" + uniqueId + "]");
 
-                endNetworkRequestInternal(networkTraceKey, uniqueId, responseCode, requestPayloadSize, responsePayloadSize);
+                endNetworkRequestInternal(networkTraceKey, uniqueId, responseCode, requestPayloadSize, responsePayloadSize, timestamp);
             }
         }
 
@@ -544,8 +982,17 @@ public class ModuleAPM extends ModuleBase {
          * @param requestStartTimestampMs network request start timestamp in milliseconds
          * @param requestEndTimestampMs network request end timestamp in milliseconds
          */
-        public void recordNetworkTrace(String networkTraceKey, int responseCode, int requestPayloadSize, int responsePayloadSize, long requestStartTimestampMs, long requestEndTimestampMs) {
-            synchronized (_cly) {
+        public void recordNetworkTrace(final String networkTraceKey, final int responseCode, final int requestPayloadSize, final int responsePayloadSize, final long requestStartTimestampMs, final long requestEndTimestampMs) {
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        recordNetworkTrace(networkTraceKey, responseCode, requestPayloadSize, responsePayloadSize, requestStartTimestampMs, requestEndTimestampMs);
+                    }
+                });
+                return;
+            }
+
+            synchronized (moduleLock) {
                 L.i("[Apm] Calling 'recordNetworkTrace' with key:[" + networkTraceKey + "]");
 
                 recordNetworkRequestInternal(networkTraceKey, responseCode, requestPayloadSize, responsePayloadSize, requestStartTimestampMs, requestEndTimestampMs);
@@ -557,10 +1004,22 @@ public class ModuleAPM extends ModuleBase {
          * Should only be used if manual app loading trigger is enabled
          */
         public void setAppIsLoaded() {
-            synchronized (_cly) {
-                L.i("[Apm] Calling 'setAppIsLoaded'");
+            final long timestamp = System.currentTimeMillis();
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        setAppIsLoaded(timestamp);
+                    }
+                });
+                return;
+            }
 
-                long timestamp = System.currentTimeMillis();
+            setAppIsLoaded(timestamp);
+        }
+
+        private void setAppIsLoaded(long timestamp) {
+            synchronized (moduleLock) {
+                L.i("[Apm] Calling 'setAppIsLoaded'");
 
                 if (!useManualAppLoadedTrigger) {
                     L.w("[Apm] trying to record that app has finished loading without enabling manual trigger");
@@ -571,8 +1030,43 @@ public class ModuleAPM extends ModuleBase {
             }
         }
 
+        /**
+         * Send the traces that have been aggregated so far, without waiting for the flush interval.
+         * Does nothing if trace aggregation is not enabled.
+         */
+        public void flushAggregatedTraces() {
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        flushAggregatedTraces();
+                    }
+                });
+                return;
+            }
+
+            synchronized (moduleLock) {
+                L.i("[Apm] Calling 'flushAggregatedTraces'");
+
+                flushAggregatedTracesInternal(true);
+            }
+        }
+
         public void triggerForeground() {
-            synchronized (_cly) {
+            final long timestamp = UtilsTime.currentTimestampMs();
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        triggerForeground(timestamp);
+                    }
+                });
+                return;
+            }
+
+            triggerForeground(timestamp);
+        }
+
+        private void triggerForeground(long timestamp) {
+            synchronized (moduleLock) {
                 L.i("[Apm] Calling 'triggerForeground'");
 
                 if (!manualForegroundBackgroundTriggers) {
@@ -580,12 +1074,26 @@ public class ModuleAPM extends ModuleBase {
                     return;
                 }
 
-                goToForeground();
+                goToForeground(timestamp);
             }
         }
 
         public void triggerBackground() {
-            synchronized (_cly) {
+            final long timestamp = UtilsTime.currentTimestampMs();
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        triggerBackground(timestamp);
+                    }
+                });
+                return;
+            }
+
+            triggerBackground(timestamp);
+        }
+
+        private void triggerBackground(long timestamp) {
+            synchronized (moduleLock) {
                 L.i("[Apm] Calling 'triggerBackground'");
 
                 if (!manualForegroundBackgroundTriggers) {
@@ -593,7 +1101,7 @@ public class ModuleAPM extends ModuleBase {
                     return;
                 }
 
-                goToBackground();
+                goToBackground(timestamp);
             }
         }
     }
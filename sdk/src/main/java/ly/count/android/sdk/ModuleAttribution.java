@@ -2,6 +2,7 @@ package ly.count.android.sdk;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import java.util.HashMap;
 import java.util.Map;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -171,8 +172,17 @@ public class ModuleAttribution extends ModuleBase {
         /**
          * Report direct user attribution
          */
-        public void recordDirectAttribution(String campaignType, String campaignData) {
-            synchronized (_cly) {
+        public void recordDirectAttribution(final String campaignType, final String campaignData) {
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        recordDirectAttribution(campaignType, campaignData);
+                    }
+                });
+                return;
+            }
+
+            synchronized (moduleLock) {
                 L.i("[Attribution] calling 'recordCampaign'");
 
                 recordDirectAttributionInternal(campaignType, campaignData);
@@ -184,8 +194,18 @@ public class ModuleAttribution extends ModuleBase {
          *
          * @param attributionValues
          */
-        public void recordIndirectAttribution(Map<String, String> attributionValues) {
-            synchronized (_cly) {
+        public void recordIndirectAttribution(final Map<String, String> attributionValues) {
+            if (_cly.shouldQueueBehindInit()) {
+                final Map<String, String> attributionValuesCopy = attributionValues == null ? null : new HashMap<>(attributionValues);
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        recordIndirectAttribution(attributionValuesCopy);
+                    }
+                });
+                return;
+            }
+
+            synchronized (moduleLock) {
                 L.i("[Attribution] calling 'recordIndirectAttribution'");
 
                 recordIndirectAttributionInternal(attributionValues);
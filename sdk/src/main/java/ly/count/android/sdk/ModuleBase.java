@@ -18,6 +18,27 @@ abstract class ModuleBase {
 
     DeviceInfo deviceInfo;
 
+    /**
+     * Guards the state of this module.
+     * Public interface calls lock only the module they belong to, so a slow call in one module
+     * does not block calls to other modules.
+     *
+     * Locks are always acquired in this order:
+     * 1) the Countly instance, used for lifecycle calls and operations that change the state of multiple modules
+     * (init, halt, activity start and stop, session changes, consent changes and device ID changes)
+     * 2) the module lock of a feature module
+     * 3) the module lock of ModuleEvents, for recording events from other modules
+     * 4) the module lock of ModuleRequestQueue, for flushing the event queue
+     * 5) ConnectionQueue and CountlyStore, which are thread safe on their own
+     *
+     * While holding a module lock, the lock of the Countly instance or of a module earlier in this order must never be acquired.
+     * State of other modules that is needed without their lock is read from volatile fields.
+     */
+    final Object moduleLock = new Object();
+
+    //set if calls that write SDK state should be run on the SDK thread
+    final SdkActor sdkActor;
+
     ModuleBase(@NonNull Countly cly, @NonNull CountlyConfig config) {
         _cly = cly;
         L = cly.L;
@@ -30,6 +51,28 @@ abstract class ModuleBase {
         viewIdProvider = config.viewIdProvider;
 
         deviceInfo = config.deviceInfo;
+        sdkActor = cly.sdkActor;
+    }
+
+    /**
+     * @return true if the SDK thread is enabled and the current call should be posted to it
+     */
+    boolean shouldPostToActor() {
+        return sdkActor != null && !sdkActor.isActorThread();
+    }
+
+    /**
+     * Posts a call to the SDK thread. The call is run while holding the module lock,
+     * so it stays consistent with calls of this module that are run on the calling thread.
+     */
+    void postToActor(@NonNull final Runnable call) {
+        sdkActor.post(new Runnable() {
+            @Override public void run() {
+                synchronized (moduleLock) {
+                    call.run();
+                }
+            }
+        });
     }
 
     void halt() {
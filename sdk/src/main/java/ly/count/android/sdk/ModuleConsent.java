@@ -6,8 +6,10 @@ import androidx.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ModuleConsent extends ModuleBase implements ConsentProvider {
     Consent consentInterface = null;
@@ -30,11 +32,37 @@ public class ModuleConsent extends ModuleBase implements ConsentProvider {
         Countly.CountlyFeatureNames.scrolls
     };
 
+    //bit index of each feature in the consent state, has to match the order of 'validFeatureNames'
+    static final int FEATURE_SESSIONS = 0;
+    static final int FEATURE_EVENTS = 1;
+    static final int FEATURE_VIEWS = 2;
+    static final int FEATURE_LOCATION = 3;
+    static final int FEATURE_CRASHES = 4;
+    static final int FEATURE_ATTRIBUTION = 5;
+    static final int FEATURE_USERS = 6;
+    static final int FEATURE_PUSH = 7;
+    static final int FEATURE_STAR_RATING = 8;
+    static final int FEATURE_REMOTE_CONFIG = 9;
+    static final int FEATURE_APM = 10;
+    static final int FEATURE_FEEDBACK = 11;
+    static final int FEATURE_CLICKS = 12;
+    static final int FEATURE_SCROLLS = 13;
+
+    private static final Map<String, Integer> featureIndexes = new HashMap<>();
+
+    static {
+        for (int a = 0; a < validFeatureNames.length; a++) {
+            featureIndexes.put(validFeatureNames[a], a);
+        }
+    }
+
     public enum ConsentChangeSource {ChangeConsentCall, DeviceIDChangedNotMerged}
 
     protected boolean requiresConsent = false;
 
-    final Map<String, Boolean> featureConsentValues = new HashMap<>();
+    //consent of every feature as a bit set indexed by the feature index.
+    //Changes are made with compare and set, so that concurrent changes of different features are not lost
+    final AtomicInteger consentState = new AtomicInteger(0);
     private final Map<String, String[]> groupedFeatures = new HashMap<>();
 
     ModuleConsent(@NonNull final Countly cly, @NonNull final CountlyConfig config) {
@@ -44,22 +72,24 @@ public class ModuleConsent extends ModuleBase implements ConsentProvider {
         L.v("[ModuleConsent] Initialising");
         L.i("[ModuleConsent] Is consent required? [" + config.shouldRequireConsent + "]");
 
-        //setup initial consent data structure
-        //initialize all features to "false"
-        for (String featureName : validFeatureNames) {
-            featureConsentValues.put(featureName, false);
-        }
-
         //react to given consent during init
+        //all features start without consent
         if (config.shouldRequireConsent) {
             requiresConsent = config.shouldRequireConsent;
             if (config.enabledFeatureNames == null) {
                 L.i("[Init] Consent has been required but no consent was given during init");
             } else {
                 //set provided consent values
+                int initialState = 0;
                 for (String providedFeature : config.enabledFeatureNames) {
-                    featureConsentValues.put(providedFeature, true);
+                    int featureIndex = getFeatureIndex(providedFeature);
+                    if (featureIndex < 0) {
+                        L.w("[ModuleConsent] Given feature: [" + providedFeature + "] is not a valid name, ignoring it");
+                        continue;
+                    }
+                    initialState |= 1 << featureIndex;
                 }
+                consentState.set(initialState);
             }
         }
 
@@ -70,18 +100,22 @@ public class ModuleConsent extends ModuleBase implements ConsentProvider {
         return getConsentInternal(featureName);
     }
 
-    public boolean anyConsentGiven() {
+    public boolean getConsent(final int featureIndex) {
         if (!requiresConsent) {
             //no consent required - all consent given
             return true;
         }
 
-        for (String key : featureConsentValues.keySet()) {
-            if (getConsentTrue(key)) {
-                return true;
-            }
+        return (consentState.get() & (1 << featureIndex)) != 0;
+    }
+
+    public boolean anyConsentGiven() {
+        if (!requiresConsent) {
+            //no consent required - all consent given
+            return true;
         }
-        return false;
+
+        return consentState.get() != 0;
     }
 
     boolean getConsentInternal(@Nullable final String featureName) {
@@ -95,9 +129,25 @@ public class ModuleConsent extends ModuleBase implements ConsentProvider {
             return true;
         }
 
-        boolean returnValue = getConsentTrue(featureName);
-        L.v("[ModuleConsent] Returning consent for feature named: [" + featureName + "] [" + returnValue + "]");
-        return returnValue;
+        return getConsentTrue(featureName);
+    }
+
+    /**
+     * Returns the index of the given feature in the consent state
+     *
+     * @param featureName
+     * @return the feature index or '-1' if it is not a valid feature name
+     */
+    static int getFeatureIndex(@Nullable final String featureName) {
+        if (featureName == null) {
+            return -1;
+        }
+
+        Integer index = featureIndexes.get(featureName);
+        if (index == null) {
+            return -1;
+        }
+        return index;
     }
 
     /**
@@ -106,13 +156,26 @@ public class ModuleConsent extends ModuleBase implements ConsentProvider {
      * @param featureName
      */
     private boolean getConsentTrue(@NonNull final String featureName) {
-        Boolean returnValue = featureConsentValues.get(featureName);
+        int featureIndex = getFeatureIndex(featureName);
+        if (featureIndex < 0) {
+            return false;
+        }
+
+        return (consentState.get() & (1 << featureIndex)) != 0;
+    }
 
-        if (returnValue == null) {
-            returnValue = false;
+    /**
+     * Returns the consent of all valid features in the order of 'validFeatureNames'
+     */
+    private @NonNull Map<String, Boolean> getConsentValues() {
+        final int state = consentState.get();
+        Map<String, Boolean> values = new LinkedHashMap<>();
+
+        for (int a = 0; a < validFeatureNames.length; a++) {
+            values.put(validFeatureNames[a], (state & (1 << a)) != 0);
         }
 
-        return returnValue;
+        return values;
     }
 
     /**
@@ -122,13 +185,10 @@ public class ModuleConsent extends ModuleBase implements ConsentProvider {
         L.d("[ModuleConsent] Checking and printing consent for All features");
         L.d("[ModuleConsent] Is consent required? [" + requiresConsent + "]");
 
-        //make sure push consent has been added to the feature map
-        getConsent(Countly.CountlyFeatureNames.push);
-
         StringBuilder sb = new StringBuilder();
 
-        for (String key : featureConsentValues.keySet()) {
-            sb.append("Feature named [").append(key).append("], consent value: [").append(featureConsentValues.get(key)).append("]\n");
+        for (Map.Entry<String, Boolean> entry : getConsentValues().entrySet()) {
+            sb.append("Feature named [").append(entry.getKey()).append("], consent value: [").append(entry.getValue()).append("]\n");
         }
 
         L.d(sb.toString());
@@ -152,12 +212,7 @@ public class ModuleConsent extends ModuleBase implements ConsentProvider {
      * @return returns true if value is contained in feature name array
      */
     private boolean isValidFeatureName(@Nullable final String name) {
-        for (String fName : validFeatureNames) {
-            if (fName.equals(name)) {
-                return true;
-            }
-        }
-        return false;
+        return getFeatureIndex(name) >= 0;
     }
 
     /**
@@ -202,8 +257,7 @@ public class ModuleConsent extends ModuleBase implements ConsentProvider {
             return;
         }
 
-        List<String> consentThatWillChange = new ArrayList<>(featureNames.length);
-
+        int changedFeatures = 0;
         for (String featureName : featureNames) {
             L.d("[ModuleConsent] Setting consent for feature: [" + featureName + "] with value: [" + isConsentGiven + "]");
 
@@ -212,12 +266,25 @@ public class ModuleConsent extends ModuleBase implements ConsentProvider {
                 continue;
             }
 
-            if (getConsentTrue(featureName) != isConsentGiven) {
-                //if the current consent does not match the one give, add it to the list
-                consentThatWillChange.add(featureName);
+            changedFeatures |= 1 << getFeatureIndex(featureName);
+        }
+
+        //another thread may change the consent of other features at the same time
+        int oldState;
+        int newState;
+        do {
+            oldState = consentState.get();
+            newState = isConsentGiven ? (oldState | changedFeatures) : (oldState & ~changedFeatures);
+        } while (!consentState.compareAndSet(oldState, newState));
 
-                //set new consent value
-                featureConsentValues.put(featureName, isConsentGiven);
+        //only the features whose consent did not already match the given one, in the given order
+        int changedState = oldState ^ newState;
+        List<String> consentThatWillChange = new ArrayList<>(featureNames.length);
+        for (String featureName : featureNames) {
+            int featureIndex = getFeatureIndex(featureName);
+            if (featureIndex >= 0 && (changedState & (1 << featureIndex)) != 0) {
+                consentThatWillChange.add(featureName);
+                changedState &= ~(1 << featureIndex);
             }
         }
 
@@ -226,7 +293,7 @@ public class ModuleConsent extends ModuleBase implements ConsentProvider {
         }
 
         //send consent changes
-        String formattedConsentState = formatConsentState(featureConsentValues);
+        String formattedConsentState = formatConsentState(getConsentValues());
         requestQueueProvider.sendConsentChanges(formattedConsentState);
     }
 
@@ -259,7 +326,7 @@ public class ModuleConsent extends ModuleBase implements ConsentProvider {
             doPushConsentSpecialAction(getConsentTrue(Countly.CountlyFeatureNames.push));
 
             //send 'after init' consent state
-            String formattedConsentState = formatConsentState(featureConsentValues);
+            String formattedConsentState = formatConsentState(getConsentValues());
             requestQueueProvider.sendConsentChanges(formattedConsentState);
 
             if (L.logEnabled()) {
@@ -282,6 +349,8 @@ public class ModuleConsent extends ModuleBase implements ConsentProvider {
         consentInterface = null;
     }
 
+    //calls are guarded by the Countly lock instead of the module lock because consent changes are passed to all modules
+    //state changing calls made before the work deferred by an async init has run are queued behind it
     public class Consent {
         /**
          * Print the consent values of all features
@@ -310,6 +379,15 @@ public class ModuleConsent extends ModuleBase implements ConsentProvider {
          * Remove consent for all features
          */
         public void removeConsentAll() {
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        removeConsentAll();
+                    }
+                });
+                return;
+            }
+
             synchronized (_cly) {
                 removeConsentAllInternal(ConsentChangeSource.ChangeConsentCall);
             }
@@ -321,6 +399,16 @@ public class ModuleConsent extends ModuleBase implements ConsentProvider {
          * @param featureNames the names of features for which consent should be removed
          */
         public void removeConsent(@Nullable final String[] featureNames) {
+            if (_cly.shouldQueueBehindInit()) {
+                final String[] featureNamesCopy = featureNames == null ? null : featureNames.clone();
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        removeConsent(featureNamesCopy);
+                    }
+                });
+                return;
+            }
+
             synchronized (_cly) {
                 removeConsentInternal(featureNames, ConsentChangeSource.ChangeConsentCall);
             }
@@ -330,6 +418,15 @@ public class ModuleConsent extends ModuleBase implements ConsentProvider {
          * Gives consent for all features
          */
         public void giveConsentAll() {
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        giveConsentAll();
+                    }
+                });
+                return;
+            }
+
             synchronized (_cly) {
                 L.i("[Consent] Giving consent for all features");
 
@@ -343,6 +440,16 @@ public class ModuleConsent extends ModuleBase implements ConsentProvider {
          * @param featureNames the names of features for which consent should be given
          */
         public void giveConsent(@Nullable final String[] featureNames) {
+            if (_cly.shouldQueueBehindInit()) {
+                final String[] featureNamesCopy = featureNames == null ? null : featureNames.clone();
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        giveConsent(featureNamesCopy);
+                    }
+                });
+                return;
+            }
+
             synchronized (_cly) {
                 setConsentInternal(featureNames, true, ConsentChangeSource.ChangeConsentCall);
             }
@@ -355,6 +462,16 @@ public class ModuleConsent extends ModuleBase implements ConsentProvider {
          * @param isConsentGiven the consent value that should be set
          */
         public void setConsent(@Nullable final String[] featureNames, final boolean isConsentGiven) {
+            if (_cly.shouldQueueBehindInit()) {
+                final String[] featureNamesCopy = featureNames == null ? null : featureNames.clone();
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        setConsent(featureNamesCopy, isConsentGiven);
+                    }
+                });
+                return;
+            }
+
             synchronized (_cly) {
                 setConsentInternal(featureNames, isConsentGiven, ConsentChangeSource.ChangeConsentCall);
             }
@@ -367,6 +484,15 @@ public class ModuleConsent extends ModuleBase implements ConsentProvider {
          * @param isConsentGiven the value that should be set for this consent group
          */
         public void setConsentFeatureGroup(@Nullable final String groupName, final boolean isConsentGiven) {
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        setConsentFeatureGroup(groupName, isConsentGiven);
+                    }
+                });
+                return;
+            }
+
             synchronized (_cly) {
                 if (!groupedFeatures.containsKey(groupName)) {
                     L.d("[Countly] Trying to set consent for a unknown feature group: [" + groupName + "]");
@@ -385,6 +511,16 @@ public class ModuleConsent extends ModuleBase implements ConsentProvider {
          * @param features array of feature to be added to the consent group
          */
         public void createFeatureGroup(@Nullable final String groupName, @Nullable final String[] features) {
+            if (_cly.shouldQueueBehindInit()) {
+                final String[] featuresCopy = features == null ? null : features.clone();
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        createFeatureGroup(groupName, featuresCopy);
+                    }
+                });
+                return;
+            }
+
             synchronized (_cly) {
                 groupedFeatures.put(groupName, features);
             }
@@ -1,21 +1,48 @@
 package ly.count.android.sdk;
 
+import android.app.Activity;
 import android.content.Context;
-import android.util.Base64;
+import android.os.Debug;
+import android.os.Handler;
+import android.os.Looper;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import org.json.JSONException;
+import org.json.JSONObject;
 
 public class ModuleCrash extends ModuleBase {
     //native crash
     private static final String countlyFolderName = "Countly";
     private static final String countlyNativeCrashFolderName = "CrashDumps";
+    //dumps that have been queued and wait to be sent
+    static final String countlyPendingCrashDumpFolderName = "CrashDumpsPending";
+    //a dump that was moved recently may belong to a request another process has not appended yet
+    static final long PENDING_DUMP_GRACE_MS = 60 * 1000;
+    //breadcrumbs copied to a file so that they survive native crashes
+    static final String breadcrumbMirrorFileName = "breadcrumbs";
+    //texts of counted handled exceptions, a file per fingerprint, see 'CrashDeduplicator'
+    static final String crashPendingReportFolderName = "CrashPendingReports";
+
+    //how long the crash handler waits for calls posted to the SDK thread
+    static final long CRASH_ACTOR_FLUSH_TIMEOUT_MS = 1000;
+
+    //how many occurrences a collapsed crash report stands for
+    static final String OCCURRENCES_SEGMENT_KEY = "occurrences";
+
+    //java crash reports are written into a buffer of this size, in their encoded form
+    static final int CRASH_REPORT_CAPACITY = 64 * 1024;
+    //the stack trace of a java crash is cut off after this many characters
+    static final int MAX_ERROR_LENGTH = 20000;
 
     //crash filtering
     CrashFilterCallback crashFilterCallback;
@@ -31,6 +58,29 @@ public class ModuleCrash extends ModuleBase {
     @Nullable
     Map<String, String> metricOverride = null;
 
+    //reused for every java crash report, allocated once unhandled crash reporting is enabled so that it exists when memory runs out
+    private final Object crashReportLock = new Object();
+    @Nullable
+    CrashReportBuilder crashReportBuilder = null;
+
+    //set if repeated handled exceptions are collapsed
+    @Nullable
+    CrashDeduplicator crashDeduplicator = null;
+
+    //set if main thread stalls are detected
+    @Nullable
+    MainThreadWatchdog mainThreadWatchdog = null;
+    //the watchdog runs while an activity is started, only touched on the main thread
+    int activitiesStarted = 0;
+
+    //breadcrumbs of the previous run, read from the mirror file, added to its native crash report
+    @NonNull
+    String previousRunBreadcrumbs = "";
+    //when the run that wrote the mirror file started, 0 if unknown
+    long previousRunStartMs = 0;
+    //file times can be rounded down to whole seconds
+    static final long DUMP_TIME_TOLERANCE_MS = 2000;
+
     ModuleCrash(Countly cly, CountlyConfig config) {
         super(cly, config);
         L.v("[ModuleCrash] Initialising");
@@ -43,11 +93,131 @@ public class ModuleCrash extends ModuleBase {
 
         metricOverride = config.metricOverride;
 
+        DeviceInfo.configureLogs(config.maxBreadcrumbCount, config.breadcrumbTimestampsEnabled, openBreadcrumbMirror(config));
+
+        if (config.crashDeduplicationWindowSeconds > 0) {
+            L.d("[ModuleCrash] Collapsing repeated exceptions, window:[" + config.crashDeduplicationWindowSeconds + "s]");
+            KeyValueStore reportStore = config.context == null ? null
+                : new FileKeyValueStore(new File(config.context.getFilesDir(), countlyFolderName + File.separator + crashPendingReportFolderName), L);
+            crashDeduplicator = new CrashDeduplicator(config.crashDeduplicationWindowSeconds * 1000L, Clock.SYSTEM, reportStore);
+            crashDeduplicator.load(storageProvider.getCrashIndex());
+        }
+
+        if (config.mainThreadStallThresholdMs > 0) {
+            L.d("[ModuleCrash] Detecting main thread stalls, threshold:[" + config.mainThreadStallThresholdMs + "ms]");
+            mainThreadWatchdog = new MainThreadWatchdog(new MainThreadWatchdog.MainThread() {
+                final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+                @Override public void post(@NonNull Runnable runnable) {
+                    mainHandler.post(runnable);
+                }
+
+                @NonNull @Override public StackTraceElement[] getStackTrace() {
+                    return Looper.getMainLooper().getThread().getStackTrace();
+                }
+            }, new MainThreadWatchdog.StallListener() {
+                @Override public void onStallDetected(@NonNull MainThreadWatchdog.Stall stall) {
+                    recordMainThreadStall(stall);
+                }
+
+                @Override public void onStallEnded(@NonNull MainThreadWatchdog.Stall stall) {
+                    //breakpoints also block the main thread
+                    ModuleAPM apm = _cly.moduleAPM;
+                    if (apm != null && !Debug.isDebuggerConnected()) {
+                        apm.recordMainThreadStall(stall.durationNs / 1000000L);
+                    }
+                }
+            }, Clock.SYSTEM, config.mainThreadStallThresholdMs);
+        }
+
         crashesInterface = new Crashes();
     }
 
     /**
-     * Called during init to check if there are any crash dumps saved
+     * Reads the breadcrumbs of the previous run from the mirror file and then resets the file for this run
+     *
+     * @return null if mirroring is not enabled or the file could not be opened
+     */
+    @Nullable
+    BreadcrumbMirror openBreadcrumbMirror(@NonNull CountlyConfig config) {
+        if (!config.breadcrumbMirroringEnabled || config.context == null) {
+            return null;
+        }
+
+        File folder = new File(config.context.getCacheDir(), countlyFolderName);
+        File mirrorFile = new File(folder, breadcrumbMirrorFileName);
+        try {
+            previousRunBreadcrumbs = DeviceInfo.formatLogs(BreadcrumbMirror.read(mirrorFile), config.breadcrumbTimestampsEnabled);
+            previousRunStartMs = BreadcrumbMirror.readRunStartMs(mirrorFile);
+            if (!folder.exists() && !folder.mkdirs()) {
+                L.e("[ModuleCrash] Failed to create the breadcrumb mirror folder");
+                return null;
+            }
+            L.d("[ModuleCrash] Mirroring breadcrumbs, previous run left [" + previousRunBreadcrumbs.length() + "] characters");
+            return BreadcrumbMirror.open(mirrorFile, config.maxBreadcrumbCount, System.currentTimeMillis());
+        } catch (IOException e) {
+            L.e("[ModuleCrash] Failed to open the breadcrumb mirror file, " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Reports the main thread stack of a stall as a non fatal crash, stalls with an already reported stack are skipped.
+     * The stack is marked as reported only once the report has been queued.
+     * Called on the watchdog thread while the main thread is still blocked.
+     */
+    void recordMainThreadStall(@NonNull final MainThreadWatchdog.Stall stall) {
+        long stallMs = stall.durationNs / 1000000L;
+
+        if (stall.duplicate) {
+            L.d("[ModuleCrash] Main thread stalled for [" + stallMs + "ms] with an already reported stack, [" + stall.fingerprint + "]");
+            return;
+        }
+
+        if (Debug.isDebuggerConnected()) {
+            L.d("[ModuleCrash] Main thread stalled while a debugger is connected, ignoring");
+            return;
+        }
+
+        if (!consentProvider.getConsent(Countly.CountlyFeatureNames.crashes)) {
+            return;
+        }
+
+        L.w("[ModuleCrash] Main thread stalled for at least [" + stallMs + "ms], reporting its stack");
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("MainThreadStall: main thread blocked for at least ").append(stallMs).append(" ms\n");
+        for (StackTraceElement element : stall.stack) {
+            sb.append("\tat ").append(element.toString()).append('\n');
+        }
+        final String stallString = sb.toString();
+
+        final Map<String, Object> segmentation = new HashMap<>();
+        segmentation.put("stall_ms", (int) Math.min(Integer.MAX_VALUE, stallMs));
+
+        final MainThreadWatchdog watchdog = mainThreadWatchdog;
+        if (shouldPostToActor()) {
+            postToActor(new Runnable() {
+                @Override public void run() {
+                    if (filterAndSendException(stallString, true, segmentation) && watchdog != null) {
+                        watchdog.markReported(stall.fingerprint);
+                    }
+                }
+            });
+            return;
+        }
+
+        synchronized (moduleLock) {
+            if (filterAndSendException(stallString, true, segmentation) && watchdog != null) {
+                watchdog.markReported(stall.fingerprint);
+            }
+        }
+    }
+
+    /**
+     * Called during init to check if there are any crash dumps saved.
+     * The dumps are moved to the pending folder and sent from there, the request only references them.
+     * The pending folder is in the files directory, because the system may clear the cache directory before the request is sent.
      *
      * @param context android context
      */
@@ -55,7 +225,11 @@ public class ModuleCrash extends ModuleBase {
         L.d("[ModuleCrash] Checking for native crash dumps");
 
         String basePath = context.getCacheDir().getAbsolutePath();
-        String finalPath = basePath + File.separator + countlyFolderName + File.separator + countlyNativeCrashFolderName;
+        String countlyPath = basePath + File.separator + countlyFolderName;
+        String finalPath = countlyPath + File.separator + countlyNativeCrashFolderName;
+        File pendingFolder = new File(context.getFilesDir().getAbsolutePath() + File.separator + countlyFolderName + File.separator + countlyPendingCrashDumpFolderName);
+
+        removeUnreferencedCrashDumps(pendingFolder);
 
         File folder = new File(finalPath);
         if (folder.exists()) {
@@ -72,12 +246,25 @@ public class ModuleCrash extends ModuleBase {
             L.d("[ModuleCrash] Crash dump folder contains [" + dumpFileCount + "] files");
 
             if (dumpFiles != null) {
+                //the breadcrumbs of the previous run belong to the crash that ended it, if it ended with one
+                File newestDump = null;
                 for (File dumpFile : dumpFiles) {
-                    //record crash
-                    recordNativeException(dumpFile);
+                    if (newestDump == null || dumpFile.lastModified() > newestDump.lastModified()) {
+                        newestDump = dumpFile;
+                    }
+                }
+                if (newestDump != null && !isFromPreviousRun(newestDump)) {
+                    L.d("[ModuleCrash] The newest crash dump was not written by the previous run, its breadcrumbs are not added");
+                    newestDump = null;
+                }
 
-                    //delete dump file
-                    dumpFile.delete();
+                for (File dumpFile : dumpFiles) {
+                    //record crash, the dump is moved and deleted once it has been sent
+                    String breadcrumbs = dumpFile == newestDump ? previousRunBreadcrumbs : "";
+                    if (!recordNativeException(dumpFile, pendingFolder, breadcrumbs)) {
+                        //delete dump file
+                        dumpFile.delete();
+                    }
                 }
             }
         } else {
@@ -85,38 +272,154 @@ public class ModuleCrash extends ModuleBase {
         }
     }
 
-    private void recordNativeException(File dumpFile) {
+    /**
+     * A dump that is older than the start of the previous run was left by an earlier run, the previous run then ended without a native crash
+     */
+    boolean isFromPreviousRun(@NonNull File dumpFile) {
+        return previousRunStartMs > 0 && dumpFile.lastModified() >= previousRunStartMs - DUMP_TIME_TOLERANCE_MS;
+    }
+
+    /**
+     * @return true if the dump was moved to the pending folder and queued
+     */
+    private boolean recordNativeException(File dumpFile, File pendingFolder, @NonNull String breadcrumbs) {
         L.d("[ModuleCrash] Recording native crash dump: [" + dumpFile.getName() + "]");
 
         //check for consent
         if (!consentProvider.getConsent(Countly.CountlyFeatureNames.crashes)) {
-            return;
+            return false;
         }
 
-        //read bytes
-        int size = (int) dumpFile.length();
-        byte[] bytes = new byte[size];
+        if (!pendingFolder.exists() && !pendingFolder.mkdirs()) {
+            L.e("[ModuleCrash] Failed to create the pending crash dump folder");
+            return false;
+        }
 
-        try {
-            BufferedInputStream buf = new BufferedInputStream(new FileInputStream(dumpFile));
-            buf.read(bytes, 0, bytes.length);
-            buf.close();
-        } catch (Exception e) {
-            L.e("[ModuleCrash] Failed to read dump file bytes");
-            e.printStackTrace();
+        File pendingDump = new File(pendingFolder, dumpFile.getName());
+        if (!dumpFile.renameTo(pendingDump)) {
+            L.e("[ModuleCrash] Failed to move dump file to the pending crash dump folder");
+            return false;
+        }
+        //the time of the move, not of the crash, decides if the dump is still too new to be removed
+        pendingDump.setLastModified(System.currentTimeMillis());
+
+        //record crash, only the path of the dump is put in the request queue
+        Map<String, Object> combinedSegmentationValues = combineCrashSegmentation(null);
+        JSONObject crashData = deviceInfo.getCrashDataStringJSON(_cly.context_, "", false, true, "", combinedSegmentationValues, deviceInfo, metricOverride);
+        if (!breadcrumbs.isEmpty()) {
+            try {
+                crashData.put("_logs", breadcrumbs);
+            } catch (JSONException ignored) {
+            }
+        }
+        requestQueueProvider.sendNativeCrashReport(crashData.toString(), pendingDump.getAbsolutePath());
+        return true;
+    }
+
+    /**
+     * Deletes pending dumps whose request is not waiting to be sent anymore, for example because the queue was full.
+     * In multi process mode only the process that sends the requests can see all of them, the others keep every dump.
+     */
+    void removeUnreferencedCrashDumps(File pendingFolder) {
+        File[] pendingDumps = pendingFolder.listFiles();
+        if (pendingDumps == null || pendingDumps.length == 0) {
             return;
         }
 
-        //convert to base64
-        String dumpString = Base64.encodeToString(bytes, Base64.NO_WRAP);
+        List<String> requests = storageProvider.getAllPendingRequests();
+        if (requests == null) {
+            L.d("[ModuleCrash] Another process sends the requests, pending crash dumps are not checked");
+            return;
+        }
 
-        //record crash
-        sendCrashReportToQueue(dumpString, false, true, null);
+        Set<String> referencedPaths = new HashSet<>();
+        for (String request : requests) {
+            String dumpPath = CrashDumpRequest.dumpPathFromRequest(request);
+            if (dumpPath != null) {
+                referencedPaths.add(dumpPath);
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        for (File pendingDump : pendingDumps) {
+            if (now - pendingDump.lastModified() < PENDING_DUMP_GRACE_MS) {
+                continue;
+            }
+            if (!referencedPaths.contains(pendingDump.getAbsolutePath())) {
+                L.w("[ModuleCrash] Removing native crash dump without a request: [" + pendingDump.getName() + "]");
+                pendingDump.delete();
+            }
+        }
     }
 
     public void sendCrashReportToQueue(String error, boolean nonfatal, boolean isNativeCrash, @Nullable final Map<String, Object> customSegmentation) {
         L.d("[ModuleCrash] sendCrashReportToQueue");
 
+        Map<String, Object> combinedSegmentationValues = combineCrashSegmentation(customSegmentation);
+
+        if (!isNativeCrash) {
+            sendJavaCrashReport(error, null, nonfatal, combinedSegmentationValues);
+            return;
+        }
+
+        final String crashData;
+        //native crash reports don't contain the breadcrumbs of this run, so they are not cleared
+        crashData = deviceInfo.getCrashDataString(_cly.context_, error, nonfatal, true, "", combinedSegmentationValues, deviceInfo, metricOverride);
+
+        requestQueueProvider.sendCrashReport(crashData, nonfatal);
+    }
+
+    /**
+     * Same as 'sendCrashReportToQueue' for java crashes, the stack trace is written directly into the report
+     */
+    void sendCrashReportToQueue(@NonNull Throwable exception, boolean nonfatal, @Nullable final Map<String, Object> customSegmentation) {
+        L.d("[ModuleCrash] sendCrashReportToQueue, streaming the stack trace");
+
+        sendJavaCrashReport(null, exception, nonfatal, combineCrashSegmentation(customSegmentation));
+    }
+
+    /**
+     * Writes the report into the crash report buffer, the stack trace is taken either from 'error' or from 'exception'
+     */
+    private void sendJavaCrashReport(@Nullable String error, @Nullable Throwable exception, boolean nonfatal, @NonNull Map<String, Object> segmentation) {
+        synchronized (crashReportLock) {
+            if (crashReportBuilder == null) {
+                crashReportBuilder = new CrashReportBuilder(CRASH_REPORT_CAPACITY);
+            }
+            CrashReportBuilder report = crashReportBuilder;
+            report.reset();
+
+            deviceInfo.writeCrashData(report, _cly.context_, nonfatal, segmentation, deviceInfo, metricOverride);
+
+            Writer errorWriter = report.beginStreamedField("_error", MAX_ERROR_LENGTH);
+            if (exception != null) {
+                PrintWriter pw = new PrintWriter(errorWriter);
+                exception.printStackTrace(pw);
+
+                if (recordAllThreads) {
+                    addAllThreadInformationToCrash(pw);
+                }
+                pw.flush();
+            } else if (error != null) {
+                try {
+                    errorWriter.write(error);
+                } catch (IOException ignored) {
+                    //the report writer does not throw
+                }
+            }
+            report.endStreamedField();
+
+            DeviceInfo.writeLogs(report);
+
+            if (report.isTruncated()) {
+                L.d("[ModuleCrash] Crash report did not fit completely, it was cut off at [" + report.length() + "] characters");
+            }
+
+            requestQueueProvider.sendEncodedCrashReport(report, nonfatal);
+        }
+    }
+
+    @NonNull Map<String, Object> combineCrashSegmentation(@Nullable final Map<String, Object> customSegmentation) {
         Map<String, Object> combinedSegmentationValues = new HashMap<>();
 
         if (customCrashSegments != null) {
@@ -131,15 +434,7 @@ public class ModuleCrash extends ModuleBase {
         //truncate crash segmentation
         Utils.truncateSegmentationValues(combinedSegmentationValues, _cly.config_.maxSegmentationValues, "[ModuleCrash] sendCrashReportToQueue", L);
 
-        //limit the size of the crash report to 20k characters
-        if (!isNativeCrash) {
-            error = error.substring(0, Math.min(20000, error.length()));
-        }
-
-        final String crashData;
-        crashData = deviceInfo.getCrashDataString(_cly.context_, error, nonfatal, isNativeCrash, DeviceInfo.getLogs(), combinedSegmentationValues, deviceInfo, metricOverride);
-
-        requestQueueProvider.sendCrashReport(crashData, nonfatal);
+        return combinedSegmentationValues;
     }
 
     /**
@@ -163,6 +458,14 @@ public class ModuleCrash extends ModuleBase {
 
     void enableCrashReporting() {
         L.d("[ModuleCrash] Enabling unhandled crash reporting");
+
+        //allocated now, when the app crashes because memory ran out it might not be possible anymore
+        synchronized (crashReportLock) {
+            if (crashReportBuilder == null) {
+                crashReportBuilder = new CrashReportBuilder(CRASH_REPORT_CAPACITY);
+            }
+        }
+
         //get default handler
         final Thread.UncaughtExceptionHandler oldHandler = Thread.getDefaultUncaughtExceptionHandler();
 
@@ -171,25 +474,38 @@ public class ModuleCrash extends ModuleBase {
             @Override
             public void uncaughtException(@NonNull Thread t, @NonNull Throwable e) {
                 L.d("[ModuleCrash] Uncaught crash handler triggered");
-                if (consentProvider.getConsent(Countly.CountlyFeatureNames.crashes)) {
 
-                    StringWriter sw = new StringWriter();
-                    PrintWriter pw = new PrintWriter(sw);
-                    e.printStackTrace(pw);
-
-                    //add other threads
-                    if (recordAllThreads) {
-                        addAllThreadInformationToCrash(pw);
-                    }
-
-                    String exceptionString = sw.toString();
+                //let the SDK thread store breadcrumbs and events that were recorded before the crash
+                if (sdkActor != null) {
+                    sdkActor.awaitIdle(CRASH_ACTOR_FLUSH_TIMEOUT_MS);
+                }
 
-                    //check if it passes the crash filter
-                    if (!crashFilterCheck(exceptionString)) {
-                        sendCrashReportToQueue(exceptionString, false, false, null);
+                if (consentProvider.getConsent(Countly.CountlyFeatureNames.crashes)) {
+                    if (crashFilterCallback == null) {
+                        //without a filter the stack trace is not needed as a string, it is written directly into the report
+                        sendCrashReportToQueue(e, false, null);
+                    } else {
+                        StringWriter sw = new StringWriter();
+                        PrintWriter pw = new PrintWriter(sw);
+                        e.printStackTrace(pw);
+
+                        //add other threads
+                        if (recordAllThreads) {
+                            addAllThreadInformationToCrash(pw);
+                        }
+
+                        String exceptionString = sw.toString();
+
+                        //check if it passes the crash filter
+                        if (!crashFilterCheck(exceptionString)) {
+                            sendCrashReportToQueue(exceptionString, false, false, null);
+                        }
                     }
                 }
 
+                //deliver logs that are still waiting for the listener before the process ends
+                L.flushListener();
+
                 //if there was another handler before
                 if (oldHandler != null) {
                     //notify it also
@@ -266,6 +582,26 @@ public class ModuleCrash extends ModuleBase {
             return _cly;
         }
 
+        Map<String, Object> segmentation = customSegmentation;
+        String fingerprint = crashDeduplicator != null && itIsHandled ? CrashDeduplicator.fingerprint(exception) : null;
+        if (fingerprint != null && crashFilterCallback == null) {
+            //checked before the stack traces are serialized, a repeated exception costs only the fingerprint.
+            //with a crash filter, the occurrence is counted only once the filter has accepted the report
+            int occurrences = countOccurrence(fingerprint, exception, null);
+            if (occurrences == 0) {
+                L.d("[ModuleCrash] recordException, exception was already reported in the deduplication window, counting it");
+                return _cly;
+            }
+            segmentation = withOccurrences(customSegmentation, occurrences);
+            fingerprint = null;
+        }
+
+        if (crashFilterCallback == null && !shouldPostToActor()) {
+            //nothing needs the stack trace as a string, it is written directly into the report
+            sendCrashReportToQueue(exception, itIsHandled, segmentation);
+            return _cly;
+        }
+
         StringWriter sw = new StringWriter();
         PrintWriter pw = new PrintWriter(sw);
         exception.printStackTrace(pw);
@@ -274,11 +610,46 @@ public class ModuleCrash extends ModuleBase {
             addAllThreadInformationToCrash(pw);
         }
 
-        String exceptionString = sw.toString();
+        final String exceptionString = sw.toString();
 
+        if (shouldPostToActor()) {
+            //the stack traces are taken on the calling thread, the report is created on the SDK thread
+            final Map<String, Object> segmentationCopy = segmentation == null ? null : new HashMap<>(segmentation);
+            final String actorFingerprint = fingerprint;
+            postToActor(new Runnable() {
+                @Override public void run() {
+                    filterAndSendException(exceptionString, itIsHandled, segmentationCopy, actorFingerprint);
+                }
+            });
+            return _cly;
+        }
+
+        filterAndSendException(exceptionString, itIsHandled, segmentation, fingerprint);
+        return _cly;
+    }
+
+    boolean filterAndSendException(@NonNull String exceptionString, boolean itIsHandled, @Nullable Map<String, Object> customSegmentation) {
+        return filterAndSendException(exceptionString, itIsHandled, customSegmentation, null);
+    }
+
+    /**
+     * @param fingerprint set if the occurrence still has to be counted for deduplication, that happens only if the filter accepts it
+     * @return true if the report was queued
+     */
+    boolean filterAndSendException(@NonNull String exceptionString, boolean itIsHandled, @Nullable Map<String, Object> customSegmentation, @Nullable String fingerprint) {
         if (crashFilterCheck(exceptionString)) {
             L.d("[ModuleCrash] Crash filter found a match, exception will be ignored, [" + exceptionString.substring(0, Math.min(exceptionString.length(), 60)) + "]");
+            return false;
         } else {
+            if (fingerprint != null) {
+                int occurrences = countOccurrence(fingerprint, null, exceptionString);
+                if (occurrences == 0) {
+                    L.d("[ModuleCrash] filterAndSendException, exception was already reported in the deduplication window, counting it");
+                    return false;
+                }
+                customSegmentation = withOccurrences(customSegmentation, occurrences);
+            }
+
             //in case the exception needs to be recorded, truncate it
             //String[] splitRes = exceptionString.split("\n");
             //int totalAllowedLines = _cly.config_.maxStackTraceThreadCount * _cly.config_.maxStackTraceLinesPerThread;
@@ -289,8 +660,107 @@ public class ModuleCrash extends ModuleBase {
             //}
             //sendCrashReportToQueue(sb.toString(), itIsHandled, false, customSegmentation);
             sendCrashReportToQueue(exceptionString, itIsHandled, false, customSegmentation);
+            return true;
+        }
+    }
+
+    /**
+     * Counts a handled exception that will be reported unless it is inside the window of an earlier report.
+     * For the first counted occurrence of a window the report text is kept, taken from 'exceptionString' or created from 'exception',
+     * so that the count can be reported on its own later.
+     *
+     * @return how many occurrences the report stands for, 0 if it should not be sent
+     */
+    int countOccurrence(@NonNull String fingerprint, @Nullable Throwable exception, @Nullable String exceptionString) {
+        int occurrences = crashDeduplicator.onOccurrence(fingerprint);
+        if (occurrences == 0 && crashDeduplicator.needsPendingReport(fingerprint)) {
+            if (exceptionString == null) {
+                StringWriter sw = new StringWriter();
+                exception.printStackTrace(new PrintWriter(sw));
+                exceptionString = sw.toString();
+            }
+            crashDeduplicator.setPendingReport(fingerprint, exceptionString);
+        }
+
+        //a new occurrence can push an older fingerprint with counted occurrences out of the index
+        if (crashDeduplicator.hasEvictedReports()) {
+            if (shouldPostToActor()) {
+                postToActor(new Runnable() {
+                    @Override public void run() {
+                        sendPendingOccurrencesInternal();
+                    }
+                });
+            } else {
+                sendPendingOccurrencesInternal();
+            }
+        }
+
+        if (crashDeduplicator.shouldPersist(occurrences > 0)) {
+            storageProvider.setCrashIndex(crashDeduplicator.toStorageString());
+        }
+        return occurrences;
+    }
+
+    static @Nullable Map<String, Object> withOccurrences(@Nullable Map<String, Object> segmentation, int occurrences) {
+        if (occurrences <= 1) {
+            return segmentation;
+        }
+        Map<String, Object> result = segmentation == null ? new HashMap<String, Object>() : new HashMap<>(segmentation);
+        result.put(OCCURRENCES_SEGMENT_KEY, occurrences);
+        return result;
+    }
+
+    /**
+     * Reports the counted occurrences of ended deduplication windows that had no further occurrence,
+     * and of fingerprints that were dropped from the index
+     */
+    void sendPendingOccurrencesInternal() {
+        if (crashDeduplicator == null) {
+            return;
+        }
+
+        List<CrashDeduplicator.PendingReport> pending = crashDeduplicator.takePendingReports();
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        if (crashDeduplicator.shouldPersist(true)) {
+            storageProvider.setCrashIndex(crashDeduplicator.toStorageString());
+        }
+
+        if (!consentProvider.getConsent(Countly.CountlyFeatureNames.crashes)) {
+            return;
+        }
+
+        for (CrashDeduplicator.PendingReport report : pending) {
+            L.d("[ModuleCrash] Reporting [" + report.occurrences + "] counted occurrences of an exception whose deduplication window has ended");
+            Map<String, Object> segmentation = new HashMap<>();
+            segmentation.put(OCCURRENCES_SEGMENT_KEY, report.occurrences);
+            sendCrashReportToQueue(report.report, true, false, segmentation);
+        }
+    }
+
+    /**
+     * Called on every SDK timer tick
+     */
+    void onTimer() {
+        synchronized (moduleLock) {
+            sendPendingOccurrencesInternal();
+        }
+    }
+
+    /**
+     * Records the exception while holding the module lock.
+     * If the SDK thread is used, the lock is not needed on the calling thread.
+     */
+    Countly recordException(final Throwable exception, final boolean itIsHandled, final Map<String, Object> customSegmentation) {
+        if (shouldPostToActor()) {
+            return recordExceptionInternal(exception, itIsHandled, customSegmentation);
+        }
+
+        synchronized (moduleLock) {
+            return recordExceptionInternal(exception, itIsHandled, customSegmentation);
         }
-        return _cly;
     }
 
     Countly addBreadcrumbInternal(@Nullable String breadcrumb) {
@@ -309,21 +779,55 @@ public class ModuleCrash extends ModuleBase {
 
     @Override
     void initFinished(@NonNull CountlyConfig config) {
-        //enable unhandled crash reporting
-        if (config.enableUnhandledCrashReporting) {
+        //enable unhandled crash reporting, with async init it has already been enabled during init
+        if (config.enableUnhandledCrashReporting && !config.asyncInitEnabled) {
             enableCrashReporting();
         }
 
         //check for previous native crash dumps
         if (config.checkForNativeCrashDumps) {
             //flag so that this can be turned off during testing
+            long scanStart = System.nanoTime();
             _cly.moduleCrash.checkForNativeCrashDumps(config.context);
+
+            InitTimingReport timing = _cly.initTimingReport;
+            if (timing != null) {
+                timing.endNestedPhase(InitTimingReport.PHASE_NATIVE_DUMP_SCAN, scanStart);
+            }
+        }
+
+        if (mainThreadWatchdog != null && config.application == null) {
+            //without the activity callbacks it can't be paused in the background
+            L.w("[ModuleCrash] No application was given, main thread stalls are also watched in the background");
+            mainThreadWatchdog.start();
         }
     }
 
+    /**
+     * The main thread watchdog runs only while the app is in the foreground, in the background it would keep the process busy
+     */
     @Override
-    void halt() {
+    void callbackOnActivityStarted(Activity activity) {
+        activitiesStarted++;
+        if (activitiesStarted == 1 && mainThreadWatchdog != null) {
+            mainThreadWatchdog.start();
+        }
+    }
+
+    @Override
+    void callbackOnActivityStopped(Activity activity) {
+        activitiesStarted = Math.max(0, activitiesStarted - 1);
+        if (activitiesStarted == 0 && mainThreadWatchdog != null) {
+            mainThreadWatchdog.stop();
+        }
+    }
 
+    @Override
+    void halt() {
+        if (mainThreadWatchdog != null) {
+            mainThreadWatchdog.stop();
+            mainThreadWatchdog = null;
+        }
     }
 
     public class Crashes {
@@ -333,8 +837,17 @@ public class ModuleCrash extends ModuleBase {
          * @param record String a bread crumb for the crash report
          * @return Returns link to Countly for call chaining
          */
-        public Countly addCrashBreadcrumb(String record) {
-            synchronized (_cly) {
+        public Countly addCrashBreadcrumb(final String record) {
+            if (shouldPostToActor()) {
+                postToActor(new Runnable() {
+                    @Override public void run() {
+                        addBreadcrumbInternal(record);
+                    }
+                });
+                return _cly;
+            }
+
+            synchronized (moduleLock) {
                 L.i("[Crashes] Adding crash breadcrumb");
 
                 return addBreadcrumbInternal(record);
@@ -348,9 +861,7 @@ public class ModuleCrash extends ModuleBase {
          * @return Returns link to Countly for call chaining
          */
         public Countly recordHandledException(Exception exception) {
-            synchronized (_cly) {
-                return recordExceptionInternal(exception, true, null);
-            }
+            return recordException(exception, true, null);
         }
 
         /**
@@ -360,9 +871,7 @@ public class ModuleCrash extends ModuleBase {
          * @return Returns link to Countly for call chaining
          */
         public Countly recordHandledException(Throwable exception) {
-            synchronized (_cly) {
-                return recordExceptionInternal(exception, true, null);
-            }
+            return recordException(exception, true, null);
         }
 
         /**
@@ -372,9 +881,7 @@ public class ModuleCrash extends ModuleBase {
          * @return Returns link to Countly for call chaining
          */
         public Countly recordUnhandledException(Exception exception) {
-            synchronized (_cly) {
-                return recordExceptionInternal(exception, false, null);
-            }
+            return recordException(exception, false, null);
         }
 
         /**
@@ -384,9 +891,7 @@ public class ModuleCrash extends ModuleBase {
          * @return Returns link to Countly for call chaining
          */
         public Countly recordUnhandledException(Throwable exception) {
-            synchronized (_cly) {
-                return recordExceptionInternal(exception, false, null);
-            }
+            return recordException(exception, false, null);
         }
 
         /**
@@ -396,9 +901,7 @@ public class ModuleCrash extends ModuleBase {
          * @return Returns link to Countly for call chaining
          */
         public Countly recordHandledException(final Throwable exception, final Map<String, Object> customSegmentation) {
-            synchronized (_cly) {
-                return recordExceptionInternal(exception, true, customSegmentation);
-            }
+            return recordException(exception, true, customSegmentation);
         }
 
         /**
@@ -408,9 +911,7 @@ public class ModuleCrash extends ModuleBase {
          * @return Returns link to Countly for call chaining
          */
         public Countly recordUnhandledException(final Throwable exception, final Map<String, Object> customSegmentation) {
-            synchronized (_cly) {
-                return recordExceptionInternal(exception, false, customSegmentation);
-            }
+            return recordException(exception, false, customSegmentation);
         }
     }
 }
@@ -300,6 +300,8 @@ public class ModuleDeviceId extends ModuleBase implements OpenUDIDProvider, Devi
         return deviceIdInstance;
     }
 
+    //calls are guarded by the Countly lock instead of the module lock because device ID changes are passed to all modules
+    //state changing calls made before the work deferred by an async init has run are queued behind it
     public class DeviceId {
         /**
          * Changes current device id to the one specified in parameter. Closes current session and
@@ -307,7 +309,16 @@ public class ModuleDeviceId extends ModuleBase implements OpenUDIDProvider, Devi
          *
          * @param deviceId New device ID
          */
-        public void changeWithoutMerge(@Nullable String deviceId) {
+        public void changeWithoutMerge(@Nullable final String deviceId) {
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        changeWithoutMerge(deviceId);
+                    }
+                });
+                return;
+            }
+
             synchronized (_cly) {
                 L.d("[DeviceId] Calling 'changeDeviceIdWithoutMerge'");
 
@@ -326,7 +337,16 @@ public class ModuleDeviceId extends ModuleBase implements OpenUDIDProvider, Devi
          *
          * @param deviceId new device id
          */
-        public void changeWithMerge(@Nullable String deviceId) {
+        public void changeWithMerge(@Nullable final String deviceId) {
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        changeWithMerge(deviceId);
+                    }
+                });
+                return;
+            }
+
             synchronized (_cly) {
                 L.d("[DeviceId] Calling 'changeDeviceIdWithMerge'");
 
@@ -345,6 +365,11 @@ public class ModuleDeviceId extends ModuleBase implements OpenUDIDProvider, Devi
          * @return device ID
          */
         public String getID() {
+            if (sdkActor != null) {
+                //the device ID is a published immutable value, no need to wait for other calls
+                return getDeviceId();
+            }
+
             synchronized (_cly) {
                 L.d("[DeviceId] Calling 'getDeviceID'");
 
@@ -358,6 +383,10 @@ public class ModuleDeviceId extends ModuleBase implements OpenUDIDProvider, Devi
          * @return device ID type
          */
         public DeviceIdType getType() {
+            if (sdkActor != null) {
+                return deviceIdInstance.getType();
+            }
+
             synchronized (_cly) {
                 L.d("[DeviceId] Calling 'getDeviceIDType'");
 
@@ -369,6 +398,15 @@ public class ModuleDeviceId extends ModuleBase implements OpenUDIDProvider, Devi
          * Go into temporary device ID mode
          */
         public void enableTemporaryIdMode() {
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        enableTemporaryIdMode();
+                    }
+                });
+                return;
+            }
+
             synchronized (_cly) {
                 L.i("[DeviceId] Calling 'enableTemporaryIdMode'");
 
@@ -4,10 +4,12 @@ import androidx.annotation.NonNull;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import ly.count.android.sdk.messaging.ModulePush;
 
 public class ModuleEvents extends ModuleBase implements EventProvider {
-    static final Map<String, Event> timedEvents = new HashMap<>();
+    //concurrent so that timed events can be started and ended without the module lock when the SDK thread is used
+    static final ConcurrentHashMap<String, Event> timedEvents = new ConcurrentHashMap<>();
 
     final static String ACTION_EVENT_KEY = "[CLY]_action";
 
@@ -74,7 +76,9 @@ public class ModuleEvents extends ModuleBase implements EventProvider {
             throw new IllegalArgumentException("Countly event count should be greater than zero");
         }
 
-        L.d("[ModuleEvents] Recording event with key: [" + key + "] and provided event ID of:[" + eventIdOverride + "] and segmentation with:[" + (segmentation == null ? "null" : segmentation.size()) + "] keys");
+        if (L.isDebug()) {
+            L.d("[ModuleEvents] Recording event with key: [" + key + "] and provided event ID of:[" + eventIdOverride + "] and segmentation with:[" + (segmentation == null ? "null" : segmentation.size()) + "] keys");
+        }
 
         if (!_cly.isInitialized()) {
             throw new IllegalStateException("Countly.sharedInstance().init must be called before recordEvent");
@@ -84,6 +88,16 @@ public class ModuleEvents extends ModuleBase implements EventProvider {
             Utils.removeUnsupportedDataTypes(segmentation);
         }
 
+        //events can also be recorded by other modules while holding their own lock
+        //the event lock keeps the previous event ID in line with the order in which events are added to the queue
+        long lockWaitStart = _cly.sdkMetrics.startTiming();
+        synchronized (moduleLock) {
+            _cly.sdkMetrics.recordLockAcquired(lockWaitStart);
+            recordEventToQueue(key, segmentation, count, sum, dur, instant, eventIdOverride);
+        }
+    }
+
+    private void recordEventToQueue(@NonNull final String key, final Map<String, Object> segmentation, final int count, final double sum, final double dur, UtilsTime.Instant instant, final String eventIdOverride) {
         //record the current event timestamps
         //if a past event is recorded, instant value will not be null
         if (instant == null) {
@@ -117,43 +131,43 @@ public class ModuleEvents extends ModuleBase implements EventProvider {
         switch (key) {
             case ModuleFeedback.NPS_EVENT_KEY:
             case ModuleFeedback.SURVEY_EVENT_KEY:
-                if (consentProvider.getConsent(Countly.CountlyFeatureNames.feedback)) {
+                if (consentProvider.getConsent(ModuleConsent.FEATURE_FEEDBACK)) {
                     eventQueueProvider.recordEventToEventQueue(key, segmentation, count, sum, dur, timestamp, hour, dow, eventId, pvid, cvid, null);
                     _cly.moduleRequestQueue.sendEventsIfNeeded(true);
                 }
                 break;
             case ModuleFeedback.RATING_EVENT_KEY: //these events can be reported from a lot of sources, therefore multiple consents could apply
-                if (consentProvider.getConsent(Countly.CountlyFeatureNames.starRating) || consentProvider.getConsent(Countly.CountlyFeatureNames.feedback)) {
+                if (consentProvider.getConsent(ModuleConsent.FEATURE_STAR_RATING) || consentProvider.getConsent(ModuleConsent.FEATURE_FEEDBACK)) {
                     eventQueueProvider.recordEventToEventQueue(key, segmentation, count, sum, dur, timestamp, hour, dow, eventId, pvid, cvid, null);
                     _cly.moduleRequestQueue.sendEventsIfNeeded(false);
                 }
                 break;
             case ModuleViews.VIEW_EVENT_KEY:
-                if (consentProvider.getConsent(Countly.CountlyFeatureNames.views)) {
+                if (consentProvider.getConsent(ModuleConsent.FEATURE_VIEWS)) {
                     eventQueueProvider.recordEventToEventQueue(key, segmentation, count, sum, dur, timestamp, hour, dow, eventId, pvid, cvid, null);
                     _cly.moduleRequestQueue.sendEventsIfNeeded(true);
                 }
                 break;
             case ModuleViews.ORIENTATION_EVENT_KEY:
-                if (consentProvider.getConsent(Countly.CountlyFeatureNames.users)) {
+                if (consentProvider.getConsent(ModuleConsent.FEATURE_USERS)) {
                     eventQueueProvider.recordEventToEventQueue(key, segmentation, count, sum, dur, timestamp, hour, dow, eventId, pvid, cvid, null);
                     _cly.moduleRequestQueue.sendEventsIfNeeded(false);
                 }
                 break;
             case ModulePush.PUSH_EVENT_ACTION:
-                if (consentProvider.getConsent(Countly.CountlyFeatureNames.push)) {
+                if (consentProvider.getConsent(ModuleConsent.FEATURE_PUSH)) {
                     eventQueueProvider.recordEventToEventQueue(key, segmentation, count, sum, dur, timestamp, hour, dow, eventId, pvid, cvid, null);
                     _cly.moduleRequestQueue.sendEventsIfNeeded(true);
                 }
                 break;
             case ACTION_EVENT_KEY:
-                if (consentProvider.getConsent(Countly.CountlyFeatureNames.clicks) || consentProvider.getConsent(Countly.CountlyFeatureNames.scrolls)) {
+                if (consentProvider.getConsent(ModuleConsent.FEATURE_CLICKS) || consentProvider.getConsent(ModuleConsent.FEATURE_SCROLLS)) {
                     eventQueueProvider.recordEventToEventQueue(key, segmentation, count, sum, dur, timestamp, hour, dow, eventId, pvid, cvid, null);
                     _cly.moduleRequestQueue.sendEventsIfNeeded(false);
                 }
                 break;
             default:
-                if (consentProvider.getConsent(Countly.CountlyFeatureNames.events)) {
+                if (consentProvider.getConsent(ModuleConsent.FEATURE_EVENTS)) {
                     eventQueueProvider.recordEventToEventQueue(key, segmentation, count, sum, dur, timestamp, hour, dow, eventId, pvid, cvid, previousEventId);
                     previousEventId = eventId;
                     _cly.moduleRequestQueue.sendEventsIfNeeded(false);
@@ -162,6 +176,35 @@ public class ModuleEvents extends ModuleBase implements EventProvider {
         }
     }
 
+    /**
+     * Checks the event arguments on the calling thread and posts recording the event to the SDK thread.
+     * The event time is taken before posting so that the time spent in the queue does not change it.
+     */
+    void postRecordEvent(final String key, final Map<String, Object> segmentation, final int count, final double sum, final double dur, final UtilsTime.Instant instant, final boolean truncateSegmentation) {
+        if (!_cly.isInitialized()) {
+            throw new IllegalStateException("Countly.sharedInstance().init must be called before recordEvent");
+        }
+        if (key == null || key.length() == 0) {
+            throw new IllegalArgumentException("Valid Countly event key is required");
+        }
+        if (count < 1) {
+            throw new IllegalArgumentException("Countly event count should be greater than zero");
+        }
+
+        //the caller is free to change the map after this call returns
+        final Map<String, Object> segmentationCopy = segmentation == null ? null : new HashMap<>(segmentation);
+        final UtilsTime.Instant eventInstant = instant == null ? UtilsTime.getCurrentInstant() : instant;
+
+        postToActor(new Runnable() {
+            @Override public void run() {
+                if (truncateSegmentation) {
+                    Utils.truncateSegmentationValues(segmentationCopy, _cly.config_.maxSegmentationValues, "[Events] recordEvent,", L);
+                }
+                recordEventInternal(key, segmentationCopy, count, sum, dur, eventInstant, null);
+            }
+        });
+    }
+
     boolean startEventInternal(final String key) {
         if (key == null || key.length() == 0) {
             L.e("[ModuleEvents] Can't start event with a null or empty key");
@@ -170,14 +213,14 @@ public class ModuleEvents extends ModuleBase implements EventProvider {
         if (timedEvents.containsKey(key)) {
             return false;
         }
-        L.d("[ModuleEvents] Starting event: [" + key + "]");
+        L.d("[ModuleEvents] Starting event: [{}]", key);
         UtilsTime.Instant instant = UtilsTime.getCurrentInstant();
-        timedEvents.put(key, new Event(key, instant.timestampMs, instant.hour, instant.dow));
-        return true;
+        Event previous = timedEvents.putIfAbsent(key, new Event(key, instant.timestampMs, instant.hour, instant.dow));
+        return previous == null;
     }
 
     boolean endEventInternal(final String key, final Map<String, Object> segmentation, final int count, final double sum) {
-        L.d("[ModuleEvents] Ending event: [" + key + "]");
+        L.d("[ModuleEvents] Ending event: [{}]", key);
 
         if (key == null || key.length() == 0) {
             L.e("[ModuleEvents] Can't end event with a null or empty key");
@@ -187,20 +230,24 @@ public class ModuleEvents extends ModuleBase implements EventProvider {
         Event event = timedEvents.remove(key);
 
         if (event != null) {
-            if (!consentProvider.getConsent(Countly.CountlyFeatureNames.events)) {
+            if (!consentProvider.getConsent(ModuleConsent.FEATURE_EVENTS)) {
                 return true;
             }
 
             if (count < 1) {
                 throw new IllegalArgumentException("Countly event count should be greater than zero");
             }
-            L.d("[ModuleEvents] Ending event: [" + key + "]");
+            L.d("[ModuleEvents] Ending event: [{}]", key);
 
             long currentTimestamp = UtilsTime.currentTimestampMs();
             double duration = (currentTimestamp - event.timestamp) / 1000.0;
             UtilsTime.Instant instant = new UtilsTime.Instant(event.timestamp, event.hour, event.dow);
 
-            eventProvider.recordEventInternal(key, segmentation, count, sum, duration, instant, null);
+            if (shouldPostToActor()) {
+                postRecordEvent(key, segmentation, count, sum, duration, instant, false);
+            } else {
+                eventProvider.recordEventInternal(key, segmentation, count, sum, duration, instant, null);
+            }
             return true;
         } else {
             return false;
@@ -225,7 +272,9 @@ public class ModuleEvents extends ModuleBase implements EventProvider {
 
     @Override
     void halt() {
-        timedEvents.clear();
+        synchronized (moduleLock) {
+            timedEvents.clear();
+        }
     }
 
     public class Events {
@@ -239,13 +288,11 @@ public class ModuleEvents extends ModuleBase implements EventProvider {
          * @param timestamp unix timestamp in milliseconds of when the event occurred
          */
         public void recordPastEvent(final String key, final Map<String, Object> segmentation, long timestamp) {
-            synchronized (_cly) {
-                if (timestamp == 0) {
-                    throw new IllegalStateException("Provided timestamp has to be greater that zero");
-                }
-
-                recordPastEvent(key, segmentation, 1, 0, 0, timestamp);
+            if (timestamp == 0) {
+                throw new IllegalStateException("Provided timestamp has to be greater that zero");
             }
+
+            recordPastEvent(key, segmentation, 1, 0, 0, timestamp);
         }
 
         /**
@@ -261,8 +308,17 @@ public class ModuleEvents extends ModuleBase implements EventProvider {
          * @param timestamp unix timestamp in milliseconds of when the event occurred
          */
         public void recordPastEvent(final String key, final Map<String, Object> segmentation, final int count, final double sum, final double dur, long timestamp) {
-            synchronized (_cly) {
-                L.i("[Events] Calling recordPastEvent: [" + key + "]");
+            if (shouldPostToActor()) {
+                if (timestamp == 0) {
+                    throw new IllegalStateException("Provided timestamp has to be greater that zero");
+                }
+
+                postRecordEvent(key, segmentation, count, sum, dur, UtilsTime.Instant.get(timestamp), false);
+                return;
+            }
+
+            synchronized (moduleLock) {
+                L.i("[Events] Calling recordPastEvent: [{}]", key);
 
                 if (timestamp == 0) {
                     throw new IllegalStateException("Provided timestamp has to be greater that zero");
@@ -280,11 +336,16 @@ public class ModuleEvents extends ModuleBase implements EventProvider {
          * @return true if no event with this key existed before and event is started, false otherwise
          */
         public boolean startEvent(final String key) {
-            synchronized (_cly) {
-                if (!_cly.isInitialized()) {
-                    throw new IllegalStateException("Countly.sharedInstance().init must be called before startEvent");
-                }
+            if (!_cly.isInitialized()) {
+                throw new IllegalStateException("Countly.sharedInstance().init must be called before startEvent");
+            }
 
+            if (shouldPostToActor()) {
+                //timed events are kept in memory, only recording them is posted to the SDK thread
+                return startEventInternal(key);
+            }
+
+            synchronized (moduleLock) {
                 return startEventInternal(key);
             }
         }
@@ -296,9 +357,7 @@ public class ModuleEvents extends ModuleBase implements EventProvider {
          * @return true if event with this key has been previously started, false otherwise
          */
         public boolean endEvent(final String key) {
-            synchronized (_cly) {
-                return endEvent(key, null, 1, 0);
-            }
+            return endEvent(key, null, 1, 0);
         }
 
         /**
@@ -313,11 +372,16 @@ public class ModuleEvents extends ModuleBase implements EventProvider {
          * @throws IllegalArgumentException if key is null or empty, count is less than 1, or if segmentation contains null or empty keys or values
          */
         public boolean endEvent(final String key, final Map<String, Object> segmentation, final int count, final double sum) {
-            synchronized (_cly) {
-                if (!_cly.isInitialized()) {
-                    throw new IllegalStateException("Countly.sharedInstance().init must be called before endEvent");
-                }
+            if (!_cly.isInitialized()) {
+                throw new IllegalStateException("Countly.sharedInstance().init must be called before endEvent");
+            }
 
+            if (shouldPostToActor()) {
+                //timed events are kept in memory, only recording them is posted to the SDK thread
+                return endEventInternal(key, segmentation, count, sum);
+            }
+
+            synchronized (moduleLock) {
                 return endEventInternal(key, segmentation, count, sum);
             }
         }
@@ -328,8 +392,12 @@ public class ModuleEvents extends ModuleBase implements EventProvider {
          * @return true if event with this key has been previously started, false otherwise
          **/
         public boolean cancelEvent(final String key) {
-            synchronized (_cly) {
-                L.i("[Events] Calling cancelEvent: [" + key + "]");
+            if (shouldPostToActor()) {
+                return cancelEventInternal(key);
+            }
+
+            synchronized (moduleLock) {
+                L.i("[Events] Calling cancelEvent: [{}]", key);
 
                 return cancelEventInternal(key);
             }
@@ -343,9 +411,7 @@ public class ModuleEvents extends ModuleBase implements EventProvider {
          * @throws IllegalArgumentException if key is null or empty
          */
         public void recordEvent(final String key) {
-            synchronized (_cly) {
-                recordEvent(key, null, 1, 0);
-            }
+            recordEvent(key, null, 1, 0);
         }
 
         /**
@@ -357,9 +423,7 @@ public class ModuleEvents extends ModuleBase implements EventProvider {
          * @throws IllegalArgumentException if key is null or empty
          */
         public void recordEvent(final String key, final int count) {
-            synchronized (_cly) {
-                recordEvent(key, null, count, 0);
-            }
+            recordEvent(key, null, count, 0);
         }
 
         /**
@@ -372,9 +436,7 @@ public class ModuleEvents extends ModuleBase implements EventProvider {
          * @throws IllegalArgumentException if key is null or empty
          */
         public void recordEvent(final String key, final int count, final double sum) {
-            synchronized (_cly) {
-                recordEvent(key, null, count, sum);
-            }
+            recordEvent(key, null, count, sum);
         }
 
         /**
@@ -386,9 +448,7 @@ public class ModuleEvents extends ModuleBase implements EventProvider {
          * @throws IllegalArgumentException if key is null or empty
          */
         public void recordEvent(final String key, final Map<String, Object> segmentation) {
-            synchronized (_cly) {
-                recordEvent(key, segmentation, 1, 0);
-            }
+            recordEvent(key, segmentation, 1, 0);
         }
 
         /**
@@ -401,9 +461,7 @@ public class ModuleEvents extends ModuleBase implements EventProvider {
          * @throws IllegalArgumentException if key is null or empty
          */
         public void recordEvent(final String key, final Map<String, Object> segmentation, final int count) {
-            synchronized (_cly) {
-                recordEvent(key, segmentation, count, 0);
-            }
+            recordEvent(key, segmentation, count, 0);
         }
 
         /**
@@ -417,9 +475,7 @@ public class ModuleEvents extends ModuleBase implements EventProvider {
          * @throws IllegalArgumentException if key is null or empty, count is less than 1, or if segmentation contains null or empty keys or values
          */
         public void recordEvent(final String key, final Map<String, Object> segmentation, final int count, final double sum) {
-            synchronized (_cly) {
-                recordEvent(key, segmentation, count, sum, 0);
-            }
+            recordEvent(key, segmentation, count, sum, 0);
         }
 
         /**
@@ -434,12 +490,17 @@ public class ModuleEvents extends ModuleBase implements EventProvider {
          * @throws IllegalArgumentException if key is null or empty, count is less than 1, or if segmentation contains null or empty keys or values
          */
         public void recordEvent(final String key, final Map<String, Object> segmentation, final int count, final double sum, final double dur) {
-            synchronized (_cly) {
+            if (shouldPostToActor()) {
+                postRecordEvent(key, segmentation, count, sum, dur, null, true);
+                return;
+            }
+
+            synchronized (moduleLock) {
                 if (!_cly.isInitialized()) {
                     throw new IllegalStateException("Countly.sharedInstance().init must be called before recordEvent");
                 }
 
-                L.i("[Events] Calling recordEvent: [" + key + "]");
+                L.i("[Events] Calling recordEvent: [{}]", key);
 
                 Utils.truncateSegmentationValues(segmentation, _cly.config_.maxSegmentationValues, "[Events] recordEvent,", L);
 
@@ -590,8 +590,17 @@ public class ModuleFeedback extends ModuleBase {
          *
          * @param callback
          */
-        public void getAvailableFeedbackWidgets(@Nullable RetrieveFeedbackWidgets callback) {
-            synchronized (_cly) {
+        public void getAvailableFeedbackWidgets(@Nullable final RetrieveFeedbackWidgets callback) {
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        getAvailableFeedbackWidgets(callback);
+                    }
+                });
+                return;
+            }
+
+            synchronized (moduleLock) {
                 L.i("[Feedback] Trying to retrieve feedback widget list");
 
                 getAvailableFeedbackWidgetsInternal(callback);
@@ -606,8 +615,17 @@ public class ModuleFeedback extends ModuleBase {
          * @param closeButtonText if this is null, no "close" button will be shown
          * @param devCallback
          */
-        public void presentFeedbackWidget(@Nullable CountlyFeedbackWidget widgetInfo, @Nullable Context context, @Nullable String closeButtonText, @Nullable FeedbackCallback devCallback) {
-            synchronized (_cly) {
+        public void presentFeedbackWidget(@Nullable final CountlyFeedbackWidget widgetInfo, @Nullable final Context context, @Nullable final String closeButtonText, @Nullable final FeedbackCallback devCallback) {
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        presentFeedbackWidget(widgetInfo, context, closeButtonText, devCallback);
+                    }
+                });
+                return;
+            }
+
+            synchronized (moduleLock) {
                 L.i("[Feedback] Trying to present feedback widget in an alert dialog");
 
                 presentFeedbackWidgetInternal(widgetInfo, context, closeButtonText, devCallback);
@@ -621,8 +639,17 @@ public class ModuleFeedback extends ModuleBase {
          * @param widgetInfo
          * @param callback
          */
-        public void getFeedbackWidgetData(@Nullable CountlyFeedbackWidget widgetInfo, @Nullable RetrieveFeedbackWidgetData callback) {
-            synchronized (_cly) {
+        public void getFeedbackWidgetData(@Nullable final CountlyFeedbackWidget widgetInfo, @Nullable final RetrieveFeedbackWidgetData callback) {
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        getFeedbackWidgetData(widgetInfo, callback);
+                    }
+                });
+                return;
+            }
+
+            synchronized (moduleLock) {
                 L.i("[Feedback] Trying to retrieve feedback widget data");
 
                 getFeedbackWidgetDataInternal(widgetInfo, callback);
@@ -637,8 +664,18 @@ public class ModuleFeedback extends ModuleBase {
          * @param widgetData
          * @param widgetResult
          */
-        public void reportFeedbackWidgetManually(@Nullable CountlyFeedbackWidget widgetInfo, @Nullable JSONObject widgetData, @Nullable Map<String, Object> widgetResult) {
-            synchronized (_cly) {
+        public void reportFeedbackWidgetManually(@Nullable final CountlyFeedbackWidget widgetInfo, @Nullable final JSONObject widgetData, @Nullable final Map<String, Object> widgetResult) {
+            if (_cly.shouldQueueBehindInit()) {
+                final Map<String, Object> widgetResultCopy = widgetResult == null ? null : new HashMap<>(widgetResult);
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        reportFeedbackWidgetManually(widgetInfo, widgetData, widgetResultCopy);
+                    }
+                });
+                return;
+            }
+
+            synchronized (moduleLock) {
                 L.i("[Feedback] Trying to report feedback widget manually");
 
                 reportFeedbackWidgetManuallyInternal(widgetInfo, widgetData, widgetResult);
@@ -123,11 +123,22 @@ public class ModuleLocation extends ModuleBase {
         locationInterface = null;
     }
 
+    //calls are guarded by the Countly lock instead of the module lock because location values are sent together with the begin session request
+    //state changing calls made before the work deferred by an async init has run are queued behind it
     public class Location {
         /**
          * Disable sending of location data. Erases server side saved location information
          */
         public void disableLocation() {
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        disableLocation();
+                    }
+                });
+                return;
+            }
+
             synchronized (_cly) {
                 L.i("[Location] Calling 'disableLocation'");
 
@@ -145,7 +156,16 @@ public class ModuleLocation extends ModuleBase {
          * @param gpsCoordinates comma separate lat and lng values. For example, "56.42345,123.45325"
          * @param ipAddress ipAddress like "192.168.88.33"
          */
-        public void setLocation(@Nullable String countryCode, @Nullable String city, @Nullable String gpsCoordinates, @Nullable String ipAddress) {
+        public void setLocation(@Nullable final String countryCode, @Nullable final String city, @Nullable final String gpsCoordinates, @Nullable final String ipAddress) {
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        setLocation(countryCode, city, gpsCoordinates, ipAddress);
+                    }
+                });
+                return;
+            }
+
             synchronized (_cly) {
                 L.i("[Location] Calling 'setLocation'");
 
@@ -2,21 +2,88 @@ package ly.count.android.sdk;
 
 import android.util.Log;
 
-public class ModuleLog {
+public class ModuleLog implements PlatformLog {
     public interface LogCallback {
         void LogHappened(String logMessage, ModuleLog.LogLevel logLevel);
     }
 
+    /**
+     * Used to build a log message only when it would actually be printed
+     */
+    public interface MessageSupplier {
+        String get();
+    }
+
     public enum LogLevel {Verbose, Debug, Info, Warning, Error}
 
-    LogCallback logListener = null;
+    volatile LogCallback logListener = null;
+
+    //logs below this level are neither printed nor passed to the listener
+    volatile LogLevel logLevel = LogLevel.Verbose;
+
+    //when set, the listener is informed from a background thread
+    volatile AsyncLogDispatcher asyncDispatcher = null;
+
+    void setLogLevel(LogLevel logLevel) {
+        this.logLevel = logLevel == null ? LogLevel.Verbose : logLevel;
+    }
 
     void SetListener(LogCallback logListener) {
         this.logListener = logListener;
+
+        AsyncLogDispatcher previousDispatcher = asyncDispatcher;
+        asyncDispatcher = null;
+        if (previousDispatcher != null) {
+            previousDispatcher.stop();
+        }
+    }
+
+    /**
+     * Makes the current log listener be informed from a background thread.
+     * Logs are kept in a buffer of the given size until they are delivered.
+     *
+     * @param bufferCapacity how many log messages can wait for delivery before new ones are dropped
+     */
+    void enableAsyncListenerDispatch(int bufferCapacity) {
+        LogCallback listener = logListener;
+        if (listener == null) {
+            return;
+        }
+
+        AsyncLogDispatcher previousDispatcher = asyncDispatcher;
+        asyncDispatcher = new AsyncLogDispatcher(listener, bufferCapacity);
+        if (previousDispatcher != null) {
+            previousDispatcher.stop();
+        }
+    }
+
+    /**
+     * Returns how many log messages were dropped because the async listener buffer was full
+     *
+     * @return dropped message count, "0" if async dispatch is not used
+     */
+    public long getDroppedListenerLogCount() {
+        AsyncLogDispatcher dispatcher = asyncDispatcher;
+        if (dispatcher == null) {
+            return 0;
+        }
+        return dispatcher.getOverflowCount();
+    }
+
+    /**
+     * Delivers all buffered log messages to the listener on the calling thread.
+     * Does nothing if async dispatch is not used.
+     * Called from the crash handler so that logs leading up to a crash are not lost.
+     */
+    public void flushListener() {
+        AsyncLogDispatcher dispatcher = asyncDispatcher;
+        if (dispatcher != null) {
+            dispatcher.flush();
+        }
     }
 
     public void v(String msg) {
-        if (!logEnabled()) {
+        if (!isLevelEnabled(LogLevel.Verbose)) {
             return;
         }
         if (Countly.sharedInstance().isLoggingEnabled()) {
@@ -26,7 +93,7 @@ public class ModuleLog {
     }
 
     public void d(String msg) {
-        if (!logEnabled()) {
+        if (!isLevelEnabled(LogLevel.Debug)) {
             return;
         }
         if (Countly.sharedInstance().isLoggingEnabled()) {
@@ -36,7 +103,7 @@ public class ModuleLog {
     }
 
     public void i(String msg) {
-        if (!logEnabled()) {
+        if (!isLevelEnabled(LogLevel.Info)) {
             return;
         }
         if (Countly.sharedInstance().isLoggingEnabled()) {
@@ -50,7 +117,7 @@ public class ModuleLog {
     }
 
     public void w(String msg, Throwable t) {
-        if (!logEnabled()) {
+        if (!isLevelEnabled(LogLevel.Warning)) {
             return;
         }
         if (Countly.sharedInstance().isLoggingEnabled()) {
@@ -64,7 +131,7 @@ public class ModuleLog {
     }
 
     public void e(String msg, Throwable t) {
-        if (!logEnabled()) {
+        if (!isLevelEnabled(LogLevel.Error)) {
             return;
         }
         if (Countly.sharedInstance().isLoggingEnabled()) {
@@ -73,10 +140,210 @@ public class ModuleLog {
         informListener(msg, t, LogLevel.Error);
     }
 
+    /*
+     * Lazy variants of the log calls.
+     * The message is only built if logging is enabled, so that hot paths don't create strings that are thrown away.
+     * Format variants replace each '{}' in the format with the next argument.
+     * They have a fixed argument count so that no varargs array is created when logging is disabled.
+     */
+
+    public void v(MessageSupplier supplier) {
+        if (isVerbose()) {
+            v(supplier.get());
+        }
+    }
+
+    public void v(String format, Object arg1) {
+        if (isVerbose()) {
+            v(formatMessage(format, arg1, null, null, null, 1));
+        }
+    }
+
+    public void v(String format, Object arg1, Object arg2) {
+        if (isVerbose()) {
+            v(formatMessage(format, arg1, arg2, null, null, 2));
+        }
+    }
+
+    public void v(String format, Object arg1, Object arg2, Object arg3) {
+        if (isVerbose()) {
+            v(formatMessage(format, arg1, arg2, arg3, null, 3));
+        }
+    }
+
+    public void v(String format, Object arg1, Object arg2, Object arg3, Object arg4) {
+        if (isVerbose()) {
+            v(formatMessage(format, arg1, arg2, arg3, arg4, 4));
+        }
+    }
+
+    public void d(MessageSupplier supplier) {
+        if (isDebug()) {
+            d(supplier.get());
+        }
+    }
+
+    public void d(String format, Object arg1) {
+        if (isDebug()) {
+            d(formatMessage(format, arg1, null, null, null, 1));
+        }
+    }
+
+    public void d(String format, Object arg1, Object arg2) {
+        if (isDebug()) {
+            d(formatMessage(format, arg1, arg2, null, null, 2));
+        }
+    }
+
+    public void d(String format, Object arg1, Object arg2, Object arg3) {
+        if (isDebug()) {
+            d(formatMessage(format, arg1, arg2, arg3, null, 3));
+        }
+    }
+
+    public void d(String format, Object arg1, Object arg2, Object arg3, Object arg4) {
+        if (isDebug()) {
+            d(formatMessage(format, arg1, arg2, arg3, arg4, 4));
+        }
+    }
+
+    public void i(MessageSupplier supplier) {
+        if (isInfo()) {
+            i(supplier.get());
+        }
+    }
+
+    public void i(String format, Object arg1) {
+        if (isInfo()) {
+            i(formatMessage(format, arg1, null, null, null, 1));
+        }
+    }
+
+    public void i(String format, Object arg1, Object arg2) {
+        if (isInfo()) {
+            i(formatMessage(format, arg1, arg2, null, null, 2));
+        }
+    }
+
+    public void i(String format, Object arg1, Object arg2, Object arg3) {
+        if (isInfo()) {
+            i(formatMessage(format, arg1, arg2, arg3, null, 3));
+        }
+    }
+
+    public void w(MessageSupplier supplier) {
+        if (isWarning()) {
+            w(supplier.get());
+        }
+    }
+
+    public void w(String format, Object arg1) {
+        if (isWarning()) {
+            w(formatMessage(format, arg1, null, null, null, 1));
+        }
+    }
+
+    public void w(String format, Object arg1, Object arg2) {
+        if (isWarning()) {
+            w(formatMessage(format, arg1, arg2, null, null, 2));
+        }
+    }
+
+    public void e(MessageSupplier supplier) {
+        if (isError()) {
+            e(supplier.get());
+        }
+    }
+
+    public void e(String format, Object arg1) {
+        if (isError()) {
+            e(formatMessage(format, arg1, null, null, null, 1));
+        }
+    }
+
+    public void e(String format, Object arg1, Object arg2) {
+        if (isError()) {
+            e(formatMessage(format, arg1, arg2, null, null, 2));
+        }
+    }
+
     public boolean logEnabled() {
         return (logListener != null) || Countly.sharedInstance().isLoggingEnabled();
     }
 
+    /**
+     * Cheap check that can be used to guard building expensive log messages
+     *
+     * @return true if logs of the given level would be printed or passed to the listener
+     */
+    public boolean isLevelEnabled(LogLevel level) {
+        return level.ordinal() >= logLevel.ordinal() && logEnabled();
+    }
+
+    public boolean isVerbose() {
+        return isLevelEnabled(LogLevel.Verbose);
+    }
+
+    public boolean isDebug() {
+        return isLevelEnabled(LogLevel.Debug);
+    }
+
+    public boolean isInfo() {
+        return isLevelEnabled(LogLevel.Info);
+    }
+
+    public boolean isWarning() {
+        return isLevelEnabled(LogLevel.Warning);
+    }
+
+    public boolean isError() {
+        return isLevelEnabled(LogLevel.Error);
+    }
+
+    /**
+     * Replaces '{}' placeholders in the given format with the provided arguments in order.
+     * Placeholders without a matching argument are left as is.
+     */
+    static String formatMessage(String format, Object arg1, Object arg2, Object arg3, Object arg4, int argCount) {
+        if (format == null) {
+            return "";
+        }
+
+        StringBuilder sb = new StringBuilder(format.length() + 16 * argCount);
+        int argIndex = 0;
+        int position = 0;
+
+        while (true) {
+            int placeholder = format.indexOf("{}", position);
+            if (placeholder < 0 || argIndex >= argCount) {
+                break;
+            }
+
+            sb.append(format, position, placeholder);
+
+            switch (argIndex) {
+                case 0:
+                    sb.append(arg1);
+                    break;
+                case 1:
+                    sb.append(arg2);
+                    break;
+                case 2:
+                    sb.append(arg3);
+                    break;
+                default:
+                    sb.append(arg4);
+                    break;
+            }
+
+            argIndex++;
+            position = placeholder + 2;
+        }
+
+        sb.append(format, position, format.length());
+        return sb.toString();
+    }
+
     private void informListener(String msg, final Throwable t, final LogLevel level) {
         try {
             if (msg == null) {
@@ -86,8 +353,15 @@ public class ModuleLog {
                 msg += Log.getStackTraceString(t);
             }
 
-            if (logListener != null) {
-                logListener.LogHappened(msg, level);
+            AsyncLogDispatcher dispatcher = asyncDispatcher;
+            if (dispatcher != null) {
+                dispatcher.enqueue(msg, level);
+                return;
+            }
+
+            LogCallback listener = logListener;
+            if (listener != null) {
+                listener.LogHappened(msg, level);
             }
         } catch (Exception ex) {
             Log.e(Countly.TAG, "[ModuleLog] Failed to inform listener [" + ex.toString() + "]");
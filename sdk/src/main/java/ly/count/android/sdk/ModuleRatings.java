@@ -572,15 +572,17 @@ public class ModuleRatings extends ModuleBase {
 
     @Override
     void callbackOnActivityResumed(Activity activity) {
-        if (showStarRatingDialogOnFirstActivity) {
-            StarRatingPreferences srp = loadStarRatingPreferences(storageProvider);
-            srp.isShownForCurrentVersion = true;
-            srp.automaticHasBeenShown = true;
+        synchronized (moduleLock) {
+            if (showStarRatingDialogOnFirstActivity) {
+                StarRatingPreferences srp = loadStarRatingPreferences(storageProvider);
+                srp.isShownForCurrentVersion = true;
+                srp.automaticHasBeenShown = true;
 
-            showStarRatingInternal(activity, starRatingCallback_);
+                showStarRatingInternal(activity, starRatingCallback_);
 
-            saveStarRatingPreferences(srp);
-            showStarRatingDialogOnFirstActivity = false;
+                saveStarRatingPreferences(srp);
+                showStarRatingDialogOnFirstActivity = false;
+            }
         }
     }
 
@@ -622,13 +624,22 @@ public class ModuleRatings extends ModuleBase {
          * @param comment comment set by the user
          * @param userCanBeContacted set true if the user wants you to contact him
          */
-        public void recordRatingWidgetWithID(String widgetId, int rating, String email, String comment, boolean userCanBeContacted) {
-            synchronized (_cly) {
-                L.i("[Ratings] Calling recordRatingWidgetWithID");
+        public void recordRatingWidgetWithID(final String widgetId, final int rating, final String email, final String comment, final boolean userCanBeContacted) {
+            if (widgetId == null || widgetId.isEmpty()) {
+                throw new IllegalStateException("A valid widgetID must be provided. The current one is either null or empty");
+            }
 
-                if (widgetId == null || widgetId.isEmpty()) {
-                    throw new IllegalStateException("A valid widgetID must be provided. The current one is either null or empty");
-                }
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        recordRatingWidgetWithID(widgetId, rating, email, comment, userCanBeContacted);
+                    }
+                });
+                return;
+            }
+
+            synchronized (moduleLock) {
+                L.i("[Ratings] Calling recordRatingWidgetWithID");
 
                 recordManualRatingInternal(widgetId, rating, email, comment, userCanBeContacted);
             }
@@ -651,7 +662,16 @@ public class ModuleRatings extends ModuleBase {
          * @param widgetId ID that identifies this dialog
          */
         public void presentRatingWidgetWithID(final String widgetId, final String closeButtonText, final Activity activity, final FeedbackRatingCallback callback) {
-            synchronized (_cly) {
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        presentRatingWidgetWithID(widgetId, closeButtonText, activity, callback);
+                    }
+                });
+                return;
+            }
+
+            synchronized (moduleLock) {
                 L.i("[Ratings] Calling presentRatingWidgetWithID");
 
                 showFeedbackPopupInternal(widgetId, closeButtonText, activity, callback);
@@ -664,8 +684,26 @@ public class ModuleRatings extends ModuleBase {
          * @param activity the activity that will own the dialog
          * @param callback callback for the star rating dialog "rate" and "dismiss" events
          */
-        public void showStarRating(Activity activity, StarRatingCallback callback) {
-            synchronized (_cly) {
+        public void showStarRating(final Activity activity, final StarRatingCallback callback) {
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        //the dialog has to be shown from the main thread
+                        new Handler(Looper.getMainLooper()).post(new Runnable() {
+                            @Override public void run() {
+                                showStarRatingNow(activity, callback);
+                            }
+                        });
+                    }
+                });
+                return;
+            }
+
+            showStarRatingNow(activity, callback);
+        }
+
+        private void showStarRatingNow(Activity activity, StarRatingCallback callback) {
+            synchronized (moduleLock) {
                 L.i("[Ratings] Calling showStarRating");
 
                 if (!consentProvider.getConsent(Countly.CountlyFeatureNames.starRating)) {
@@ -682,7 +720,7 @@ public class ModuleRatings extends ModuleBase {
          * @return
          */
         public int getCurrentVersionsSessionCount() {
-            synchronized (_cly) {
+            synchronized (moduleLock) {
                 int sessionCount = getCurrentVersionsSessionCountInternal(_cly.countlyStore);
 
                 L.i("[Ratings] Getting star rating current version session count: [" + sessionCount + "]");
@@ -695,7 +733,16 @@ public class ModuleRatings extends ModuleBase {
          * Set the automatic star rating session count back to 0
          */
         public void clearAutomaticStarRatingSessionCount() {
-            synchronized (_cly) {
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        clearAutomaticStarRatingSessionCount();
+                    }
+                });
+                return;
+            }
+
+            synchronized (moduleLock) {
                 L.i("[Ratings] Clearing star rating session count");
 
                 clearAutomaticStarRatingSessionCountInternal();
@@ -706,7 +753,7 @@ public class ModuleRatings extends ModuleBase {
          * Returns the session limit set for automatic star rating
          */
         public int getAutomaticStarRatingSessionLimit() {
-            synchronized (_cly) {
+            synchronized (moduleLock) {
                 int sessionLimit = ModuleRatings.getAutomaticStarRatingSessionLimitInternal(_cly.countlyStore);
 
                 L.i("[Ratings] Getting automatic star rating session limit: [" + sessionLimit + "]");
@@ -2,6 +2,7 @@ package ly.count.android.sdk;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -21,6 +22,9 @@ public class ModuleRemoteConfig extends ModuleBase {
     @Nullable
     Map<String, String> metricOverride = null;
 
+    //immutable copy of the stored values, published after every change when the SDK thread is used
+    volatile Map<String, Object> valuesSnapshot = null;
+
     ModuleRemoteConfig(Countly cly, final CountlyConfig config) {
         super(cly, config);
         L.v("[ModuleRemoteConfig] Initialising");
@@ -104,7 +108,9 @@ public class ModuleRemoteConfig extends ModuleBase {
                     String error = null;
                     try {
                         boolean clearOldValues = keysExcept == null && keysOnly == null;
-                        mergeCheckResponseIntoCurrentValues(clearOldValues, checkResponse);
+                        synchronized (moduleLock) {
+                            mergeCheckResponseIntoCurrentValues(clearOldValues, checkResponse);
+                        }
                     } catch (Exception ex) {
                         L.e("[ModuleRemoteConfig] updateRemoteConfigValues - execute, Encountered critical issue while trying to download remote config information from the server, [" + ex.toString() + "]");
                         error = "Encountered critical issue while trying to download remote config information from the server, [" + ex.toString() + "]";
@@ -186,6 +192,32 @@ public class ModuleRemoteConfig extends ModuleBase {
 
     void saveConfig(RemoteConfigValueStore rcvs) throws Exception {
         storageProvider.setRemoteConfigValues(rcvs.dataToString());
+        publishValuesSnapshot(rcvs);
+    }
+
+    void publishValuesSnapshot(@NonNull RemoteConfigValueStore rcvs) {
+        if (sdkActor != null) {
+            valuesSnapshot = Collections.unmodifiableMap(rcvs.getAllValues());
+        }
+    }
+
+    /**
+     * Returns the latest published values, loading them from storage if nothing is published yet
+     */
+    @NonNull Map<String, Object> getValuesSnapshot() {
+        Map<String, Object> snapshot = valuesSnapshot;
+        if (snapshot == null) {
+            synchronized (moduleLock) {
+                try {
+                    publishValuesSnapshot(loadConfig());
+                } catch (Exception ex) {
+                    L.e("[ModuleRemoteConfig] getValuesSnapshot, Call failed:[" + ex.toString() + "]");
+                    valuesSnapshot = Collections.emptyMap();
+                }
+                snapshot = valuesSnapshot;
+            }
+        }
+        return snapshot;
     }
 
     /**
@@ -201,6 +233,9 @@ public class ModuleRemoteConfig extends ModuleBase {
 
     void clearValueStoreInternal() {
         storageProvider.setRemoteConfigValues("");
+        if (sdkActor != null) {
+            valuesSnapshot = Collections.emptyMap();
+        }
     }
 
     Map<String, Object> getAllRemoteConfigValuesInternal() {
@@ -318,7 +353,16 @@ public class ModuleRemoteConfig extends ModuleBase {
          * Clear all stored remote config_ values
          */
         public void clearStoredValues() {
-            synchronized (_cly) {
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        clearStoredValues();
+                    }
+                });
+                return;
+            }
+
+            synchronized (moduleLock) {
                 L.i("[RemoteConfig] Calling 'clearStoredValues'");
 
                 clearValueStoreInternal();
@@ -326,7 +370,15 @@ public class ModuleRemoteConfig extends ModuleBase {
         }
 
         public Map<String, Object> getAllValues() {
-            synchronized (_cly) {
+            if (sdkActor != null) {
+                if (!consentProvider.getConsent(Countly.CountlyFeatureNames.remoteConfig)) {
+                    return null;
+                }
+
+                return new HashMap<>(getValuesSnapshot());
+            }
+
+            synchronized (moduleLock) {
                 L.i("[RemoteConfig] Calling 'getAllValues'");
 
                 if (!consentProvider.getConsent(Countly.CountlyFeatureNames.remoteConfig)) {
@@ -344,7 +396,15 @@ public class ModuleRemoteConfig extends ModuleBase {
          * @return
          */
         public Object getValueForKey(String key) {
-            synchronized (_cly) {
+            if (sdkActor != null) {
+                if (!consentProvider.getConsent(Countly.CountlyFeatureNames.remoteConfig)) {
+                    return null;
+                }
+
+                return getValuesSnapshot().get(key);
+            }
+
+            synchronized (moduleLock) {
                 L.i("[RemoteConfig] Calling remoteConfigValueForKey, " + key);
 
                 if (!consentProvider.getConsent(Countly.CountlyFeatureNames.remoteConfig)) {
@@ -361,8 +421,18 @@ public class ModuleRemoteConfig extends ModuleBase {
          * @param keysToExclude
          * @param callback
          */
-        public void updateExceptKeys(String[] keysToExclude, RemoteConfigCallback callback) {
-            synchronized (_cly) {
+        public void updateExceptKeys(final String[] keysToExclude, final RemoteConfigCallback callback) {
+            if (_cly.shouldQueueBehindInit()) {
+                final String[] keysToExcludeCopy = keysToExclude == null ? null : keysToExclude.clone();
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        updateExceptKeys(keysToExcludeCopy, callback);
+                    }
+                });
+                return;
+            }
+
+            synchronized (moduleLock) {
                 L.i("[RemoteConfig] Manually calling to updateRemoteConfig with exclude keys");
 
                 if (!consentProvider.getConsent(Countly.CountlyFeatureNames.remoteConfig)) {
@@ -384,8 +454,18 @@ public class ModuleRemoteConfig extends ModuleBase {
          * @param keysToInclude
          * @param callback
          */
-        public void updateForKeysOnly(String[] keysToInclude, RemoteConfigCallback callback) {
-            synchronized (_cly) {
+        public void updateForKeysOnly(final String[] keysToInclude, final RemoteConfigCallback callback) {
+            if (_cly.shouldQueueBehindInit()) {
+                final String[] keysToIncludeCopy = keysToInclude == null ? null : keysToInclude.clone();
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        updateForKeysOnly(keysToIncludeCopy, callback);
+                    }
+                });
+                return;
+            }
+
+            synchronized (moduleLock) {
                 L.i("[RemoteConfig] Manually calling to updateRemoteConfig with include keys");
                 if (!consentProvider.getConsent(Countly.CountlyFeatureNames.remoteConfig)) {
                     if (callback != null) {
@@ -405,8 +485,17 @@ public class ModuleRemoteConfig extends ModuleBase {
          *
          * @param callback
          */
-        public void update(RemoteConfigCallback callback) {
-            synchronized (_cly) {
+        public void update(final RemoteConfigCallback callback) {
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        update(callback);
+                    }
+                });
+                return;
+            }
+
+            synchronized (moduleLock) {
                 L.i("[RemoteConfig] Manually calling to updateRemoteConfig");
 
                 if (!consentProvider.getConsent(Countly.CountlyFeatureNames.remoteConfig)) {
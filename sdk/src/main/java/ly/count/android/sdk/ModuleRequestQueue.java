@@ -145,11 +145,14 @@ public class ModuleRequestQueue extends ModuleBase implements BaseInfoProvider {
      * They will be sent either if the exceed the Threshold size or if their sending is forced
      */
     protected void sendEventsIfNeeded(boolean forceSendingEvents) {
-        int eventsInEventQueue = storageProvider.getEventQueueSize();
-        L.v("[Countly] forceSendingEvents, forced:[" + forceSendingEvents + "], event count:[" + eventsInEventQueue + "]");
+        //called from many modules, the lock makes the size check and the queue flush happen together
+        synchronized (moduleLock) {
+            int eventsInEventQueue = storageProvider.getEventQueueSize();
+            L.v("[Countly] forceSendingEvents, forced:[" + forceSendingEvents + "], event count:[" + eventsInEventQueue + "]");
 
-        if ((forceSendingEvents && eventsInEventQueue > 0) || eventsInEventQueue >= Countly.EVENT_QUEUE_SIZE_THRESHOLD) {
-            requestQueueProvider.recordEvents(storageProvider.getEventsForRequestAndEmptyEventQueue());
+            if ((forceSendingEvents && eventsInEventQueue > 0) || eventsInEventQueue >= Countly.EVENT_QUEUE_SIZE_THRESHOLD) {
+                requestQueueProvider.recordEvents(storageProvider.getEventsForRequestAndEmptyEventQueue());
+            }
         }
     }
 
@@ -212,25 +215,29 @@ public class ModuleRequestQueue extends ModuleBase implements BaseInfoProvider {
     /**
      * Go through the request queue and replace the appKey of all requests with the current appKey
      */
-    synchronized public void requestQueueOverwriteAppKeysInternal() {
-        L.i("[ModuleRequestQueue] Calling requestQueueOverwriteAppKeys");
+    public void requestQueueOverwriteAppKeysInternal() {
+        synchronized (moduleLock) {
+            L.i("[ModuleRequestQueue] Calling requestQueueOverwriteAppKeys");
 
-        List<String> filteredRequests = requestQueueReplaceWithAppKey(storageProvider.getRequests(), baseInfoProvider.getAppKey());
-        if (filteredRequests != null) {
-            storageProvider.replaceRequestList(filteredRequests);
-            attemptToSendStoredRequestsInternal();
+            List<String> filteredRequests = requestQueueReplaceWithAppKey(storageProvider.getRequests(), baseInfoProvider.getAppKey());
+            if (filteredRequests != null) {
+                storageProvider.replaceRequestList(filteredRequests);
+                attemptToSendStoredRequestsInternal();
+            }
         }
     }
 
     /**
      * Go through the request queue and delete all requests that don't have the current application key
      */
-    synchronized public void requestQueueEraseAppKeysRequestsInternal() {
-        L.i("[ModuleRequestQueue] Calling requestQueueEraseAppKeysRequests");
+    public void requestQueueEraseAppKeysRequestsInternal() {
+        synchronized (moduleLock) {
+            L.i("[ModuleRequestQueue] Calling requestQueueEraseAppKeysRequests");
 
-        List<String> filteredRequests = requestQueueRemoveWithoutAppKey(storageProvider.getRequests(), baseInfoProvider.getAppKey());
-        storageProvider.replaceRequestList(filteredRequests);
-        attemptToSendStoredRequestsInternal();
+            List<String> filteredRequests = requestQueueRemoveWithoutAppKey(storageProvider.getRequests(), baseInfoProvider.getAppKey());
+            storageProvider.replaceRequestList(filteredRequests);
+            attemptToSendStoredRequestsInternal();
+        }
     }
 
     /**
@@ -305,7 +312,7 @@ public class ModuleRequestQueue extends ModuleBase implements BaseInfoProvider {
          * @return return "true" if HTTP POST ir forced
          */
         public boolean isHttpPostForced() {
-            synchronized (_cly) {
+            synchronized (moduleLock) {
                 L.v("[RequestQueue] Calling 'isHttpPostForced'");
 
                 return isHttpPostForcedInternal();
@@ -318,7 +325,7 @@ public class ModuleRequestQueue extends ModuleBase implements BaseInfoProvider {
          * @return returns if devices is detected as a app crawler
          */
         public boolean isDeviceAppCrawler() {
-            synchronized (_cly) {
+            synchronized (moduleLock) {
                 L.v("[RequestQueue] Calling 'isDeviceAppCrawler'");
                 return isDeviceAppCrawlerInternal();
             }
@@ -328,7 +335,7 @@ public class ModuleRequestQueue extends ModuleBase implements BaseInfoProvider {
          * Return if the countly sdk should ignore app crawlers
          */
         public boolean ifShouldIgnoreCrawlers() {
-            synchronized (_cly) {
+            synchronized (moduleLock) {
                 L.v("[RequestQueue] Calling 'ifShouldIgnoreCrawlers'");
                 return ifShouldIgnoreCrawlersInternal();
             }
@@ -340,7 +347,16 @@ public class ModuleRequestQueue extends ModuleBase implements BaseInfoProvider {
          * Call only if you don't need that information
          */
         public void flushQueues() {
-            synchronized (_cly) {
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        flushQueues();
+                    }
+                });
+                return;
+            }
+
+            synchronized (moduleLock) {
                 L.v("[RequestQueue] Calling 'flushQueues'");
                 flushQueuesInternal();
             }
@@ -351,7 +367,16 @@ public class ModuleRequestQueue extends ModuleBase implements BaseInfoProvider {
          * attempt to process stored requests on demand
          */
         public void attemptToSendStoredRequests() {
-            synchronized (_cly) {
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        attemptToSendStoredRequests();
+                    }
+                });
+                return;
+            }
+
+            synchronized (moduleLock) {
                 L.v("[RequestQueue] Calling 'attemptToSendStoredRequestsInternal'");
                 attemptToSendStoredRequestsInternal();
             }
@@ -361,7 +386,16 @@ public class ModuleRequestQueue extends ModuleBase implements BaseInfoProvider {
          * Go through the request queue and replace the appKey of all requests with the current appKey
          */
         public void overwriteAppKeys() {
-            synchronized (_cly) {
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        overwriteAppKeys();
+                    }
+                });
+                return;
+            }
+
+            synchronized (moduleLock) {
                 L.i("[Countly] Calling overwriteAppKeys");
                 requestQueueOverwriteAppKeysInternal();
             }
@@ -371,7 +405,16 @@ public class ModuleRequestQueue extends ModuleBase implements BaseInfoProvider {
          * Go through the request queue and delete all requests that don't have the current application key
          */
         public void eraseWrongAppKeyRequests() {
-            synchronized (_cly) {
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        eraseWrongAppKeyRequests();
+                    }
+                });
+                return;
+            }
+
+            synchronized (moduleLock) {
                 L.i("[Countly] Calling eraseWrongAppKeyRequests");
                 requestQueueEraseAppKeysRequestsInternal();
             }
@@ -391,8 +434,18 @@ public class ModuleRequestQueue extends ModuleBase implements BaseInfoProvider {
          *
          * This call should not be used lightly and should only be used if the SDK misses some specific functionality.
          */
-        public void addDirectRequest(@NonNull Map<String, String> requestMap) {
-            synchronized (_cly) {
+        public void addDirectRequest(@NonNull final Map<String, String> requestMap) {
+            if (_cly.shouldQueueBehindInit()) {
+                final Map<String, String> requestMapCopy = requestMap == null ? null : new HashMap<>(requestMap);
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        addDirectRequest(requestMapCopy);
+                    }
+                });
+                return;
+            }
+
+            synchronized (moduleLock) {
                 L.i("[Countly] Calling addDirectRequest");
                 addDirectRequestInternal(requestMap);
             }
@@ -404,14 +457,32 @@ public class ModuleRequestQueue extends ModuleBase implements BaseInfoProvider {
          * This involves the Request queue and event queue.
          */
         public void esWriteCachesToPersistence() {
-            synchronized (_cly) {
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        esWriteCachesToPersistence();
+                    }
+                });
+                return;
+            }
+
+            synchronized (moduleLock) {
                 L.i("[Countly] Calling esWriteCachesToStorage");
                 esWriteCachesToPersistenceInternal(null);
             }
         }
 
-        public void esWriteCachesToPersistence(@Nullable ExplicitStorageCallback callback) {
-            synchronized (_cly) {
+        public void esWriteCachesToPersistence(@Nullable final ExplicitStorageCallback callback) {
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        esWriteCachesToPersistence(callback);
+                    }
+                });
+                return;
+            }
+
+            synchronized (moduleLock) {
                 L.i("[Countly] Calling esWriteCachesToStorage");
                 esWriteCachesToPersistenceInternal(callback);
             }
@@ -98,8 +98,19 @@ public class ModuleSessions extends ModuleBase {
         prevSessionDurationStartTime_ = 0;
     }
 
+    //calls are guarded by the Countly lock instead of the module lock because session changes also change the state of the location, views and request queue modules
+    //state changing calls made before the work deferred by an async init has run are queued behind it
     public class Sessions {
         public void beginSession() {
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        beginSession();
+                    }
+                });
+                return;
+            }
+
             synchronized (_cly) {
                 L.i("[Sessions] Calling 'beginSession', manual session control enabled:[" + manualSessionControlEnabled + "]");
 
@@ -113,6 +124,15 @@ public class ModuleSessions extends ModuleBase {
         }
 
         public void updateSession() {
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        updateSession();
+                    }
+                });
+                return;
+            }
+
             synchronized (_cly) {
                 L.i("[Sessions] Calling 'updateSession', manual session control enabled:[" + manualSessionControlEnabled + "]");
 
@@ -126,6 +146,15 @@ public class ModuleSessions extends ModuleBase {
         }
 
         public void endSession() {
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        endSession();
+                    }
+                });
+                return;
+            }
+
             synchronized (_cly) {
                 L.i("[Sessions] Calling 'endSession', manual session control enabled:[" + manualSessionControlEnabled + "]");
 
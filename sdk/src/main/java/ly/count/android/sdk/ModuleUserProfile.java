@@ -328,14 +328,24 @@ public class ModuleUserProfile extends ModuleBase {
         userProfileInterface = null;
     }
 
+    //calls made before the work deferred by an async init has run are queued behind it
     public class UserProfile {
         /**
          * Increment custom property value by 1.
          *
          * @param key String with property name to increment
          */
-        public void increment(String key) {
-            synchronized (_cly) {
+        public void increment(final String key) {
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        increment(key);
+                    }
+                });
+                return;
+            }
+
+            synchronized (moduleLock) {
                 Countly.userData.increment(key);
             }
         }
@@ -346,8 +356,17 @@ public class ModuleUserProfile extends ModuleBase {
          * @param key String with property name to increment
          * @param value int value by which to increment
          */
-        public void incrementBy(String key, int value) {
-            synchronized (_cly) {
+        public void incrementBy(final String key, final int value) {
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        incrementBy(key, value);
+                    }
+                });
+                return;
+            }
+
+            synchronized (moduleLock) {
                 Countly.userData.incrementBy(key, value);
             }
         }
@@ -358,8 +377,17 @@ public class ModuleUserProfile extends ModuleBase {
          * @param key String with property name to multiply
          * @param value int value by which to multiply
          */
-        public void multiply(String key, int value) {
-            synchronized (_cly) {
+        public void multiply(final String key, final int value) {
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        multiply(key, value);
+                    }
+                });
+                return;
+            }
+
+            synchronized (moduleLock) {
                 Countly.userData.multiply(key, value);
             }
         }
@@ -370,8 +398,17 @@ public class ModuleUserProfile extends ModuleBase {
          * @param key String with property name to check for max
          * @param value int value to check for max
          */
-        public void saveMax(String key, int value) {
-            synchronized (_cly) {
+        public void saveMax(final String key, final int value) {
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        saveMax(key, value);
+                    }
+                });
+                return;
+            }
+
+            synchronized (moduleLock) {
                 Countly.userData.saveMax(key, value);
             }
         }
@@ -382,8 +419,17 @@ public class ModuleUserProfile extends ModuleBase {
          * @param key String with property name to check for min
          * @param value int value to check for min
          */
-        public void saveMin(String key, int value) {
-            synchronized (_cly) {
+        public void saveMin(final String key, final int value) {
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        saveMin(key, value);
+                    }
+                });
+                return;
+            }
+
+            synchronized (moduleLock) {
                 Countly.userData.saveMin(key, value);
             }
         }
@@ -394,8 +440,17 @@ public class ModuleUserProfile extends ModuleBase {
          * @param key String with property name to set
          * @param value String value to set
          */
-        public void setOnce(String key, String value) {
-            synchronized (_cly) {
+        public void setOnce(final String key, final String value) {
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        setOnce(key, value);
+                    }
+                });
+                return;
+            }
+
+            synchronized (moduleLock) {
                 Countly.userData.setOnce(key, value);
             }
         }
@@ -405,8 +460,17 @@ public class ModuleUserProfile extends ModuleBase {
          * @param key String with property name for array property
          * @param value String with value to add to array
          */
-        public void push(String key, String value) {
-            synchronized (_cly) {
+        public void push(final String key, final String value) {
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        push(key, value);
+                    }
+                });
+                return;
+            }
+
+            synchronized (moduleLock) {
                 Countly.userData.pushValue(key, value);
             }
         }
@@ -416,8 +480,17 @@ public class ModuleUserProfile extends ModuleBase {
          * @param key String with property name for array property
          * @param value String with value to add to array
          */
-        public void pushUnique(String key, String value) {
-            synchronized (_cly) {
+        public void pushUnique(final String key, final String value) {
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        pushUnique(key, value);
+                    }
+                });
+                return;
+            }
+
+            synchronized (moduleLock) {
                 Countly.userData.pushUniqueValue(key, value);
             }
         }
@@ -427,8 +500,17 @@ public class ModuleUserProfile extends ModuleBase {
          * @param key String with property name for array property
          * @param value String with value to remove from array
          */
-        public void pull(String key, String value) {
-            synchronized (_cly) {
+        public void pull(final String key, final String value) {
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        pull(key, value);
+                    }
+                });
+                return;
+            }
+
+            synchronized (moduleLock) {
                 Countly.userData.pullValue(key, value);
             }
         }
@@ -446,8 +528,17 @@ public class ModuleUserProfile extends ModuleBase {
          * @param key the key for the user property
          * @param value the value for the user property to be set. The value should be the allowed data type.
          */
-        public void setProperty(String key, Object value) {
-            synchronized (_cly) {
+        public void setProperty(final String key, final Object value) {
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        setProperty(key, value);
+                    }
+                });
+                return;
+            }
+
+            synchronized (moduleLock) {
                 L.i("[UserProfile] Calling 'setProperty'");
 
                 Map<String, Object> data = new HashMap<>();
@@ -463,8 +554,18 @@ public class ModuleUserProfile extends ModuleBase {
          *
          * @param data
          */
-        public void setProperties(Map<String, Object> data) {
-            synchronized (_cly) {
+        public void setProperties(final Map<String, Object> data) {
+            if (_cly.shouldQueueBehindInit()) {
+                final Map<String, Object> dataCopy = data == null ? null : new HashMap<>(data);
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        setProperties(dataCopy);
+                    }
+                });
+                return;
+            }
+
+            synchronized (moduleLock) {
                 L.i("[UserProfile] Calling 'setProperties'");
 
                 if (data == null) {
@@ -479,7 +580,16 @@ public class ModuleUserProfile extends ModuleBase {
          * Send provided values to server
          */
         public void save() {
-            synchronized (_cly) {
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        save();
+                    }
+                });
+                return;
+            }
+
+            synchronized (moduleLock) {
                 L.i("[UserProfile] Calling 'save'");
                 saveInternal();
             }
@@ -489,7 +599,16 @@ public class ModuleUserProfile extends ModuleBase {
          * Clear all submitted information
          */
         public void clear() {
-            synchronized (_cly) {
+            if (_cly.shouldQueueBehindInit()) {
+                _cly.queueBehindInit(new Runnable() {
+                    @Override public void run() {
+                        clear();
+                    }
+                });
+                return;
+            }
+
+            synchronized (moduleLock) {
                 L.i("[UserProfile] Calling 'clear'");
                 clearInternal();
             }
@@ -9,10 +9,13 @@ import java.util.HashMap;
 import java.util.Map;
 
 public class ModuleViews extends ModuleBase implements ViewIdProvider {
-    private String currentViewID = null;
-    private String previousViewID = null;
+    //view IDs are read without the module lock when events are recorded
+    private volatile String currentViewID = null;
+    private volatile String previousViewID = null;
+    //read without the module lock for every rendered frame while frame tracking is enabled
+    private volatile String currentViewName = null;
 
-    private boolean firstView = true;
+    private volatile boolean firstView = true;
 
     boolean autoViewTracker = false;
     boolean automaticTrackingShouldUseShortName = false;
@@ -40,6 +43,13 @@ public class ModuleViews extends ModuleBase implements ViewIdProvider {
         return previousViewID == null ? "" : previousViewID;
     }
 
+    /**
+     * @return name of the last recorded view, or null if none has been recorded
+     */
+    @Nullable String getCurrentViewName() {
+        return currentViewName;
+    }
+
     static class ViewData {
         String viewID;
         long viewStartTime;
@@ -189,54 +199,57 @@ public class ModuleViews extends ModuleBase implements ViewIdProvider {
      * @param customViewSegmentation Map<String, Object> - segmentation that will be added to the view, set 'null' if none should be added
      * @return Returns link to Countly for call chaining
      */
-    synchronized Countly recordViewInternal(String viewName, Map<String, Object> customViewSegmentation) {
-        if (!_cly.isInitialized()) {
-            L.e("Countly.sharedInstance().init must be called before recordView");
-            return _cly;
-        }
+    Countly recordViewInternal(String viewName, Map<String, Object> customViewSegmentation) {
+        synchronized (moduleLock) {
+            if (!_cly.isInitialized()) {
+                L.e("Countly.sharedInstance().init must be called before recordView");
+                return _cly;
+            }
 
-        if (viewName == null || viewName.isEmpty()) {
-            L.e("[ModuleViews] Trying to record view with null or empty view name, ignoring request");
-            return _cly;
-        }
+            if (viewName == null || viewName.isEmpty()) {
+                L.e("[ModuleViews] Trying to record view with null or empty view name, ignoring request");
+                return _cly;
+            }
 
-        // if segmentation is null this just returns so no null check necessary
-        Utils.truncateSegmentationValues(customViewSegmentation, _cly.config_.maxSegmentationValues, "[ModuleViews] recordViewInternal", L);
+            // if segmentation is null this just returns so no null check necessary
+            Utils.truncateSegmentationValues(customViewSegmentation, _cly.config_.maxSegmentationValues, "[ModuleViews] recordViewInternal", L);
 
-        if (L.logEnabled()) {
-            int segmCount = 0;
-            if (customViewSegmentation != null) {
-                segmCount = customViewSegmentation.size();
+            if (L.logEnabled()) {
+                int segmCount = 0;
+                if (customViewSegmentation != null) {
+                    segmCount = customViewSegmentation.size();
+                }
+                L.d("[ModuleViews] Recording view with name: [" + viewName + "], previous view ID:[" + currentViewID + "] custom view segment count:[" + segmCount + "], first:[" + firstView + "]");
             }
-            L.d("[ModuleViews] Recording view with name: [" + viewName + "], previous view ID:[" + currentViewID + "] custom view segment count:[" + segmCount + "], first:[" + firstView + "]");
-        }
 
-        if (viewDataMap.size() > 0) {
-            //there is only a point in calling this if there are any open views
-            reportViewDuration();
-        } else {
-            L.i("[ModuleViews] Skipping to call 'reportViewDuration' due to having no open views");
-        }
+            if (viewDataMap.size() > 0) {
+                //there is only a point in calling this if there are any open views
+                reportViewDuration();
+            } else {
+                L.i("[ModuleViews] Skipping to call 'reportViewDuration' due to having no open views");
+            }
 
-        ViewData currentViewData = new ViewData();
-        currentViewData.viewID = safeViewIDGenerator.GenerateValue();
-        currentViewData.viewName = viewName;
-        currentViewData.viewStartTime = UtilsTime.currentTimestampSeconds();
+            ViewData currentViewData = new ViewData();
+            currentViewData.viewID = safeViewIDGenerator.GenerateValue();
+            currentViewData.viewName = viewName;
+            currentViewData.viewStartTime = UtilsTime.currentTimestampSeconds();
 
-        viewDataMap.put(currentViewData.viewID, currentViewData);
-        previousViewID = currentViewID;
-        currentViewID = currentViewData.viewID;
+            viewDataMap.put(currentViewData.viewID, currentViewData);
+            previousViewID = currentViewID;
+            currentViewID = currentViewData.viewID;
+            currentViewName = viewName;
 
-        Map<String, Object> viewSegmentation = CreateViewEventSegmentation(currentViewData, firstView, true, false, customViewSegmentation);
+            Map<String, Object> viewSegmentation = CreateViewEventSegmentation(currentViewData, firstView, true, false, customViewSegmentation);
 
-        if (firstView) {
-            L.d("[ModuleViews] Recording view as the first one in the session. [" + viewName + "]");
-            firstView = false;
-        }
+            if (firstView) {
+                L.d("[ModuleViews] Recording view as the first one in the session. [" + viewName + "]");
+                firstView = false;
+            }
 
-        eventProvider.recordEventInternal(VIEW_EVENT_KEY, viewSegmentation, 1, 0, 0, null, currentViewData.viewID);
+            eventProvider.recordEventInternal(VIEW_EVENT_KEY, viewSegmentation, 1, 0, 0, null, currentViewData.viewID);
 
-        return _cly;
+            return _cly;
+        }
     }
 
     void updateOrientation(int newOrientation) {
@@ -267,7 +280,9 @@ public class ModuleViews extends ModuleBase implements ViewIdProvider {
         if (trackOrientationChanges) {
             Integer orient = getOrientationFromConfiguration(newConfig);
             if (orient != null) {
-                updateOrientation(orient);
+                synchronized (moduleLock) {
+                    updateOrientation(orient);
+                }
             }
         }
     }
@@ -278,7 +293,9 @@ public class ModuleViews extends ModuleBase implements ViewIdProvider {
             //main purpose of this is handling transitions when the app is getting closed/minimised
             //for cases when going from one view to another we would report the duration there
             if (updatedActivityCount <= 0) {
-                reportViewDuration();
+                synchronized (moduleLock) {
+                    reportViewDuration();
+                }
             }
         }
     }
@@ -308,7 +325,9 @@ public class ModuleViews extends ModuleBase implements ViewIdProvider {
         if (trackOrientationChanges) {
             Integer orient = getOrientationFromActivity(activity);
             if (orient != null) {
-                updateOrientation(orient);
+                synchronized (moduleLock) {
+                    updateOrientation(orient);
+                }
             }
         }
     }
@@ -348,11 +367,13 @@ public class ModuleViews extends ModuleBase implements ViewIdProvider {
 
     @Override
     void halt() {
-        if (automaticViewSegmentation != null) {
-            automaticViewSegmentation.clear();
-            automaticViewSegmentation = null;
+        synchronized (moduleLock) {
+            if (automaticViewSegmentation != null) {
+                automaticViewSegmentation.clear();
+                automaticViewSegmentation = null;
+            }
+            autoTrackingActivityExceptions = null;
         }
-        autoTrackingActivityExceptions = null;
     }
 
     public class Views {
@@ -362,7 +383,7 @@ public class ModuleViews extends ModuleBase implements ViewIdProvider {
          * @return boolean - true if enabled, false if disabled
          */
         public boolean isAutomaticViewTrackingEnabled() {
-            synchronized (_cly) {
+            synchronized (moduleLock) {
                 L.i("[Views] Calling isAutomaticViewTrackingEnabled");
 
                 return autoViewTracker;
@@ -378,10 +399,8 @@ public class ModuleViews extends ModuleBase implements ViewIdProvider {
          * @return Returns link to Countly for call chaining
          */
         public Countly recordView(@Nullable String viewName) {
-            synchronized (_cly) {
-                // call the general function that has two parameters
-                return recordView(viewName, null);
-            }
+            // call the general function that has two parameters
+            return recordView(viewName, null);
         }
 
         /**
@@ -393,8 +412,21 @@ public class ModuleViews extends ModuleBase implements ViewIdProvider {
          * @param viewName String - name of the view
          * @param viewSegmentation Map<String, Object> - segmentation that will be added to the view, set 'null' if none should be added
          */
-        public Countly recordView(@Nullable String viewName, @Nullable Map<String, Object> viewSegmentation) {
-            synchronized (_cly) {
+        public Countly recordView(@Nullable final String viewName, @Nullable Map<String, Object> viewSegmentation) {
+            if (shouldPostToActor()) {
+                //the caller is free to change the map after this call returns
+                final Map<String, Object> segmentationCopy = viewSegmentation == null ? null : new HashMap<>(viewSegmentation);
+                postToActor(new Runnable() {
+                    @Override public void run() {
+                        L.i("[Views] Calling recordView [" + viewName + "]");
+
+                        recordViewInternal(viewName, segmentationCopy);
+                    }
+                });
+                return _cly;
+            }
+
+            synchronized (moduleLock) {
                 L.i("[Views] Calling recordView [" + viewName + "]");
 
                 return recordViewInternal(viewName, viewSegmentation);
@@ -0,0 +1,236 @@
+package ly.count.android.sdk;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * A running network trace, returned by 'Countly.sharedInstance().apm().startNetworkTrace(url)'.
+ *
+ * The trace key is the request URL without query and with identifier-like path segments replaced,
+ * so that requests to the same endpoint are grouped together.
+ *
+ * The phase methods follow the order of a HTTP call and can be forwarded from a HTTP client's event callbacks.
+ * All of them are optional, phases that are not reported are left out of the trace.
+ * For 'HttpURLConnection', the request and response streams can be wrapped so that their sizes are counted
+ * and the trace ends when the response stream is closed:
+ *
+ * <pre>
+ * NetworkTrace trace = Countly.sharedInstance().apm().startNetworkTrace(url.toString());
+ * trace.connectStart();
+ * connection.connect();
+ * trace.connectEnd();
+ * OutputStream out = trace.wrapRequestBody(connection.getOutputStream());
+ * ...
+ * trace.responseHeaders(connection.getResponseCode());
+ * InputStream in = trace.wrapResponseBody(connection.getInputStream());
+ * ...
+ * in.close();
+ * </pre>
+ */
+public class NetworkTrace {
+    private static final int STATE_RUNNING = 0;
+    private static final int STATE_FINISHED = 1;
+
+    private static final AtomicIntegerFieldUpdater<NetworkTrace> STATE_UPDATER = AtomicIntegerFieldUpdater.newUpdater(NetworkTrace.class, "state");
+
+    final String key;
+    final long startNs;
+    final ModuleAPM apm;
+
+    volatile long dnsStartNs = 0;
+    volatile long dnsEndNs = 0;
+    volatile long connectStartNs = 0;
+    volatile long connectEndNs = 0;
+    volatile long responseStartNs = 0;
+    volatile int responseCode = 0;
+    volatile long requestBytes = 0;
+    volatile long responseBytes = 0;
+
+    private volatile int state;
+
+    NetworkTrace(@NonNull String key, long startNs, @Nullable ModuleAPM apm) {
+        this.key = key;
+        this.startNs = startNs;
+        this.apm = apm;
+        //a trace without a module does nothing, it is returned for invalid URLs
+        this.state = apm == null ? STATE_FINISHED : STATE_RUNNING;
+    }
+
+    /**
+     * @return the normalized URL that is used as the trace key
+     */
+    public @NonNull String getKey() {
+        return key;
+    }
+
+    public void dnsStart() {
+        dnsStartNs = System.nanoTime();
+    }
+
+    public void dnsEnd() {
+        dnsEndNs = System.nanoTime();
+    }
+
+    /**
+     * Connecting starts, for 'HttpURLConnection' this includes the DNS lookup
+     */
+    public void connectStart() {
+        connectStartNs = System.nanoTime();
+    }
+
+    /**
+     * Connection established, including the TLS handshake
+     */
+    public void connectEnd() {
+        connectEndNs = System.nanoTime();
+    }
+
+    /**
+     * @param bytes amount of request body bytes sent, added to the previously reported amount
+     */
+    public void requestBodyBytes(long bytes) {
+        requestBytes += bytes;
+    }
+
+    /**
+     * The response headers have arrived, the time until now is the time to first byte
+     */
+    public void responseHeaders(int responseCode) {
+        responseStartNs = System.nanoTime();
+        this.responseCode = responseCode;
+    }
+
+    /**
+     * @param bytes amount of response body bytes received, added to the previously reported amount
+     */
+    public void responseBodyBytes(long bytes) {
+        responseBytes += bytes;
+    }
+
+    /**
+     * End the trace and record it. Only the first 'end' or 'fail' call has an effect.
+     */
+    public void end() {
+        long endNs = System.nanoTime();
+
+        if (STATE_UPDATER.compareAndSet(this, STATE_RUNNING, STATE_FINISHED)) {
+            apm.endNetworkTraceInternal(this, endNs);
+        }
+    }
+
+    /**
+     * End the trace of a request that failed without a response, it is recorded with the response code '0'
+     */
+    public void fail() {
+        responseCode = 0;
+        end();
+    }
+
+    /**
+     * Drop the trace without recording it
+     */
+    public void cancel() {
+        STATE_UPDATER.set(this, STATE_FINISHED);
+    }
+
+    public boolean isRunning() {
+        return state == STATE_RUNNING;
+    }
+
+    /**
+     * @return stream that counts the request body bytes written to it
+     */
+    public @NonNull OutputStream wrapRequestBody(@NonNull OutputStream requestBody) {
+        return new FilterOutputStream(requestBody) {
+            @Override public void write(int b) throws IOException {
+                out.write(b);
+                requestBytes++;
+            }
+
+            @Override public void write(@NonNull byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                requestBytes += len;
+            }
+        };
+    }
+
+    /**
+     * @return stream that counts the response body bytes read from it and ends the trace when closed.
+     * A read error ends the trace as failed.
+     */
+    public @NonNull InputStream wrapResponseBody(@NonNull InputStream responseBody) {
+        return new FilterInputStream(responseBody) {
+            @Override public int read() throws IOException {
+                try {
+                    int b = in.read();
+                    if (b >= 0) {
+                        responseBytes++;
+                    }
+                    return b;
+                } catch (IOException e) {
+                    fail();
+                    throw e;
+                }
+            }
+
+            @Override public int read(@NonNull byte[] b, int off, int len) throws IOException {
+                try {
+                    int count = in.read(b, off, len);
+                    if (count > 0) {
+                        responseBytes += count;
+                    }
+                    return count;
+                } catch (IOException e) {
+                    fail();
+                    throw e;
+                }
+            }
+
+            @Override public void close() throws IOException {
+                try {
+                    in.close();
+                } finally {
+                    end();
+                }
+            }
+        };
+    }
+
+    /**
+     * @return the phase durations in milliseconds, only for the reported phases
+     */
+    @NonNull Map<String, Long> phaseMetrics(long endNs) {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        putPhase(metrics, "dns_time", dnsStartNs, dnsEndNs);
+        putPhase(metrics, "connect_time", connectStartNs, connectEndNs);
+        putPhase(metrics, "ttfb", startNs, responseStartNs);
+        putPhase(metrics, "transfer_time", responseStartNs, endNs);
+        return metrics;
+    }
+
+    /**
+     * @return the phase metrics in the format of the APM metrics string, for example ',"ttfb":120'
+     */
+    static @NonNull String phaseMetricsString(@NonNull Map<String, Long> phaseMetrics) {
+        StringBuilder metrics = new StringBuilder();
+        for (Map.Entry<String, Long> entry : phaseMetrics.entrySet()) {
+            metrics.append(",\"").append(entry.getKey()).append("\":").append(entry.getValue());
+        }
+        return metrics.toString();
+    }
+
+    private static void putPhase(@NonNull Map<String, Long> metrics, @NonNull String name, long phaseStartNs, long phaseEndNs) {
+        if (phaseStartNs == 0 || phaseEndNs == 0 || phaseEndNs < phaseStartNs) {
+            return;
+        }
+        metrics.put(name, (phaseEndNs - phaseStartNs + 500000L) / 1000000L);
+    }
+}
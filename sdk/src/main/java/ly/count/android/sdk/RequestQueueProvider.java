@@ -29,6 +29,10 @@ interface RequestQueueProvider {
 
     void sendCrashReport(@NonNull final String crashData, final boolean nonFatalCrash);
 
+    void sendEncodedCrashReport(@NonNull final CrashReportBuilder report, final boolean nonFatalCrash);
+
+    void sendNativeCrashReport(@NonNull final String crashData, @NonNull final String dumpPath);
+
     void recordEvents(final String events);
 
     void sendConsentChanges(String formattedConsentChanges);
@@ -37,6 +41,8 @@ interface RequestQueueProvider {
 
     void sendAPMNetworkTrace(String networkTraceKey, Long responseTimeMs, int responseCode, int requestPayloadSize, int responsePayloadSize, Long startMs, Long endMs);
 
+    void sendAPMNetworkTrace(String networkTraceKey, Long responseTimeMs, int responseCode, int requestPayloadSize, int responsePayloadSize, Long startMs, Long endMs, @NonNull String phaseMetrics);
+
     void sendAPMAppStart(long durationMs, Long startMs, Long endMs);
 
     void sendAPMScreenTime(boolean recordForegroundTime, long durationMs, Long startMs, Long endMs);
@@ -0,0 +1,152 @@
+package ly.count.android.sdk;
+
+import androidx.annotation.NonNull;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A single SDK thread that runs the calls which write SDK state.
+ * Used when 'enableSdkActorThread' is set in the init config.
+ *
+ * Public calls validate their arguments on the calling thread and post the rest of the work here,
+ * so that the calling thread does not wait for storage or for other SDK calls.
+ * Posted calls are run one at a time in the order in which they were posted.
+ *
+ * The queue is bounded, so a stalled SDK thread can't make it grow without limit. A warning is logged once
+ * the queue gets deep, calls posted while it is full are dropped and counted.
+ */
+class SdkActor {
+    static final String THREAD_NAME = "Countly-SDK";
+    static final int DEFAULT_QUEUE_CAPACITY = 10000;
+
+    private final ThreadPoolExecutor executor;
+    private volatile Thread actorThread = null;
+    private final ModuleLog L;
+
+    //queue size at which a warning is logged, it is logged again once the queue has drained below it
+    private final int warningQueueSize;
+    private final AtomicBoolean queueDeep = new AtomicBoolean(false);
+    private final AtomicLong droppedCalls = new AtomicLong(0);
+
+    SdkActor(@NonNull ModuleLog logModule) {
+        this(logModule, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param queueCapacity how many calls can wait for the SDK thread before new ones are dropped
+     */
+    SdkActor(@NonNull ModuleLog logModule, int queueCapacity) {
+        L = logModule;
+        queueCapacity = Math.max(1, queueCapacity);
+        warningQueueSize = Math.max(1, queueCapacity / 2);
+        executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(queueCapacity), new ThreadFactory() {
+            @Override public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, THREAD_NAME);
+                thread.setDaemon(true);
+                actorThread = thread;
+                return thread;
+            }
+        }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * @return true if called from the SDK thread
+     */
+    boolean isActorThread() {
+        return Thread.currentThread() == actorThread;
+    }
+
+    /**
+     * Adds the call to the end of the SDK thread queue
+     *
+     * @return false if the SDK thread is stopped or its queue is full and the call was dropped
+     */
+    boolean post(@NonNull final Runnable call) {
+        if (executor.isShutdown()) {
+            L.w("[SdkActor] SDK thread is stopped, ignoring posted call");
+            return false;
+        }
+
+        try {
+            executor.execute(new Runnable() {
+                @Override public void run() {
+                    try {
+                        call.run();
+                    } catch (Exception ex) {
+                        //there is no caller to pass this to
+                        L.e("[SdkActor] Posted call failed, " + ex.toString(), ex);
+                    }
+                }
+            });
+            checkQueueSize();
+            return true;
+        } catch (RejectedExecutionException ex) {
+            if (executor.isShutdown()) {
+                L.w("[SdkActor] SDK thread is stopped, ignoring posted call");
+            } else {
+                long dropped = droppedCalls.incrementAndGet();
+                L.e("[SdkActor] SDK thread queue is full, dropping posted call, [" + dropped + "] calls dropped so far");
+            }
+            return false;
+        }
+    }
+
+    private void checkQueueSize() {
+        int queued = executor.getQueue().size();
+        if (queued >= warningQueueSize) {
+            if (queueDeep.compareAndSet(false, true)) {
+                L.w("[SdkActor] [" + queued + "] calls are waiting for the SDK thread, it might be stalled");
+            }
+        } else if (queued < warningQueueSize / 2) {
+            queueDeep.set(false);
+        }
+    }
+
+    /**
+     * @return how many calls were dropped because the queue was full
+     */
+    long getDroppedCallCount() {
+        return droppedCalls.get();
+    }
+
+    /**
+     * Waits until all calls that were posted before this one have been run
+     *
+     * @param timeoutMs how long to wait at most
+     * @return true if the queue was processed in time
+     */
+    boolean awaitIdle(long timeoutMs) {
+        if (isActorThread()) {
+            return true;
+        }
+
+        final CountDownLatch done = new CountDownLatch(1);
+        if (!post(new Runnable() {
+            @Override public void run() {
+                done.countDown();
+            }
+        })) {
+            return false;
+        }
+
+        try {
+            return done.await(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Calls that are already posted are still run, new calls are ignored
+     */
+    void stop() {
+        executor.shutdown();
+    }
+}
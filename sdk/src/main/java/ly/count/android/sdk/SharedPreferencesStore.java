@@ -0,0 +1,53 @@
+package ly.count.android.sdk;
+
+import android.annotation.SuppressLint;
+import android.content.SharedPreferences;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.util.Map;
+
+/**
+ * Key-value store binding that is backed by 'SharedPreferences'
+ */
+class SharedPreferencesStore implements KeyValueStore {
+    private final SharedPreferences preferences;
+
+    SharedPreferencesStore(@NonNull SharedPreferences preferences) {
+        this.preferences = preferences;
+    }
+
+    @Nullable @Override public String getString(@NonNull String key, @Nullable String defaultValue) {
+        return preferences.getString(key, defaultValue);
+    }
+
+    @Override public void putString(@NonNull String key, @Nullable String value, boolean writeInSync) {
+        SharedPreferences.Editor editor = preferences.edit();
+        if (value == null) {
+            editor.remove(key);
+        } else {
+            editor.putString(key, value);
+        }
+        write(editor, writeInSync);
+    }
+
+    @Override public void putStrings(@NonNull Map<String, String> values, boolean writeInSync) {
+        SharedPreferences.Editor editor = preferences.edit();
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            if (entry.getValue() == null) {
+                editor.remove(entry.getKey());
+            } else {
+                editor.putString(entry.getKey(), entry.getValue());
+            }
+        }
+        write(editor, writeInSync);
+    }
+
+    @SuppressLint("ApplySharedPref")
+    private static void write(@NonNull SharedPreferences.Editor editor, boolean writeInSync) {
+        if (writeInSync) {
+            editor.commit();
+        } else {
+            editor.apply();
+        }
+    }
+}
@@ -17,6 +17,8 @@ interface StorageProvider {
 
     void addRequest(final String requestStr, final boolean writeInSync);
 
+    void addEventRequest(final String requestStr, final int maxMergedBytes, final boolean writeInSync);
+
     void removeRequest(final String requestStr);
 
     void replaceRequests(final String[] newConns);
@@ -49,8 +51,16 @@ interface StorageProvider {
 
     String getRemoteConfigValues();//not integrated
 
+    void setCrashIndex(String index);
+
+    String getCrashIndex();
+
     void esWriteCacheToStorage(@Nullable ExplicitStorageCallback callback);//required for explicit storage
 
+    void importSharedRequests();//required for the multi process request queue
+
+    @Nullable List<String> getAllPendingRequests();//null if another process owns the request queue
+
     //fields for data migration
     int getDataSchemaVersion();
 
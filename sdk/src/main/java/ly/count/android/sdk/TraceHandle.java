@@ -0,0 +1,73 @@
+package ly.count.android.sdk;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * A running custom trace, returned by 'Countly.sharedInstance().apm().startTraceHandle(key)'.
+ *
+ * The duration is measured with 'System.nanoTime', so short code sections are timed precisely.
+ * Any number of handles with the same key can run at the same time.
+ * A handle can be ended or cancelled from any thread, only the first of those calls has an effect.
+ */
+public class TraceHandle {
+    private static final int STATE_RUNNING = 0;
+    private static final int STATE_FINISHED = 1;
+
+    private static final AtomicIntegerFieldUpdater<TraceHandle> STATE_UPDATER = AtomicIntegerFieldUpdater.newUpdater(TraceHandle.class, "state");
+
+    final String key;
+    final long startNs;
+    final ModuleAPM apm;
+
+    private volatile int state;
+
+    TraceHandle(@NonNull String key, long startNs, @Nullable ModuleAPM apm) {
+        this.key = key;
+        this.startNs = startNs;
+        this.apm = apm;
+        //a handle without a module does nothing, it is returned for invalid keys
+        this.state = apm == null ? STATE_FINISHED : STATE_RUNNING;
+    }
+
+    public @NonNull String getKey() {
+        return key;
+    }
+
+    /**
+     * End the trace and record it
+     */
+    public void end() {
+        end(null);
+    }
+
+    /**
+     * End the trace and record it with custom metrics
+     *
+     * @param customMetrics custom metrics of this trace, may be null
+     */
+    public void end(@Nullable Map<String, Integer> customMetrics) {
+        //end time counting as fast as possible
+        long durationNs = System.nanoTime() - startNs;
+
+        if (STATE_UPDATER.compareAndSet(this, STATE_RUNNING, STATE_FINISHED)) {
+            apm.endTraceHandleInternal(this, durationNs, customMetrics);
+        }
+    }
+
+    /**
+     * Drop the trace without recording it
+     */
+    public void cancel() {
+        STATE_UPDATER.set(this, STATE_FINISHED);
+    }
+
+    /**
+     * @return true if the trace has not been ended or cancelled yet
+     */
+    public boolean isRunning() {
+        return state == STATE_RUNNING;
+    }
+}
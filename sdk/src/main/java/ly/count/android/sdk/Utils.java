@@ -1,18 +1,18 @@
 package ly.count.android.sdk;
 
+import android.app.Application;
 import android.app.UiModeManager;
 import android.content.Context;
 import android.content.res.Configuration;
 import android.os.Build;
-import android.util.Base64;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.security.SecureRandom;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.Map;
@@ -60,17 +60,7 @@ public class Utils {
      * Used in countlyStore
      */
     static String joinCountlyStore(final Collection<String> collection, final String delimiter) {
-        final StringBuilder builder = new StringBuilder();
-
-        int i = 0;
-        for (String s : collection) {
-            builder.append(s);
-            if (++i < collection.size()) {
-                builder.append(delimiter);
-            }
-        }
-
-        return builder.toString();
+        return UtilsCore.joinCountlyStore(collection, delimiter);
     }
 
     /**
@@ -170,12 +160,7 @@ public class Utils {
      * @return returns a random string value
      */
     public static String safeRandomVal() {
-        long timestamp = System.currentTimeMillis();
-        SecureRandom random = new SecureRandom();
-        byte[] value = new byte[6];
-        random.nextBytes(value);
-        String b64Value = Base64.encodeToString(value, Base64.NO_WRAP);
-        return b64Value + timestamp;
+        return UtilsCore.safeRandomVal(AndroidBase64Codec.INSTANCE);
     }
 
     /**
@@ -221,24 +206,7 @@ public class Utils {
      */
     protected static synchronized void fillInSegmentation(Map<String, Object> allSegm, Map<String, String> segmStr, Map<String, Integer> segmInt, Map<String, Double> segmDouble, Map<String, Boolean> segmBoolean,
         Map<String, Object> reminder) {
-        for (Map.Entry<String, Object> pair : allSegm.entrySet()) {
-            String key = pair.getKey();
-            Object value = pair.getValue();
-
-            if (value instanceof Integer) {
-                segmInt.put(key, (Integer) value);
-            } else if (value instanceof Double) {
-                segmDouble.put(key, (Double) value);
-            } else if (value instanceof String) {
-                segmStr.put(key, (String) value);
-            } else if (value instanceof Boolean) {
-                segmBoolean.put(key, (Boolean) value);
-            } else {
-                if (reminder != null) {
-                    reminder.put(key, value);
-                }
-            }
-        }
+        UtilsCore.fillInSegmentation(allSegm, segmStr, segmInt, segmDouble, segmBoolean, reminder);
     }
 
     /**
@@ -302,6 +270,36 @@ public class Utils {
         }
     }
 
+    /**
+     * Returns the name of the process this code is running in.
+     * Falls back to the package name if it can't be determined.
+     */
+    static @NonNull String currentProcessName(@NonNull Context context) {
+        if (Build.VERSION.SDK_INT >= 28) {
+            String name = Application.getProcessName();
+            if (name != null && !name.isEmpty()) {
+                return name;
+            }
+        }
+
+        try {
+            byte[] cmdline = readStream(new FileInputStream("/proc/self/cmdline"));
+            if (cmdline != null) {
+                int length = 0;
+                while (length < cmdline.length && cmdline[length] != 0) {
+                    length++;
+                }
+                if (length > 0) {
+                    return new String(cmdline, 0, length, "UTF-8").trim();
+                }
+            }
+        } catch (IOException e) {
+            Countly.sharedInstance().L.w("Couldn't read the process name: " + e);
+        }
+
+        return context.getPackageName();
+    }
+
     /**
      * Checks and transforms the provided Object if it does not
      * comply with the key count limit.